@@ -40,6 +40,7 @@ android {
     }
     buildFeatures {
         compose = true
+        buildConfig = true  // BuildConfig.DEBUG schaltet die Abfrage-Diagnose
     }
     composeOptions {
         kotlinCompilerExtensionVersion = "1.5.14"  // Kompatibel mit Kotlin 1.9.24
@@ -83,6 +84,13 @@ dependencies {
     implementation("androidx.room:room-ktx:2.6.1")
     ksp("androidx.room:room-compiler:2.6.1")
 
+    // Aktuelles SQLite mitliefern (Window-Funktionen, JSON1, FTS5 auf allen Geräten)
+    implementation("com.github.requery:sqlite-android:3.45.0")
+
+    // Paging (Verlauf)
+    implementation("androidx.paging:paging-runtime-ktx:3.3.2")
+    implementation("androidx.paging:paging-compose:3.3.2")
+
     // ViewModel & Lifecycle
     implementation("androidx.lifecycle:lifecycle-viewmodel-compose:2.8.6")
     implementation("androidx.lifecycle:lifecycle-runtime-compose:2.8.6")
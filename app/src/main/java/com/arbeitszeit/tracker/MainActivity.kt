@@ -20,23 +20,24 @@ import androidx.compose.runtime.rememberCoroutineScope
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.unit.dp
 import androidx.core.content.ContextCompat
+import androidx.core.content.pm.PackageInfoCompat
 import androidx.lifecycle.lifecycleScope
 import androidx.navigation.compose.currentBackStackEntryAsState
 import androidx.navigation.compose.rememberNavController
+import com.arbeitszeit.tracker.data.calendar.CalendarDays
 import com.arbeitszeit.tracker.data.database.AppDatabase
 import com.arbeitszeit.tracker.geofencing.GeofencingManager
 import com.arbeitszeit.tracker.ui.navigation.NavGraph
 import com.arbeitszeit.tracker.ui.navigation.Screen
 import com.arbeitszeit.tracker.ui.theme.ArbeitszeitTrackerTheme
-import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.NotificationHelper
+import com.arbeitszeit.tracker.worker.RecalculationWorker
 import com.arbeitszeit.tracker.worker.ReminderWorker
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
-import java.time.LocalDate
 
 class MainActivity : ComponentActivity() {
 
@@ -64,6 +65,12 @@ class MainActivity : ComponentActivity() {
         // EINMALIG: Migriere KW-Nummern für alte Einträge
         migrateKalenderwochen()
 
+        // Summen-Tabellen gegen Rohdaten prüfen (nur nach Migration oder App-Update)
+        verifyRollups()
+
+        // Kalender-Dimension abgleichen (neues Jahr, ältere Einträge aus Import)
+        syncCalendarDays()
+
         setContent {
             // Observe settings for dark mode
             val database = AppDatabase.getDatabase(this)
@@ -152,6 +159,32 @@ class MainActivity : ComponentActivity() {
                                 }
                             )
 
+                            NavigationDrawerItem(
+                                icon = { Icon(Icons.Default.History, null) },
+                                label = { Text("Verlauf") },
+                                selected = currentRoute == Screen.History.route,
+                                onClick = {
+                                    scope.launch { drawerState.close() }
+                                    navController.navigate(Screen.History.route) {
+                                        popUpTo(navController.graph.startDestinationId)
+                                        launchSingleTop = true
+                                    }
+                                }
+                            )
+
+                            NavigationDrawerItem(
+                                icon = { Icon(Icons.Default.Search, null) },
+                                label = { Text("Notizen durchsuchen") },
+                                selected = currentRoute == Screen.Search.route,
+                                onClick = {
+                                    scope.launch { drawerState.close() }
+                                    navController.navigate(Screen.Search.route) {
+                                        popUpTo(navController.graph.startDestinationId)
+                                        launchSingleTop = true
+                                    }
+                                }
+                            )
+
                             HorizontalDivider(modifier = Modifier.padding(vertical = 8.dp))
 
                             NavigationDrawerItem(
@@ -228,6 +261,8 @@ class MainActivity : ComponentActivity() {
                                 Screen.Home.route,
                                 Screen.Ueberstunden.route,
                                 Screen.Calendar.route,
+                                Screen.History.route,
+                                Screen.Search.route,
                                 Screen.Export.route,
                                 Screen.Import.route,
                                 Screen.Settings.route
@@ -241,6 +276,8 @@ class MainActivity : ComponentActivity() {
                                                 Screen.Home.route -> "Home"
                                                 Screen.Ueberstunden.route -> "Überstunden"
                                                 Screen.Calendar.route -> "Kalender"
+                                                Screen.History.route -> "Verlauf"
+                                                Screen.Search.route -> "Suche"
                                                 Screen.Export.route -> "Export"
                                                 Screen.Import.route -> "Import"
                                                 Screen.Settings.route -> "Einstellungen"
@@ -312,6 +349,41 @@ class MainActivity : ComponentActivity() {
         }
     }
 
+    private fun syncCalendarDays() {
+        CoroutineScope(Dispatchers.IO).launch {
+            val changed = CalendarDays.getInstance(this@MainActivity).sync()
+            if (changed > 0) {
+                android.util.Log.i("MainActivity", "Kalender-Dimension: $changed Tage aktualisiert")
+            }
+        }
+    }
+
+    /**
+     * Prüft die Summen-Tabellen einmal nach einer Datenbank-Migration oder einem App-Update
+     *
+     * Der Abgleich aggregiert alle Einträge neu - das sollen die Summen-Tabellen im Alltag gerade
+     * vermeiden. Im laufenden Betrieb halten die Trigger sie aktuell; von Hand prüfen lässt es sich
+     * in der Diagnose.
+     */
+    private fun verifyRollups() {
+        CoroutineScope(Dispatchers.IO).launch {
+            val database = AppDatabase.getDatabase(this@MainActivity)
+            val packageInfo = packageManager.getPackageInfo(packageName, 0)
+            val checkKey = "${PackageInfoCompat.getLongVersionCode(packageInfo)}/${database.openHelper.readableDatabase.version}"
+
+            val sharedPrefs = getSharedPreferences("app_prefs", MODE_PRIVATE)
+            if (sharedPrefs.getString("rollup_check", null) == checkKey) {
+                return@launch // Für diese App- und Datenbank-Version bereits geprüft
+            }
+
+            val rebuilt = database.verifyRollups()
+            if (rebuilt) {
+                android.util.Log.i("MainActivity", "Summen-Tabellen neu aufgebaut")
+            }
+            sharedPrefs.edit().putString("rollup_check", checkKey).apply()
+        }
+    }
+
     /**
      * Migriert alle Zeiteinträge auf Custom Kalenderwochen-Berechnung
      *
@@ -330,36 +402,13 @@ class MainActivity : ComponentActivity() {
                 return@launch // Migration wurde bereits durchgeführt
             }
 
-            val database = AppDatabase.getDatabase(this@MainActivity)
-            val settings = database.userSettingsDao().getSettings()
-            val timeEntryDao = database.timeEntryDao()
-
-            // Lade alle Einträge
-            val allEntries = timeEntryDao.getEntriesByYear(LocalDate.now().year)
-
-            var updatedCount = 0
-            allEntries.forEach { entry ->
-                val date = LocalDate.parse(entry.datum)
-
-                // Berechne KW mit Custom-Methode
-                val newKW = DateUtils.getCustomWeekOfYear(date, settings?.ersterMontagImJahr)
-                val newJahr = DateUtils.getCustomWeekBasedYear(date, settings?.ersterMontagImJahr)
-
-                // Aktualisiere nur wenn sich KW oder Jahr geändert haben
-                if (entry.kalenderwoche != newKW || entry.jahr != newJahr) {
-                    timeEntryDao.update(entry.copy(
-                        kalenderwoche = newKW,
-                        jahr = newJahr,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-                    updatedCount++
-                }
-            }
+            // Set-basiert und fortsetzbar im Hintergrund (siehe RecalculationWorker)
+            RecalculationWorker.enqueue(this@MainActivity, soll = false, kalenderwochen = true)
 
             // Markiere Migration als abgeschlossen
             sharedPrefs.edit().putBoolean("kw_migration_done", true).apply()
 
-            android.util.Log.i("MainActivity", "KW-Migration abgeschlossen: $updatedCount von ${allEntries.size} Einträgen aktualisiert")
+            android.util.Log.i("MainActivity", "KW-Migration eingeplant")
         }
     }
 }
@@ -1,21 +1,29 @@
 package com.arbeitszeit.tracker.backup
 
 import android.content.Context
+import android.util.JsonReader
+import android.util.JsonToken
+import android.util.JsonWriter
+import androidx.room.withTransaction
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
 import com.arbeitszeit.tracker.data.entity.TimeEntry
 import com.arbeitszeit.tracker.data.entity.UserSettings
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
+import com.arbeitszeit.tracker.utils.DateUtils
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.withContext
-import org.json.JSONArray
-import org.json.JSONObject
 import java.io.File
+import java.io.IOException
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
 
 /**
  * BackupManager - Verwaltet Datenbank-Backups
  * Erstellt JSON-Backups der kompletten Datenbank (TimeEntries + Settings)
+ * Schreiben und Lesen laufen gestreamt (JsonWriter/JsonReader), der Speicherbedarf hängt
+ * nicht von der Anzahl der Einträge ab.
  */
 class BackupManager(private val context: Context) {
 
@@ -23,175 +31,338 @@ class BackupManager(private val context: Context) {
         private const val BACKUP_FILE_PREFIX = "arbeitszeit_backup_"
         private const val BACKUP_FILE_EXTENSION = ".json"
         private const val BACKUP_VERSION = 1
+
+        // Einträge pro Seite beim Schreiben bzw. pro Einfüge-Paket beim Wiederherstellen
+        private const val PAGE_SIZE = 500
     }
 
     /**
      * Erstellt ein vollständiges Backup der Datenbank
+     *
+     * Die Einträge werden seitenweise gelesen und direkt in die Datei geschrieben (kompaktes JSON
+     * ohne Einrückung), damit nie alle Einträge gleichzeitig im Speicher liegen.
      * @return File-Objekt des erstellten Backups
      */
     suspend fun createBackup(): File = withContext(Dispatchers.IO) {
         val database = AppDatabase.getDatabase(context)
         val timeEntryDao = database.timeEntryDao()
-        val settingsDao = database.userSettingsDao()
-
-        // Daten aus Datenbank holen
-        val timeEntries = timeEntryDao.getAllEntriesFlow().first()
-        val settings = settingsDao.getSettings()
-
-        // JSON-Objekt erstellen
-        val backupJson = JSONObject().apply {
-            put("version", BACKUP_VERSION)
-            put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME))
-            put("appVersion", context.packageManager.getPackageInfo(context.packageName, 0).versionName)
-
-            // TimeEntries
-            val entriesArray = JSONArray()
-            for (entry in timeEntries) {
-                val entryJson = JSONObject().apply {
-                    put("id", entry.id)
-                    put("datum", entry.datum)
-                    put("wochentag", entry.wochentag)
-                    put("kalenderwoche", entry.kalenderwoche)
-                    put("jahr", entry.jahr)
-                    put("startZeit", entry.startZeit)
-                    put("endZeit", entry.endZeit)
-                    put("pauseMinuten", entry.pauseMinuten)
-                    put("sollMinuten", entry.sollMinuten)
-                    put("typ", entry.typ)
-                    put("notiz", entry.notiz)
-                    put("arbeitszeitBereitschaft", entry.arbeitszeitBereitschaft)
-                    put("isManualEntry", entry.isManualEntry)
-                }
-                entriesArray.put(entryJson)
-            }
-            put("timeEntries", entriesArray)
-
-            // UserSettings
-            settings?.let { s ->
-                val settingsJson = JSONObject().apply {
-                    put("name", s.name)
-                    put("einrichtung", s.einrichtung)
-                    put("arbeitsumfangProzent", s.arbeitsumfangProzent)
-                    put("wochenStundenMinuten", s.wochenStundenMinuten)
-                    put("arbeitsTageProWoche", s.arbeitsTageProWoche)
-                    put("ferienbetreuung", s.ferienbetreuung)
-                    put("ueberstundenVorjahrMinuten", s.ueberstundenVorjahrMinuten)
-                    put("letzterUebertragMinuten", s.letzterUebertragMinuten)
-                    put("ersterMontagImJahr", s.ersterMontagImJahr)
-                    put("workingDays", s.workingDays)
-                    put("geofencingEnabled", s.geofencingEnabled)
-                    put("geofencingStartHour", s.geofencingStartHour)
-                    put("geofencingEndHour", s.geofencingEndHour)
-                    put("geofencingActiveDays", s.geofencingActiveDays)
-                    put("darkMode", s.darkMode)
-                    put("selectedTemplateYear", s.selectedTemplateYear)
-                    put("bundesland", s.bundesland)
-                    put("urlaubsanspruchTage", s.urlaubsanspruchTage)
-                }
-                put("settings", settingsJson)
-            }
-        }
+        val settings = database.userSettingsDao().getSettings()
 
-        // Backup-Datei erstellen
+        // Backup-Datei erstellen - erst unter temporärem Namen, damit halbe Backups nicht in der Liste erscheinen
         val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
         val fileName = "$BACKUP_FILE_PREFIX$timestamp$BACKUP_FILE_EXTENSION"
         val backupFile = File(context.cacheDir, fileName)
+        val tempFile = File(context.cacheDir, "$fileName.tmp")
+
+        try {
+            JsonWriter(tempFile.bufferedWriter(Charsets.UTF_8)).use { writer ->
+                writer.beginObject()
+                writer.name("version").value(BACKUP_VERSION)
+                writer.name("timestamp").value(LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME))
+                writer.name("appVersion").value(context.packageManager.getPackageInfo(context.packageName, 0).versionName)
+
+                // UserSettings
+                settings?.let {
+                    writer.name("settings")
+                    writeSettings(writer, it)
+                }
 
-        backupFile.writeText(backupJson.toString(2)) // Pretty-print mit Indent 2
+                // TimeEntries seitenweise nach epochDay (Keyset-Paging)
+                writer.name("timeEntries")
+                writer.beginArray()
+                var nextDay = Int.MIN_VALUE
+                while (true) {
+                    val page = timeEntryDao.getEntriesAtOrAfter(nextDay, PAGE_SIZE)
+                    page.forEach { writeEntry(writer, it) }
+                    if (page.size < PAGE_SIZE) break
+                    nextDay = page.last().epochDay + 1
+                }
+                writer.endArray()
+
+                writer.endObject()
+            }
+
+            if (!tempFile.renameTo(backupFile)) {
+                throw IOException("Backup-Datei konnte nicht angelegt werden")
+            }
+        } finally {
+            tempFile.delete()
+        }
 
         backupFile
     }
 
     /**
      * Stellt ein Backup wieder her
+     *
+     * Die Datei wird gestreamt gelesen; Einträge gehen in Paketen direkt in die Datenbank.
+     * Alles läuft in einer Transaktion - bei einem Fehler bleibt der alte Stand erhalten.
      * @param backupFile Die Backup-Datei die wiederhergestellt werden soll
      * @param replaceExisting Wenn true, werden vorhandene Daten ersetzt. Wenn false, werden Daten zusammengeführt.
      */
     suspend fun restoreBackup(backupFile: File, replaceExisting: Boolean = false): RestoreResult = withContext(Dispatchers.IO) {
         try {
-            val backupJson = JSONObject(backupFile.readText())
-
-            // Version prüfen
-            val version = backupJson.getInt("version")
-            if (version > BACKUP_VERSION) {
-                return@withContext RestoreResult.Error("Backup-Version zu neu. Bitte App aktualisieren.")
-            }
-
             val database = AppDatabase.getDatabase(context)
             val timeEntryDao = database.timeEntryDao()
             val settingsDao = database.userSettingsDao()
+            val stampEventDao = database.stampEventDao()
 
-            // Wenn replaceExisting, lösche vorhandene Daten
-            if (replaceExisting) {
-                timeEntryDao.deleteAllEntries()
-            }
+            val entriesRestored = DatabaseWriter.write {
+                database.withTransaction {
+                    var restored = 0
+                    var settings: UserSettings? = null
 
-            // TimeEntries wiederherstellen
-            val entriesArray = backupJson.getJSONArray("timeEntries")
-            var entriesRestored = 0
-            for (i in 0 until entriesArray.length()) {
-                val entryJson = entriesArray.getJSONObject(i)
-                val datum = entryJson.getString("datum")
-
-                // Wenn nicht replaceExisting, prüfe ob Eintrag bereits existiert
-                if (!replaceExisting) {
-                    val existing = timeEntryDao.getEntryByDate(datum)
-                    if (existing != null) {
-                        // Eintrag existiert bereits, überspringe
-                        continue
-                    }
-                }
+                    JsonReader(backupFile.bufferedReader(Charsets.UTF_8)).use { reader ->
+                        reader.beginObject()
+                        while (reader.hasNext()) {
+                            when (reader.nextName()) {
+                                "version" -> {
+                                    // Version prüfen (steht vor den Einträgen)
+                                    if (reader.nextInt() > BACKUP_VERSION) throw BackupTooNewException()
+                                }
+                                "settings" -> settings = readSettings(reader)
+                                "timeEntries" -> {
+                                    if (replaceExisting) {
+                                        // Vorhandene Daten ersetzen - samt Stempel-Protokoll, sonst holt
+                                        // der nächste Stempel die Zeiten von vor der Wiederherstellung zurück
+                                        timeEntryDao.deleteAllEntries()
+                                        stampEventDao.deleteAll()
+                                    }
 
-                val entry = TimeEntry(
-                    datum = datum,
-                    wochentag = entryJson.getString("wochentag"),
-                    kalenderwoche = entryJson.getInt("kalenderwoche"),
-                    jahr = entryJson.getInt("jahr"),
-                    startZeit = if (entryJson.isNull("startZeit")) null else entryJson.getInt("startZeit"),
-                    endZeit = if (entryJson.isNull("endZeit")) null else entryJson.getInt("endZeit"),
-                    pauseMinuten = entryJson.getInt("pauseMinuten"),
-                    sollMinuten = entryJson.getInt("sollMinuten"),
-                    typ = entryJson.getString("typ"),
-                    notiz = entryJson.optString("notiz", ""),
-                    arbeitszeitBereitschaft = entryJson.optInt("arbeitszeitBereitschaft", 0),
-                    isManualEntry = entryJson.optBoolean("isManualEntry", false)
-                )
-                timeEntryDao.insert(entry)
-                entriesRestored++
-            }
+                                    val batch = ArrayList<TimeEntry>(PAGE_SIZE)
+                                    suspend fun flush() {
+                                        if (batch.isEmpty()) return
+                                        restored += if (replaceExisting) {
+                                            timeEntryDao.insertAll(batch)
+                                            batch.size
+                                        } else {
+                                            // Bereits vorhandene Tage werden übersprungen
+                                            val ids = timeEntryDao.insertAllIfAbsent(batch)
+                                            val inserted = batch.filterIndexed { index, _ -> ids[index] != -1L }
+                                            // Neu angelegte Tage mit (verwaistem) Protokoll neu aufsetzen
+                                            TimeStamper.rebaseAll(database, StampEvent.SOURCE_ENTRY, inserted)
+                                            inserted.size
+                                        }
+                                        batch.clear()
+                                    }
+
+                                    reader.beginArray()
+                                    while (reader.hasNext()) {
+                                        batch.add(readEntry(reader))
+                                        if (batch.size == PAGE_SIZE) flush()
+                                    }
+                                    reader.endArray()
+                                    flush()
+                                }
+                                else -> reader.skipValue()
+                            }
+                        }
+                        reader.endObject()
+                    }
 
-            // UserSettings wiederherstellen
-            if (backupJson.has("settings")) {
-                val settingsJson = backupJson.getJSONObject("settings")
-                val settings = UserSettings(
-                    name = settingsJson.getString("name"),
-                    einrichtung = settingsJson.getString("einrichtung"),
-                    arbeitsumfangProzent = settingsJson.getInt("arbeitsumfangProzent"),
-                    wochenStundenMinuten = settingsJson.getInt("wochenStundenMinuten"),
-                    arbeitsTageProWoche = settingsJson.optInt("arbeitsTageProWoche", 5),
-                    ferienbetreuung = settingsJson.optBoolean("ferienbetreuung", true),
-                    ueberstundenVorjahrMinuten = settingsJson.getInt("ueberstundenVorjahrMinuten"),
-                    letzterUebertragMinuten = settingsJson.optInt("letzterUebertragMinuten", 0),
-                    ersterMontagImJahr = if (settingsJson.isNull("ersterMontagImJahr")) null else settingsJson.getString("ersterMontagImJahr"),
-                    workingDays = settingsJson.optString("workingDays", "12345"),
-                    geofencingEnabled = settingsJson.optBoolean("geofencingEnabled", false),
-                    geofencingStartHour = settingsJson.optInt("geofencingStartHour", 6),
-                    geofencingEndHour = settingsJson.optInt("geofencingEndHour", 20),
-                    geofencingActiveDays = settingsJson.optString("geofencingActiveDays", "12345"),
-                    darkMode = settingsJson.optString("darkMode", "system"),
-                    selectedTemplateYear = if (settingsJson.isNull("selectedTemplateYear")) null else settingsJson.getInt("selectedTemplateYear"),
-                    bundesland = if (settingsJson.isNull("bundesland")) null else settingsJson.getString("bundesland"),
-                    urlaubsanspruchTage = settingsJson.optInt("urlaubsanspruchTage", 30)
-                )
-                settingsDao.insertOrUpdate(settings)
+                    // UserSettings wiederherstellen
+                    settings?.let { settingsDao.insertOrUpdate(it) }
+                    restored
+                }
             }
 
             RestoreResult.Success(entriesRestored)
+        } catch (e: BackupTooNewException) {
+            RestoreResult.Error("Backup-Version zu neu. Bitte App aktualisieren.")
         } catch (e: Exception) {
             RestoreResult.Error("Fehler beim Wiederherstellen: ${e.message}")
         }
     }
 
+    private fun writeEntry(writer: JsonWriter, entry: TimeEntry) {
+        writer.beginObject()
+        writer.name("id").value(entry.id)
+        writer.name("datum").value(entry.datum)
+        writer.name("wochentag").value(entry.getWochentagKurz()) // Kompatibilität mit älteren App-Versionen
+        writer.name("kalenderwoche").value(entry.kalenderwoche)
+        writer.name("jahr").value(entry.jahr)
+        writer.name("startZeit").value(entry.startZeit)
+        writer.name("endZeit").value(entry.endZeit)
+        writer.name("pauseMinuten").value(entry.pauseMinuten)
+        writer.name("sollMinuten").value(entry.sollMinuten)
+        writer.name("typ").value(entry.typ)
+        writer.name("notiz").value(entry.notiz)
+        writer.name("arbeitszeitBereitschaft").value(entry.arbeitszeitBereitschaft)
+        writer.name("isManualEntry").value(entry.isManualEntry)
+        writer.endObject()
+    }
+
+    private fun writeSettings(writer: JsonWriter, s: UserSettings) {
+        writer.beginObject()
+        writer.name("name").value(s.name)
+        writer.name("einrichtung").value(s.einrichtung)
+        writer.name("arbeitsumfangProzent").value(s.arbeitsumfangProzent)
+        writer.name("wochenStundenMinuten").value(s.wochenStundenMinuten)
+        writer.name("arbeitsTageProWoche").value(s.arbeitsTageProWoche)
+        writer.name("ferienbetreuung").value(s.ferienbetreuung)
+        writer.name("ueberstundenVorjahrMinuten").value(s.ueberstundenVorjahrMinuten)
+        writer.name("letzterUebertragMinuten").value(s.letzterUebertragMinuten)
+        writer.name("ersterMontagImJahr").value(s.ersterMontagImJahr)
+        writer.name("workingDays").value(s.workingDays)
+        writer.name("geofencingEnabled").value(s.geofencingEnabled)
+        writer.name("geofencingStartHour").value(s.geofencingStartHour)
+        writer.name("geofencingEndHour").value(s.geofencingEndHour)
+        writer.name("geofencingActiveDays").value(s.geofencingActiveDays)
+        writer.name("darkMode").value(s.darkMode)
+        writer.name("selectedTemplateYear").value(s.selectedTemplateYear)
+        writer.name("bundesland").value(s.bundesland)
+        writer.name("urlaubsanspruchTage").value(s.urlaubsanspruchTage)
+        writer.endObject()
+    }
+
+    private fun readEntry(reader: JsonReader): TimeEntry {
+        var datum: String? = null
+        var kalenderwoche: Int? = null
+        var jahr: Int? = null
+        var startZeit: Int? = null
+        var endZeit: Int? = null
+        var pauseMinuten: Int? = null
+        var sollMinuten: Int? = null
+        var typ: String? = null
+        var notiz = ""
+        var arbeitszeitBereitschaft = 0
+        var isManualEntry = false
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "datum" -> datum = reader.nextStringOrNull()
+                "kalenderwoche" -> kalenderwoche = reader.nextIntOrNull()
+                "jahr" -> jahr = reader.nextIntOrNull()
+                "startZeit" -> startZeit = reader.nextIntOrNull()
+                "endZeit" -> endZeit = reader.nextIntOrNull()
+                "pauseMinuten" -> pauseMinuten = reader.nextIntOrNull()
+                "sollMinuten" -> sollMinuten = reader.nextIntOrNull()
+                "typ" -> typ = reader.nextStringOrNull()
+                "notiz" -> notiz = reader.nextStringOrNull() ?: ""
+                "arbeitszeitBereitschaft" -> arbeitszeitBereitschaft = reader.nextIntOrNull() ?: 0
+                "isManualEntry" -> isManualEntry = reader.nextBooleanOrNull() ?: false
+                else -> reader.skipValue() // id, wochentag
+            }
+        }
+        reader.endObject()
+
+        val date = DateUtils.stringToDate(required(datum, "datum"))
+        return TimeEntry(
+            datum = DateUtils.dateToString(date),
+            epochDay = DateUtils.toEpochDay(date),
+            kalenderwoche = required(kalenderwoche, "kalenderwoche"),
+            jahr = required(jahr, "jahr"),
+            startZeit = startZeit,
+            endZeit = endZeit,
+            pauseMinuten = required(pauseMinuten, "pauseMinuten"),
+            sollMinuten = required(sollMinuten, "sollMinuten"),
+            typ = required(typ, "typ"),
+            notiz = notiz,
+            arbeitszeitBereitschaft = arbeitszeitBereitschaft,
+            isManualEntry = isManualEntry
+        )
+    }
+
+    private fun readSettings(reader: JsonReader): UserSettings {
+        var name: String? = null
+        var einrichtung: String? = null
+        var arbeitsumfangProzent: Int? = null
+        var wochenStundenMinuten: Int? = null
+        var arbeitsTageProWoche = 5
+        var ferienbetreuung = true
+        var ueberstundenVorjahrMinuten: Int? = null
+        var letzterUebertragMinuten = 0
+        var ersterMontagImJahr: String? = null
+        var workingDays = "12345"
+        var geofencingEnabled = false
+        var geofencingStartHour = 6
+        var geofencingEndHour = 20
+        var geofencingActiveDays = "12345"
+        var darkMode = "system"
+        var selectedTemplateYear: Int? = null
+        var bundesland: String? = null
+        var urlaubsanspruchTage = 30
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "name" -> name = reader.nextStringOrNull()
+                "einrichtung" -> einrichtung = reader.nextStringOrNull()
+                "arbeitsumfangProzent" -> arbeitsumfangProzent = reader.nextIntOrNull()
+                "wochenStundenMinuten" -> wochenStundenMinuten = reader.nextIntOrNull()
+                "arbeitsTageProWoche" -> arbeitsTageProWoche = reader.nextIntOrNull() ?: 5
+                "ferienbetreuung" -> ferienbetreuung = reader.nextBooleanOrNull() ?: true
+                "ueberstundenVorjahrMinuten" -> ueberstundenVorjahrMinuten = reader.nextIntOrNull()
+                "letzterUebertragMinuten" -> letzterUebertragMinuten = reader.nextIntOrNull() ?: 0
+                "ersterMontagImJahr" -> ersterMontagImJahr = reader.nextStringOrNull()
+                "workingDays" -> workingDays = reader.nextStringOrNull() ?: "12345"
+                "geofencingEnabled" -> geofencingEnabled = reader.nextBooleanOrNull() ?: false
+                "geofencingStartHour" -> geofencingStartHour = reader.nextIntOrNull() ?: 6
+                "geofencingEndHour" -> geofencingEndHour = reader.nextIntOrNull() ?: 20
+                "geofencingActiveDays" -> geofencingActiveDays = reader.nextStringOrNull() ?: "12345"
+                "darkMode" -> darkMode = reader.nextStringOrNull() ?: "system"
+                "selectedTemplateYear" -> selectedTemplateYear = reader.nextIntOrNull()
+                "bundesland" -> bundesland = reader.nextStringOrNull()
+                "urlaubsanspruchTage" -> urlaubsanspruchTage = reader.nextIntOrNull() ?: 30
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+
+        return UserSettings(
+            name = required(name, "name"),
+            einrichtung = required(einrichtung, "einrichtung"),
+            arbeitsumfangProzent = required(arbeitsumfangProzent, "arbeitsumfangProzent"),
+            wochenStundenMinuten = required(wochenStundenMinuten, "wochenStundenMinuten"),
+            arbeitsTageProWoche = arbeitsTageProWoche,
+            ferienbetreuung = ferienbetreuung,
+            ueberstundenVorjahrMinuten = required(ueberstundenVorjahrMinuten, "ueberstundenVorjahrMinuten"),
+            letzterUebertragMinuten = letzterUebertragMinuten,
+            ersterMontagImJahr = ersterMontagImJahr,
+            workingDays = workingDays,
+            geofencingEnabled = geofencingEnabled,
+            geofencingStartHour = geofencingStartHour,
+            geofencingEndHour = geofencingEndHour,
+            geofencingActiveDays = geofencingActiveDays,
+            darkMode = darkMode,
+            selectedTemplateYear = selectedTemplateYear,
+            bundesland = bundesland,
+            urlaubsanspruchTage = urlaubsanspruchTage
+        )
+    }
+
+    private fun <T> required(value: T?, field: String): T {
+        return value ?: throw IOException("Feld \"$field\" fehlt im Backup")
+    }
+
+    private fun JsonReader.nextStringOrNull(): String? {
+        if (peek() == JsonToken.NULL) {
+            nextNull()
+            return null
+        }
+        return nextString()
+    }
+
+    private fun JsonReader.nextIntOrNull(): Int? {
+        if (peek() == JsonToken.NULL) {
+            nextNull()
+            return null
+        }
+        return nextInt()
+    }
+
+    private fun JsonReader.nextBooleanOrNull(): Boolean? {
+        if (peek() == JsonToken.NULL) {
+            nextNull()
+            return null
+        }
+        return nextBoolean()
+    }
+
+    // Backup aus neuerer App-Version - bricht die Transaktion vor dem Schreiben ab
+    private class BackupTooNewException : Exception()
+
     /**
      * Gibt eine Liste aller verfügbaren Backups zurück
      */
@@ -0,0 +1,226 @@
+package com.arbeitszeit.tracker.data.calendar
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.room.InvalidationTracker
+import androidx.room.withTransaction
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.entity.CalendarDay
+import com.arbeitszeit.tracker.data.entity.SollZeitVorlage
+import com.arbeitszeit.tracker.data.entity.UserSettings
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
+import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.utils.HolidayUtils
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.time.DayOfWeek
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneId
+import java.time.temporal.TemporalAdjusters
+
+/**
+ * Pflegt die Kalender-Dimension calendar_days
+ *
+ * Zeitraum: 1. Januar des ältesten Eintrags (bzw. des Einrichtungsjahres, mindestens Vorjahr)
+ * bis Ende des Jahres in HORIZON_YEARS Jahren. KW, Wochenjahr, Feiertag und Soll werden
+ * einmal pro Tag berechnet; bei jedem Abgleich werden nur abweichende Tage geschrieben.
+ *
+ * Ändern sich Einstellungen oder Standard-Vorlage, meldet der InvalidationTracker das
+ * und der Kalender wird im Hintergrund abgeglichen. Beim App-Start (neues Jahr,
+ * importierte ältere Einträge) gleicht MainActivity einmal ab.
+ */
+class CalendarDays private constructor(
+    private val database: AppDatabase,
+    private val prefs: SharedPreferences
+) {
+
+    private val calendarDayDao = database.calendarDayDao()
+    private val timeEntryDao = database.timeEntryDao()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val mutex = Mutex()
+
+    private val observer = object : InvalidationTracker.Observer(
+        arrayOf("user_settings", "soll_zeit_vorlagen")
+    ) {
+        override fun onInvalidated(tables: Set<String>) {
+            scope.launch { sync() }
+        }
+    }
+
+    init {
+        database.invalidationTracker.addObserver(observer)
+    }
+
+    /**
+     * Gleicht calendar_days mit den aktuellen Einstellungen ab
+     * @return Anzahl neu geschriebener bzw. geänderter Tage
+     */
+    suspend fun sync(): Int = mutex.withLock {
+        val settings = database.userSettingsDao().getSettings()
+        val defaultVorlage = database.sollZeitVorlageDao().getDefaultVorlage()
+        val virtual = VirtualDays(settings, defaultVorlage)
+        val bundesland = HolidayUtils.Bundesland.fromShortCode(settings?.bundesland)
+
+        val today = LocalDate.now()
+        val setupYear = Instant.ofEpochMilli(settings?.createdAt ?: System.currentTimeMillis())
+            .atZone(ZoneId.systemDefault())
+            .year
+        val firstEntryYear = timeEntryDao.getFirstEpochDay()?.let { DateUtils.fromEpochDay(it).year }
+        val fromYear = minOf(setupYear, firstEntryYear ?: setupYear, today.year - 1)
+        val startDay = DateUtils.toEpochDay(LocalDate.of(fromYear, 1, 1))
+        val endDay = DateUtils.toEpochDay(LocalDate.of(today.year + HORIZON_YEARS, 12, 31))
+
+        // Jeder Schreibzugriff auf user_settings meldet sich - neu berechnet wird nur,
+        // wenn sich Zeitraum oder eine der Eingaben des Kalenders geändert hat
+        val fingerprint = fingerprint(startDay, endDay, settings, defaultVorlage)
+        if (prefs.getString(KEY_FINGERPRINT, null) == fingerprint &&
+            calendarDayDao.getFirstEpochDay() == startDay &&
+            calendarDayDao.getLastEpochDay() == endDay
+        ) {
+            return@withLock 0
+        }
+
+        val weeks = WeekNumbering(settings?.ersterMontagImJahr, startDay, endDay)
+        val existing = QueryLog.timed("CalendarDayDao.getDaysInRange") {
+            calendarDayDao.getDaysInRange(startDay, endDay)
+        }.associateBy { it.epochDay }
+        val changed = ArrayList<CalendarDay>()
+        val noLongerHolidays = ArrayList<Int>()
+        var holidaysChanged = false
+        for (epochDay in startDay..endDay) {
+            val date = DateUtils.fromEpochDay(epochDay)
+            val wochentag = DateUtils.dayOfWeekFromEpochDay(epochDay)
+            val isFeiertag = virtual.isHoliday(date)
+            val day = CalendarDay(
+                epochDay = epochDay,
+                datum = DateUtils.dateToString(date),
+                kalenderwoche = weeks.kalenderwoche(epochDay),
+                jahr = weeks.jahr(epochDay),
+                wochentag = wochentag,
+                isArbeitstag = settings?.isWorkingDay(wochentag) ?: (wochentag <= 5),
+                isFeiertag = isFeiertag,
+                feiertagName = if (isFeiertag) HolidayUtils.getHolidayName(date, bundesland) else null,
+                sollMinuten = virtual.getSollMinuten(date)
+            )
+            val previous = existing[epochDay]
+            if (previous != day) {
+                changed.add(day)
+                if ((previous?.isFeiertag ?: false) != isFeiertag) holidaysChanged = true
+                if (previous?.isFeiertag == true && !isFeiertag) noLongerHolidays.add(epochDay)
+            }
+        }
+
+        // Berechnet wird außerhalb, nur das Schreiben läuft über den gemeinsamen Schreibweg
+        DatabaseWriter.write {
+            database.withTransaction {
+                calendarDayDao.deleteOutside(startDay, endDay)
+                changed.chunked(BATCH_SIZE).forEach { calendarDayDao.upsertAll(it) }
+
+                // Gespeicherte leere Tage folgen den Feiertagen (z.B. nach Wechsel des Bundeslands)
+                if (holidaysChanged) {
+                    val now = System.currentTimeMillis()
+                    noLongerHolidays.chunked(BATCH_SIZE).forEach { timeEntryDao.unmarkHolidays(it, now) }
+                    QueryLog.timed("TimeEntryDao.markHolidaysInRange") {
+                        timeEntryDao.markHolidaysInRange(startDay, endDay, now)
+                    }
+                }
+            }
+        }
+        prefs.edit().putString(KEY_FINGERPRINT, fingerprint).apply()
+        changed.size
+    }
+
+    /**
+     * Alles, wovon KW, Feiertag und Soll eines Kalendertags abhängen
+     */
+    private fun fingerprint(startDay: Int, endDay: Int, settings: UserSettings?, vorlage: SollZeitVorlage?): String {
+        return listOf(
+            startDay,
+            endDay,
+            settings?.ersterMontagImJahr,
+            settings?.bundesland,
+            settings?.workingDays,
+            settings?.wochenStundenMinuten,
+            settings?.arbeitsTageProWoche,
+            vorlage?.let { (1..7).map(it::getSollMinutenForDay) }
+        ).joinToString("|")
+    }
+
+    /**
+     * KW und Wochenjahr per Arithmetik ab dem Beginn der jeweiligen Woche 1
+     *
+     * Liefert dieselben Werte wie DateUtils.getCustomWeekOfYear / getCustomWeekBasedYear,
+     * ohne pro Tag zu parsen bzw. rekursiv in die Vorjahre zu gehen. Die Tage werden
+     * aufsteigend abgefragt, der Wochen-1-Anfang wird nur beim Jahreswechsel weitergeschaltet.
+     *
+     * - ohne ersterMontag (ISO 8601): Woche 1 beginnt am Montag der Woche mit dem 4. Januar
+     * - mit ersterMontag: Woche 1 beginnt an diesem Tag; davor liegende Tage zählen ab demselben
+     *   Datum in einem früheren Jahr (Wochenjahr dann ersterMontag.year - 1), spätere Tage zählen
+     *   ohne Jahreswechsel weiter
+     */
+    private class WeekNumbering(ersterMontag: String?, startDay: Int, endDay: Int) {
+        private val starts: IntArray       // Beginn von Woche 1, aufsteigend
+        private val years: IntArray        // Wochenjahr ab diesem Beginn
+        private var index = 0
+
+        init {
+            val startDates = ArrayList<Pair<Int, Int>>()
+            if (ersterMontag == null) {
+                val fromYear = DateUtils.fromEpochDay(startDay).year - 1
+                val toYear = DateUtils.fromEpochDay(endDay).year + 1
+                for (year in fromYear..toYear) {
+                    val weekOne = LocalDate.of(year, 1, 4).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    startDates.add(DateUtils.toEpochDay(weekOne) to year)
+                }
+            } else {
+                val firstMonday = DateUtils.stringToDate(ersterMontag)
+                startDates.add(DateUtils.toEpochDay(firstMonday) to firstMonday.year)
+                var earlier = firstMonday
+                while (DateUtils.toEpochDay(earlier) > startDay) {
+                    earlier = earlier.minusYears(1)
+                    startDates.add(0, DateUtils.toEpochDay(earlier) to firstMonday.year - 1)
+                }
+            }
+            starts = IntArray(startDates.size) { startDates[it].first }
+            years = IntArray(startDates.size) { startDates[it].second }
+        }
+
+        private fun seek(epochDay: Int): Int {
+            while (index + 1 < starts.size && starts[index + 1] <= epochDay) index++
+            return index
+        }
+
+        fun kalenderwoche(epochDay: Int): Int = (epochDay - starts[seek(epochDay)]) / 7 + 1
+
+        fun jahr(epochDay: Int): Int = years[seek(epochDay)]
+    }
+
+    companion object {
+        // Planungszeitraum über das laufende Jahr hinaus
+        private const val HORIZON_YEARS = 2
+
+        private const val BATCH_SIZE = 500
+
+        // Fingerabdruck der Eingaben beim letzten vollständigen Abgleich
+        private const val KEY_FINGERPRINT = "calendar_fingerprint"
+
+        @Volatile
+        private var INSTANCE: CalendarDays? = null
+
+        fun getInstance(context: Context): CalendarDays {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: CalendarDays(
+                    AppDatabase.getDatabase(context),
+                    context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE)
+                ).also { INSTANCE = it }
+            }
+        }
+    }
+}
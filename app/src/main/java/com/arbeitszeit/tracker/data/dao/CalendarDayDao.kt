@@ -0,0 +1,160 @@
+package com.arbeitszeit.tracker.data.dao
+
+import androidx.room.*
+import com.arbeitszeit.tracker.data.entity.CalendarDay
+import com.arbeitszeit.tracker.data.model.MonthSums
+import com.arbeitszeit.tracker.data.model.WeekDifferenz
+import com.arbeitszeit.tracker.data.model.WeekSums
+import com.arbeitszeit.tracker.data.model.WeekTrend
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Kalender-Dimension (calendar_days)
+ * Geschrieben wird nur von CalendarDays.sync, alle anderen lesen bzw. joinen.
+ */
+@Dao
+interface CalendarDayDao {
+
+    @Query("SELECT * FROM calendar_days WHERE epochDay = :epochDay")
+    suspend fun getDay(epochDay: Int): CalendarDay?
+
+    @Query("SELECT * FROM calendar_days WHERE epochDay BETWEEN :startDay AND :endDay ORDER BY epochDay ASC")
+    suspend fun getDaysInRange(startDay: Int, endDay: Int): List<CalendarDay>
+
+    @Query("SELECT MIN(epochDay) FROM calendar_days")
+    suspend fun getFirstEpochDay(): Int?
+
+    @Query("SELECT MAX(epochDay) FROM calendar_days")
+    suspend fun getLastEpochDay(): Int?
+
+    // Meldet jede Änderung an calendar_days (Auslöser für abhängige Auswertungen)
+    @Query("SELECT MAX(epochDay) FROM calendar_days")
+    fun getLastEpochDayFlow(): Flow<Int?>
+
+    @Upsert
+    suspend fun upsertAll(days: List<CalendarDay>)
+
+    @Query("DELETE FROM calendar_days WHERE epochDay < :startDay OR epochDay > :endDay")
+    suspend fun deleteOutside(startDay: Int, endDay: Int): Int
+
+    /**
+     * Erwartete Soll-Minuten im Bereich (beide Grenzen inklusive)
+     * Gespeicherte Tage zählen mit ihrem eigenen Soll, alle anderen mit dem des Kalenders.
+     */
+    @Query("""
+        SELECT COALESCE(SUM(COALESCE(t.sollMinuten, c.sollMinuten)), 0)
+        FROM calendar_days c
+        LEFT JOIN time_entries t ON t.epochDay = c.epochDay
+        WHERE c.epochDay BETWEEN :startDay AND :endDay
+    """)
+    suspend fun getExpectedSollSum(startDay: Int, endDay: Int): Int
+
+    /**
+     * Soll der leeren (nicht gespeicherten) Tage pro Monat im Zählbereich [countFrom, countTo]
+     * Ergänzt die Monats-Summen-Tabelle um virtuelle Tage, ohne Tage einzeln zu erzeugen.
+     */
+    @Query("""
+        SELECT substr(c.datum, 1, 7) AS monat,
+            SUM(c.sollMinuten) AS sollMinuten,
+            0 AS istMinuten,
+            -SUM(c.sollMinuten) AS differenzMinuten,
+            COUNT(*) AS anzahlTage
+        FROM calendar_days c
+        LEFT JOIN time_entries t ON t.epochDay = c.epochDay
+        WHERE c.epochDay BETWEEN :countFrom AND :countTo AND t.id IS NULL
+        GROUP BY monat
+    """)
+    suspend fun getVirtualMonthSums(countFrom: Int, countTo: Int): List<MonthSums>
+
+    /**
+     * Arbeitstage ohne Feiertage im Bereich
+     */
+    @Query("""
+        SELECT COUNT(*) FROM calendar_days
+        WHERE epochDay BETWEEN :startDay AND :endDay AND isArbeitstag = 1 AND isFeiertag = 0
+    """)
+    suspend fun getWorkingDayCount(startDay: Int, endDay: Int): Int
+
+    /**
+     * Soll/Ist pro Kalenderwoche inkl. leerer Tage (Soll aus dem Kalender)
+     * KW und Wochenjahr kommen aus calendar_days, nicht aus den gespeicherten Zeilen.
+     */
+    @Query("""
+        SELECT
+            c.jahr AS jahr,
+            c.kalenderwoche AS kalenderwoche,
+            SUM(COALESCE(t.sollMinuten, c.sollMinuten)) AS sollMinuten,
+            COALESCE(SUM(${EntrySql.T_IST}), 0) AS istMinuten,
+            COALESCE(SUM(${EntrySql.T_IST}), 0)
+                + COALESCE(SUM(t.arbeitszeitBereitschaft), 0)
+                - SUM(COALESCE(t.sollMinuten, c.sollMinuten)) AS differenzMinuten,
+            COUNT(*) AS anzahlTage
+        FROM calendar_days c
+        LEFT JOIN time_entries t ON t.epochDay = c.epochDay
+        WHERE c.epochDay BETWEEN :startDay AND :endDay
+        GROUP BY c.jahr, c.kalenderwoche
+        ORDER BY c.jahr ASC, c.kalenderwoche ASC
+    """)
+    suspend fun getExpectedWeeklySums(startDay: Int, endDay: Int): List<WeekSums>
+
+    /**
+     * Die letzten [limit] Wochen bis [endDay] mit laufendem Saldo und gleitendem Durchschnitt, neueste zuerst
+     *
+     * Gespeicherte Tage zählen mit ihrer Differenz, leere Tage im Zählbereich [countFrom, countTo]
+     * mit -Soll aus dem Kalender (wie VirtualDays). Saldo und Durchschnitt rechnet SQLite per
+     * Window-Funktion in einem Durchlauf - erst ab SQLite 3.25, sonst getWeekDifferenzen verwenden.
+     */
+    @Query("""
+        WITH tage AS (
+            SELECT c.jahr AS jahr, c.kalenderwoche AS kalenderwoche, c.epochDay AS epochDay,
+                CASE WHEN t.id IS NULL THEN -c.sollMinuten
+                    ELSE ${EntrySql.T_DIFFERENZ}
+                END AS differenz
+            FROM calendar_days c
+            LEFT JOIN time_entries t ON t.epochDay = c.epochDay
+            WHERE c.epochDay <= :endDay
+                AND (t.id IS NOT NULL OR c.epochDay BETWEEN :countFrom AND :countTo)
+        ),
+        wochen AS (
+            SELECT jahr, kalenderwoche, MIN(epochDay) AS ersterTag, SUM(differenz) AS differenzMinuten
+            FROM tage
+            GROUP BY jahr, kalenderwoche
+        )
+        SELECT jahr, kalenderwoche, differenzMinuten, saldoMinuten, schnittMinuten FROM (
+            SELECT jahr, kalenderwoche, ersterTag, differenzMinuten,
+                SUM(differenzMinuten) OVER (ORDER BY ersterTag ROWS UNBOUNDED PRECEDING) AS saldoMinuten,
+                CAST(AVG(differenzMinuten) OVER (ORDER BY ersterTag ROWS BETWEEN 3 PRECEDING AND CURRENT ROW)
+                    AS INTEGER) AS schnittMinuten
+            FROM wochen
+        )
+        ORDER BY ersterTag DESC
+        LIMIT :limit
+    """)
+    suspend fun getWeekTrend(countFrom: Int, countTo: Int, endDay: Int, limit: Int): List<WeekTrend>
+
+    /**
+     * Wie getWeekTrend, aber ohne Window-Funktionen: alle Wochen bis [endDay], älteste zuerst
+     * Saldo und Durchschnitt werden dann in Kotlin berechnet (System-SQLite vor 3.25).
+     */
+    @Query("""
+        WITH tage AS (
+            SELECT c.jahr AS jahr, c.kalenderwoche AS kalenderwoche, c.epochDay AS epochDay,
+                CASE WHEN t.id IS NULL THEN -c.sollMinuten
+                    ELSE ${EntrySql.T_DIFFERENZ}
+                END AS differenz
+            FROM calendar_days c
+            LEFT JOIN time_entries t ON t.epochDay = c.epochDay
+            WHERE c.epochDay <= :endDay
+                AND (t.id IS NOT NULL OR c.epochDay BETWEEN :countFrom AND :countTo)
+        ),
+        wochen AS (
+            SELECT jahr, kalenderwoche, MIN(epochDay) AS ersterTag, SUM(differenz) AS differenzMinuten
+            FROM tage
+            GROUP BY jahr, kalenderwoche
+        )
+        SELECT jahr, kalenderwoche, differenzMinuten
+        FROM wochen
+        ORDER BY ersterTag ASC
+    """)
+    suspend fun getWeekDifferenzen(countFrom: Int, countTo: Int, endDay: Int): List<WeekDifferenz>
+}
@@ -0,0 +1,29 @@
+package com.arbeitszeit.tracker.data.dao
+
+/**
+ * Gemeinsame SQL-Ausdrücke der Aggregations-Abfragen auf time_entries
+ *
+ * Als const val, damit sie in @Query-Strings eingesetzt werden können. Die Summen-Tabellen
+ * (RollupSql) verwenden dieselbe Formel mit Zeilen-Präfix (NEW./OLD.).
+ */
+object EntrySql {
+
+    /** Ist = endZeit - startZeit - pauseMinuten (nur wenn Start und Ende gesetzt) */
+    const val IST = "(CASE WHEN startZeit IS NOT NULL AND endZeit IS NOT NULL " +
+        "THEN endZeit - startZeit - pauseMinuten ELSE 0 END)"
+
+    /** Differenz = Ist - Soll + Bereitschaft (wie TimeEntry.getDifferenzMinuten) */
+    const val DIFFERENZ = "($IST - sollMinuten + arbeitszeitBereitschaft)"
+
+    /** Wie IST/DIFFERENZ für Abfragen mit time_entries unter dem Alias t (Joins mit calendar_days) */
+    const val T_IST = "(CASE WHEN t.startZeit IS NOT NULL AND t.endZeit IS NOT NULL " +
+        "THEN t.endZeit - t.startZeit - t.pauseMinuten ELSE 0 END)"
+
+    const val T_DIFFERENZ = "($T_IST - t.sollMinuten + t.arbeitszeitBereitschaft)"
+
+    /** Spalten sollMinuten/istMinuten/differenzMinuten/anzahlTage für MonthSums, WeekSums und YearSums */
+    const val SUMS = "COALESCE(SUM(sollMinuten), 0) AS sollMinuten, " +
+        "COALESCE(SUM($IST), 0) AS istMinuten, " +
+        "COALESCE(SUM($DIFFERENZ), 0) AS differenzMinuten, " +
+        "COUNT(*) AS anzahlTage"
+}
@@ -0,0 +1,72 @@
+package com.arbeitszeit.tracker.data.dao
+
+import androidx.room.*
+import com.arbeitszeit.tracker.data.entity.MonthRollup
+import com.arbeitszeit.tracker.data.entity.WeekRollup
+import com.arbeitszeit.tracker.data.entity.YearRollup
+import kotlinx.coroutines.flow.Flow
+import java.time.LocalDate
+import java.time.YearMonth
+
+/**
+ * Lesezugriff auf die per Trigger gepflegten Summen-Tabellen
+ * Schreibzugriffe erfolgen ausschließlich über die Trigger bzw. AppDatabase.rebuildRollups()
+ */
+@Dao
+interface RollupDao {
+
+    @Query("SELECT * FROM rollup_weeks ORDER BY jahr DESC, kalenderwoche DESC LIMIT :limit")
+    fun getLastWeekRollupsFlow(limit: Int): Flow<List<WeekRollup>>
+
+    @Query("SELECT * FROM rollup_weeks ORDER BY jahr ASC, kalenderwoche ASC")
+    suspend fun getWeekRollups(): List<WeekRollup>
+
+    @Query("SELECT * FROM rollup_months ORDER BY monat DESC")
+    fun getMonthRollupsFlow(): Flow<List<MonthRollup>>
+
+    @Query("SELECT * FROM rollup_months ORDER BY monat DESC")
+    suspend fun getMonthRollups(): List<MonthRollup>
+
+    @Query("SELECT * FROM rollup_years ORDER BY kalenderjahr ASC")
+    suspend fun getYearRollups(): List<YearRollup>
+
+    @Query("SELECT * FROM rollup_years WHERE kalenderjahr = :year")
+    suspend fun getYearRollup(year: Int): YearRollup?
+
+    @Query("SELECT * FROM rollup_years WHERE kalenderjahr = :year")
+    fun getYearRollupFlow(year: Int): Flow<YearRollup?>
+
+    @Query("SELECT COALESCE(SUM(differenzMinuten), 0) FROM rollup_years WHERE kalenderjahr < :year")
+    suspend fun sumDifferenzYearsBefore(year: Int): Int
+
+    /**
+     * Summe der Monate im Bereich [fromMonat, beforeMonat) im Format "yyyy-MM"
+     */
+    @Query("SELECT COALESCE(SUM(differenzMinuten), 0) FROM rollup_months WHERE monat >= :fromMonat AND monat < :beforeMonat")
+    suspend fun sumDifferenzMonthsBetween(fromMonat: String, beforeMonat: String): Int
+
+    @Query("""
+        SELECT COALESCE(SUM(${EntrySql.DIFFERENZ}), 0)
+        FROM time_entries
+        WHERE epochDay BETWEEN :startDay AND :endDay
+    """)
+    suspend fun sumDifferenzDays(startDay: Int, endDay: Int): Int
+
+    /**
+     * Überstunden-Saldo aller Einträge bis einschließlich [date]
+     *
+     * Vorjahre und Vormonate kommen aus den Summen-Tabellen,
+     * nur der angebrochene Monat (max. 31 Zeilen) wird aus time_entries gelesen.
+     */
+    @Transaction
+    suspend fun getBalanceUpTo(date: LocalDate): Int {
+        val monthStart = date.withDayOfMonth(1)
+        val years = sumDifferenzYearsBefore(date.year)
+        val months = sumDifferenzMonthsBetween(
+            YearMonth.of(date.year, 1).toString(),
+            YearMonth.from(date).toString()
+        )
+        val days = sumDifferenzDays(monthStart.toEpochDay().toInt(), date.toEpochDay().toInt())
+        return years + months + days
+    }
+}
@@ -0,0 +1,31 @@
+package com.arbeitszeit.tracker.data.dao
+
+import androidx.room.*
+import com.arbeitszeit.tracker.data.entity.SlowQuery
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Diagnose: gespeicherte langsame Abfragen
+ */
+@Dao
+interface SlowQueryDao {
+
+    @Insert
+    suspend fun insert(query: SlowQuery): Long
+
+    @Query("SELECT * FROM slow_queries ORDER BY timestamp DESC LIMIT :limit")
+    fun getRecentFlow(limit: Int): Flow<List<SlowQuery>>
+
+    /**
+     * Behält nur die neuesten [keep] Einträge
+     */
+    @Query("""
+        DELETE FROM slow_queries WHERE id NOT IN (
+            SELECT id FROM slow_queries ORDER BY timestamp DESC LIMIT :keep
+        )
+    """)
+    suspend fun trim(keep: Int): Int
+
+    @Query("DELETE FROM slow_queries")
+    suspend fun deleteAll()
+}
@@ -0,0 +1,48 @@
+package com.arbeitszeit.tracker.data.dao
+
+import androidx.room.*
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Ereignis-Protokoll der Stempel - Einfügen und Lesen
+ * Reihenfolge ist die Einfüge-Reihenfolge (id, AUTOINCREMENT) - timestamp ist nur Protokoll-Angabe,
+ * da sich die Geräte-Uhr zwischen zwei Stempeln verstellen kann.
+ * Gelöscht wird nur zusammen mit den Tagen selbst (alle Einträge löschen, Backup ersetzen).
+ */
+@Dao
+interface StampEventDao {
+
+    @Insert
+    suspend fun insert(event: StampEvent): Long
+
+    @Insert
+    suspend fun insertAll(events: List<StampEvent>)
+
+    @Query("SELECT * FROM stamp_events WHERE epochDay = :epochDay ORDER BY id ASC")
+    suspend fun getEventsForDay(epochDay: Int): List<StampEvent>
+
+    @Query("SELECT * FROM stamp_events WHERE epochDay = :epochDay ORDER BY id ASC")
+    fun getEventsForDayFlow(epochDay: Int): Flow<List<StampEvent>>
+
+    /**
+     * Verlauf in einem Datumsbereich (epochDay, beide Grenzen inklusive)
+     */
+    @Query("SELECT * FROM stamp_events WHERE epochDay BETWEEN :startDay AND :endDay ORDER BY epochDay ASC, id ASC")
+    suspend fun getEventsInRange(startDay: Int, endDay: Int): List<StampEvent>
+
+    @Query("SELECT COUNT(*) FROM stamp_events WHERE epochDay = :epochDay")
+    suspend fun getEventCountForDay(epochDay: Int): Int
+
+    /**
+     * Tage mit Ereignissen in einem Datumsbereich (epochDay, beide Grenzen inklusive)
+     */
+    @Query("SELECT DISTINCT epochDay FROM stamp_events WHERE epochDay BETWEEN :startDay AND :endDay")
+    suspend fun getStampedDaysInRange(startDay: Int, endDay: Int): List<Int>
+
+    @Query("DELETE FROM stamp_events WHERE epochDay BETWEEN :startDay AND :endDay")
+    suspend fun deleteInRange(startDay: Int, endDay: Int)
+
+    @Query("DELETE FROM stamp_events")
+    suspend fun deleteAll()
+}
@@ -2,7 +2,14 @@ package com.arbeitszeit.tracker.data.dao
 
 import androidx.room.*
 import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.model.DayDifferenz
+import com.arbeitszeit.tracker.data.model.MonthSums
+import com.arbeitszeit.tracker.data.model.NoteSearchResult
+import com.arbeitszeit.tracker.data.model.TypCount
+import com.arbeitszeit.tracker.data.model.WeekSums
+import com.arbeitszeit.tracker.data.model.YearSums
 import kotlinx.coroutines.flow.Flow
+import java.time.LocalDate
 
 @Dao
 interface TimeEntryDao {
@@ -13,35 +20,269 @@ interface TimeEntryDao {
     @Query("SELECT * FROM time_entries WHERE datum = :date")
     fun getEntryByDateFlow(date: String): Flow<TimeEntry?>
     
-    @Query("SELECT * FROM time_entries WHERE jahr = :year ORDER BY datum ASC")
+    @Query("SELECT * FROM time_entries WHERE jahr = :year ORDER BY epochDay ASC")
     suspend fun getEntriesByYear(year: Int): List<TimeEntry>
     
-    @Query("SELECT * FROM time_entries WHERE jahr = :year AND kalenderwoche = :kw ORDER BY datum ASC")
+    @Query("SELECT * FROM time_entries WHERE jahr = :year AND kalenderwoche = :kw ORDER BY epochDay ASC")
     suspend fun getEntriesByWeek(year: Int, kw: Int): List<TimeEntry>
     
-    @Query("SELECT * FROM time_entries WHERE jahr = :year AND kalenderwoche BETWEEN :startKW AND :endKW ORDER BY datum ASC")
+    @Query("SELECT * FROM time_entries WHERE jahr = :year AND kalenderwoche BETWEEN :startKW AND :endKW ORDER BY epochDay ASC")
     suspend fun getEntriesByWeekRange(year: Int, startKW: Int, endKW: Int): List<TimeEntry>
     
-    @Query("SELECT * FROM time_entries WHERE datum BETWEEN :startDate AND :endDate ORDER BY datum ASC")
-    suspend fun getEntriesByDateRange(startDate: String, endDate: String): List<TimeEntry>
+    /**
+     * Einträge in einem Datumsbereich (epochDay, beide Grenzen inklusive)
+     */
+    @Query("SELECT * FROM time_entries WHERE epochDay BETWEEN :startDay AND :endDay ORDER BY epochDay ASC")
+    suspend fun getEntriesByDateRange(startDay: Int, endDay: Int): List<TimeEntry>
     
-    @Query("SELECT * FROM time_entries WHERE datum BETWEEN :startDate AND :endDate ORDER BY datum ASC")
-    fun getEntriesByDateRangeFlow(startDate: String, endDate: String): Flow<List<TimeEntry>>
+    @Query("SELECT * FROM time_entries WHERE epochDay BETWEEN :startDay AND :endDay ORDER BY epochDay ASC")
+    fun getEntriesByDateRangeFlow(startDay: Int, endDay: Int): Flow<List<TimeEntry>>
 
     @Query("SELECT * FROM time_entries WHERE jahr = :year AND kalenderwoche = :kw")
     fun getWeekEntriesFlow(year: Int, kw: Int): Flow<List<TimeEntry>>
 
-    @Query("SELECT * FROM time_entries ORDER BY datum DESC")
+    @Query("SELECT * FROM time_entries ORDER BY epochDay DESC")
     fun getAllEntriesFlow(): Flow<List<TimeEntry>>
     
-    @Query("SELECT * FROM time_entries WHERE startZeit IS NULL AND endZeit IS NULL AND typ = 'NORMAL' AND datum <= :date ORDER BY datum DESC")
+    /**
+     * Ältester gespeicherter Tag (Beginn des Zählbereichs für virtuelle Tage)
+     */
+    @Query("SELECT MIN(epochDay) FROM time_entries")
+    suspend fun getFirstEpochDay(): Int?
+
+    @Query("SELECT * FROM time_entries WHERE startZeit IS NULL AND endZeit IS NULL AND typ = 'NORMAL' AND datum <= :date ORDER BY epochDay DESC")
     suspend fun getIncompleteEntries(date: String): List<TimeEntry>
     
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insert(entry: TimeEntry): Long
+
+    /**
+     * Fügt einen Eintrag nur ein, wenn für das Datum noch keiner existiert
+     * (eindeutiger Index auf datum)
+     * @return Row-ID oder -1 wenn bereits vorhanden
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertIfAbsent(entry: TimeEntry): Long
     
     @Update
     suspend fun update(entry: TimeEntry)
+
+    // ===== Stempeln =====
+
+    /**
+     * Schreibt den aus stamp_events abgeleiteten Stand (siehe TimeStamper / StampIntervals)
+     * Ändert nur die Zeit-Spalten, Typ, Notiz und Soll bleiben unberührt.
+     * @return Anzahl geänderter Zeilen (0 = Tag nicht gespeichert)
+     */
+    @Query("""
+        UPDATE time_entries SET startZeit = :startZeit, endZeit = :endZeit, pauseMinuten = :pauseMinuten, updatedAt = :now
+        WHERE datum = :date
+    """)
+    suspend fun setStampTimes(date: String, startZeit: Int?, endZeit: Int?, pauseMinuten: Int, now: Long): Int
+
+    // ===== Sammel-Operationen (eine Transaktion statt einer pro Zeile) =====
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertAll(entries: List<TimeEntry>)
+
+    /**
+     * @return Row-IDs, -1 für bereits vorhandene Daten
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertAllIfAbsent(entries: List<TimeEntry>): List<Long>
+
+    @Update
+    suspend fun updateAll(entries: List<TimeEntry>): Int
+
+    /**
+     * Upsert über den Primärschlüssel - IDs müssen bereits aufgelöst sein (siehe upsertAll)
+     */
+    @Upsert
+    suspend fun upsertById(entries: List<TimeEntry>)
+
+    @Query("SELECT epochDay FROM time_entries WHERE epochDay BETWEEN :startDay AND :endDay")
+    suspend fun getEpochDaysInRange(startDay: Int, endDay: Int): List<Int>
+
+    @Query("SELECT MAX(epochDay) FROM time_entries")
+    suspend fun getLastEpochDay(): Int?
+
+    // ===== Notiz-Suche (FTS4, siehe NoteSearch) =====
+
+    /**
+     * Einträge, deren Notiz auf [matchQuery] passt (FTS4-MATCH-Syntax), neueste zuerst
+     * Der Ausschnitt enthält bis zu 12 Wörter, Treffer zwischen [markStart] und [markEnd].
+     */
+    @Query("""
+        SELECT t.*, snippet(time_entries_fts, :markStart, :markEnd, '…', -1, 12) AS snippet
+        FROM time_entries_fts
+        JOIN time_entries t ON t.id = time_entries_fts.rowid
+        WHERE time_entries_fts MATCH :matchQuery
+        ORDER BY t.epochDay DESC
+        LIMIT :limit
+    """)
+    suspend fun searchNotes(matchQuery: String, markStart: String, markEnd: String, limit: Int): List<NoteSearchResult>
+
+    // ===== Verlauf (Keyset-Paging nach epochDay, siehe TimeEntryPagingSource) =====
+
+    /**
+     * Bis zu [limit] Einträge am oder vor [day], neueste zuerst
+     */
+    @Query("SELECT * FROM time_entries WHERE epochDay <= :day ORDER BY epochDay DESC LIMIT :limit")
+    suspend fun getEntriesAtOrBefore(day: Int, limit: Int): List<TimeEntry>
+
+    /**
+     * Bis zu [limit] Einträge am oder nach [day], älteste zuerst
+     */
+    @Query("SELECT * FROM time_entries WHERE epochDay >= :day ORDER BY epochDay ASC LIMIT :limit")
+    suspend fun getEntriesAtOrAfter(day: Int, limit: Int): List<TimeEntry>
+
+    // ===== Neuberechnung nach Einstellungsänderung (RecalculationWorker) =====
+
+    /**
+     * Übernimmt KW und Wochenjahr aus calendar_days für alle Tage im Bereich
+     * Ein einziges UPDATE, geschrieben werden nur abweichende Zeilen.
+     * @return Anzahl geänderter Einträge
+     */
+    @Query("""
+        UPDATE time_entries SET
+            kalenderwoche = (SELECT c.kalenderwoche FROM calendar_days c WHERE c.epochDay = time_entries.epochDay),
+            jahr = (SELECT c.jahr FROM calendar_days c WHERE c.epochDay = time_entries.epochDay),
+            updatedAt = :now
+        WHERE epochDay BETWEEN :startDay AND :endDay
+        AND EXISTS (
+            SELECT 1 FROM calendar_days c WHERE c.epochDay = time_entries.epochDay
+            AND (c.kalenderwoche != time_entries.kalenderwoche OR c.jahr != time_entries.jahr)
+        )
+    """)
+    suspend fun updateKalenderwochenInRange(startDay: Int, endDay: Int, now: Long): Int
+
+    /**
+     * Setzt das Soll normaler Tage neu: Feiertag (laut calendar_days) = 0,
+     * Arbeitstag = [sollProTag], sonst 0. Urlaub, Krank usw. behalten ihr Soll.
+     * Wochentag wie DateUtils.dayOfWeekFromEpochDay (auch für negative epochDay).
+     * @param workingDays Arbeitstage als Ziffern, z.B. "12345"
+     * @return Anzahl geänderter Einträge
+     */
+    @Query("""
+        UPDATE time_entries SET
+            sollMinuten = CASE
+                WHEN EXISTS (SELECT 1 FROM calendar_days c WHERE c.epochDay = time_entries.epochDay AND c.isFeiertag = 1) THEN 0
+                WHEN instr(:workingDays, CAST(((epochDay % 7) + 10) % 7 + 1 AS TEXT)) > 0 THEN :sollProTag
+                ELSE 0
+            END,
+            updatedAt = :now
+        WHERE epochDay BETWEEN :startDay AND :endDay
+        AND typ = 'NORMAL'
+        AND sollMinuten != CASE
+                WHEN EXISTS (SELECT 1 FROM calendar_days c WHERE c.epochDay = time_entries.epochDay AND c.isFeiertag = 1) THEN 0
+                WHEN instr(:workingDays, CAST(((epochDay % 7) + 10) % 7 + 1 AS TEXT)) > 0 THEN :sollProTag
+                ELSE 0
+            END
+    """)
+    suspend fun updateSollMinutenInRange(startDay: Int, endDay: Int, workingDays: String, sollProTag: Int, now: Long): Int
+
+    /**
+     * Markiert leere normale Tage auf Feiertagen (laut calendar_days) als Feiertag mit Soll 0
+     * Gleiche Regel wie VirtualDays.create für nicht gespeicherte Tage.
+     * @return Anzahl geänderter Einträge
+     */
+    @Query("""
+        UPDATE time_entries SET typ = 'F', sollMinuten = 0, updatedAt = :now
+        WHERE epochDay BETWEEN :startDay AND :endDay
+        AND typ = 'NORMAL' AND startZeit IS NULL AND endZeit IS NULL
+        AND EXISTS (SELECT 1 FROM calendar_days c WHERE c.epochDay = time_entries.epochDay AND c.isFeiertag = 1)
+    """)
+    suspend fun markHolidaysInRange(startDay: Int, endDay: Int, now: Long): Int
+
+    /**
+     * Macht automatisch markierte Feiertage wieder zu normalen Tagen, wenn sie laut calendar_days
+     * keine Feiertage mehr sind (z.B. nach Wechsel des Bundeslands). Das Soll kommt aus dem Kalender.
+     * @param epochDays Tage, die bisher Feiertag waren
+     * @return Anzahl geänderter Einträge
+     */
+    @Query("""
+        UPDATE time_entries SET
+            typ = 'NORMAL',
+            sollMinuten = (SELECT c.sollMinuten FROM calendar_days c WHERE c.epochDay = time_entries.epochDay),
+            updatedAt = :now
+        WHERE epochDay IN (:epochDays)
+        AND typ = 'F' AND sollMinuten = 0 AND startZeit IS NULL AND endZeit IS NULL
+        AND EXISTS (SELECT 1 FROM calendar_days c WHERE c.epochDay = time_entries.epochDay AND c.isFeiertag = 0)
+    """)
+    suspend fun unmarkHolidays(epochDays: List<Int>, now: Long): Int
+
+    /**
+     * Tage, die seit [since] (Millis) geschrieben wurden (für TimeEntryRepository)
+     */
+    @Query("SELECT epochDay FROM time_entries WHERE updatedAt >= :since")
+    suspend fun getEpochDaysUpdatedSince(since: Long): List<Int>
+
+    /**
+     * Schreibt viele Einträge in einer Transaktion
+     * Alle Felder kommen aus dem neuen Eintrag, ID und createdAt bestehender Tage bleiben erhalten.
+     * @return Die geschriebenen Zeilen
+     */
+    suspend fun upsertAll(entries: List<TimeEntry>): List<TimeEntry> {
+        return upsertAll(entries) { existing, new ->
+            new.copy(id = existing.id, createdAt = existing.createdAt)
+        }
+    }
+
+    /**
+     * Schreibt viele Einträge in einer Transaktion
+     *
+     * Bestehende Einträge werden über das Datum gefunden (eine Bereichsabfrage) und
+     * mit [merge] zusammengeführt; neue Einträge werden eingefügt.
+     * @return Die geschriebenen Zeilen (neue Einträge mit id = 0)
+     */
+    @Transaction
+    suspend fun upsertAll(
+        entries: List<TimeEntry>,
+        merge: (existing: TimeEntry, new: TimeEntry) -> TimeEntry
+    ): List<TimeEntry> {
+        if (entries.isEmpty()) return emptyList()
+        val existing = getEntriesByDateRange(
+            entries.minOf { it.epochDay },
+            entries.maxOf { it.epochDay }
+        ).associateBy { it.epochDay }
+
+        val rows = entries.map { entry ->
+            existing[entry.epochDay]?.let { merge(it, entry) } ?: entry.copy(id = 0)
+        }
+        upsertById(rows)
+        return rows
+    }
+
+    /**
+     * Legt für alle Tage im Bereich, die noch keinen Eintrag haben, einen Eintrag an
+     * @return Anzahl neu angelegter Tage
+     */
+    @Transaction
+    suspend fun insertMissingDays(range: ClosedRange<LocalDate>, create: (LocalDate) -> TimeEntry): Int {
+        val startDay = range.start.toEpochDay().toInt()
+        val endDay = range.endInclusive.toEpochDay().toInt()
+        val existingDays = getEpochDaysInRange(startDay, endDay).toHashSet()
+
+        val missing = (startDay..endDay)
+            .filter { it !in existingDays }
+            .map { create(LocalDate.ofEpochDay(it.toLong())) }
+        if (missing.isEmpty()) return 0
+
+        return insertAllIfAbsent(missing).count { it != -1L }
+    }
+
+    /**
+     * Liest alle Einträge im Bereich, wendet [transform] an und schreibt nur geänderte Zeilen zurück
+     * [transform] gibt null zurück, wenn der Eintrag unverändert bleiben soll.
+     * @return Anzahl geänderter Einträge
+     */
+    @Transaction
+    suspend fun updateRange(startDay: Int, endDay: Int, transform: (TimeEntry) -> TimeEntry?): Int {
+        val changed = getEntriesByDateRange(startDay, endDay).mapNotNull { entry ->
+            transform(entry)?.takeIf { it != entry }
+        }
+        return if (changed.isEmpty()) 0 else updateAll(changed)
+    }
     
     @Delete
     suspend fun delete(entry: TimeEntry)
@@ -54,4 +295,145 @@ interface TimeEntryDao {
 
     @Query("SELECT COUNT(*) FROM time_entries WHERE jahr = :year")
     suspend fun getEntryCountByYear(year: Int): Int
+
+    // ===== Aggregationen (in SQLite berechnet, Formeln in EntrySql) =====
+
+    /**
+     * Soll/Ist/Differenz pro Kalendermonat, neuester Monat zuerst
+     */
+    @Query("""
+        SELECT substr(datum, 1, 7) AS monat,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        GROUP BY monat
+        ORDER BY monat DESC
+    """)
+    fun getMonthlySumsFlow(): Flow<List<MonthSums>>
+
+    /**
+     * Soll/Ist/Differenz pro Kalendermonat (einmalig, z.B. für den Abgleich mit den Summen-Tabellen)
+     */
+    @Query("""
+        SELECT substr(datum, 1, 7) AS monat,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        GROUP BY monat
+        ORDER BY monat DESC
+    """)
+    suspend fun getMonthlySums(): List<MonthSums>
+
+    /**
+     * Soll/Ist/Differenz pro Kalenderwoche (jahr/kalenderwoche wie gespeichert)
+     */
+    @Query("""
+        SELECT jahr, kalenderwoche,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        WHERE jahr = :year
+        GROUP BY jahr, kalenderwoche
+        ORDER BY kalenderwoche ASC
+    """)
+    suspend fun getWeeklySumsByYear(year: Int): List<WeekSums>
+
+    @Query("""
+        SELECT jahr, kalenderwoche,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        GROUP BY jahr, kalenderwoche
+        ORDER BY jahr ASC, kalenderwoche ASC
+    """)
+    suspend fun getAllWeeklySums(): List<WeekSums>
+
+    /**
+     * Die letzten [limit] Kalenderwochen, neueste zuerst
+     */
+    @Query("""
+        SELECT jahr, kalenderwoche,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        GROUP BY jahr, kalenderwoche
+        ORDER BY jahr DESC, kalenderwoche DESC
+        LIMIT :limit
+    """)
+    fun getLastWeeksSumsFlow(limit: Int): Flow<List<WeekSums>>
+
+    /**
+     * Soll/Ist/Differenz pro Kalenderjahr
+     */
+    @Query("""
+        SELECT CAST(substr(datum, 1, 4) AS INTEGER) AS kalenderjahr,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        GROUP BY kalenderjahr
+        ORDER BY kalenderjahr ASC
+    """)
+    fun getYearlySumsFlow(): Flow<List<YearSums>>
+
+    /**
+     * Soll/Ist/Differenz pro Kalenderjahr (einmalig, z.B. für den Abgleich mit den Summen-Tabellen)
+     */
+    @Query("""
+        SELECT CAST(substr(datum, 1, 4) AS INTEGER) AS kalenderjahr,
+            ${EntrySql.SUMS}
+        FROM time_entries
+        GROUP BY kalenderjahr
+        ORDER BY kalenderjahr ASC
+    """)
+    suspend fun getYearlySums(): List<YearSums>
+
+    /**
+     * Summe der Differenz (Ist - Soll + Bereitschaft) in einem epochDay-Bereich
+     */
+    @Query("""
+        SELECT COALESCE(SUM(${EntrySql.DIFFERENZ}), 0)
+        FROM time_entries
+        WHERE epochDay BETWEEN :startDay AND :endDay
+    """)
+    suspend fun getDifferenzSum(startDay: Int, endDay: Int): Int
+
+    @Query("""
+        SELECT COALESCE(SUM(${EntrySql.DIFFERENZ}), 0)
+        FROM time_entries
+        WHERE epochDay BETWEEN :startDay AND :endDay
+    """)
+    fun getDifferenzSumFlow(startDay: Int, endDay: Int): Flow<Int>
+
+    /**
+     * Anzahl Tage pro Typ in einem epochDay-Bereich (z.B. Urlaub/Krank im Jahr)
+     */
+    @Query("""
+        SELECT typ, COUNT(*) AS anzahl
+        FROM time_entries
+        WHERE epochDay BETWEEN :startDay AND :endDay
+        GROUP BY typ
+    """)
+    fun getTypCountsFlow(startDay: Int, endDay: Int): Flow<List<TypCount>>
+
+    /**
+     * Differenz pro Tag, nur epochDay und berechneter Wert (für OvertimeLedger)
+     */
+    @Query("""
+        SELECT epochDay, ${EntrySql.DIFFERENZ} AS differenzMinuten
+        FROM time_entries
+        ORDER BY epochDay ASC
+    """)
+    suspend fun getDailyDifferenz(): List<DayDifferenz>
+
+    @Query("""
+        SELECT epochDay, ${EntrySql.DIFFERENZ} AS differenzMinuten
+        FROM time_entries
+        WHERE epochDay BETWEEN :startDay AND :endDay
+        ORDER BY epochDay ASC
+    """)
+    suspend fun getDailyDifferenzInRange(startDay: Int, endDay: Int): List<DayDifferenz>
+
+    /**
+     * Tage, die seit [since] (Millis) geändert wurden
+     */
+    @Query("""
+        SELECT epochDay, ${EntrySql.DIFFERENZ} AS differenzMinuten
+        FROM time_entries
+        WHERE updatedAt >= :since
+    """)
+    suspend fun getDailyDifferenzUpdatedSince(since: Long): List<DayDifferenz>
 }
@@ -4,25 +4,36 @@ import android.content.Context
 import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
+import androidx.room.withTransaction
+import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
+import com.arbeitszeit.tracker.BuildConfig
+import com.arbeitszeit.tracker.data.dao.CalendarDayDao
+import com.arbeitszeit.tracker.data.dao.RollupDao
+import com.arbeitszeit.tracker.data.dao.SlowQueryDao
 import com.arbeitszeit.tracker.data.dao.SollZeitVorlageDao
+import com.arbeitszeit.tracker.data.dao.StampEventDao
 import com.arbeitszeit.tracker.data.dao.TimeEntryDao
 import com.arbeitszeit.tracker.data.dao.UserSettingsDao
 import com.arbeitszeit.tracker.data.dao.WeekTemplateDao
 import com.arbeitszeit.tracker.data.dao.WorkLocationDao
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.entity.CalendarDay
+import com.arbeitszeit.tracker.data.entity.MonthRollup
+import com.arbeitszeit.tracker.data.entity.SlowQuery
 import com.arbeitszeit.tracker.data.entity.SollZeitVorlage
+import com.arbeitszeit.tracker.data.entity.StampEvent
 import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.entity.TimeEntryFts
 import com.arbeitszeit.tracker.data.entity.UserSettings
 import com.arbeitszeit.tracker.data.entity.WeekTemplate
+import com.arbeitszeit.tracker.data.entity.WeekRollup
 import com.arbeitszeit.tracker.data.entity.WeekTemplateEntry
 import com.arbeitszeit.tracker.data.entity.WorkLocation
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
-import java.time.LocalDate
-import java.time.format.DateTimeFormatter
-import java.time.temporal.WeekFields
-import java.util.Locale
+import com.arbeitszeit.tracker.data.entity.YearRollup
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
 
 @Database(
     entities = [
@@ -31,9 +42,16 @@ import java.util.Locale
         WorkLocation::class,
         WeekTemplate::class,
         WeekTemplateEntry::class,
-        SollZeitVorlage::class
+        SollZeitVorlage::class,
+        WeekRollup::class,
+        MonthRollup::class,
+        YearRollup::class,
+        StampEvent::class,
+        CalendarDay::class,
+        TimeEntryFts::class,
+        SlowQuery::class
     ],
-    version = 15,  // Entfernt: Individuelle Sollzeiten aus UserSettings (jetzt in SollZeitVorlage)
+    version = 23,  // stamp_events: Index (epochDay, id) statt (epochDay, timestamp)
     exportSchema = false
 )
 abstract class AppDatabase : RoomDatabase() {
@@ -43,46 +61,328 @@ abstract class AppDatabase : RoomDatabase() {
     abstract fun workLocationDao(): WorkLocationDao
     abstract fun weekTemplateDao(): WeekTemplateDao
     abstract fun sollZeitVorlageDao(): SollZeitVorlageDao
+    abstract fun rollupDao(): RollupDao
+    abstract fun stampEventDao(): StampEventDao
+    abstract fun calendarDayDao(): CalendarDayDao
+    abstract fun slowQueryDao(): SlowQueryDao
+
+    /**
+     * Baut die Summen-Tabellen vollständig aus time_entries neu auf
+     */
+    suspend fun rebuildRollups() {
+        DatabaseWriter.write {
+            withTransaction {
+                RollupSql.rebuild(openHelper.writableDatabase)
+            }
+        }
+    }
+
+    /**
+     * Vergleicht die Summen-Tabellen mit einer frischen Aggregation der Rohdaten
+     * Volle Aggregation über time_entries - nur nach Migration/Update oder aus der Diagnose aufrufen.
+     * Alle Abfragen laufen in einer Lese-Transaktion (ein Stand, kein Schreiber dazwischen).
+     * @return true wenn alle Wochen, Monate und Jahre übereinstimmen
+     */
+    suspend fun isRollupConsistent(): Boolean = withTransaction {
+        val entryDao = timeEntryDao()
+        val rollups = rollupDao()
+
+        val weeksRaw = entryDao.getAllWeeklySums()
+            .map { listOf(it.jahr, it.kalenderwoche, it.sollMinuten, it.istMinuten, it.differenzMinuten, it.anzahlTage) }
+        val weeksRollup = rollups.getWeekRollups()
+            .map { listOf(it.jahr, it.kalenderwoche, it.sollMinuten, it.istMinuten, it.differenzMinuten, it.anzahlTage) }
+        if (weeksRaw.toSet() != weeksRollup.toSet()) return@withTransaction false
+
+        val monthsRaw = entryDao.getMonthlySums()
+            .map { listOf(it.monat, it.sollMinuten, it.istMinuten, it.differenzMinuten, it.anzahlTage) }
+        val monthsRollup = rollups.getMonthRollups()
+            .map { listOf(it.monat, it.sollMinuten, it.istMinuten, it.differenzMinuten, it.anzahlTage) }
+        if (monthsRaw.toSet() != monthsRollup.toSet()) return@withTransaction false
+
+        val yearsRaw = entryDao.getYearlySums()
+            .map { listOf(it.kalenderjahr, it.sollMinuten, it.istMinuten, it.differenzMinuten, it.anzahlTage) }
+        val yearsRollup = rollups.getYearRollups()
+            .map { listOf(it.kalenderjahr, it.sollMinuten, it.istMinuten, it.differenzMinuten, it.anzahlTage) }
+        yearsRaw.toSet() == yearsRollup.toSet()
+    }
+
+    /**
+     * Prüft die Summen-Tabellen und baut sie bei Abweichungen neu auf
+     * @return true wenn ein Neuaufbau nötig war
+     */
+    suspend fun verifyRollups(): Boolean {
+        if (isRollupConsistent()) return false
+        android.util.Log.w("AppDatabase", "Summen-Tabellen inkonsistent - Neuaufbau")
+        rebuildRollups()
+        return true
+    }
 
     companion object {
         @Volatile
         private var INSTANCE: AppDatabase? = null
 
+        // Parallele Leser im WAL-Modus (Flows der Screens, Widgets, Worker)
+        private const val READER_THREADS = 4
+
+        private fun namedThreads(prefix: String): ThreadFactory {
+            val counter = AtomicInteger()
+            return ThreadFactory { runnable -> Thread(runnable, "$prefix-${counter.incrementAndGet()}") }
+        }
+
         fun getDatabase(context: Context): AppDatabase {
             return INSTANCE ?: synchronized(this) {
-                val instance = Room.databaseBuilder(
+                val builder = Room.databaseBuilder(
                     context.applicationContext,
                     AppDatabase::class.java,
                     "arbeitszeit_database"
                 )
+                // Mitgeliefertes SQLite, falls ladbar - sonst bleibt Room beim System-SQLite
+                SqliteSupport.openHelperFactory()?.let { builder.openHelperFactory(it) }
+                // SQL-Texte für die Abfrage-Diagnose - nur in Debug-Builds, direkt auf dem Datenbank-Thread (siehe QueryLog)
+                if (BuildConfig.DEBUG) builder.setQueryCallback(QueryLog.queryCallback) { it.run() }
+
+                val instance = builder
+                    // WAL: Leser blockieren nie auf Schreiber (geschrieben wird über DatabaseWriter)
+                    .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                    .setQueryExecutor(Executors.newFixedThreadPool(READER_THREADS, namedThreads("db-read")))
+                    .setTransactionExecutor(Executors.newSingleThreadExecutor(namedThreads("db-write")))
                     .addCallback(DatabaseCallback(context))
-                    .fallbackToDestructiveMigration() // Für Entwicklung: DB wird bei Schema-Änderung neu erstellt
+                    .addMigrations(*ALL_MIGRATIONS)
+                    // Nur für Entwicklungsstände vor Version 15 existieren keine Migrationen
+                    .fallbackToDestructiveMigrationFrom(*(1 until 15).toList().toIntArray())
                     .build()
+                QueryLog.attach(instance)
                 INSTANCE = instance
                 instance
             }
         }
         
+        /**
+         * Version 15 -> 16: Indizes für time_entries
+         *
+         * Doppelte Tage (aus früheren Check-then-Insert-Races) werden vorher bereinigt,
+         * damit der eindeutige Index auf datum angelegt werden kann.
+         * Behalten wird jeweils der zuletzt geänderte Eintrag.
+         */
+        val MIGRATION_15_16 = object : Migration(15, 16) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    """
+                    DELETE FROM time_entries WHERE EXISTS (
+                        SELECT 1 FROM time_entries AS newer
+                        WHERE newer.datum = time_entries.datum
+                        AND (newer.updatedAt > time_entries.updatedAt
+                            OR (newer.updatedAt = time_entries.updatedAt AND newer.id > time_entries.id))
+                    )
+                    """.trimIndent()
+                )
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_time_entries_datum` ON `time_entries` (`datum`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_time_entries_jahr_kalenderwoche` ON `time_entries` (`jahr`, `kalenderwoche`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_time_entries_typ` ON `time_entries` (`typ`)")
+            }
+        }
+
+        /**
+         * Version 16 -> 17: epochDay als Integer-Datumsschlüssel, wochentag entfällt
+         *
+         * SQLite < 3.35 kennt kein DROP COLUMN, daher wird die Tabelle neu aufgebaut.
+         * julianday('1970-01-01') = 2440587.5
+         */
+        val MIGRATION_16_17 = object : Migration(16, 17) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `time_entries_new` (
+                        `id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                        `datum` TEXT NOT NULL,
+                        `epochDay` INTEGER NOT NULL,
+                        `kalenderwoche` INTEGER NOT NULL,
+                        `jahr` INTEGER NOT NULL,
+                        `startZeit` INTEGER,
+                        `endZeit` INTEGER,
+                        `pauseMinuten` INTEGER NOT NULL,
+                        `sollMinuten` INTEGER NOT NULL,
+                        `sollZeitVorlageName` TEXT,
+                        `typ` TEXT NOT NULL,
+                        `notiz` TEXT NOT NULL,
+                        `arbeitszeitBereitschaft` INTEGER NOT NULL,
+                        `isManualEntry` INTEGER NOT NULL,
+                        `createdAt` INTEGER NOT NULL,
+                        `updatedAt` INTEGER NOT NULL
+                    )
+                    """.trimIndent()
+                )
+                db.execSQL(
+                    """
+                    INSERT INTO `time_entries_new` (
+                        id, datum, epochDay, kalenderwoche, jahr, startZeit, endZeit, pauseMinuten,
+                        sollMinuten, sollZeitVorlageName, typ, notiz, arbeitszeitBereitschaft,
+                        isManualEntry, createdAt, updatedAt
+                    )
+                    SELECT
+                        id, datum, CAST(julianday(datum) - 2440587.5 AS INTEGER), kalenderwoche, jahr,
+                        startZeit, endZeit, pauseMinuten, sollMinuten, sollZeitVorlageName, typ, notiz,
+                        arbeitszeitBereitschaft, isManualEntry, createdAt, updatedAt
+                    FROM `time_entries`
+                    """.trimIndent()
+                )
+                db.execSQL("DROP TABLE `time_entries`")
+                db.execSQL("ALTER TABLE `time_entries_new` RENAME TO `time_entries`")
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_time_entries_datum` ON `time_entries` (`datum`)")
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_time_entries_epochDay` ON `time_entries` (`epochDay`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_time_entries_jahr_kalenderwoche` ON `time_entries` (`jahr`, `kalenderwoche`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_time_entries_typ` ON `time_entries` (`typ`)")
+            }
+        }
+
+        /**
+         * Version 17 -> 18: Summen-Tabellen pro Woche/Monat/Jahr inkl. Trigger
+         */
+        val MIGRATION_17_18 = object : Migration(17, 18) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `rollup_weeks` (`jahr` INTEGER NOT NULL, " +
+                        "`kalenderwoche` INTEGER NOT NULL, `sollMinuten` INTEGER NOT NULL, " +
+                        "`istMinuten` INTEGER NOT NULL, `differenzMinuten` INTEGER NOT NULL, " +
+                        "`anzahlTage` INTEGER NOT NULL, PRIMARY KEY(`jahr`, `kalenderwoche`))"
+                )
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `rollup_months` (`monat` TEXT NOT NULL, " +
+                        "`sollMinuten` INTEGER NOT NULL, `istMinuten` INTEGER NOT NULL, " +
+                        "`differenzMinuten` INTEGER NOT NULL, `anzahlTage` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`monat`))"
+                )
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `rollup_years` (`kalenderjahr` INTEGER NOT NULL, " +
+                        "`sollMinuten` INTEGER NOT NULL, `istMinuten` INTEGER NOT NULL, " +
+                        "`differenzMinuten` INTEGER NOT NULL, `anzahlTage` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`kalenderjahr`))"
+                )
+                RollupSql.rebuild(db)
+                RollupSql.createTriggers(db)
+            }
+        }
+
+        val MIGRATION_18_19 = object : Migration(18, 19) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `stamp_events` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`epochDay` INTEGER NOT NULL, `typ` TEXT NOT NULL, `minuten` INTEGER, " +
+                        "`source` TEXT NOT NULL, `timestamp` INTEGER NOT NULL)"
+                )
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_stamp_events_epochDay_timestamp` " +
+                        "ON `stamp_events` (`epochDay`, `timestamp`)"
+                )
+            }
+        }
+
+        /**
+         * Version 19 -> 20: Kalender-Dimension
+         * Befüllt wird sie nach dem Öffnen von CalendarDays.sync.
+         */
+        val MIGRATION_19_20 = object : Migration(19, 20) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `calendar_days` (`epochDay` INTEGER NOT NULL, " +
+                        "`datum` TEXT NOT NULL, `kalenderwoche` INTEGER NOT NULL, `jahr` INTEGER NOT NULL, " +
+                        "`wochentag` INTEGER NOT NULL, `isArbeitstag` INTEGER NOT NULL, " +
+                        "`isFeiertag` INTEGER NOT NULL, `feiertagName` TEXT, `sollMinuten` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`epochDay`))"
+                )
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_calendar_days_jahr_kalenderwoche` " +
+                        "ON `calendar_days` (`jahr`, `kalenderwoche`)"
+                )
+            }
+        }
+
+        /**
+         * Version 20 -> 21: FTS4-Index über time_entries.notiz inkl. Trigger
+         */
+        val MIGRATION_20_21 = object : Migration(20, 21) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS `time_entries_fts` " +
+                        "USING FTS4(`notiz` TEXT NOT NULL, tokenize=unicode61)"
+                )
+                NoteSearchSql.rebuild(db)
+                NoteSearchSql.createTriggers(db)
+            }
+        }
+
+        /**
+         * Version 21 -> 22: slow_queries für die Abfrage-Diagnose
+         */
+        val MIGRATION_21_22 = object : Migration(21, 22) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `slow_queries` (" +
+                        "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`shape` TEXT NOT NULL, " +
+                        "`sql` TEXT NOT NULL, " +
+                        "`durationMs` INTEGER NOT NULL, " +
+                        "`rowCount` INTEGER NOT NULL, " +
+                        "`timestamp` INTEGER NOT NULL)"
+                )
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_slow_queries_timestamp` ON `slow_queries` (`timestamp`)")
+            }
+        }
+
+        /**
+         * Version 22 -> 23: Stempel werden nach id (Einfüge-Reihenfolge) gelesen, nicht nach timestamp
+         */
+        val MIGRATION_22_23 = object : Migration(22, 23) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("DROP INDEX IF EXISTS `index_stamp_events_epochDay_timestamp`")
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_stamp_events_epochDay_id` " +
+                        "ON `stamp_events` (`epochDay`, `id`)"
+                )
+            }
+        }
+
+        private val ALL_MIGRATIONS: Array<Migration> = arrayOf(
+            MIGRATION_15_16,
+            MIGRATION_16_17,
+            MIGRATION_17_18,
+            MIGRATION_18_19,
+            MIGRATION_19_20,
+            MIGRATION_20_21,
+            MIGRATION_21_22,
+            MIGRATION_22_23
+        )
+
         private class DatabaseCallback(
             private val context: Context
         ) : RoomDatabase.Callback() {
             
             override fun onCreate(db: SupportSQLiteDatabase) {
                 super.onCreate(db)
+                RollupSql.createTriggers(db)
+                NoteSearchSql.createTriggers(db)
                 INSTANCE?.let { database ->
-                    CoroutineScope(Dispatchers.IO).launch {
+                    DatabaseWriter.launch {
                         populateDatabase(
                             database.userSettingsDao(),
-                            database.timeEntryDao(),
                             database.sollZeitVorlageDao()
                         )
                     }
                 }
             }
             
+            override fun onOpen(db: SupportSQLiteDatabase) {
+                super.onOpen(db)
+                // REPLACE-Konflikte löschen Zeilen intern - ohne diese Option
+                // würden die DELETE-Trigger der Summen-Tabellen dabei nicht feuern
+                db.execSQL("PRAGMA recursive_triggers = ON")
+                // Mit WAL reicht NORMAL - nur die letzte Transaktion kann bei Stromausfall fehlen
+                db.execSQL("PRAGMA synchronous = NORMAL")
+                SqliteSupport.recordVersion(db)
+            }
+
             suspend fun populateDatabase(
                 settingsDao: UserSettingsDao,
-                entryDao: TimeEntryDao,
                 vorlageDao: SollZeitVorlageDao
             ) {
                 // Default Settings erstellen
@@ -112,53 +412,8 @@ abstract class AppDatabase : RoomDatabase() {
                     isDefault = true
                 )
                 vorlageDao.insert(defaultVorlage)
-                
-                // Aktuelle Woche mit leeren Einträgen vorausfüllen
-                val today = LocalDate.now()
-                val weekField = WeekFields.of(Locale.GERMANY)
-                val currentWeek = today.get(weekField.weekOfWeekBasedYear())
-                val currentYear = today.get(weekField.weekBasedYear())
-                
-                // Montag der aktuellen Woche finden
-                val monday = today.with(weekField.dayOfWeek(), 1)
-                
-                for (i in 0..6) {
-                    val date = monday.plusDays(i.toLong())
-                    val formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd")
-                    val wochentag = when (date.dayOfWeek.value) {
-                        1 -> "Mo"
-                        2 -> "Di"
-                        3 -> "Mi"
-                        4 -> "Do"
-                        5 -> "Fr"
-                        6 -> "Sa"
-                        7 -> "So"
-                        else -> ""
-                    }
-                    
-                    // Soll-Stunden: Werktage (Mo-Fr) bekommen Sollzeit
-                    val sollMinuten = if (date.dayOfWeek.value in 1..5) {
-                        // 40h / 5 Tage = 8h = 480 Minuten
-                        480
-                    } else {
-                        0
-                    }
-                    
-                    val entry = TimeEntry(
-                        datum = date.format(formatter),
-                        wochentag = wochentag,
-                        kalenderwoche = currentWeek,
-                        jahr = currentYear,
-                        startZeit = null,
-                        endZeit = null,
-                        pauseMinuten = 0,
-                        sollMinuten = sollMinuten,
-                        sollZeitVorlageName = "Normal", // Verwende Standard-Vorlage
-                        typ = TimeEntry.TYP_NORMAL
-                    )
-                    
-                    entryDao.insert(entry)
-                }
+
+                // Keine Platzhalter-Einträge mehr: leere Tage werden beim Lesen erzeugt (VirtualDays)
             }
         }
     }
@@ -0,0 +1,88 @@
+package com.arbeitszeit.tracker.data.database
+
+import android.util.Log
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Gemeinsamer Schreibweg für alle Schreibzugriffe auf AppDatabase
+ *
+ * Widgets, Receiver, Worker und ViewModels schreiben sonst unkoordiniert aus eigenen
+ * Coroutinen und konkurrieren um die Schreibsperre. Hier werden alle Schreibaufträge
+ * nacheinander in Eingangsreihenfolge abgearbeitet (z.B. Start- und End-Stempel zweier
+ * schneller Widget-Klicks); Leser laufen dank WAL unabhängig davon weiter.
+ *
+ * Ein Auftrag läuft vollständig durch, bevor der nächste beginnt - auch über
+ * Suspend-Punkte hinweg (anders als ein reines limitedParallelism(1)).
+ * Verschachtelte Aufrufe von write innerhalb eines Auftrags laufen direkt.
+ */
+object DatabaseWriter {
+
+    private const val TAG = "DatabaseWriter"
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val dispatcher: CoroutineDispatcher = Dispatchers.IO.limitedParallelism(1)
+
+    private val jobs = Channel<suspend () -> Unit>(Channel.UNLIMITED)
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher + WriterContext())
+
+    init {
+        scope.launch {
+            for (job in jobs) {
+                try {
+                    job()
+                } catch (e: Exception) {
+                    Log.e(TAG, "Schreibauftrag fehlgeschlagen", e)
+                }
+            }
+        }
+    }
+
+    /**
+     * Führt [block] als Schreibauftrag aus und wartet auf das Ergebnis
+     */
+    suspend fun <T> write(block: suspend () -> T): T {
+        if (coroutineContext[WriterContext] != null) return block()
+
+        val result = CompletableDeferred<T>()
+        jobs.send {
+            try {
+                result.complete(block())
+            } catch (e: Throwable) {
+                result.completeExceptionally(e)
+            }
+        }
+        return result.await()
+    }
+
+    /**
+     * Reiht [block] ein, ohne auf das Ergebnis zu warten (für Widgets und Receiver)
+     * Fehler werden protokolliert.
+     */
+    fun launch(block: suspend () -> Unit) {
+        jobs.trySend(block)
+    }
+
+    // Markiert Coroutinen, die bereits im Schreibweg laufen
+    private class WriterContext : AbstractCoroutineContextElement(Key) {
+        companion object Key : CoroutineContext.Key<WriterContext>
+    }
+}
+
+/**
+ * Startet einen Schreibauftrag aus einem Scope (z.B. viewModelScope)
+ * Lesen, Ändern und Schreiben im Block laufen ohne dazwischenkommende andere Schreiber.
+ */
+fun CoroutineScope.launchWrite(block: suspend () -> Unit): Job = launch {
+    DatabaseWriter.write(block)
+}
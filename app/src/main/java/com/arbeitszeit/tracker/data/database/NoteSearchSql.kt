@@ -0,0 +1,52 @@
+package com.arbeitszeit.tracker.data.database
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Trigger für den Volltext-Index time_entries_fts
+ *
+ * Wie bei den Summen-Tabellen (RollupSql) verwaltet Room keine Trigger, daher werden sie
+ * in onCreate und in der Migration angelegt. Neu geschrieben wird der Index nur, wenn sich
+ * die Notiz tatsächlich ändert - Stempel und Soll-Änderungen lassen ihn unberührt.
+ */
+object NoteSearchSql {
+
+    fun createTriggers(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            """
+            CREATE TRIGGER IF NOT EXISTS fts_time_entries_insert AFTER INSERT ON time_entries
+            WHEN NEW.notiz != ''
+            BEGIN
+                INSERT INTO time_entries_fts (rowid, notiz) VALUES (NEW.id, NEW.notiz);
+            END
+            """.trimIndent()
+        )
+        db.execSQL(
+            """
+            CREATE TRIGGER IF NOT EXISTS fts_time_entries_update AFTER UPDATE ON time_entries
+            WHEN OLD.notiz IS NOT NEW.notiz OR OLD.id != NEW.id
+            BEGIN
+                DELETE FROM time_entries_fts WHERE rowid = OLD.id;
+                INSERT INTO time_entries_fts (rowid, notiz) SELECT NEW.id, NEW.notiz WHERE NEW.notiz != '';
+            END
+            """.trimIndent()
+        )
+        db.execSQL(
+            """
+            CREATE TRIGGER IF NOT EXISTS fts_time_entries_delete AFTER DELETE ON time_entries
+            WHEN OLD.notiz != ''
+            BEGIN
+                DELETE FROM time_entries_fts WHERE rowid = OLD.id;
+            END
+            """.trimIndent()
+        )
+    }
+
+    /**
+     * Baut den Index vollständig aus time_entries neu auf
+     */
+    fun rebuild(db: SupportSQLiteDatabase) {
+        db.execSQL("DELETE FROM time_entries_fts")
+        db.execSQL("INSERT INTO time_entries_fts (rowid, notiz) SELECT id, notiz FROM time_entries WHERE notiz != ''")
+    }
+}
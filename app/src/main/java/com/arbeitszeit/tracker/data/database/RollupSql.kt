@@ -0,0 +1,116 @@
+package com.arbeitszeit.tracker.data.database
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * SQL für die Summen-Tabellen rollup_weeks, rollup_months und rollup_years
+ *
+ * Die Tabellen werden von SQLite-Triggern bei jedem INSERT/UPDATE/DELETE auf
+ * time_entries inkrementell fortgeschrieben. Room verwaltet keine Trigger,
+ * daher werden sie in onCreate und in der Migration angelegt.
+ *
+ * Damit REPLACE-Inserts (die intern löschen) die Summen nicht doppelt zählen,
+ * muss PRAGMA recursive_triggers aktiv sein (siehe AppDatabase.DatabaseCallback.onOpen).
+ */
+object RollupSql {
+
+    // Ist = endZeit - startZeit - pauseMinuten (nur wenn Start und Ende gesetzt)
+    private fun ist(row: String) =
+        "(CASE WHEN $row.startZeit IS NOT NULL AND $row.endZeit IS NOT NULL " +
+            "THEN $row.endZeit - $row.startZeit - $row.pauseMinuten ELSE 0 END)"
+
+    // Differenz = Ist - Soll + Bereitschaft (wie TimeEntry.getDifferenzMinuten)
+    private fun differenz(row: String) =
+        "(${ist(row)} - $row.sollMinuten + $row.arbeitszeitBereitschaft)"
+
+    private fun monat(row: String) = "substr($row.datum, 1, 7)"
+
+    private fun kalenderjahr(row: String) = "CAST(substr($row.datum, 1, 4) AS INTEGER)"
+
+    /**
+     * Addiert (sign = "+") oder subtrahiert (sign = "-") eine Zeile in allen drei Tabellen
+     */
+    private fun apply(row: String, sign: String): String {
+        val set = "sollMinuten = sollMinuten $sign $row.sollMinuten, " +
+            "istMinuten = istMinuten $sign ${ist(row)}, " +
+            "differenzMinuten = differenzMinuten $sign ${differenz(row)}, " +
+            "anzahlTage = anzahlTage $sign 1"
+
+        val ensureRows = if (sign == "+") {
+            """
+            INSERT OR IGNORE INTO rollup_weeks (jahr, kalenderwoche, sollMinuten, istMinuten, differenzMinuten, anzahlTage)
+                VALUES ($row.jahr, $row.kalenderwoche, 0, 0, 0, 0);
+            INSERT OR IGNORE INTO rollup_months (monat, sollMinuten, istMinuten, differenzMinuten, anzahlTage)
+                VALUES (${monat(row)}, 0, 0, 0, 0);
+            INSERT OR IGNORE INTO rollup_years (kalenderjahr, sollMinuten, istMinuten, differenzMinuten, anzahlTage)
+                VALUES (${kalenderjahr(row)}, 0, 0, 0, 0);
+            """
+        } else {
+            ""
+        }
+
+        return ensureRows + """
+            UPDATE rollup_weeks SET $set WHERE jahr = $row.jahr AND kalenderwoche = $row.kalenderwoche;
+            UPDATE rollup_months SET $set WHERE monat = ${monat(row)};
+            UPDATE rollup_years SET $set WHERE kalenderjahr = ${kalenderjahr(row)};
+            """
+    }
+
+    private const val DELETE_EMPTY = """
+            DELETE FROM rollup_weeks WHERE anzahlTage <= 0;
+            DELETE FROM rollup_months WHERE anzahlTage <= 0;
+            DELETE FROM rollup_years WHERE anzahlTage <= 0;
+            """
+
+    private val TRIGGERS = listOf(
+        "CREATE TRIGGER IF NOT EXISTS trg_time_entries_rollup_insert AFTER INSERT ON time_entries BEGIN " +
+            apply("NEW", "+") + " END",
+        "CREATE TRIGGER IF NOT EXISTS trg_time_entries_rollup_delete AFTER DELETE ON time_entries BEGIN " +
+            apply("OLD", "-") + DELETE_EMPTY + " END",
+        "CREATE TRIGGER IF NOT EXISTS trg_time_entries_rollup_update AFTER UPDATE ON time_entries BEGIN " +
+            apply("OLD", "-") + apply("NEW", "+") + DELETE_EMPTY + " END"
+    )
+
+    /**
+     * Legt die Trigger an (idempotent)
+     */
+    fun createTriggers(db: SupportSQLiteDatabase) {
+        TRIGGERS.forEach { db.execSQL(it) }
+    }
+
+    // ===== Neuaufbau aus Rohdaten =====
+
+    private val SUMS = """
+            COALESCE(SUM(sollMinuten), 0),
+            COALESCE(SUM(${ist("time_entries")}), 0),
+            COALESCE(SUM(${differenz("time_entries")}), 0),
+            COUNT(*)
+        """
+
+    val REBUILD_WEEKS = """
+        INSERT INTO rollup_weeks (jahr, kalenderwoche, sollMinuten, istMinuten, differenzMinuten, anzahlTage)
+        SELECT jahr, kalenderwoche, $SUMS FROM time_entries GROUP BY jahr, kalenderwoche
+    """.trimIndent()
+
+    val REBUILD_MONTHS = """
+        INSERT INTO rollup_months (monat, sollMinuten, istMinuten, differenzMinuten, anzahlTage)
+        SELECT ${monat("time_entries")}, $SUMS FROM time_entries GROUP BY ${monat("time_entries")}
+    """.trimIndent()
+
+    val REBUILD_YEARS = """
+        INSERT INTO rollup_years (kalenderjahr, sollMinuten, istMinuten, differenzMinuten, anzahlTage)
+        SELECT ${kalenderjahr("time_entries")}, $SUMS FROM time_entries GROUP BY ${kalenderjahr("time_entries")}
+    """.trimIndent()
+
+    /**
+     * Baut alle Summen-Tabellen aus time_entries neu auf (ohne Room, z.B. in Migrationen)
+     */
+    fun rebuild(db: SupportSQLiteDatabase) {
+        db.execSQL("DELETE FROM rollup_weeks")
+        db.execSQL("DELETE FROM rollup_months")
+        db.execSQL("DELETE FROM rollup_years")
+        db.execSQL(REBUILD_WEEKS)
+        db.execSQL(REBUILD_MONTHS)
+        db.execSQL(REBUILD_YEARS)
+    }
+}
@@ -0,0 +1,71 @@
+package com.arbeitszeit.tracker.data.database
+
+import android.util.Log
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import io.requery.android.database.sqlite.RequerySQLiteOpenHelperFactory
+
+/**
+ * Auswahl der SQLite-Version für AppDatabase
+ *
+ * Bevorzugt wird die mitgelieferte SQLite-Bibliothek (requery sqlite-android): sie ist
+ * auf allen Geräten gleich aktuell und kann Window-Funktionen, JSON1 und FTS5.
+ * Lässt sich die native Bibliothek nicht laden (z.B. fehlende ABI), bleibt es beim
+ * SQLite des Systems - die Abfragen mit Window-Funktionen haben dann einen Fallback
+ * (siehe supportsWindowFunctions).
+ */
+object SqliteSupport {
+
+    private const val TAG = "SqliteSupport"
+
+    // Name der nativen Bibliothek aus sqlite-android
+    private const val BUNDLED_LIBRARY = "sqlite3x"
+
+    // Version der geöffneten Datenbank, null solange sie noch nicht geöffnet wurde
+    @Volatile
+    var version: String? = null
+        private set
+
+    /**
+     * Factory für die mitgelieferte SQLite-Version oder null für das System-SQLite
+     */
+    fun openHelperFactory(): SupportSQLiteOpenHelper.Factory? {
+        return try {
+            System.loadLibrary(BUNDLED_LIBRARY)
+            RequerySQLiteOpenHelperFactory()
+        } catch (e: UnsatisfiedLinkError) {
+            Log.w(TAG, "Mitgeliefertes SQLite nicht verfügbar, verwende System-SQLite", e)
+            null
+        } catch (e: SecurityException) {
+            Log.w(TAG, "Mitgeliefertes SQLite nicht verfügbar, verwende System-SQLite", e)
+            null
+        }
+    }
+
+    /**
+     * Merkt sich die SQLite-Version der geöffneten Datenbank (aus DatabaseCallback.onOpen)
+     */
+    fun recordVersion(db: SupportSQLiteDatabase) {
+        db.query("SELECT sqlite_version()").use { cursor ->
+            if (cursor.moveToFirst()) {
+                version = cursor.getString(0)
+                Log.i(TAG, "SQLite-Version: $version")
+            }
+        }
+    }
+
+    /**
+     * Window-Funktionen gibt es ab SQLite 3.25 (System-SQLite erst ab Android 11)
+     * Solange die Datenbank noch nicht geöffnet wurde, wird false geliefert.
+     */
+    fun supportsWindowFunctions(): Boolean {
+        return isAtLeast(version ?: return false, 3, 25)
+    }
+
+    private fun isAtLeast(version: String, major: Int, minor: Int): Boolean {
+        val parts = version.split('.').map { it.toIntOrNull() ?: 0 }
+        val actualMajor = parts.getOrElse(0) { 0 }
+        val actualMinor = parts.getOrElse(1) { 0 }
+        return actualMajor > major || (actualMajor == major && actualMinor >= minor)
+    }
+}
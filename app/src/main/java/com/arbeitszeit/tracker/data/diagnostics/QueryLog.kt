@@ -0,0 +1,211 @@
+package com.arbeitszeit.tracker.data.diagnostics
+
+import android.util.Log
+import com.arbeitszeit.tracker.BuildConfig
+import androidx.room.RoomDatabase
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.SlowQuery
+import kotlinx.coroutines.asContextElement
+import kotlinx.coroutines.withContext
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Abfrage-Protokoll für die Diagnose in den Einstellungen (nur Debug-Builds)
+ *
+ * - timed(...) misst einen DAO-Aufruf (Dauer, Zeilen) und ordnet ihm die SQL-Anweisungen zu,
+ *   die Room währenddessen ausführt
+ * - die SQL-Texte kommen aus dem Room-QueryCallback (ohne Parameterwerte); der Callback läuft
+ *   direkt auf dem Datenbank-Thread, die Zuordnung erfolgt über ein ThreadLocal, das die
+ *   Coroutine des Aufrufs auf jeden ihrer Threads mitnimmt
+ * - die letzten RING_SIZE Messungen liegen im Speicher, Aufrufe ab SLOW_THRESHOLD_MS
+ *   werden zusätzlich in slow_queries gespeichert
+ */
+object QueryLog {
+
+    private const val TAG = "QueryLog"
+
+    const val RING_SIZE = 512
+    const val SLOW_THRESHOLD_MS = 100L
+
+    // Gespeicherte langsame Abfragen
+    private const val SLOW_QUERIES_KEEP = 200
+
+    private val ring = arrayOfNulls<QueryRecord>(RING_SIZE)
+    private var next = 0
+    private var size = 0
+
+    // Alle ausgeführten Anweisungen nach Form (auch Flows und Trigger-Wartung)
+    private val statementCounts = ConcurrentHashMap<String, Int>()
+
+    private val currentCapture = ThreadLocal<MutableList<String>?>()
+
+    @Volatile
+    private var database: AppDatabase? = null
+
+    /**
+     * Für Room.databaseBuilder().setQueryCallback - SQL-Text jeder Anweisung
+     */
+    val queryCallback = RoomDatabase.QueryCallback { sqlQuery, _ ->
+        val shape = normalize(sqlQuery)
+        statementCounts.merge(shape, 1, Int::plus)
+        currentCapture.get()?.let { capture ->
+            synchronized(capture) { capture.add(shape) }
+        }
+    }
+
+    /**
+     * Ziel für langsame Abfragen (nach dem Bauen der Datenbank)
+     */
+    fun attach(database: AppDatabase) {
+        this.database = database
+    }
+
+    /**
+     * Misst einen DAO-Aufruf
+     * @param shape Name des Aufrufs, z.B. "TimeEntryDao.getDailyDifferenz"
+     */
+    suspend fun <T> timed(shape: String, block: suspend () -> T): T {
+        // Release: kein QueryCallback, keine Diagnose-Seite - also auch nichts messen
+        if (!BuildConfig.DEBUG) return block()
+
+        val capture = ArrayList<String>(2)
+        val start = System.nanoTime()
+        val result = withContext(currentCapture.asContextElement(capture)) { block() }
+        val durationMicros = (System.nanoTime() - start) / 1000
+
+        val sql = synchronized(capture) { capture.distinct().joinToString("\n") }
+        record(QueryRecord(shape, sql, durationMicros, rowCount(result), System.currentTimeMillis()))
+        return result
+    }
+
+    /**
+     * Kennzahlen pro DAO-Aufruf aus den Messungen im Speicher, langsamste (p95) zuerst
+     */
+    fun stats(): List<QueryShapeStats> {
+        return snapshot()
+            .groupBy { it.shape }
+            .map { (shape, records) ->
+                val durations = records.map { it.durationMicros }.sorted()
+                QueryShapeStats(
+                    shape = shape,
+                    count = records.size,
+                    p50Micros = percentile(durations, 50),
+                    p95Micros = percentile(durations, 95),
+                    p99Micros = percentile(durations, 99),
+                    maxMicros = durations.last(),
+                    avgRows = records.sumOf { it.rowCount } / records.size,
+                    sql = records.last().sql
+                )
+            }
+            .sortedByDescending { it.p95Micros }
+    }
+
+    /**
+     * Häufigste SQL-Anweisungen laut QueryCallback
+     */
+    fun statementCounts(limit: Int): List<Pair<String, Int>> {
+        return statementCounts.entries
+            .sortedByDescending { it.value }
+            .take(limit)
+            .map { it.key to it.value }
+    }
+
+    /**
+     * Messungen im Speicher, älteste zuerst
+     */
+    @Synchronized
+    fun snapshot(): List<QueryRecord> {
+        val start = (next - size + RING_SIZE) % RING_SIZE
+        return List(size) { ring[(start + it) % RING_SIZE]!! }
+    }
+
+    @Synchronized
+    fun clear() {
+        ring.fill(null)
+        next = 0
+        size = 0
+        statementCounts.clear()
+    }
+
+    @Synchronized
+    private fun add(record: QueryRecord) {
+        ring[next] = record
+        next = (next + 1) % RING_SIZE
+        if (size < RING_SIZE) size++
+    }
+
+    private fun record(record: QueryRecord) {
+        add(record)
+        val durationMs = record.durationMicros / 1000
+        if (durationMs < SLOW_THRESHOLD_MS) return
+
+        Log.w(TAG, "Langsame Abfrage ${record.shape}: $durationMs ms, ${record.rowCount} Zeilen")
+        val database = database ?: return
+        DatabaseWriter.launch {
+            val dao = database.slowQueryDao()
+            dao.insert(
+                SlowQuery(
+                    shape = record.shape,
+                    sql = record.sql,
+                    durationMs = durationMs,
+                    rowCount = record.rowCount,
+                    timestamp = record.timestamp
+                )
+            )
+            dao.trim(SLOW_QUERIES_KEEP)
+        }
+    }
+
+    private fun rowCount(result: Any?): Int = when (result) {
+        null -> 0
+        is Collection<*> -> result.size
+        is Unit -> 0
+        else -> 1
+    }
+
+    /**
+     * Nearest-Rank-Perzentil einer aufsteigend sortierten Liste
+     */
+    private fun percentile(sorted: List<Long>, p: Int): Long {
+        val rank = (p * sorted.size + 99) / 100
+        return sorted[(rank - 1).coerceIn(0, sorted.size - 1)]
+    }
+
+    /**
+     * Einheitliche Form einer Anweisung (Leerraum zusammengefasst, Parameterlisten gekürzt)
+     */
+    private fun normalize(sql: String): String {
+        return sql.trim()
+            .replace(WHITESPACE, " ")
+            .replace(PARAMETER_LIST, "(?)")
+    }
+
+    private val WHITESPACE = Regex("\\s+")
+    private val PARAMETER_LIST = Regex("\\(\\?(,\\s*\\?)+\\)")
+}
+
+/**
+ * Einzelne Messung eines DAO-Aufrufs
+ */
+data class QueryRecord(
+    val shape: String,
+    val sql: String,
+    val durationMicros: Long,
+    val rowCount: Int,
+    val timestamp: Long
+)
+
+/**
+ * Kennzahlen eines DAO-Aufrufs über alle Messungen im Speicher
+ */
+data class QueryShapeStats(
+    val shape: String,
+    val count: Int,
+    val p50Micros: Long,
+    val p95Micros: Long,
+    val p99Micros: Long,
+    val maxMicros: Long,
+    val avgRows: Int,
+    val sql: String
+)
@@ -0,0 +1,32 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Kalender-Dimension: ein Eintrag pro Tag im Planungszeitraum
+ *
+ * Enthält alles, was sich allein aus Datum und Einstellungen ergibt (KW nach
+ * ersterMontagImJahr, Wochenjahr, Wochentag, Feiertag, erwartetes Soll), damit
+ * Berichte per JOIN auf epochDay rechnen können, statt es pro Zeile in Kotlin
+ * neu zu berechnen. Wird von CalendarDays bei Änderungen der Einstellungen
+ * bzw. der Standard-Vorlage inkrementell neu erzeugt.
+ */
+@Entity(
+    tableName = "calendar_days",
+    indices = [
+        Index(value = ["jahr", "kalenderwoche"])    // Wochen-Auswertungen wie time_entries
+    ]
+)
+data class CalendarDay(
+    @PrimaryKey val epochDay: Int,      // Tage seit 1970-01-01 (wie time_entries.epochDay)
+    val datum: String,                  // Format: yyyy-MM-dd
+    val kalenderwoche: Int,             // KW nach ersterMontagImJahr
+    val jahr: Int,                      // Wochenjahr zur KW
+    val wochentag: Int,                 // 1=Mo, 7=So
+    val isArbeitstag: Boolean,          // laut Einstellungen
+    val isFeiertag: Boolean,            // für das eingestellte Bundesland
+    val feiertagName: String? = null,
+    val sollMinuten: Int                // erwartetes Soll eines leeren Tages (wie VirtualDays)
+)
@@ -0,0 +1,20 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import java.time.YearMonth
+
+/**
+ * Vorberechnete Summen pro Kalendermonat
+ * Wird per SQLite-Trigger bei jeder Änderung an time_entries aktualisiert (siehe RollupSql)
+ */
+@Entity(tableName = "rollup_months")
+data class MonthRollup(
+    @PrimaryKey val monat: String,      // Format: "yyyy-MM"
+    val sollMinuten: Int = 0,
+    val istMinuten: Int = 0,
+    val differenzMinuten: Int = 0,
+    val anzahlTage: Int = 0
+) {
+    fun getYearMonth(): YearMonth = YearMonth.parse(monat)
+}
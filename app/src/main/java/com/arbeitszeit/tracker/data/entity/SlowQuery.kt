@@ -0,0 +1,24 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Langsame Abfrage aus dem Abfrage-Protokoll (siehe QueryLog)
+ * Nur Diagnose - wird bei Bedarf gelöscht und auf die neuesten Einträge begrenzt.
+ */
+@Entity(
+    tableName = "slow_queries",
+    indices = [
+        Index(value = ["timestamp"])
+    ]
+)
+data class SlowQuery(
+    @PrimaryKey(autoGenerate = true) val id: Long = 0,
+    val shape: String,                  // DAO-Aufruf, z.B. "TimeEntryDao.getDailyDifferenz"
+    val sql: String,                    // Ausgeführte SQL-Anweisung(en), ohne Parameterwerte
+    val durationMs: Long,
+    val rowCount: Int,
+    val timestamp: Long = System.currentTimeMillis()
+)
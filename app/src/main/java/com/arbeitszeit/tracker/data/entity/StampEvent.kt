@@ -0,0 +1,46 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Einzelner Stempel im Ereignis-Protokoll (nur anfügen, nie ändern)
+ *
+ * Start, Ende und Pause eines Tages in time_entries werden aus allen Ereignissen
+ * des Tages abgeleitet (siehe StampIntervals) - mehrere Arbeitsblöcke pro Tag
+ * bleiben so erhalten und der komplette Verlauf ist nachvollziehbar.
+ */
+@Entity(
+    tableName = "stamp_events",
+    indices = [
+        Index(value = ["epochDay", "id"])           // Ereignisse eines Tages in Einfüge-Reihenfolge
+    ]
+)
+data class StampEvent(
+    @PrimaryKey(autoGenerate = true) val id: Long = 0,
+    val epochDay: Int,                  // Tag, zu dem der Stempel gehört
+    val typ: String,                    // START, END, PAUSE, SET_START, SET_END, SET_PAUSE, RESET
+    val minuten: Int?,                  // Uhrzeit in Minuten seit Mitternacht bzw. Pausendauer
+    val source: String,                 // WIDGET, NOTIFICATION, GEOFENCE, UI, ENTRY
+    val timestamp: Long = System.currentTimeMillis() // nur Protokoll, sortiert wird nach id
+) {
+    companion object {
+        // Stempel
+        const val TYP_START = "START"
+        const val TYP_END = "END"
+        const val TYP_PAUSE = "PAUSE"           // Pause um minuten verlängern
+
+        // Manuelle Korrekturen (absolute Werte)
+        const val TYP_SET_START = "SET_START"
+        const val TYP_SET_END = "SET_END"
+        const val TYP_SET_PAUSE = "SET_PAUSE"
+        const val TYP_RESET = "RESET"           // Tag neu aufsetzen (z.B. nach Bearbeitung im Kalender)
+
+        const val SOURCE_WIDGET = "WIDGET"
+        const val SOURCE_NOTIFICATION = "NOTIFICATION"
+        const val SOURCE_GEOFENCE = "GEOFENCE"
+        const val SOURCE_UI = "UI"
+        const val SOURCE_ENTRY = "ENTRY"        // Übernommen aus dem gespeicherten Eintrag
+    }
+}
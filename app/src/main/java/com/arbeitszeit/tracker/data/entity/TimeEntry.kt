@@ -1,13 +1,25 @@
 package com.arbeitszeit.tracker.data.entity
 
 import androidx.room.Entity
+import androidx.room.Ignore
+import androidx.room.Index
 import androidx.room.PrimaryKey
+import com.arbeitszeit.tracker.utils.DateUtils
+import java.time.LocalDate
 
-@Entity(tableName = "time_entries")
+@Entity(
+    tableName = "time_entries",
+    indices = [
+        Index(value = ["datum"], unique = true),   // Genau ein Eintrag pro Tag
+        Index(value = ["epochDay"], unique = true), // Bereichsabfragen über Integer-Schlüssel
+        Index(value = ["jahr", "kalenderwoche"]),  // Wochen-/Jahresabfragen
+        Index(value = ["typ"])                     // Urlaubs-/Krankheitsstatistik
+    ]
+)
 data class TimeEntry(
     @PrimaryKey(autoGenerate = true) val id: Long = 0,
     val datum: String,                  // Format: "yyyy-MM-dd"
-    val wochentag: String,              // Mo, Di, Mi, Do, Fr, Sa, So
+    val epochDay: Int,                  // Tage seit 1970-01-01, muss zu datum passen
     val kalenderwoche: Int,
     val jahr: Int,
     val startZeit: Int?,                // Minuten seit Mitternacht (null = nicht eingetragen)
@@ -22,6 +34,13 @@ data class TimeEntry(
     val createdAt: Long = System.currentTimeMillis(),
     val updatedAt: Long = System.currentTimeMillis()
 ) {
+    init {
+        // copy(datum = ...) ohne epochDay würde sonst einen falschen Schlüssel speichern
+        require(epochDay == LocalDate.parse(datum).toEpochDay().toInt()) {
+            "epochDay $epochDay passt nicht zu datum $datum"
+        }
+    }
+
     companion object {
         const val TYP_NORMAL = "NORMAL"
         const val TYP_URLAUB = "U"
@@ -30,6 +49,22 @@ data class TimeEntry(
         const val TYP_ABWESEND = "AB"
     }
     
+    /**
+     * Datum als LocalDate (ohne String-Parsing)
+     */
+    fun getDate(): LocalDate = LocalDate.ofEpochDay(epochDay.toLong())
+
+    /**
+     * Wochentag aus epochDay berechnet
+     * @return 1=Montag, 2=Dienstag, ..., 7=Sonntag
+     */
+    fun getDayOfWeek(): Int = DateUtils.dayOfWeekFromEpochDay(epochDay)
+
+    /**
+     * Wochentag als deutscher Kurzname (Mo, Di, ...)
+     */
+    fun getWochentagKurz(): String = DateUtils.getWeekdayShort(getDayOfWeek())
+
     /**
      * Berechnet die Ist-Arbeitszeit in Minuten
      */
@@ -45,6 +80,15 @@ data class TimeEntry(
         return getIstMinuten() - sollMinuten + arbeitszeitBereitschaft
     }
     
+    /**
+     * Virtueller Tag: nur beim Lesen von VirtualDays.create erzeugt, nicht gespeichert
+     * Ungespeicherte Import-, Vorlagen- oder Backup-Zeilen haben ebenfalls id = 0, sind aber nicht virtuell.
+     * Nicht Teil des Konstruktors - copy() liefert also einen normalen (zu speichernden) Eintrag.
+     */
+    @Ignore
+    var isVirtual: Boolean = false
+        internal set
+
     /**
      * Prüft ob der Eintrag vollständig ist
      */
@@ -0,0 +1,21 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+import androidx.room.PrimaryKey
+
+/**
+ * Volltext-Index über TimeEntry.notiz (FTS4)
+ *
+ * rowid = time_entries.id. Indiziert werden nur Einträge mit Notiz; gepflegt wird der
+ * Index per SQLite-Trigger (siehe NoteSearchSql), nicht von Room und nicht von der App.
+ * unicode61 faltet Groß-/Kleinschreibung auch für Umlaute.
+ */
+@Entity(tableName = "time_entries_fts")
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+data class TimeEntryFts(
+    @PrimaryKey @ColumnInfo(name = "rowid") val rowid: Long,
+    val notiz: String
+)
@@ -0,0 +1,20 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.Entity
+
+/**
+ * Vorberechnete Summen pro Kalenderwoche (jahr/kalenderwoche wie in time_entries)
+ * Wird per SQLite-Trigger bei jeder Änderung an time_entries aktualisiert (siehe RollupSql)
+ */
+@Entity(
+    tableName = "rollup_weeks",
+    primaryKeys = ["jahr", "kalenderwoche"]
+)
+data class WeekRollup(
+    val jahr: Int,
+    val kalenderwoche: Int,
+    val sollMinuten: Int = 0,
+    val istMinuten: Int = 0,
+    val differenzMinuten: Int = 0,
+    val anzahlTage: Int = 0
+)
@@ -0,0 +1,17 @@
+package com.arbeitszeit.tracker.data.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Vorberechnete Summen pro Kalenderjahr (aus datum, nicht das KW-Jahr)
+ * Wird per SQLite-Trigger bei jeder Änderung an time_entries aktualisiert (siehe RollupSql)
+ */
+@Entity(tableName = "rollup_years")
+data class YearRollup(
+    @PrimaryKey val kalenderjahr: Int,
+    val sollMinuten: Int = 0,
+    val istMinuten: Int = 0,
+    val differenzMinuten: Int = 0,
+    val anzahlTage: Int = 0
+)
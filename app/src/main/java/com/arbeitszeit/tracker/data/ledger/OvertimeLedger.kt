@@ -0,0 +1,292 @@
+package com.arbeitszeit.tracker.data.ledger
+
+import android.content.Context
+import androidx.room.InvalidationTracker
+import androidx.room.withTransaction
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.entity.MonthRollup
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
+import com.arbeitszeit.tracker.utils.DateUtils
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.time.LocalDate
+import java.time.YearMonth
+
+/**
+ * Überstunden-Konto im Speicher (Fenwick-Baum über Tages-Offsets)
+ *
+ * Beantwortet "Saldo am Datum X" und Bereichssummen in O(log n), ohne
+ * time_entries zu summieren. Wird beim ersten Zugriff einmal aus der DB geladen
+ * und danach nur noch punktuell aktualisiert:
+ * - Room meldet Änderungen an time_entries über den InvalidationTracker
+ * - vor der nächsten Abfrage werden nur die betroffenen Tage neu gelesen
+ *   (geänderte Monate laut rollup_months sowie Zeilen mit neuerem updatedAt)
+ *
+ * Tage ohne gespeicherten Eintrag zählen im Zählbereich von VirtualDays wie leere Tage (-Soll).
+ * Ändern sich Einstellungen oder Standard-Vorlage, wird komplett neu geladen.
+ *
+ * Wird von UeberstundenViewModel, den Widgets und der Export-Vorschau gemeinsam genutzt.
+ */
+class OvertimeLedger private constructor(private val database: AppDatabase) {
+
+    private val timeEntryDao = database.timeEntryDao()
+    private val rollupDao = database.rollupDao()
+    private val mutex = Mutex()
+
+    // Index i im Array entspricht epochDay = baseDay + i
+    private var baseDay = 0
+    private var values = IntArray(0)
+    private var tree = LongArray(1)     // 1-basiert, tree[0] unbenutzt
+
+    private var loaded = false
+    private var lastSyncMillis = 0L
+    private var monthSnapshot: Map<String, MonthRollup> = emptyMap()
+
+    // Zählbereich für virtuelle Tage (epochDay, inklusive)
+    private var virtualDays: VirtualDays? = null
+    private var countFrom = 0
+    private var countTo = -1
+
+    @Volatile
+    private var stale = false
+
+    @Volatile
+    private var needsReload = false
+
+    private val observer = object : InvalidationTracker.Observer(
+        arrayOf("time_entries", "user_settings", "soll_zeit_vorlagen")
+    ) {
+        override fun onInvalidated(tables: Set<String>) {
+            if ("time_entries" in tables) stale = true
+            if ("user_settings" in tables || "soll_zeit_vorlagen" in tables) needsReload = true
+        }
+    }
+
+    init {
+        database.invalidationTracker.addObserver(observer)
+    }
+
+    /**
+     * Saldo aller Einträge bis einschließlich [date]
+     */
+    suspend fun balanceAt(date: LocalDate): Int = mutex.withLock {
+        ensureFresh()
+        prefixSum(DateUtils.toEpochDay(date) - baseDay).toInt()
+    }
+
+    /**
+     * Summe der Differenzen von [from] bis einschließlich [to]
+     */
+    suspend fun rangeSum(from: LocalDate, to: LocalDate): Int = mutex.withLock {
+        ensureFresh()
+        val fromIndex = DateUtils.toEpochDay(from) - baseDay
+        val toIndex = DateUtils.toEpochDay(to) - baseDay
+        if (toIndex < fromIndex) 0 else (prefixSum(toIndex) - prefixSum(fromIndex - 1)).toInt()
+    }
+
+    /**
+     * Setzt die Differenz eines Tages direkt (z.B. nach eigenem Schreibzugriff)
+     * Ist der Ledger noch nicht geladen, passiert nichts - er wird dann beim ersten Zugriff komplett gelesen.
+     */
+    suspend fun update(epochDay: Int, differenzMinuten: Int) = mutex.withLock {
+        if (loaded) {
+            set(epochDay, differenzMinuten)
+        }
+    }
+
+    private suspend fun ensureFresh() {
+        if (!loaded || needsReload) {
+            loadAll()
+            return
+        }
+        if (stale) {
+            reconcile()
+        }
+        extendCountingRange()
+    }
+
+    // ===== Laden / Abgleich =====
+
+    private suspend fun loadAll() {
+        stale = false
+        needsReload = false
+        val syncStart = System.currentTimeMillis()
+        val (days, months) = database.withTransaction {
+            QueryLog.timed("TimeEntryDao.getDailyDifferenz") { timeEntryDao.getDailyDifferenz() } to
+                rollupDao.getMonthRollups()
+        }
+        val virtual = VirtualDays.load(database)
+
+        val today = DateUtils.toEpochDay(LocalDate.now())
+        virtualDays = virtual
+        countFrom = DateUtils.toEpochDay(virtual.getCountingStart(days.firstOrNull()?.epochDay))
+        countTo = today
+
+        val minDay = minOf(days.firstOrNull()?.epochDay ?: today, countFrom)
+        val maxDay = maxOf(days.lastOrNull()?.epochDay ?: today, today)
+        allocate(minDay - PADDING_DAYS, maxDay + PADDING_DAYS)
+        for (day in countFrom..countTo) {
+            values[day - baseDay] = emptyDayValue(day)
+        }
+        days.forEach { values[it.epochDay - baseDay] = it.differenzMinuten }
+        buildTree()
+
+        monthSnapshot = months.associateBy { it.monat }
+        lastSyncMillis = syncStart
+        loaded = true
+    }
+
+    /**
+     * Liest nur die seit dem letzten Abgleich geänderten Tage nach
+     */
+    private suspend fun reconcile() {
+        stale = false
+        val syncStart = System.currentTimeMillis()
+
+        // Älterer Eintrag als der bisherige Zählbeginn (z.B. Import) verschiebt den Zählbereich
+        val firstDay = timeEntryDao.getFirstEpochDay()
+        if (firstDay != null && firstDay < countFrom) {
+            loadAll()
+            return
+        }
+
+        val (changedDays, months, monthDays) = database.withTransaction {
+            val months = rollupDao.getMonthRollups().associateBy { it.monat }
+            val changedMonths = (months.keys + monthSnapshot.keys)
+                .filter { months[it] != monthSnapshot[it] }
+                .map { YearMonth.parse(it) }
+            val monthDays = changedMonths.map { month ->
+                month to QueryLog.timed("TimeEntryDao.getDailyDifferenzInRange") {
+                    timeEntryDao.getDailyDifferenzInRange(
+                        DateUtils.toEpochDay(month.atDay(1)),
+                        DateUtils.toEpochDay(month.atEndOfMonth())
+                    )
+                }
+            }
+            val changedDays = QueryLog.timed("TimeEntryDao.getDailyDifferenzUpdatedSince") {
+                timeEntryDao.getDailyDifferenzUpdatedSince(lastSyncMillis)
+            }
+            Triple(changedDays, months, monthDays)
+        }
+
+        // Geänderte Monate komplett setzen (fehlende Tage = leerer Tag bzw. 0 außerhalb des Zählbereichs)
+        monthDays.forEach { (month, days) ->
+            val byDay = days.associate { it.epochDay to it.differenzMinuten }
+            var day = DateUtils.toEpochDay(month.atDay(1))
+            val last = DateUtils.toEpochDay(month.atEndOfMonth())
+            while (day <= last) {
+                set(day, byDay[day] ?: emptyDayValue(day))
+                day++
+            }
+        }
+        // Änderungen, die sich innerhalb eines Monats ausgleichen, fängt updatedAt ab
+        changedDays.forEach { set(it.epochDay, it.differenzMinuten) }
+
+        monthSnapshot = months
+        lastSyncMillis = syncStart
+    }
+
+    /**
+     * Neue Tage seit dem letzten Laden (Datumswechsel) als leere Tage aufnehmen
+     */
+    private suspend fun extendCountingRange() {
+        val today = DateUtils.toEpochDay(LocalDate.now())
+        if (today <= countTo) return
+
+        val from = countTo + 1
+        val storedDays = timeEntryDao.getEpochDaysInRange(from, today).toHashSet()
+        countTo = today
+        for (day in from..today) {
+            if (day !in storedDays) {
+                set(day, emptyDayValue(day))
+            }
+        }
+    }
+
+    /**
+     * Differenz eines Tages ohne gespeicherten Eintrag
+     */
+    private fun emptyDayValue(epochDay: Int): Int {
+        val virtual = virtualDays ?: return 0
+        if (epochDay < countFrom || epochDay > countTo) return 0
+        return -virtual.getSollMinuten(DateUtils.fromEpochDay(epochDay))
+    }
+
+    // ===== Fenwick-Baum =====
+
+    private fun set(epochDay: Int, differenzMinuten: Int) {
+        if (epochDay < baseDay || epochDay >= baseDay + values.size) {
+            if (differenzMinuten == 0) return
+            grow(epochDay)
+        }
+        val index = epochDay - baseDay
+        val delta = differenzMinuten - values[index]
+        if (delta == 0) return
+        values[index] = differenzMinuten
+        var i = index + 1
+        while (i < tree.size) {
+            tree[i] += delta.toLong()
+            i += i and -i
+        }
+    }
+
+    /**
+     * Summe values[0..index]; Indizes außerhalb werden auf den gültigen Bereich begrenzt
+     */
+    private fun prefixSum(index: Int): Long {
+        var i = minOf(index, values.size - 1) + 1
+        var sum = 0L
+        while (i > 0) {
+            sum += tree[i]
+            i -= i and -i
+        }
+        return sum
+    }
+
+    private fun allocate(fromDay: Int, toDay: Int) {
+        baseDay = fromDay
+        values = IntArray(toDay - fromDay + 1)
+    }
+
+    /**
+     * Aufbau in O(n) statt n-mal update
+     */
+    private fun buildTree() {
+        tree = LongArray(values.size + 1)
+        for (i in 1..values.size) {
+            tree[i] += values[i - 1].toLong()
+            val parent = i + (i and -i)
+            if (parent < tree.size) {
+                tree[parent] += tree[i]
+            }
+        }
+    }
+
+    /**
+     * Vergrößert den Bereich, damit [epochDay] hineinpasst (selten: Einträge weit in Zukunft/Vergangenheit)
+     */
+    private fun grow(epochDay: Int) {
+        val oldBase = baseDay
+        val oldValues = values
+        val fromDay = minOf(oldBase, epochDay - PADDING_DAYS)
+        val toDay = maxOf(oldBase + oldValues.size - 1, epochDay + PADDING_DAYS)
+        allocate(fromDay, toDay)
+        oldValues.copyInto(values, destinationOffset = oldBase - fromDay)
+        buildTree()
+    }
+
+    companion object {
+        // Reserve um den geladenen Bereich, damit neue Tage meist ohne Neuaufbau passen
+        private const val PADDING_DAYS = 366
+
+        @Volatile
+        private var INSTANCE: OvertimeLedger? = null
+
+        fun getInstance(context: Context): OvertimeLedger {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: OvertimeLedger(AppDatabase.getDatabase(context)).also { INSTANCE = it }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.arbeitszeit.tracker.data.ledger
+
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.SqliteSupport
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.model.WeekTrend
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
+import com.arbeitszeit.tracker.utils.DateUtils
+import java.time.LocalDate
+
+/**
+ * Wochen-Trend der Überstunden (Differenz, laufender Saldo, gleitender 4-Wochen-Durchschnitt)
+ *
+ * Mit aktuellem SQLite rechnet CalendarDayDao.getWeekTrend alles per Window-Funktion und
+ * liefert nur die angefragten Wochen. Auf System-SQLite vor 3.25 werden alle Wochen-Differenzen
+ * gelesen und Saldo/Durchschnitt hier aufsummiert - Ergebnis identisch.
+ */
+object OvertimeTrend {
+
+    private const val AVERAGE_WEEKS = 4
+
+    /**
+     * Die letzten [weeks] Wochen bis zur aktuellen Woche, älteste zuerst
+     */
+    suspend fun lastWeeks(database: AppDatabase, virtual: VirtualDays, weeks: Int): List<WeekTrend> {
+        val today = LocalDate.now()
+        val countFrom = DateUtils.toEpochDay(virtual.getCountingStart(database.timeEntryDao().getFirstEpochDay()))
+        val countTo = DateUtils.toEpochDay(today)
+        val endDay = DateUtils.toEpochDay(DateUtils.getMondayOfWeek(today).plusDays(6))
+        val calendarDayDao = database.calendarDayDao()
+
+        if (SqliteSupport.supportsWindowFunctions()) {
+            return QueryLog.timed("CalendarDayDao.getWeekTrend") {
+                calendarDayDao.getWeekTrend(countFrom, countTo, endDay, weeks)
+            }.reversed()
+        }
+
+        val differenzen = QueryLog.timed("CalendarDayDao.getWeekDifferenzen") {
+            calendarDayDao.getWeekDifferenzen(countFrom, countTo, endDay)
+        }
+        val result = ArrayList<WeekTrend>(differenzen.size)
+        var saldo = 0
+        differenzen.forEachIndexed { index, week ->
+            saldo += week.differenzMinuten
+            val window = differenzen.subList(maxOf(0, index - AVERAGE_WEEKS + 1), index + 1)
+            result.add(
+                WeekTrend(
+                    jahr = week.jahr,
+                    kalenderwoche = week.kalenderwoche,
+                    differenzMinuten = week.differenzMinuten,
+                    saldoMinuten = saldo,
+                    schnittMinuten = window.sumOf { it.differenzMinuten } / window.size
+                )
+            )
+        }
+        return result.takeLast(weeks)
+    }
+}
@@ -0,0 +1,13 @@
+package com.arbeitszeit.tracker.data.model
+
+import androidx.room.Embedded
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+
+/**
+ * Treffer der Notiz-Suche: Eintrag plus Textausschnitt um die Fundstellen
+ * Fundstellen sind im snippet mit NoteSearch.MARK_START / MARK_END markiert.
+ */
+data class NoteSearchResult(
+    @Embedded val entry: TimeEntry,
+    val snippet: String
+)
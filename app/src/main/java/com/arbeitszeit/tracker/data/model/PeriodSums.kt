@@ -0,0 +1,76 @@
+package com.arbeitszeit.tracker.data.model
+
+import java.time.YearMonth
+
+/**
+ * Ergebnis der SQL-Aggregation pro Monat
+ * Summen werden direkt in SQLite berechnet (siehe TimeEntryDao)
+ */
+data class MonthSums(
+    val monat: String,                  // Format: "yyyy-MM"
+    val sollMinuten: Int,
+    val istMinuten: Int,
+    val differenzMinuten: Int,
+    val anzahlTage: Int
+) {
+    fun getYearMonth(): YearMonth = YearMonth.parse(monat)
+}
+
+/**
+ * Ergebnis der SQL-Aggregation pro Kalenderwoche
+ */
+data class WeekSums(
+    val jahr: Int,
+    val kalenderwoche: Int,
+    val sollMinuten: Int,
+    val istMinuten: Int,
+    val differenzMinuten: Int,
+    val anzahlTage: Int
+)
+
+/**
+ * Ergebnis der SQL-Aggregation pro Kalenderjahr
+ */
+data class YearSums(
+    val kalenderjahr: Int,              // Kalenderjahr aus datum (nicht das KW-Jahr)
+    val sollMinuten: Int,
+    val istMinuten: Int,
+    val differenzMinuten: Int,
+    val anzahlTage: Int
+)
+
+/**
+ * Anzahl Tage pro Typ (NORMAL, U, K, F, AB)
+ */
+data class TypCount(
+    val typ: String,
+    val anzahl: Int
+)
+
+/**
+ * Differenz (Ist - Soll + Bereitschaft) eines einzelnen Tages
+ */
+data class DayDifferenz(
+    val epochDay: Int,
+    val differenzMinuten: Int
+)
+
+/**
+ * Differenz einer Kalenderwoche inkl. leerer Tage im Zählbereich
+ */
+data class WeekDifferenz(
+    val jahr: Int,
+    val kalenderwoche: Int,
+    val differenzMinuten: Int
+)
+
+/**
+ * Wochen-Differenz mit laufendem Saldo und gleitendem 4-Wochen-Durchschnitt
+ */
+data class WeekTrend(
+    val jahr: Int,
+    val kalenderwoche: Int,
+    val differenzMinuten: Int,
+    val saldoMinuten: Int,              // Saldo aller Einträge bis Ende dieser Woche
+    val schnittMinuten: Int             // Durchschnitt dieser und der drei Wochen davor
+)
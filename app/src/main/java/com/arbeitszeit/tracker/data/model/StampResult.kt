@@ -0,0 +1,12 @@
+package com.arbeitszeit.tracker.data.model
+
+/**
+ * Ergebnis eines Stempels (siehe TimeStamper)
+ */
+enum class StampResult {
+    STARTED,            // Arbeitsblock begonnen
+    ENDED,              // Arbeitsblock beendet bzw. Ende korrigiert
+    PAUSE_ADDED,        // Pause erhöht
+    CORRECTED,          // Manuelle Korrektur (Start, Ende oder Pause gesetzt)
+    UNCHANGED           // Nichts zu tun (z.B. Stopp ohne laufende Arbeitszeit)
+}
@@ -0,0 +1,83 @@
+package com.arbeitszeit.tracker.data.repository
+
+import androidx.paging.PagingSource
+import androidx.paging.PagingState
+import androidx.room.InvalidationTracker
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+
+/**
+ * Gespeicherte Einträge seitenweise, neueste zuerst (Verlauf)
+ *
+ * Schlüssel ist der epochDay, ab dem (einschließlich) geladen wird - Keyset statt
+ * OFFSET, damit auch Seiten tief in der Vergangenheit nur den Index auf epochDay
+ * brauchen. Ändert sich time_entries, wird die Quelle invalidiert; Paging lädt
+ * dann ab dem sichtbaren Bereich neu (getRefreshKey).
+ *
+ * Enthält nur gespeicherte Zeilen, keine virtuellen Tage.
+ */
+class TimeEntryPagingSource(database: AppDatabase) : PagingSource<Int, TimeEntry>() {
+
+    private val timeEntryDao = database.timeEntryDao()
+
+    private val observer = object : InvalidationTracker.Observer("time_entries") {
+        override fun onInvalidated(tables: Set<String>) {
+            invalidate()
+        }
+    }
+
+    init {
+        database.invalidationTracker.addObserver(observer)
+        registerInvalidatedCallback { database.invalidationTracker.removeObserver(observer) }
+    }
+
+    override suspend fun load(params: LoadParams<Int>): LoadResult<Int, TimeEntry> {
+        return try {
+            when (params) {
+                is LoadParams.Prepend -> {
+                    // Neuere Einträge oberhalb der ersten Seite
+                    val entries = QueryLog.timed("TimeEntryDao.getEntriesAtOrAfter") {
+                        timeEntryDao.getEntriesAtOrAfter(params.key, params.loadSize)
+                    }.asReversed()
+                    LoadResult.Page(
+                        data = entries,
+                        prevKey = if (entries.size < params.loadSize) null else entries.first().epochDay + 1,
+                        // Darunter liegt immer die Seite, vor die geladen wurde - nach dem Verwerfen
+                        // von Seiten (maxSize) muss sie von hier aus neu geladen werden können
+                        nextKey = entries.lastOrNull()?.epochDay?.minus(1)
+                    )
+                }
+                else -> {
+                    // Refresh (ab Schlüssel bzw. ganz oben) und Append (ältere Einträge)
+                    val key = params.key
+                    val entries = QueryLog.timed("TimeEntryDao.getEntriesAtOrBefore") {
+                        timeEntryDao.getEntriesAtOrBefore(key ?: Int.MAX_VALUE, params.loadSize)
+                    }
+                    LoadResult.Page(
+                        data = entries,
+                        // Nur die erste Seite ganz oben hat nichts Neueres über sich; Append-Seiten
+                        // brauchen den Schlüssel, falls die Seiten darüber verworfen wurden (maxSize)
+                        prevKey = when {
+                            key == null -> null
+                            entries.isNotEmpty() -> entries.first().epochDay + 1
+                            params is LoadParams.Refresh -> key
+                            else -> null
+                        },
+                        nextKey = if (entries.size < params.loadSize) null else entries.last().epochDay - 1
+                    )
+                }
+            }
+        } catch (e: Exception) {
+            LoadResult.Error(e)
+        }
+    }
+
+    /**
+     * Nach Invalidierung ab der Seite neu laden, die gerade sichtbar war
+     */
+    override fun getRefreshKey(state: PagingState<Int, TimeEntry>): Int? {
+        val anchor = state.anchorPosition ?: return null
+        return state.closestPageToPosition(anchor)?.data?.firstOrNull()?.epochDay
+    }
+}
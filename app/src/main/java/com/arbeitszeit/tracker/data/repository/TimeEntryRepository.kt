@@ -0,0 +1,228 @@
+package com.arbeitszeit.tracker.data.repository
+
+import android.content.Context
+import androidx.room.InvalidationTracker
+import androidx.room.withTransaction
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.entity.MonthRollup
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.utils.DateUtils
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.time.DayOfWeek
+import java.time.LocalDate
+import java.time.YearMonth
+import java.time.temporal.TemporalAdjusters
+
+/**
+ * Prozessweiter Zugriff auf gespeicherte Einträge nach Woche/Monat
+ *
+ * ViewModels und Widgets teilen sich dieselben Abfrageergebnisse: jeder Zeitraum
+ * (Woche Mo-So, Kalendermonat oder beliebiger Bereich) wird einmal geladen und als
+ * heißer StateFlow bereitgehalten. Die Zeiträume liegen in einem LRU-Cache;
+ * Zeiträume mit aktiven Beobachtern werden nicht verdrängt.
+ *
+ * Invalidierung über den InvalidationTracker, aber gezielt: neu geladen werden nur
+ * Zeiträume, die einen geänderten Tag enthalten (updatedAt seit dem letzten Abgleich)
+ * oder einen Monat, dessen Summen sich geändert haben (fängt auch Löschungen ab).
+ *
+ * Enthält nur gespeicherte Zeilen - virtuelle Tage ergänzt der Aufrufer (VirtualDays.fill).
+ */
+class TimeEntryRepository private constructor(private val database: AppDatabase) {
+
+    private val timeEntryDao = database.timeEntryDao()
+    private val rollupDao = database.rollupDao()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val mutex = Mutex()
+
+    /**
+     * Ein gecachter Zeitraum (epochDay, beide Grenzen inklusive); null = noch nicht geladen
+     */
+    private class Slice(val range: IntRange) {
+        val state = MutableStateFlow<List<TimeEntry>?>(null)
+    }
+
+    // Zugriffsreihenfolge = LRU, ältester Zugriff zuerst
+    private val slices = LinkedHashMap<IntRange, Slice>(16, 0.75f, true)
+
+    private var lastSyncMillis = System.currentTimeMillis()
+    private var monthSnapshot: Map<String, MonthRollup>? = null
+
+    @Volatile
+    private var refreshPending = false
+
+    private val observer = object : InvalidationTracker.Observer("time_entries") {
+        override fun onInvalidated(tables: Set<String>) {
+            // Mehrere Meldungen kurz hintereinander lösen nur einen Abgleich aus
+            if (refreshPending) return
+            refreshPending = true
+            scope.launch { refreshChanged() }
+        }
+    }
+
+    init {
+        database.invalidationTracker.addObserver(observer)
+        scope.launch {
+            mutex.withLock {
+                monthSnapshot = rollupDao.getMonthRollups().associateBy { it.monat }
+            }
+        }
+    }
+
+    // ===== Heiße Flows =====
+
+    /**
+     * Gespeicherte Einträge in [from, to], aufsteigend nach Datum
+     */
+    fun range(from: LocalDate, to: LocalDate): StateFlow<List<TimeEntry>?> {
+        return slice(DateUtils.toEpochDay(from)..DateUtils.toEpochDay(to)).state.asStateFlow()
+    }
+
+    /**
+     * Woche Montag bis Sonntag, die [date] enthält
+     */
+    fun week(date: LocalDate): StateFlow<List<TimeEntry>?> {
+        val monday = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+        return range(monday, monday.plusDays(6))
+    }
+
+    fun month(month: YearMonth): StateFlow<List<TimeEntry>?> {
+        return range(month.atDay(1), month.atEndOfMonth())
+    }
+
+    /**
+     * Eintrag eines Tages (aus dem Wochen-Zeitraum, null = nicht gespeichert)
+     */
+    fun entry(date: LocalDate): Flow<TimeEntry?> {
+        val epochDay = DateUtils.toEpochDay(date)
+        return week(date)
+            .filterNotNull()
+            .map { entries -> entries.firstOrNull { it.epochDay == epochDay } }
+            .distinctUntilChanged()
+    }
+
+    // ===== Einmalige Abfragen (Widgets, Receiver) =====
+
+    suspend fun getRange(from: LocalDate, to: LocalDate): List<TimeEntry> = range(from, to).filterNotNull().first()
+
+    suspend fun getWeek(date: LocalDate): List<TimeEntry> = week(date).filterNotNull().first()
+
+    suspend fun getMonth(month: YearMonth): List<TimeEntry> = month(month).filterNotNull().first()
+
+    suspend fun getEntry(date: LocalDate): TimeEntry? = entry(date).first()
+
+    // ===== Cache =====
+
+    private fun slice(range: IntRange): Slice {
+        synchronized(slices) {
+            slices[range]?.let { return it }
+            val slice = Slice(range)
+            slices[range] = slice
+            trim()
+            // Unter dem Mutex, damit ein langsamer Erst-Ladevorgang keinen neueren Abgleich überschreibt
+            scope.launch { mutex.withLock { load(slice) } }
+            return slice
+        }
+    }
+
+    /**
+     * Verdrängt die am längsten nicht genutzten Zeiträume ohne Beobachter
+     */
+    private fun trim() {
+        if (slices.size <= MAX_SLICES) return
+        val iterator = slices.values.iterator()
+        while (slices.size > MAX_SLICES && iterator.hasNext()) {
+            if (iterator.next().state.subscriptionCount.value == 0) {
+                iterator.remove()
+            }
+        }
+    }
+
+    private suspend fun load(slice: Slice) {
+        slice.state.value = QueryLog.timed("TimeEntryDao.getEntriesByDateRange") {
+            timeEntryDao.getEntriesByDateRange(slice.range.first, slice.range.last)
+        }
+    }
+
+    /**
+     * Lädt alle Zeiträume neu, die [epochDay] enthalten
+     */
+    private suspend fun reloadDay(epochDay: Int) = mutex.withLock {
+        val affected = synchronized(slices) {
+            slices.values.filter { epochDay in it.range }
+        }
+        affected.forEach { load(it) }
+    }
+
+    /**
+     * Lädt nur die Zeiträume neu, die seit dem letzten Abgleich geänderte Tage enthalten
+     */
+    private suspend fun refreshChanged() = mutex.withLock {
+        refreshPending = false
+        val syncStart = System.currentTimeMillis()
+
+        val (changedDays, months) = database.withTransaction {
+            timeEntryDao.getEpochDaysUpdatedSince(lastSyncMillis - SYNC_MARGIN_MILLIS) to
+                rollupDao.getMonthRollups().associateBy { it.monat }
+        }
+        val previousMonths = monthSnapshot
+        val changedMonths = if (previousMonths == null) {
+            emptyList()
+        } else {
+            (months.keys + previousMonths.keys)
+                .filter { months[it] != previousMonths[it] }
+                .map { YearMonth.parse(it) }
+                .map { DateUtils.toEpochDay(it.atDay(1))..DateUtils.toEpochDay(it.atEndOfMonth()) }
+        }
+        monthSnapshot = months
+        lastSyncMillis = syncStart
+
+        val affected = synchronized(slices) {
+            slices.values.filter { slice ->
+                // Erster Abgleich ohne Monats-Stand: sicherheitshalber alles neu laden
+                previousMonths == null ||
+                    changedDays.any { it in slice.range } ||
+                    changedMonths.any { it.first <= slice.range.last && it.last >= slice.range.first }
+            }
+        }
+        affected.forEach { load(it) }
+    }
+
+    companion object {
+        // Genug für aktuelle/angezeigte Woche, Monat im Kalender, Widgets und etwas Blättern
+        private const val MAX_SLICES = 24
+
+        // Schreibvorgänge, deren updatedAt kurz vor dem Abgleich liegt, aber erst danach committet wurden
+        private const val SYNC_MARGIN_MILLIS = 5_000L
+
+        @Volatile
+        private var INSTANCE: TimeEntryRepository? = null
+
+        /**
+         * Nach eigenem Schreibzugriff (z.B. Stempel aus Widget): betroffene Zeiträume sofort
+         * neu laden, statt auf die asynchrone Meldung des InvalidationTrackers zu warten
+         */
+        suspend fun onEntryWritten(epochDay: Int) {
+            INSTANCE?.reloadDay(epochDay)
+        }
+
+        fun getInstance(context: Context): TimeEntryRepository {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: TimeEntryRepository(AppDatabase.getDatabase(context)).also { INSTANCE = it }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.arbeitszeit.tracker.data.search
+
+import com.arbeitszeit.tracker.data.dao.TimeEntryDao
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.model.NoteSearchResult
+
+/**
+ * Suche in den Notizen über den FTS4-Index (time_entries_fts)
+ *
+ * Die Eingabe wird in Präfix-Terme zerlegt ("eltern abend" -> eltern* abend*), alle
+ * Terme müssen vorkommen. Sonderzeichen werden entfernt, damit Nutzereingaben nie
+ * als FTS-Syntax (Anführungszeichen, NEAR, Spalten-Filter) interpretiert werden.
+ */
+object NoteSearch {
+
+    // Markierung der Treffer im Ausschnitt (Steuerzeichen, kommen in Notizen nicht vor)
+    const val MARK_START = "\u0002"
+    const val MARK_END = "\u0003"
+
+    private const val MAX_TERMS = 8
+
+    /**
+     * FTS4-MATCH-Ausdruck für eine Nutzereingabe, null wenn nichts Suchbares übrig bleibt
+     */
+    fun toMatchQuery(input: String): String? {
+        val terms = input
+            .split(Regex("\\s+"))
+            .map { term -> term.filter { it.isLetterOrDigit() }.lowercase() }  // klein: kein AND/OR/NOT
+            .filter { it.isNotEmpty() }
+            .take(MAX_TERMS)
+        if (terms.isEmpty()) return null
+        return terms.joinToString(" ") { "$it*" }
+    }
+
+    suspend fun search(timeEntryDao: TimeEntryDao, input: String, limit: Int = 200): List<NoteSearchResult> {
+        val matchQuery = toMatchQuery(input) ?: return emptyList()
+        return QueryLog.timed("TimeEntryDao.searchNotes") {
+            timeEntryDao.searchNotes(matchQuery, MARK_START, MARK_END, limit)
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.arbeitszeit.tracker.data.stamp
+
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+
+/**
+ * Arbeitsblock eines Tages (Minuten seit Mitternacht, end = null solange er läuft)
+ */
+data class WorkSession(
+    val start: Int,
+    val end: Int?
+)
+
+/**
+ * Aus den Stempeln eines Tages abgeleiteter Stand
+ * startZeit/endZeit/pauseMinuten entsprechen den Spalten in time_entries,
+ * Lücken zwischen den Arbeitsblöcken zählen als Pause.
+ */
+data class DerivedDay(
+    val sessions: List<WorkSession>,
+    val startZeit: Int?,
+    val endZeit: Int?,
+    val pauseMinuten: Int
+) {
+    val isRunning: Boolean get() = sessions.lastOrNull()?.let { it.end == null } ?: false
+}
+
+/**
+ * Leitet Arbeitsblöcke aus dem Stempel-Protokoll ab
+ *
+ * Regeln (Ereignisse in Einfüge-Reihenfolge, d.h. nach id):
+ * - START öffnet einen neuen Block; läuft bereits einer, wird er ignoriert (Doppel-Tipp)
+ * - END schließt den laufenden Block bzw. korrigiert das Ende des letzten Blocks
+ * - PAUSE verlängert die Pause um minuten
+ * - SET_START / SET_END setzen Beginn des ersten bzw. Ende des letzten Blocks
+ * - SET_PAUSE setzt die Gesamtpause (inkl. Lücken zwischen Blöcken)
+ * - RESET verwirft alle vorherigen Ereignisse des Tages
+ *
+ * Überlappende Blöcke werden zusammengeführt.
+ */
+object StampIntervals {
+
+    private class MutableSession(var start: Int, var end: Int?)
+
+    fun derive(events: List<StampEvent>): DerivedDay {
+        val sessions = ArrayList<MutableSession>()
+        var extraPause = 0
+        var orphanEnd: Int? = null      // Ende ohne Beginn (manuell zuerst das Ende eingetragen)
+
+        for (event in events) {
+            val minuten = event.minuten
+            when (event.typ) {
+                StampEvent.TYP_RESET -> {
+                    sessions.clear()
+                    extraPause = 0
+                    orphanEnd = null
+                }
+                StampEvent.TYP_START -> {
+                    if (minuten == null) continue
+                    val last = sessions.lastOrNull()
+                    if (last == null || last.end != null) {
+                        sessions.add(MutableSession(minuten, null))
+                    }
+                }
+                StampEvent.TYP_END -> {
+                    if (minuten != null) {
+                        sessions.lastOrNull()?.end = minuten
+                    }
+                }
+                StampEvent.TYP_PAUSE -> {
+                    extraPause += minuten ?: 0
+                }
+                StampEvent.TYP_SET_START -> {
+                    if (minuten == null) continue
+                    if (sessions.isEmpty()) {
+                        sessions.add(MutableSession(minuten, orphanEnd))
+                        orphanEnd = null
+                    } else {
+                        sessions.first().start = minuten
+                    }
+                }
+                StampEvent.TYP_SET_END -> {
+                    if (sessions.isEmpty()) {
+                        orphanEnd = minuten
+                    } else {
+                        sessions.last().end = minuten
+                    }
+                }
+                StampEvent.TYP_SET_PAUSE -> {
+                    extraPause = (minuten ?: 0) - gapMinutes(merge(sessions))
+                }
+            }
+        }
+
+        val merged = merge(sessions)
+        if (merged.isEmpty()) {
+            return DerivedDay(emptyList(), null, orphanEnd, extraPause.coerceAtLeast(0))
+        }
+        return DerivedDay(
+            sessions = merged,
+            startZeit = merged.first().start,
+            endZeit = merged.last().end,
+            pauseMinuten = (gapMinutes(merged) + extraPause).coerceAtLeast(0)
+        )
+    }
+
+    /**
+     * Ereignisse, die den aktuellen Stand eines Eintrags abbilden
+     * Für Tage, die vor dem ersten Stempel bereits Zeiten hatten (oder manuell bearbeitet wurden).
+     */
+    fun seedFrom(entry: TimeEntry, source: String, timestamp: Long): List<StampEvent> {
+        val events = ArrayList<StampEvent>()
+        entry.startZeit?.let {
+            events.add(StampEvent(epochDay = entry.epochDay, typ = StampEvent.TYP_SET_START, minuten = it, source = source, timestamp = timestamp))
+        }
+        entry.endZeit?.let {
+            events.add(StampEvent(epochDay = entry.epochDay, typ = StampEvent.TYP_SET_END, minuten = it, source = source, timestamp = timestamp))
+        }
+        if (entry.pauseMinuten != 0) {
+            events.add(StampEvent(epochDay = entry.epochDay, typ = StampEvent.TYP_SET_PAUSE, minuten = entry.pauseMinuten, source = source, timestamp = timestamp))
+        }
+        return events
+    }
+
+    /**
+     * Sortiert nach Beginn und führt überlappende Blöcke zusammen
+     * Ein laufender Block reicht bis "jetzt" und schluckt alle späteren.
+     */
+    private fun merge(sessions: List<MutableSession>): List<WorkSession> {
+        val result = ArrayList<WorkSession>()
+        for (session in sessions.sortedBy { it.start }) {
+            val last = result.lastOrNull()
+            val lastEnd = last?.end
+            if (last != null && (lastEnd == null || session.start <= lastEnd)) {
+                val end = session.end
+                result[result.size - 1] = last.copy(end = if (lastEnd == null || end == null) null else maxOf(lastEnd, end))
+            } else {
+                result.add(WorkSession(session.start, session.end))
+            }
+        }
+        return result
+    }
+
+    /**
+     * Summe der Lücken zwischen aufeinanderfolgenden Blöcken
+     */
+    private fun gapMinutes(merged: List<WorkSession>): Int {
+        var gaps = 0
+        for (i in 1 until merged.size) {
+            val previousEnd = merged[i - 1].end ?: continue
+            gaps += merged[i].start - previousEnd
+        }
+        return gaps
+    }
+}
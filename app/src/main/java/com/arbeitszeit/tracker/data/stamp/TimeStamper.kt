@@ -0,0 +1,214 @@
+package com.arbeitszeit.tracker.data.stamp
+
+import androidx.room.withTransaction
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.model.StampResult
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
+import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.utils.TimeUtils
+import java.time.LocalDate
+
+/**
+ * Gemeinsamer Einstieg für alle Stempel (App, Widgets, Notifications, Geofencing)
+ *
+ * Jeder Stempel wird als Ereignis an stamp_events angehängt - nie überschrieben.
+ * Start, Ende und Pause in time_entries sind nur noch der zwischengespeicherte,
+ * aus den Ereignissen des Tages abgeleitete Stand (StampIntervals) und werden in
+ * derselben Transaktion neu berechnet. Gleichzeitige Stempel gehen dadurch nicht
+ * verloren: beide Ereignisse landen im Protokoll, die Ableitung ist deterministisch.
+ * Alle Stempel laufen über DatabaseWriter und damit in Eingangsreihenfolge.
+ */
+object TimeStamper {
+
+    /**
+     * Beginnt einen Arbeitsblock (läuft bereits einer, bleibt es beim ersten Start)
+     */
+    suspend fun start(
+        database: AppDatabase,
+        source: String,
+        time: Int = TimeUtils.currentTimeInMinutes(),
+        date: LocalDate = LocalDate.now()
+    ): StampResult = record(database, date, source, value = time) { day ->
+        if (day.isRunning) null else StampEvent.TYP_START to StampResult.STARTED
+    }
+
+    /**
+     * Beendet den laufenden Arbeitsblock bzw. korrigiert das Ende des letzten Blocks
+     */
+    suspend fun end(
+        database: AppDatabase,
+        source: String,
+        time: Int = TimeUtils.currentTimeInMinutes(),
+        date: LocalDate = LocalDate.now()
+    ): StampResult = record(database, date, source, value = time) { day ->
+        if (day.sessions.isEmpty()) null else StampEvent.TYP_END to StampResult.ENDED
+    }
+
+    /**
+     * Beendet nur einen laufenden Arbeitsblock
+     * Legt keinen Tag an - ohne gespeicherten Eintrag läuft nichts.
+     */
+    suspend fun stopIfRunning(
+        database: AppDatabase,
+        source: String,
+        time: Int = TimeUtils.currentTimeInMinutes(),
+        date: LocalDate = LocalDate.now()
+    ): StampResult = record(database, date, source, value = time, createDay = false) { day ->
+        if (day.isRunning) StampEvent.TYP_END to StampResult.ENDED else null
+    }
+
+    /**
+     * Umschalt-Stempel: läuft ein Block, wird er beendet, sonst beginnt ein neuer
+     * (mehrere Arbeitsblöcke pro Tag, z.B. geteilter Dienst)
+     */
+    suspend fun toggle(
+        database: AppDatabase,
+        source: String,
+        time: Int = TimeUtils.currentTimeInMinutes(),
+        date: LocalDate = LocalDate.now()
+    ): StampResult = record(database, date, source, value = time) { day ->
+        if (day.isRunning) {
+            StampEvent.TYP_END to StampResult.ENDED
+        } else {
+            StampEvent.TYP_START to StampResult.STARTED
+        }
+    }
+
+    /**
+     * Verlängert die Pause um [minutes]
+     */
+    suspend fun addPause(
+        database: AppDatabase,
+        source: String,
+        minutes: Int,
+        date: LocalDate = LocalDate.now()
+    ): StampResult = record(database, date, source, value = minutes) {
+        StampEvent.TYP_PAUSE to StampResult.PAUSE_ADDED
+    }
+
+    /**
+     * Manuelle Korrektur: Beginn des ersten Blocks
+     */
+    suspend fun setStart(database: AppDatabase, source: String, time: Int, date: LocalDate): StampResult =
+        record(database, date, source, value = time) { StampEvent.TYP_SET_START to StampResult.CORRECTED }
+
+    /**
+     * Manuelle Korrektur: Ende des letzten Blocks
+     */
+    suspend fun setEnd(database: AppDatabase, source: String, time: Int, date: LocalDate): StampResult =
+        record(database, date, source, value = time) { StampEvent.TYP_SET_END to StampResult.CORRECTED }
+
+    /**
+     * Manuelle Korrektur: Gesamtpause des Tages
+     */
+    suspend fun setPause(database: AppDatabase, source: String, minutes: Int, date: LocalDate): StampResult =
+        record(database, date, source, value = minutes) { StampEvent.TYP_SET_PAUSE to StampResult.CORRECTED }
+
+    /**
+     * Übernimmt einen direkt bearbeiteten Eintrag (Kalender, Typ-Wechsel, Löschen) ins Protokoll
+     * Hat der Tag bereits Stempel, wird er mit RESET + aktuellem Stand neu aufgesetzt,
+     * damit spätere Stempel auf den bearbeiteten Zeiten aufbauen.
+     */
+    suspend fun rebase(database: AppDatabase, source: String, date: LocalDate) {
+        val epochDay = DateUtils.toEpochDay(date)
+        val stampEventDao = database.stampEventDao()
+        DatabaseWriter.write {
+            database.withTransaction {
+                if (stampEventDao.getEventCountForDay(epochDay) == 0) return@withTransaction
+                val entry = database.timeEntryDao().getEntryByDate(DateUtils.dateToString(date))
+                val now = System.currentTimeMillis()
+                val reset = StampEvent(epochDay = epochDay, typ = StampEvent.TYP_RESET, minuten = null, source = source, timestamp = now)
+                val seed = entry?.let { StampIntervals.seedFrom(it, source, now) } ?: emptyList()
+                stampEventDao.insertAll(listOf(reset) + seed)
+            }
+        }
+    }
+
+    /**
+     * Wie rebase, für viele Tage auf einmal (Import, Backup, Wochenvorlagen)
+     *
+     * Muss in der Transaktion laufen, die [entries] schreibt - [entries] ist der neue Stand der
+     * Tage. Tage ohne Ereignisse brauchen nichts: der nächste Stempel übernimmt ihren Stand selbst.
+     * Gelesen wird nur eine Bereichsabfrage über alle Tage.
+     */
+    suspend fun rebaseAll(database: AppDatabase, source: String, entries: List<TimeEntry>) {
+        if (entries.isEmpty()) return
+        val stampEventDao = database.stampEventDao()
+        DatabaseWriter.write {
+            database.withTransaction {
+                val stamped = stampEventDao.getStampedDaysInRange(
+                    entries.minOf { it.epochDay },
+                    entries.maxOf { it.epochDay }
+                ).toHashSet()
+                if (stamped.isEmpty()) return@withTransaction
+
+                val now = System.currentTimeMillis()
+                val events = entries.filter { it.epochDay in stamped }.flatMap { entry ->
+                    val reset = StampEvent(epochDay = entry.epochDay, typ = StampEvent.TYP_RESET, minuten = null, source = source, timestamp = now)
+                    listOf(reset) + StampIntervals.seedFrom(entry, source, now)
+                }
+                stampEventDao.insertAll(events)
+            }
+        }
+    }
+
+    /**
+     * Hängt ein Ereignis an und aktualisiert den abgeleiteten Stand in time_entries
+     *
+     * [decide] bekommt den bisherigen Stand und liefert Ereignis-Typ und Ergebnis,
+     * oder null wenn nichts zu tun ist. Alles in einer Transaktion, gelesen werden
+     * nur die Ereignisse dieses einen Tages.
+     */
+    private suspend fun record(
+        database: AppDatabase,
+        date: LocalDate,
+        source: String,
+        value: Int? = null,
+        createDay: Boolean = true,
+        decide: (current: DerivedDay) -> Pair<String, StampResult>?
+    ): StampResult {
+        val timeEntryDao = database.timeEntryDao()
+        val stampEventDao = database.stampEventDao()
+        val datum = DateUtils.dateToString(date)
+        val epochDay = DateUtils.toEpochDay(date)
+
+        val result = DatabaseWriter.write {
+            database.withTransaction {
+                val now = System.currentTimeMillis()
+                var entry = timeEntryDao.getEntryByDate(datum)
+                if (entry == null) {
+                    if (!createDay) return@withTransaction StampResult.UNCHANGED
+                    // Erster Stempel des Tages speichert den (bisher virtuellen) Eintrag
+                    timeEntryDao.insertIfAbsent(VirtualDays.load(database).create(date))
+                    entry = timeEntryDao.getEntryByDate(datum)!!
+                }
+
+                // Zeiten aus der Zeit vor dem Protokoll (oder manuell eingetragen) übernehmen
+                var events = stampEventDao.getEventsForDay(epochDay)
+                if (events.isEmpty()) {
+                    events = StampIntervals.seedFrom(entry, StampEvent.SOURCE_ENTRY, now)
+                    if (events.isNotEmpty()) stampEventDao.insertAll(events)
+                }
+
+                val (typ, stampResult) = decide(StampIntervals.derive(events))
+                    ?: return@withTransaction StampResult.UNCHANGED
+
+                val event = StampEvent(epochDay = epochDay, typ = typ, minuten = value, source = source, timestamp = now)
+                stampEventDao.insert(event)
+
+                val derived = StampIntervals.derive(events + event)
+                timeEntryDao.setStampTimes(datum, derived.startZeit, derived.endZeit, derived.pauseMinuten, now)
+                stampResult
+            }
+        }
+        if (result != StampResult.UNCHANGED) {
+            // Widgets lesen direkt danach - gecachte Woche/Monat sofort aktualisieren
+            TimeEntryRepository.onEntryWritten(epochDay)
+        }
+        return result
+    }
+}
@@ -0,0 +1,166 @@
+package com.arbeitszeit.tracker.data.virtual
+
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.entity.SollZeitVorlage
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.entity.UserSettings
+import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.utils.HolidayUtils
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.combine
+import java.time.DayOfWeek
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneId
+import java.time.temporal.TemporalAdjusters
+
+/**
+ * Virtuelle Tage - leere Tage werden nicht mehr als Platzhalter-Zeilen gespeichert
+ *
+ * Fehlt für ein Datum ein Eintrag, wird er beim Lesen aus Standard-Vorlage,
+ * Arbeitstagen und Feiertagen erzeugt (TimeEntry.isVirtual).
+ * Gespeichert wird eine Zeile erst, wenn der Nutzer etwas erfasst (getOrCreateEntry).
+ *
+ * Für Summen zählt ein virtueller Tag genau wie ein gespeicherter leerer Tag,
+ * aber nur im Zählbereich [getCountingStart, heute] - also ab der Woche der Einrichtung
+ * (früher von populateDatabase vorausgefüllt) bzw. ab dem ältesten Eintrag.
+ */
+class VirtualDays(
+    private val settings: UserSettings?,
+    private val defaultVorlage: SollZeitVorlage?
+) {
+    private val bundesland = HolidayUtils.Bundesland.fromShortCode(settings?.bundesland)
+
+    /**
+     * Feiertage nur, wenn ein Bundesland eingestellt ist (Nachschlagen im Feiertags-Cache)
+     */
+    fun isHoliday(date: LocalDate): Boolean {
+        if (settings?.bundesland == null) return false
+        return HolidayUtils.isHoliday(date, bundesland)
+    }
+
+    /**
+     * Erwartete Soll-Minuten eines leeren Tages
+     * Kein Arbeitstag oder Feiertag = 0, sonst Standard-Vorlage bzw. Wochenstunden / Arbeitstage
+     */
+    fun getSollMinuten(date: LocalDate): Int {
+        val dayOfWeek = date.dayOfWeek.value
+        if (settings != null && !settings.isWorkingDay(dayOfWeek)) return 0
+        if (isHoliday(date)) return 0
+
+        return when {
+            defaultVorlage != null -> defaultVorlage.getSollMinutenForDay(dayOfWeek)
+            settings != null -> settings.wochenStundenMinuten / settings.arbeitsTageProWoche
+            else -> 0
+        }
+    }
+
+    /**
+     * Erzeugt den (nicht gespeicherten) Eintrag für einen leeren Tag
+     */
+    fun create(date: LocalDate): TimeEntry {
+        return TimeEntry(
+            datum = DateUtils.dateToString(date),
+            epochDay = DateUtils.toEpochDay(date),
+            kalenderwoche = DateUtils.getCustomWeekOfYear(date, settings?.ersterMontagImJahr),
+            jahr = DateUtils.getCustomWeekBasedYear(date, settings?.ersterMontagImJahr),
+            startZeit = null,
+            endZeit = null,
+            pauseMinuten = 0,
+            sollMinuten = getSollMinuten(date),
+            sollZeitVorlageName = defaultVorlage?.name,
+            typ = if (isHoliday(date)) TimeEntry.TYP_FEIERTAG else TimeEntry.TYP_NORMAL
+        ).apply { isVirtual = true }
+    }
+
+    /**
+     * Ergänzt gespeicherte Einträge um virtuelle Tage für jeden fehlenden Tag in [from, to]
+     * @return lückenlose Liste, aufsteigend nach Datum
+     */
+    fun fill(from: LocalDate, to: LocalDate, stored: List<TimeEntry>): List<TimeEntry> {
+        val byDay = stored.associateBy { it.epochDay }
+        val result = ArrayList<TimeEntry>()
+        var date = from
+        while (!date.isAfter(to)) {
+            result.add(byDay[DateUtils.toEpochDay(date)] ?: create(date))
+            date = date.plusDays(1)
+        }
+        return result
+    }
+
+    /**
+     * Wie fill, aber virtuelle Tage nur innerhalb des Zählbereichs (für Export und Summen)
+     */
+    fun fillCounted(from: LocalDate, to: LocalDate, stored: List<TimeEntry>, firstStoredDay: Int?): List<TimeEntry> {
+        val countFrom = maxOf(from, getCountingStart(firstStoredDay))
+        val countTo = minOf(to, LocalDate.now())
+        if (countFrom.isAfter(countTo)) return stored
+
+        val storedDays = stored.map { it.epochDay }.toHashSet()
+        val virtual = virtualDaysIn(countFrom, countTo, storedDays).map { create(it) }
+        return (stored + virtual).sortedBy { it.epochDay }
+    }
+
+    /**
+     * Tage in [from, to] ohne gespeicherten Eintrag
+     */
+    fun virtualDaysIn(from: LocalDate, to: LocalDate, storedDays: Set<Int>): List<LocalDate> {
+        val result = ArrayList<LocalDate>()
+        var date = from
+        while (!date.isAfter(to)) {
+            if (DateUtils.toEpochDay(date) !in storedDays) {
+                result.add(date)
+            }
+            date = date.plusDays(1)
+        }
+        return result
+    }
+
+    /**
+     * Erster Tag, ab dem leere Tage als Minusstunden zählen
+     * Montag der Woche, in der die App eingerichtet wurde - oder früher, falls ältere Einträge existieren
+     */
+    fun getCountingStart(firstStoredDay: Int?): LocalDate {
+        val setupDate = Instant.ofEpochMilli(settings?.createdAt ?: System.currentTimeMillis())
+            .atZone(ZoneId.systemDefault())
+            .toLocalDate()
+            .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+        return if (firstStoredDay != null) {
+            minOf(setupDate, DateUtils.fromEpochDay(firstStoredDay))
+        } else {
+            setupDate
+        }
+    }
+
+    companion object {
+        suspend fun load(database: AppDatabase): VirtualDays {
+            return VirtualDays(
+                database.userSettingsDao().getSettings(),
+                database.sollZeitVorlageDao().getDefaultVorlage()
+            )
+        }
+
+        /**
+         * Neu erzeugt, sobald sich Einstellungen oder Standard-Vorlage ändern
+         */
+        fun flow(database: AppDatabase): Flow<VirtualDays> {
+            return combine(
+                database.userSettingsDao().getSettingsFlow(),
+                database.sollZeitVorlageDao().getDefaultVorlageFlow()
+            ) { settings, vorlage -> VirtualDays(settings, vorlage) }
+        }
+
+        /**
+         * Liefert den gespeicherten Eintrag eines Tages und legt ihn bei Bedarf an
+         * Für alle Schreibzugriffe, die einen bestehenden Eintrag ändern.
+         */
+        suspend fun getOrCreateEntry(database: AppDatabase, date: LocalDate): TimeEntry {
+            val dao = database.timeEntryDao()
+            val datum = DateUtils.dateToString(date)
+            dao.getEntryByDate(datum)?.let { return it }
+
+            dao.insertIfAbsent(load(database).create(date))
+            return dao.getEntryByDate(datum)!!
+        }
+    }
+}
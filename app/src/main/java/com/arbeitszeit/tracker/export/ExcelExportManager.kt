@@ -4,22 +4,23 @@ import android.content.Context
 import android.os.Environment
 import com.arbeitszeit.tracker.data.entity.TimeEntry
 import com.arbeitszeit.tracker.data.entity.UserSettings
-import com.arbeitszeit.tracker.template.TemplateManager
+import com.arbeitszeit.tracker.template.TemplateCache
+import com.arbeitszeit.tracker.template.TemplateCopy
+import com.arbeitszeit.tracker.template.WeekRows
 import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import org.apache.poi.ss.usermodel.Sheet
-import org.apache.poi.ss.usermodel.Workbook
-import org.apache.poi.ss.usermodel.WorkbookFactory
+import org.apache.poi.ss.util.CellAddress
 import java.io.File
 import java.io.FileOutputStream
-import java.io.InputStream
+import java.io.OutputStream
 import java.time.LocalDate
 
 class ExcelExportManager(private val context: Context) {
 
-    private val templateManager = TemplateManager(context)
+    private val templateCache = TemplateCache.getInstance(context)
     
     /**
      * Exportiert Zeiteinträge in Excel-Format (GESAMTJAHR)
@@ -37,86 +38,74 @@ class ExcelExportManager(private val context: Context) {
         customFileName: String? = null
     ): File = withContext(Dispatchers.IO) {
 
-        // 1. Lade Template (Custom für Jahr oder Standard aus Assets)
-        val templateStream: InputStream = templateManager.getTemplateStream(year)
-            ?: context.assets.open("ANZ_Template.xlsx")
+        // Datei mit custom oder default Namen in dediziertem Ordner
+        val downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS)
 
-        val workbook = WorkbookFactory.create(templateStream)
-
-        try {
-            // 2. Lese wichtige Werte aus der Vorlage BEVOR wir überschreiben
-            val ueberstundenVorjahr = readUeberstundenVorjahr(workbook)
-            val letzterUebertrag = readLetzterUebertrag(workbook)
-
-            // 3. Fülle Stammangaben (überschreibt mit App-Settings)
-            fillStammangaben(workbook, userSettings, ueberstundenVorjahr, letzterUebertrag)
-
-            // 4. Fülle ALLE KW-Sheets (01-04 bis 49-52)
-            fillAllSheets(workbook, entries)
-
-            // 5. Formeln zur Neuberechnung markieren
-            workbook.setForceFormulaRecalculation(true)
-
-            // 6. Speichere Datei mit custom oder default Namen in dediziertem Ordner
-            val downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS)
-
-            // Erstelle dedizierten Unterordner "ArbeitszeitTracker"
-            val arbeitszeitDir = File(downloadsDir, "ArbeitszeitTracker")
-            if (!arbeitszeitDir.exists()) {
-                arbeitszeitDir.mkdirs()
-            }
+        // Erstelle dedizierten Unterordner "ArbeitszeitTracker"
+        val arbeitszeitDir = File(downloadsDir, "ArbeitszeitTracker")
+        if (!arbeitszeitDir.exists()) {
+            arbeitszeitDir.mkdirs()
+        }
 
-            val fileName = if (!customFileName.isNullOrBlank()) {
-                // Stelle sicher, dass .xlsx Extension vorhanden ist
-                if (customFileName.endsWith(".xlsx", ignoreCase = true)) {
-                    customFileName
-                } else {
-                    "${customFileName}.xlsx"
-                }
+        val fileName = if (!customFileName.isNullOrBlank()) {
+            // Stelle sicher, dass .xlsx Extension vorhanden ist
+            if (customFileName.endsWith(".xlsx", ignoreCase = true)) {
+                customFileName
             } else {
-                "Arbeitszeit_${year}.xlsx"
+                "${customFileName}.xlsx"
             }
+        } else {
+            "Arbeitszeit_${year}.xlsx"
+        }
 
-            val outputFile = File(arbeitszeitDir, fileName)
-
-            FileOutputStream(outputFile).use { outputStream ->
-                workbook.write(outputStream)
-            }
+        val outputFile = File(arbeitszeitDir, fileName)
 
-            outputFile
-        } finally {
-            workbook.close()
-            templateStream.close()
+        FileOutputStream(outputFile).use { outputStream ->
+            writeFromTemplate(userSettings, entries, year, outputStream)
         }
+
+        outputFile
     }
-    
+
     /**
-     * Liest Überstunden Vorjahr aus der Vorlage
+     * Füllt die (zwischengespeicherte) Vorlage für [year] und schreibt sie in [outputStream]
+     * Nur der erste Export einer Vorlage parst die Datei, danach kommt sie aus dem TemplateCache.
      */
-    private fun readUeberstundenVorjahr(workbook: Workbook): Int {
-        return try {
-            val sheet = (0 until workbook.numberOfSheets)
-                .map { workbook.getSheetAt(it) }
-                .firstOrNull { it.sheetName.equals("stammangaben", ignoreCase = true) }
+    private suspend fun writeFromTemplate(
+        userSettings: UserSettings,
+        entries: List<TimeEntry>,
+        year: Int,
+        outputStream: OutputStream
+    ) {
+        templateCache.withTemplate(year) { template ->
+            val cells = template.layout.stammangaben
 
-            val ueberstundenDecimal = sheet?.getRow(9)?.getCell(2)?.numericCellValue ?: 0.0
-            TimeUtils.excelTimeToMinutes(ueberstundenDecimal)
-        } catch (e: Exception) {
-            0 // Fallback wenn nicht lesbar
+            // 1. Lese wichtige Werte aus der Vorlage BEVOR wir überschreiben
+            val stammangaben = template.sheet(cells.sheetName)
+            val ueberstundenVorjahr = readExcelTime(stammangaben, cells.ueberstundenVorjahr)
+            val letzterUebertrag = readExcelTime(stammangaben, cells.letzterUebertrag)
+
+            // 2. Fülle Stammangaben (überschreibt mit App-Settings)
+            fillStammangaben(template, stammangaben, userSettings, ueberstundenVorjahr, letzterUebertrag)
+
+            // 3. Fülle ALLE KW-Sheets laut Zellen-Karte (01-04 bis 49-52 bzw. 49-53)
+            fillAllSheets(template, entries)
+
+            // 4. Formeln zur Neuberechnung markieren
+            template.workbook.setForceFormulaRecalculation(true)
+
+            // 5. Schreiben
+            template.workbook.write(outputStream)
         }
     }
 
     /**
-     * Liest Übertrag letztes Blatt aus der Vorlage
+     * Liest einen Zeitwert (Überstunden Vorjahr, Übertrag letztes Blatt) aus der Vorlage
      */
-    private fun readLetzterUebertrag(workbook: Workbook): Int {
+    private fun readExcelTime(sheet: Sheet?, address: CellAddress): Int {
         return try {
-            val sheet = (0 until workbook.numberOfSheets)
-                .map { workbook.getSheetAt(it) }
-                .firstOrNull { it.sheetName.equals("stammangaben", ignoreCase = true) }
-
-            val uebertragDecimal = sheet?.getRow(10)?.getCell(2)?.numericCellValue ?: 0.0
-            TimeUtils.excelTimeToMinutes(uebertragDecimal)
+            val decimal = sheet?.getRow(address.row)?.getCell(address.column)?.numericCellValue ?: 0.0
+            TimeUtils.excelTimeToMinutes(decimal)
         } catch (e: Exception) {
             0 // Fallback wenn nicht lesbar
         }
@@ -125,216 +114,162 @@ class ExcelExportManager(private val context: Context) {
     /**
      * Füllt das Stammangaben-Sheet
      *
-     * @param workbook Die Excel-Arbeitsmappe
+     * @param template Arbeitskopie der Vorlage
+     * @param sheet Das Stammangaben-Sheet
      * @param settings Benutzereinstellungen aus der App
      * @param ueberstundenVorjahr Überstunden aus der Vorlage (werden beibehalten!)
      * @param letzterUebertrag Übertrag aus der Vorlage (wird beibehalten!)
      */
     private fun fillStammangaben(
-        workbook: Workbook,
+        template: TemplateCopy,
+        sheet: Sheet?,
         settings: UserSettings,
         ueberstundenVorjahr: Int,
         letzterUebertrag: Int
     ) {
-        // Suche Sheet case-insensitive
-        val sheet = (0 until workbook.numberOfSheets)
-            .map { workbook.getSheetAt(it) }
-            .firstOrNull { it.sheetName.equals("stammangaben", ignoreCase = true) }
-            ?: throw IllegalStateException("Sheet 'Stammangaben' nicht gefunden")
-        
-        // Name in B3 (Zeile 2, Index 0-basiert)
-        sheet.getRow(2)?.getCell(1)?.setCellValue(settings.name)
-        
-        // Einrichtung in B4
-        sheet.getRow(3)?.getCell(1)?.setCellValue(settings.einrichtung)
-        
-        // Arbeitsumfang % in C5 (als Dezimalwert: 93% = 0.93)
-        sheet.getRow(4)?.getCell(2)?.setCellValue(settings.arbeitsumfangProzent / 100.0)
-        
-        // Wochenstunden in C7 als Excel-Zeitwert
+        if (sheet == null) throw IllegalStateException("Sheet 'Stammangaben' nicht gefunden")
+        val cells = template.layout.stammangaben
+
+        // Name (Standard: B3)
+        template.cell(sheet, cells.name, create = false)?.setCellValue(settings.name)
+
+        // Einrichtung (Standard: B4)
+        template.cell(sheet, cells.einrichtung, create = false)?.setCellValue(settings.einrichtung)
+
+        // Arbeitsumfang % (Standard: C5, als Dezimalwert: 93% = 0.93)
+        template.cell(sheet, cells.arbeitsumfang, create = false)?.setCellValue(settings.arbeitsumfangProzent / 100.0)
+
+        // Wochenstunden (Standard: C7) als Excel-Zeitwert
         // Excel: 1 Tag = 1.0, daher Minuten / 1440
         val wochenStundenDecimal = TimeUtils.minutesToExcelTime(settings.wochenStundenMinuten)
-        sheet.getRow(6)?.getCell(2)?.setCellValue(wochenStundenDecimal)
-        
-        // Ferienbetreuung in C8
-        sheet.getRow(7)?.getCell(2)?.setCellValue(if (settings.ferienbetreuung) "ja" else "nein")
-        
-        // Arbeitstage/Woche in C9
-        sheet.getRow(8)?.getCell(2)?.setCellValue(settings.arbeitsTageProWoche.toDouble())
-
-        // Überstunden Vorjahr in C10 als Excel-Zeitwert
+        template.cell(sheet, cells.wochenStunden, create = false)?.setCellValue(wochenStundenDecimal)
+
+        // Ferienbetreuung (Standard: C8)
+        template.cell(sheet, cells.ferienbetreuung, create = false)?.setCellValue(if (settings.ferienbetreuung) "ja" else "nein")
+
+        // Arbeitstage/Woche (Standard: C9)
+        template.cell(sheet, cells.arbeitsTage, create = false)?.setCellValue(settings.arbeitsTageProWoche.toDouble())
+
+        // Überstunden Vorjahr (Standard: C10) als Excel-Zeitwert
         // WICHTIG: Wir verwenden die Werte aus der VORLAGE, nicht aus App-Settings!
         // Grund: Beim Jahreswechsel enthält die neue Vorlage die korrekten Überstunden
         val ueberstundenDecimal = TimeUtils.minutesToExcelTime(ueberstundenVorjahr)
-        sheet.getRow(9)?.getCell(2)?.setCellValue(ueberstundenDecimal)
+        template.cell(sheet, cells.ueberstundenVorjahr, create = false)?.setCellValue(ueberstundenDecimal)
 
-        // Übertrag letztes Blatt in C11
+        // Übertrag letztes Blatt (Standard: C11)
         // WICHTIG: Wir verwenden die Werte aus der VORLAGE, nicht aus App-Settings!
         val letzterUebertragDecimal = TimeUtils.minutesToExcelTime(letzterUebertrag)
-        sheet.getRow(10)?.getCell(2)?.setCellValue(letzterUebertragDecimal)
+        template.cell(sheet, cells.letzterUebertrag, create = false)?.setCellValue(letzterUebertragDecimal)
 
-        // Erster Montag im Jahr in C12 (für custom KW-Berechnung)
+        // Erster Montag im Jahr (Standard: C12, für custom KW-Berechnung)
         if (settings.ersterMontagImJahr != null) {
             // Format: DD.MM.YYYY für Excel
             val parts = settings.ersterMontagImJahr.split("-")
             if (parts.size == 3) {
                 val formatted = "${parts[2]}.${parts[1]}.${parts[0]}"
-                sheet.getRow(11)?.getCell(2)?.setCellValue(formatted)
+                template.cell(sheet, cells.ersterMontag, create = false)?.setCellValue(formatted)
             }
         }
     }
 
     /**
-     * Füllt alle KW-Sheets mit Zeiteinträgen
+     * Füllt alle KW-Sheets der Zellen-Karte mit Zeiteinträgen
      */
-    private fun fillAllSheets(workbook: Workbook, entries: List<TimeEntry>) {
-        // Alle 4-Wochen-Blöcke: KW 01-04, 05-08, ..., 49-52
-        val blocks = listOf(
-            1 to 4,
-            5 to 8,
-            9 to 12,
-            13 to 16,
-            17 to 20,
-            21 to 24,
-            25 to 28,
-            29 to 32,
-            33 to 36,
-            37 to 40,
-            41 to 44,
-            45 to 48,
-            49 to 52
-        )
-
-        blocks.forEach { (startKW, endKW) ->
-            val sheetName = "KW ${String.format("%02d", startKW)}-${String.format("%02d", endKW)}"
-            val sheet = workbook.getSheet(sheetName)
-
-            if (sheet != null) {
-                // Filtere Einträge für diesen Block
-                val blockEntries = entries.filter { it.kalenderwoche in startKW..endKW }
-                fillTimeEntries(sheet, blockEntries, startKW, endKW)
+    private fun fillAllSheets(template: TemplateCopy, entries: List<TimeEntry>) {
+        val entriesByWeek = entries.groupBy { it.kalenderwoche }
+
+        template.layout.blocks.forEach { block ->
+            val sheet = template.sheet(block.sheetName) ?: return@forEach
+
+            (block.startKW..block.endKW).forEach { kw ->
+                val weekEntries = entriesByWeek[kw]
+                val rows = block.rowsFor(kw)
+                if (weekEntries != null && rows != null) {
+                    fillWeek(template, sheet, rows, kw, weekEntries)
+                }
             }
         }
     }
 
     /**
-     * Füllt die Zeiteinträge in ein KW-Sheet
+     * Füllt eine Woche in ein KW-Sheet
      *
-     * WICHTIG: Excel-Struktur pro Woche (7 Zeilen):
-     * - Zeile 0-4: Mo-Fr (Arbeitstage)
-     * - Zeile 5: "Sonst" (für Samstag/Sonntagarbeit)
-     * - Zeile 6: Summenzeile (mit KW-Nummer in Spalte A)
+     * WICHTIG: Excel-Struktur pro Woche (Zeilen laut Zellen-Karte):
+     * - dayRows[0-4]: Mo-Fr (Arbeitstage)
+     * - dayRows[5]: "Sonst" (für Samstag/Sonntagarbeit)
+     * - sumRow: Summenzeile (mit KW-Nummer in Spalte A)
      */
-    private fun fillTimeEntries(
+    private fun fillWeek(
+        template: TemplateCopy,
         sheet: Sheet,
-        entries: List<TimeEntry>,
-        startKW: Int,
-        endKW: Int
+        rows: WeekRows,
+        kw: Int,
+        weekEntries: List<TimeEntry>
     ) {
-        // Gruppiere Einträge nach Kalenderwoche
-        val entriesByWeek = entries
-            .filter { it.kalenderwoche in startKW..endKW }
-            .groupBy { it.kalenderwoche }
-            .toSortedMap()
-
-        // Wochenstart-Zeilen in Excel (0-basiert)
-        // Woche 1: Zeilen 7-13 (Mo-Fr, Sonst, Summe)
-        // Woche 2: Zeilen 14-20 (Mo-Fr, Sonst, Summe)
-        // Woche 3: Zeilen 21-27 (Mo-Fr, Sonst, Summe)
-        // Woche 4: Zeilen 28-34 (Mo-Fr, Sonst, Summe)
-        val weekStartRows = listOf(7, 14, 21, 28)
-
-        entriesByWeek.entries.forEach weekLoop@{ (kw, weekEntries) ->
-            // Berechne die Position der Woche im 4-Wochen-Block
-            // Beispiel: KW 25 in Block "KW 25-28" -> Position 0 -> Zeile 7
-            val weekPosition = kw - startKW
-            if (weekPosition < 0 || weekPosition >= weekStartRows.size) return@weekLoop
-
-            val startRow = weekStartRows[weekPosition]
-
-            // WICHTIG: KW-Nummer MUSS überschrieben werden!
-            // Die Excel-Vorlage enthält nur Platzhalter (1,2,3,4) oder Formeln
-            // Wir müssen die echte KW-Nummer basierend auf Custom Week Calculation schreiben
-            val sumRowIndex = startRow + 6
-            val sumRow = sheet.getRow(sumRowIndex)
-            if (sumRow != null) {
-                val kwCell = sumRow.getCell(0) ?: sumRow.createCell(0)
-                kwCell.setCellValue(kw.toDouble())
+        val columns = template.layout.columns
+
+        // WICHTIG: KW-Nummer MUSS überschrieben werden!
+        // Die Excel-Vorlage enthält nur Platzhalter (1,2,3,4) oder Formeln
+        // Wir müssen die echte KW-Nummer basierend auf Custom Week Calculation schreiben
+        template.cell(sheet, rows.sumRow, 0)?.setCellValue(kw.toDouble())
+
+        // Sortiere Einträge nach Datum
+        weekEntries.sortedBy { it.epochDay }.forEach { entry ->
+            // Tatsächlicher Wochentag aus epochDay (1=Mo, 7=So)
+            val dayOfWeek = entry.getDayOfWeek() // 1=Monday, 7=Sunday
+
+            // Zuordnung zu den Tageszeilen:
+            // Mo-Fr (1-5) -> dayRows[0-4]
+            // Sa/So (6, 7) -> dayRows[5] ("Sonst"-Zeile)
+            val dayOffset = when (dayOfWeek) {
+                in 1..5 -> dayOfWeek - 1  // Mo-Fr: 0-4
+                else -> 5  // Sa/So: "Sonst"-Zeile (Index 5)
             }
 
-            // Sortiere Einträge nach Datum
-            weekEntries.sortedBy { it.datum }.forEach { entry ->
-                // Berechne tatsächlichen Wochentag aus Datum (1=Mo, 7=So)
-                val date = LocalDate.parse(entry.datum)
-                val dayOfWeek = date.dayOfWeek.value // 1=Monday, 7=Sunday
-
-                // Zuordnung zu Excel-Zeilen:
-                // Mo (1) -> Zeile 0
-                // Di (2) -> Zeile 1
-                // Mi (3) -> Zeile 2
-                // Do (4) -> Zeile 3
-                // Fr (5) -> Zeile 4
-                // Sa (6) -> Zeile 5 ("Sonst"-Zeile)
-                // So (7) -> Zeile 5 ("Sonst"-Zeile)
-                val dayOffset = when (dayOfWeek) {
-                    in 1..5 -> dayOfWeek - 1  // Mo-Fr: 0-4
-                    else -> 5  // Sa/So: "Sonst"-Zeile (Index 5)
-                }
-
-                val rowIndex = startRow + dayOffset
-                val row = sheet.getRow(rowIndex) ?: return@forEach
-
-                // Spalte C (Index 2): Soll-Zeit
-                if (entry.sollMinuten > 0) {
-                    val cell = row.getCell(2) ?: row.createCell(2)
-                    cell.setCellValue(TimeUtils.minutesToExcelTime(entry.sollMinuten))
-                }
+            val rowIndex = rows.dayRows.getOrNull(dayOffset) ?: return@forEach
+            if (sheet.getRow(rowIndex) == null) return@forEach
 
-                // Spalte D (Index 3): Von (Start)
-                if (entry.startZeit != null) {
-                    val cell = row.getCell(3) ?: row.createCell(3)
-                    cell.setCellValue(TimeUtils.minutesToExcelTime(entry.startZeit))
-                }
+            // Soll-Zeit (Standard: Spalte C)
+            if (entry.sollMinuten > 0) {
+                template.cell(sheet, rowIndex, columns.soll)?.setCellValue(TimeUtils.minutesToExcelTime(entry.sollMinuten))
+            }
 
-                // Spalte E (Index 4): Bis (Ende)
-                if (entry.endZeit != null) {
-                    val cell = row.getCell(4) ?: row.createCell(4)
-                    cell.setCellValue(TimeUtils.minutesToExcelTime(entry.endZeit))
-                }
+            // Von (Standard: Spalte D)
+            if (entry.startZeit != null) {
+                template.cell(sheet, rowIndex, columns.von)?.setCellValue(TimeUtils.minutesToExcelTime(entry.startZeit))
+            }
 
-                // Spalte F (Index 5): Pause
-                if (entry.pauseMinuten > 0) {
-                    val cell = row.getCell(5) ?: row.createCell(5)
-                    cell.setCellValue(TimeUtils.minutesToExcelTime(entry.pauseMinuten))
-                }
+            // Bis (Standard: Spalte E)
+            if (entry.endZeit != null) {
+                template.cell(sheet, rowIndex, columns.bis)?.setCellValue(TimeUtils.minutesToExcelTime(entry.endZeit))
+            }
 
-                // Spalte G (Index 6): Ist - wird von Excel-Formel berechnet!
-                // NICHT überschreiben, Formel bleibt erhalten!
+            // Pause (Standard: Spalte F)
+            if (entry.pauseMinuten > 0) {
+                template.cell(sheet, rowIndex, columns.pause)?.setCellValue(TimeUtils.minutesToExcelTime(entry.pauseMinuten))
+            }
 
-                // Spalte H (Index 7): Typ (U/K/F/AB)
-                if (entry.typ != TimeEntry.TYP_NORMAL) {
-                    val cell = row.getCell(7) ?: row.createCell(7)
-                    cell.setCellValue(entry.typ)
-                }
+            // Ist und Differenz werden von Excel-Formeln berechnet!
+            // NICHT überschreiben, Formeln bleiben erhalten!
 
-                // Spalte I (Index 8): Differenz - wird von Excel-Formel berechnet!
-                // NICHT überschreiben, Formel bleibt erhalten!
+            // Typ U/K/F/AB (Standard: Spalte H)
+            if (entry.typ != TimeEntry.TYP_NORMAL) {
+                template.cell(sheet, rowIndex, columns.typ)?.setCellValue(entry.typ)
+            }
 
-                // Spalte J (Index 9): AZ aus Bereitschaft
-                if (entry.arbeitszeitBereitschaft > 0) {
-                    val cell = row.getCell(9) ?: row.createCell(9)
-                    cell.setCellValue(TimeUtils.minutesToExcelTime(entry.arbeitszeitBereitschaft))
-                }
+            // AZ aus Bereitschaft (Standard: Spalte J)
+            if (entry.arbeitszeitBereitschaft > 0) {
+                template.cell(sheet, rowIndex, columns.bereitschaft)?.setCellValue(TimeUtils.minutesToExcelTime(entry.arbeitszeitBereitschaft))
             }
         }
     }
-    
+
     /**
      * Prüft ob Template-Datei existiert
      */
     fun isTemplateAvailable(): Boolean {
         return try {
-            context.assets.open("ANZ_Template.xlsx").use { true }
+            context.assets.open(TemplateCache.DEFAULT_TEMPLATE).use { true }
         } catch (e: Exception) {
             false
         }
@@ -352,37 +287,11 @@ class ExcelExportManager(private val context: Context) {
         userSettings: UserSettings,
         entries: List<TimeEntry>,
         year: Int,
-        outputStream: java.io.OutputStream
+        outputStream: OutputStream
     ): Boolean = withContext(Dispatchers.IO) {
         try {
-            // 1. Lade Template
-            val templateStream: InputStream = templateManager.getTemplateStream(year)
-                ?: context.assets.open("ANZ_Template.xlsx")
-
-            val workbook = WorkbookFactory.create(templateStream)
-
-            try {
-                // 2. Lese wichtige Werte aus der Vorlage
-                val ueberstundenVorjahr = readUeberstundenVorjahr(workbook)
-                val letzterUebertrag = readLetzterUebertrag(workbook)
-
-                // 3. Fülle Stammangaben
-                fillStammangaben(workbook, userSettings, ueberstundenVorjahr, letzterUebertrag)
-
-                // 4. Fülle ALLE KW-Sheets
-                fillAllSheets(workbook, entries)
-
-                // 5. Formeln zur Neuberechnung markieren
-                workbook.setForceFormulaRecalculation(true)
-
-                // 6. Schreibe direkt in OutputStream
-                workbook.write(outputStream)
-
-                true
-            } finally {
-                workbook.close()
-                templateStream.close()
-            }
+            writeFromTemplate(userSettings, entries, year, outputStream)
+            true
         } catch (e: Exception) {
             android.util.Log.e("ExcelExportManager", "Stream-Export fehlgeschlagen", e)
             false
@@ -9,13 +9,35 @@ import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import org.apache.poi.ss.usermodel.*
-import org.apache.poi.xssf.usermodel.XSSFWorkbook
+import org.apache.poi.xssf.streaming.SXSSFSheet
+import org.apache.poi.xssf.streaming.SXSSFWorkbook
 import java.io.File
 import java.io.FileOutputStream
+import java.io.OutputStream
 import java.time.LocalDate
-
+import java.time.format.DateTimeFormatter
+
+/**
+ * Einfacher Export in Wochenblöcken (ohne Vorlage)
+ *
+ * Geschrieben wird per SXSSFWorkbook: nur die letzten ROW_WINDOW Zeilen liegen im Speicher,
+ * ältere werden in eine temporäre Datei ausgelagert. Die Styles werden einmal pro Datei
+ * angelegt. Zeiträume (auch über mehrere Jahre) werden abschnittsweise geladen, so bleibt
+ * der Speicherbedarf unabhängig von der Länge des Zeitraums.
+ */
 class SimpleExcelExportManager(private val context: Context) {
 
+    companion object {
+        // Zeilen im Speicher, bevor SXSSF auf die temporäre Datei auslagert
+        const val ROW_WINDOW = 100
+
+        // Wochen pro Ladeabschnitt beim Zeitraum-Export
+        private const val CHUNK_WEEKS = 8
+
+        private val HEADERS = listOf("Wochentag", "Soll", "Von", "Bis", "Pause", "Ist", "Typ")
+        private val FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd")
+    }
+
     /**
      * Exportiert Zeiteinträge als einfache Excel-Tabelle in Wochenblöcken
      */
@@ -27,125 +49,158 @@ class SimpleExcelExportManager(private val context: Context) {
         year: Int,
         customFileName: String? = null
     ): File = withContext(Dispatchers.IO) {
+        val outputFile = createOutputFile(customFileName, getExportFileName(year, startKW, endKW))
 
-        val workbook = XSSFWorkbook()
-        val sheet = workbook.createSheet("Arbeitszeiten")
-
-        // Gruppiere Einträge nach Kalenderwoche
-        val entriesByWeek = entries
-            .filter { it.kalenderwoche in startKW..endKW }
-            .groupBy { it.kalenderwoche }
-            .toSortedMap()
-
-        var currentRow = 0
+        FileOutputStream(outputFile).use { outputStream ->
+            writeWeekEntries(entries, startKW, endKW, outputStream)
+        }
 
-        // Styles erstellen
-        val headerStyle = createHeaderStyle(workbook)
-        val timeStyle = createTimeStyle(workbook)
-        val dateHeaderStyle = createDateHeaderStyle(workbook)
+        outputFile
+    }
 
-        // Falls keine Einträge vorhanden sind, zeige Info-Meldung
-        if (entriesByWeek.isEmpty()) {
-            val infoRow = sheet.createRow(currentRow++)
-            infoRow.createCell(0).setCellValue("Keine Zeiteinträge für KW $startKW bis $endKW vorhanden")
+    /**
+     * Exportiert direkt in einen OutputStream (für Cloud-Upload via SAF)
+     */
+    suspend fun exportToStream(
+        userSettings: UserSettings,
+        entries: List<TimeEntry>,
+        startKW: Int,
+        endKW: Int,
+        year: Int,
+        outputStream: OutputStream
+    ): Boolean = withContext(Dispatchers.IO) {
+        try {
+            writeWeekEntries(entries, startKW, endKW, outputStream)
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SimpleExcelExportManager", "Stream-Export fehlgeschlagen", e)
+            false
         }
+    }
 
-        // Für jede Woche einen Block erstellen
-        entriesByWeek.forEach { (kw, weekEntries) ->
-            // Datumsbereich der Woche ermitteln
-            val sortedEntries = weekEntries.sortedBy { it.datum }
-            if (sortedEntries.isNotEmpty()) {
-                val firstDate = try {
-                    LocalDate.parse(sortedEntries.first().datum)
-                } catch (e: Exception) {
-                    LocalDate.now()
-                }
-                val lastDate = try {
-                    LocalDate.parse(sortedEntries.last().datum)
-                } catch (e: Exception) {
-                    LocalDate.now()
-                }
-
-                // Datumsbereich als Überschrift (z.B. "KW 25: 23.06.2025 - 29.06.2025")
-                val dateRangeRow = sheet.createRow(currentRow++)
-                val dateCell = dateRangeRow.createCell(0)
-                dateCell.setCellValue("KW $kw: ${DateUtils.dateToGermanString(firstDate)} - ${DateUtils.dateToGermanString(lastDate)}")
-                dateCell.cellStyle = dateHeaderStyle
-
-                // Spaltenüberschriften
-                val headerRow = sheet.createRow(currentRow++)
-                val headers = listOf("Wochentag", "Soll", "Von", "Bis", "Pause", "Ist", "Typ")
-                headers.forEachIndexed { index, header ->
-                    val cell = headerRow.createCell(index)
-                    cell.setCellValue(header)
-                    cell.cellStyle = headerStyle
-                }
+    /**
+     * Exportiert einen beliebigen Zeitraum (auch über mehrere Jahre) in Wochenblöcken
+     * @param loadEntries Lädt die Einträge eines Abschnitts [von, bis], aufsteigend nach Datum
+     */
+    suspend fun exportRangeToSimpleExcel(
+        from: LocalDate,
+        to: LocalDate,
+        customFileName: String? = null,
+        loadEntries: suspend (LocalDate, LocalDate) -> List<TimeEntry>
+    ): File = withContext(Dispatchers.IO) {
+        val outputFile = createOutputFile(customFileName, getRangeExportFileName(from, to))
 
-                // Daten für jeden Tag der Woche
-                sortedEntries.forEach { entry ->
-                    val dataRow = sheet.createRow(currentRow++)
+        FileOutputStream(outputFile).use { outputStream ->
+            writeRange(from, to, outputStream, loadEntries)
+        }
 
-                    // Wochentag
-                    dataRow.createCell(0).setCellValue(entry.wochentag)
+        outputFile
+    }
 
-                    // Soll
-                    if (entry.sollMinuten > 0) {
-                        val cell = dataRow.createCell(1)
-                        cell.setCellValue(TimeUtils.minutesToTimeString(entry.sollMinuten))
-                        cell.cellStyle = timeStyle
-                    }
+    /**
+     * Zeitraum-Export direkt in einen OutputStream (für Cloud-Upload via SAF)
+     */
+    suspend fun exportRangeToStream(
+        from: LocalDate,
+        to: LocalDate,
+        outputStream: OutputStream,
+        loadEntries: suspend (LocalDate, LocalDate) -> List<TimeEntry>
+    ): Boolean = withContext(Dispatchers.IO) {
+        try {
+            writeRange(from, to, outputStream, loadEntries)
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SimpleExcelExportManager", "Stream-Export fehlgeschlagen", e)
+            false
+        }
+    }
 
-                    // Von
-                    if (entry.startZeit != null) {
-                        val cell = dataRow.createCell(2)
-                        cell.setCellValue(TimeUtils.minutesToTimeString(entry.startZeit))
-                        cell.cellStyle = timeStyle
-                    }
+    /**
+     * Gibt den erwarteten Dateinamen zurück
+     */
+    fun getExportFileName(year: Int, startKW: Int, endKW: Int): String {
+        return "Arbeitszeiten_${year}_KW${String.format("%02d", startKW)}-${String.format("%02d", endKW)}_Einfach.xlsx"
+    }
 
-                    // Bis
-                    if (entry.endZeit != null) {
-                        val cell = dataRow.createCell(3)
-                        cell.setCellValue(TimeUtils.minutesToTimeString(entry.endZeit))
-                        cell.cellStyle = timeStyle
-                    }
+    /**
+     * Dateiname für den Zeitraum-Export (z.B. "Arbeitszeiten_20240101-20251231_Einfach.xlsx")
+     */
+    fun getRangeExportFileName(from: LocalDate, to: LocalDate): String {
+        return "Arbeitszeiten_${from.format(FILE_DATE_FORMAT)}-${to.format(FILE_DATE_FORMAT)}_Einfach.xlsx"
+    }
 
-                    // Pause
-                    if (entry.pauseMinuten > 0) {
-                        val cell = dataRow.createCell(4)
-                        cell.setCellValue(TimeUtils.minutesToTimeString(entry.pauseMinuten))
-                        cell.cellStyle = timeStyle
-                    }
+    private suspend fun writeWeekEntries(
+        entries: List<TimeEntry>,
+        startKW: Int,
+        endKW: Int,
+        outputStream: OutputStream
+    ) {
+        // Gruppiere Einträge nach Kalenderwoche
+        val entriesByWeek = entries
+            .filter { it.kalenderwoche in startKW..endKW }
+            .groupBy { it.kalenderwoche }
+            .toSortedMap()
 
-                    // Ist (berechnet)
-                    if (entry.startZeit != null && entry.endZeit != null) {
-                        val istMinuten = entry.endZeit - entry.startZeit - entry.pauseMinuten
-                        if (istMinuten > 0) {
-                            val cell = dataRow.createCell(5)
-                            cell.setCellValue(TimeUtils.minutesToTimeString(istMinuten))
-                            cell.cellStyle = timeStyle
-                        }
-                    }
+        writeWorkbook(outputStream, "Keine Zeiteinträge für KW $startKW bis $endKW vorhanden") { writer ->
+            entriesByWeek.forEach { (kw, weekEntries) ->
+                writer.writeWeek(kw, weekEntries.sortedBy { it.epochDay })
+            }
+        }
+    }
 
-                    // Typ (wenn nicht NORMAL)
-                    if (entry.typ != TimeEntry.TYP_NORMAL) {
-                        dataRow.createCell(6).setCellValue(entry.typ)
-                    }
+    /**
+     * Lädt den Zeitraum in Abschnitten von CHUNK_WEEKS Wochen (ab Montag, damit keine Woche
+     * geteilt wird) und schreibt jeden Abschnitt sofort. Je KW-Jahr gibt es ein eigenes Blatt,
+     * sobald der Zeitraum mehr als ein Jahr berührt.
+     */
+    private suspend fun writeRange(
+        from: LocalDate,
+        to: LocalDate,
+        outputStream: OutputStream,
+        loadEntries: suspend (LocalDate, LocalDate) -> List<TimeEntry>
+    ) {
+        val emptyMessage = "Keine Zeiteinträge von ${DateUtils.dateToGermanString(from)} " +
+            "bis ${DateUtils.dateToGermanString(to)} vorhanden"
+        val multipleYears = from.year != to.year
+
+        writeWorkbook(outputStream, emptyMessage) { writer ->
+            var chunkStart = DateUtils.getMondayOfWeek(from)
+            while (!chunkStart.isAfter(to)) {
+                val chunkEnd = minOf(chunkStart.plusWeeks(CHUNK_WEEKS.toLong()).minusDays(1), to)
+                val chunk = loadEntries(maxOf(chunkStart, from), chunkEnd)
+
+                chunk.groupBy { it.jahr to it.kalenderwoche }.forEach { (week, weekEntries) ->
+                    if (multipleYears) writer.useSheet("Arbeitszeiten ${week.first}")
+                    writer.writeWeek(week.second, weekEntries.sortedBy { it.epochDay })
                 }
-
-                // Leerzeile zwischen Wochen
-                currentRow++
+                chunkStart = chunkStart.plusWeeks(CHUNK_WEEKS.toLong())
             }
         }
+    }
 
-        // Spaltenbreiten manuell setzen (autoSizeColumn funktioniert nicht auf Android wegen AWT)
-        sheet.setColumnWidth(0, 12 * 256)  // Wochentag: 12 Zeichen
-        sheet.setColumnWidth(1, 8 * 256)   // Soll: 8 Zeichen
-        sheet.setColumnWidth(2, 8 * 256)   // Von: 8 Zeichen
-        sheet.setColumnWidth(3, 8 * 256)   // Bis: 8 Zeichen
-        sheet.setColumnWidth(4, 8 * 256)   // Pause: 8 Zeichen
-        sheet.setColumnWidth(5, 8 * 256)   // Ist: 8 Zeichen
-        sheet.setColumnWidth(6, 10 * 256)  // Typ: 10 Zeichen
+    /**
+     * Legt die Arbeitsmappe an, lässt [fill] die Wochenblöcke schreiben und räumt die
+     * temporären Dateien von SXSSF in jedem Fall wieder weg
+     */
+    private suspend fun writeWorkbook(
+        outputStream: OutputStream,
+        emptyMessage: String,
+        fill: suspend (WeekBlockWriter) -> Unit
+    ) {
+        val workbook = SXSSFWorkbook(ROW_WINDOW)
+        workbook.setCompressTempFiles(true)
+        try {
+            val writer = WeekBlockWriter(workbook)
+            fill(writer)
+            writer.finish(emptyMessage)
+            workbook.write(outputStream)
+        } finally {
+            workbook.dispose()
+            workbook.close()
+        }
+    }
 
+    private fun createOutputFile(customFileName: String?, defaultFileName: String): File {
         // Datei speichern - verwende dedizierten Ordner im Download-Bereich
         val downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS)
             ?: context.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS)
@@ -165,191 +220,149 @@ class SimpleExcelExportManager(private val context: Context) {
                 "${customFileName}.xlsx"
             }
         } else {
-            "Arbeitszeiten_${year}_KW${String.format("%02d", startKW)}-${String.format("%02d", endKW)}_Einfach.xlsx"
+            defaultFileName
         }
-        val outputFile = File(arbeitszeitDir, fileName)
+        return File(arbeitszeitDir, fileName)
+    }
 
-        try {
-            FileOutputStream(outputFile).use { outputStream ->
-                workbook.write(outputStream)
-            }
-        } finally {
-            workbook.close()
+    /**
+     * Schreibt Wochenblöcke fortlaufend in das aktuelle Blatt
+     * Styles werden einmal pro Arbeitsmappe erstellt und für alle Zellen geteilt.
+     */
+    private class WeekBlockWriter(private val workbook: SXSSFWorkbook) {
+
+        private val headerStyle = workbook.createCellStyle().apply {
+            val font = workbook.createFont()
+            font.bold = true
+            setFont(font)
+            fillForegroundColor = IndexedColors.GREY_25_PERCENT.index
+            fillPattern = FillPatternType.SOLID_FOREGROUND
+            borderBottom = BorderStyle.THIN
+            borderTop = BorderStyle.THIN
+            borderLeft = BorderStyle.THIN
+            borderRight = BorderStyle.THIN
         }
 
-        outputFile
-    }
-
-    private fun createHeaderStyle(workbook: XSSFWorkbook) = workbook.createCellStyle().apply {
-        val font = workbook.createFont()
-        font.bold = true
-        setFont(font)
-        fillForegroundColor = IndexedColors.GREY_25_PERCENT.index
-        fillPattern = FillPatternType.SOLID_FOREGROUND
-        borderBottom = BorderStyle.THIN
-        borderTop = BorderStyle.THIN
-        borderLeft = BorderStyle.THIN
-        borderRight = BorderStyle.THIN
-    }
+        private val dateHeaderStyle = workbook.createCellStyle().apply {
+            val font = workbook.createFont()
+            font.bold = true
+            font.fontHeightInPoints = 12
+            setFont(font)
+        }
 
-    private fun createDateHeaderStyle(workbook: XSSFWorkbook) = workbook.createCellStyle().apply {
-        val font = workbook.createFont()
-        font.bold = true
-        font.fontHeightInPoints = 12
-        setFont(font)
-    }
+        private val timeStyle = workbook.createCellStyle().apply {
+            alignment = HorizontalAlignment.RIGHT
+        }
 
-    private fun createTimeStyle(workbook: XSSFWorkbook) = workbook.createCellStyle().apply {
-        alignment = HorizontalAlignment.RIGHT
-    }
+        private var sheet: SXSSFSheet? = null
+        private var currentRow = 0
+        private var weeksWritten = 0
+
+        /**
+         * Wechselt auf das Blatt [name] (wird beim ersten Aufruf angelegt)
+         * Blätter werden nur vorwärts geschrieben - ein bereits verlassenes Blatt bleibt abgeschlossen.
+         */
+        fun useSheet(name: String) {
+            if (sheet?.sheetName == name) return
+            sheet = workbook.createSheet(name).also { setColumnWidths(it) }
+            currentRow = 0
+        }
 
-    /**
-     * Exportiert direkt in einen OutputStream (für Cloud-Upload via SAF)
-     */
-    suspend fun exportToStream(
-        userSettings: UserSettings,
-        entries: List<TimeEntry>,
-        startKW: Int,
-        endKW: Int,
-        year: Int,
-        outputStream: java.io.OutputStream
-    ): Boolean = withContext(Dispatchers.IO) {
-        try {
-            val workbook = XSSFWorkbook()
-            val sheet = workbook.createSheet("Arbeitszeiten")
-
-            // Gruppiere Einträge nach Kalenderwoche
-            val entriesByWeek = entries
-                .filter { it.kalenderwoche in startKW..endKW }
-                .groupBy { it.kalenderwoche }
-                .toSortedMap()
-
-            var currentRow = 0
-
-            // Styles erstellen
-            val headerStyle = createHeaderStyle(workbook)
-            val timeStyle = createTimeStyle(workbook)
-            val dateHeaderStyle = createDateHeaderStyle(workbook)
-
-            // Falls keine Einträge vorhanden sind, zeige Info-Meldung
-            if (entriesByWeek.isEmpty()) {
-                val infoRow = sheet.createRow(currentRow++)
-                infoRow.createCell(0).setCellValue("Keine Zeiteinträge für KW $startKW bis $endKW vorhanden")
+        fun writeWeek(kw: Int, sortedEntries: List<TimeEntry>) {
+            if (sortedEntries.isEmpty()) return
+            val sheet = currentSheet()
+            val firstDate = sortedEntries.first().getDate()
+            val lastDate = sortedEntries.last().getDate()
+
+            // Datumsbereich als Überschrift (z.B. "KW 25: 23.06.2025 - 29.06.2025")
+            val dateCell = sheet.createRow(currentRow++).createCell(0)
+            dateCell.setCellValue("KW $kw: ${DateUtils.dateToGermanString(firstDate)} - ${DateUtils.dateToGermanString(lastDate)}")
+            dateCell.cellStyle = dateHeaderStyle
+
+            // Spaltenüberschriften
+            val headerRow = sheet.createRow(currentRow++)
+            HEADERS.forEachIndexed { index, header ->
+                val cell = headerRow.createCell(index)
+                cell.setCellValue(header)
+                cell.cellStyle = headerStyle
             }
 
-            // Für jede Woche einen Block erstellen
-            entriesByWeek.forEach { (kw, weekEntries) ->
-                // Datumsbereich der Woche ermitteln
-                val sortedEntries = weekEntries.sortedBy { it.datum }
-                if (sortedEntries.isNotEmpty()) {
-                    val firstDate = try {
-                        LocalDate.parse(sortedEntries.first().datum)
-                    } catch (e: Exception) {
-                        LocalDate.now()
-                    }
-                    val lastDate = try {
-                        LocalDate.parse(sortedEntries.last().datum)
-                    } catch (e: Exception) {
-                        LocalDate.now()
-                    }
+            // Daten für jeden Tag der Woche
+            sortedEntries.forEach { entry ->
+                val dataRow = sheet.createRow(currentRow++)
 
-                    // Datumsbereich als Überschrift
-                    val dateRangeRow = sheet.createRow(currentRow++)
-                    val dateCell = dateRangeRow.createCell(0)
-                    dateCell.setCellValue("KW $kw: ${DateUtils.dateToGermanString(firstDate)} - ${DateUtils.dateToGermanString(lastDate)}")
-                    dateCell.cellStyle = dateHeaderStyle
-
-                    // Spaltenüberschriften
-                    val headerRow = sheet.createRow(currentRow++)
-                    val headers = listOf("Wochentag", "Soll", "Von", "Bis", "Pause", "Ist", "Typ")
-                    headers.forEachIndexed { index, header ->
-                        val cell = headerRow.createCell(index)
-                        cell.setCellValue(header)
-                        cell.cellStyle = headerStyle
-                    }
+                // Wochentag
+                dataRow.createCell(0).setCellValue(entry.getWochentagKurz())
+
+                // Soll
+                if (entry.sollMinuten > 0) {
+                    setTime(dataRow, 1, entry.sollMinuten)
+                }
+
+                // Von
+                if (entry.startZeit != null) {
+                    setTime(dataRow, 2, entry.startZeit)
+                }
+
+                // Bis
+                if (entry.endZeit != null) {
+                    setTime(dataRow, 3, entry.endZeit)
+                }
+
+                // Pause
+                if (entry.pauseMinuten > 0) {
+                    setTime(dataRow, 4, entry.pauseMinuten)
+                }
 
-                    // Daten für jeden Tag der Woche
-                    sortedEntries.forEach { entry ->
-                        val dataRow = sheet.createRow(currentRow++)
-
-                        // Wochentag
-                        dataRow.createCell(0).setCellValue(entry.wochentag)
-
-                        // Soll
-                        if (entry.sollMinuten > 0) {
-                            val cell = dataRow.createCell(1)
-                            cell.setCellValue(TimeUtils.minutesToTimeString(entry.sollMinuten))
-                            cell.cellStyle = timeStyle
-                        }
-
-                        // Von
-                        if (entry.startZeit != null) {
-                            val cell = dataRow.createCell(2)
-                            cell.setCellValue(TimeUtils.minutesToTimeString(entry.startZeit))
-                            cell.cellStyle = timeStyle
-                        }
-
-                        // Bis
-                        if (entry.endZeit != null) {
-                            val cell = dataRow.createCell(3)
-                            cell.setCellValue(TimeUtils.minutesToTimeString(entry.endZeit))
-                            cell.cellStyle = timeStyle
-                        }
-
-                        // Pause
-                        if (entry.pauseMinuten > 0) {
-                            val cell = dataRow.createCell(4)
-                            cell.setCellValue(TimeUtils.minutesToTimeString(entry.pauseMinuten))
-                            cell.cellStyle = timeStyle
-                        }
-
-                        // Ist (berechnet)
-                        if (entry.startZeit != null && entry.endZeit != null) {
-                            val istMinuten = entry.endZeit - entry.startZeit - entry.pauseMinuten
-                            if (istMinuten > 0) {
-                                val cell = dataRow.createCell(5)
-                                cell.setCellValue(TimeUtils.minutesToTimeString(istMinuten))
-                                cell.cellStyle = timeStyle
-                            }
-                        }
-
-                        // Typ (wenn nicht NORMAL)
-                        if (entry.typ != TimeEntry.TYP_NORMAL) {
-                            dataRow.createCell(6).setCellValue(entry.typ)
-                        }
+                // Ist (berechnet)
+                if (entry.startZeit != null && entry.endZeit != null) {
+                    val istMinuten = entry.endZeit - entry.startZeit - entry.pauseMinuten
+                    if (istMinuten > 0) {
+                        setTime(dataRow, 5, istMinuten)
                     }
+                }
 
-                    // Leerzeile zwischen Wochen
-                    currentRow++
+                // Typ (wenn nicht NORMAL)
+                if (entry.typ != TimeEntry.TYP_NORMAL) {
+                    dataRow.createCell(6).setCellValue(entry.typ)
                 }
             }
 
-            // Spaltenbreiten manuell setzen
-            sheet.setColumnWidth(0, 12 * 256)
-            sheet.setColumnWidth(1, 8 * 256)
-            sheet.setColumnWidth(2, 8 * 256)
-            sheet.setColumnWidth(3, 8 * 256)
-            sheet.setColumnWidth(4, 8 * 256)
-            sheet.setColumnWidth(5, 8 * 256)
-            sheet.setColumnWidth(6, 10 * 256)
-
-            // Schreibe direkt in OutputStream
-            try {
-                workbook.write(outputStream)
-                true
-            } finally {
-                workbook.close()
+            // Leerzeile zwischen Wochen
+            currentRow++
+            weeksWritten++
+        }
+
+        /**
+         * Falls keine Einträge vorhanden sind, Info-Meldung in ein (leeres) Blatt schreiben
+         */
+        fun finish(emptyMessage: String) {
+            if (weeksWritten > 0) return
+            currentSheet().createRow(currentRow++).createCell(0).setCellValue(emptyMessage)
+        }
+
+        private fun currentSheet(): SXSSFSheet {
+            return sheet ?: workbook.createSheet("Arbeitszeiten").also {
+                setColumnWidths(it)
+                sheet = it
             }
-        } catch (e: Exception) {
-            android.util.Log.e("SimpleExcelExportManager", "Stream-Export fehlgeschlagen", e)
-            false
         }
-    }
 
-    /**
-     * Gibt den erwarteten Dateinamen zurück
-     */
-    fun getExportFileName(year: Int, startKW: Int, endKW: Int): String {
-        return "Arbeitszeiten_${year}_KW${String.format("%02d", startKW)}-${String.format("%02d", endKW)}_Einfach.xlsx"
+        private fun setTime(row: Row, column: Int, minutes: Int) {
+            val cell = row.createCell(column)
+            cell.setCellValue(TimeUtils.minutesToTimeString(minutes))
+            cell.cellStyle = timeStyle
+        }
+
+        // Spaltenbreiten manuell setzen (autoSizeColumn funktioniert nicht auf Android wegen AWT)
+        private fun setColumnWidths(sheet: Sheet) {
+            sheet.setColumnWidth(0, 12 * 256)  // Wochentag: 12 Zeichen
+            sheet.setColumnWidth(1, 8 * 256)   // Soll: 8 Zeichen
+            sheet.setColumnWidth(2, 8 * 256)   // Von: 8 Zeichen
+            sheet.setColumnWidth(3, 8 * 256)   // Bis: 8 Zeichen
+            sheet.setColumnWidth(4, 8 * 256)   // Pause: 8 Zeichen
+            sheet.setColumnWidth(5, 8 * 256)   // Ist: 8 Zeichen
+            sheet.setColumnWidth(6, 10 * 256)  // Typ: 10 Zeichen
+        }
     }
 }
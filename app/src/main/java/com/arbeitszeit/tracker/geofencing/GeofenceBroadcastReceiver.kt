@@ -13,7 +13,9 @@ import androidx.core.app.NotificationCompat
 import com.arbeitszeit.tracker.MainActivity
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
-import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
 import com.arbeitszeit.tracker.utils.TimeUtils
 import com.arbeitszeit.tracker.widget.TimeStampWidget
 import com.google.android.gms.location.Geofence
@@ -90,20 +92,9 @@ class GeofenceBroadcastReceiver : BroadcastReceiver() {
     }
 
     private fun handleStartWork(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                timeEntryDao.update(entry.copy(
-                    startZeit = currentTime,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.start(database, StampEvent.SOURCE_GEOFENCE)
 
             // Widget aktualisieren
             refreshWidget(context)
@@ -122,20 +113,9 @@ class GeofenceBroadcastReceiver : BroadcastReceiver() {
     }
 
     private fun handleStopWork(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                timeEntryDao.update(entry.copy(
-                    endZeit = currentTime,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.end(database, StampEvent.SOURCE_GEOFENCE)
 
             // Widget aktualisieren
             refreshWidget(context)
@@ -2,15 +2,31 @@ package com.arbeitszeit.tracker.import
 
 import android.content.Context
 import android.net.Uri
+import android.provider.DocumentsContract
+import android.provider.OpenableColumns
 import com.arbeitszeit.tracker.data.entity.TimeEntry
 import com.arbeitszeit.tracker.data.entity.UserSettings
+import com.arbeitszeit.tracker.template.DayColumns
+import com.arbeitszeit.tracker.template.StammangabenCells
+import com.arbeitszeit.tracker.template.TemplateLayout
+import com.arbeitszeit.tracker.template.WeekBlock
+import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.TimeUtils
+import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.withContext
-import org.apache.poi.ss.usermodel.CellType
-import org.apache.poi.ss.usermodel.Row
-import org.apache.poi.ss.usermodel.Sheet
-import org.apache.poi.ss.usermodel.WorkbookFactory
+import org.apache.poi.ss.usermodel.DateUtil
+import org.apache.poi.ss.util.CellAddress
+import java.io.File
+import java.io.IOException
 import java.time.LocalDate
 import java.time.format.DateTimeFormatter
 
@@ -19,148 +35,348 @@ import java.time.format.DateTimeFormatter
  */
 class ExcelImportManager(private val context: Context) {
 
+    companion object {
+        // Gemeinsam für alle Imports: höchstens so viele Dateien gleichzeitig wie Kerne
+        @OptIn(ExperimentalCoroutinesApi::class)
+        private val parseDispatcher: CoroutineDispatcher =
+            Dispatchers.IO.limitedParallelism(Runtime.getRuntime().availableProcessors())
+
+        private const val XLSX_MIME_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
+    }
+
     /**
      * Importiert eine Excel-Datei (ANZ_Template Format)
      *
      * @param uri URI der zu importierenden Excel-Datei
      * @param importStammdaten Sollen Stammdaten auch importiert werden?
+     * @param onProgress Fortschritt beim Lesen der Blätter
      * @return ImportResult mit importierten Daten
      */
     suspend fun importFromExcel(
         uri: Uri,
-        importStammdaten: Boolean = true
+        importStammdaten: Boolean = true,
+        onProgress: (ImportProgress) -> Unit = {}
     ): ImportResult = withContext(Dispatchers.IO) {
 
-        val entries = mutableListOf<TimeEntry>()
         var userSettings: UserSettings? = null
 
         try {
-            context.contentResolver.openInputStream(uri)?.use { inputStream ->
-                val workbook = WorkbookFactory.create(inputStream)
+            val entries = streamFromExcel(
+                uri = uri,
+                importStammdaten = importStammdaten,
+                onStammdaten = { userSettings = it },
+                onProgress = onProgress
+            ).toList()
 
-                // Debug: Liste alle Sheets auf
-                android.util.Log.d("ExcelImport", "Excel hat ${workbook.numberOfSheets} Sheets:")
-                for (i in 0 until workbook.numberOfSheets) {
-                    android.util.Log.d("ExcelImport", "  Sheet $i: ${workbook.getSheetAt(i).sheetName}")
-                }
+            android.util.Log.d("ExcelImport", "Import abgeschlossen: ${entries.size} Einträge, userSettings=${if (userSettings != null) "vorhanden" else "null"}")
 
-                // 1. Lese Stammdaten wenn gewünscht (ZUERST, um ersterMontagImJahr zu haben)
-                if (importStammdaten) {
-                    android.util.Log.d("ExcelImport", "Versuche Stammangaben-Sheet zu lesen...")
+            ImportResult.Success(
+                entries = entries,
+                userSettings = userSettings,
+                entriesCount = entries.size
+            )
 
-                    // Suche Sheet case-insensitive (kann "Stammangaben" oder "stammangaben" sein)
-                    val stammdatenSheet = (0 until workbook.numberOfSheets)
-                        .map { workbook.getSheetAt(it) }
-                        .firstOrNull { it.sheetName.equals("stammangaben", ignoreCase = true) }
+        } catch (e: Exception) {
+            android.util.Log.e("ExcelImport", "Import-Fehler: ${e.message}", e)
+            ImportResult.Error("Import fehlgeschlagen: ${e.message}")
+        }
+    }
 
-                    userSettings = readStammdaten(stammdatenSheet)
-                    if (userSettings == null) {
-                        android.util.Log.w("ExcelImport", "Stammangaben konnten nicht gelesen werden!")
+    /**
+     * Importiert mehrere Excel-Dateien (z.B. alle Jahres-Arbeitsmappen eines Ordners)
+     *
+     * Die Dateien werden parallel gelesen (begrenzt auf die Anzahl der Kerne) und danach
+     * deterministisch zusammengeführt: Gibt es einen Tag in mehreren Dateien, gewinnt die Datei
+     * mit dem neuesten Änderungsdatum (bei Gleichstand der Dateiname, dann die Auswahlreihenfolge).
+     * Abweichende Tage werden als Konflikte gemeldet. Die Stammdaten kommen aus der neuesten Datei.
+     *
+     * @param onProgress Gesamtfortschritt über alle Dateien (0..1)
+     * @return ImportResult mit den zusammengeführten Daten; schlägt eine Datei fehl, der Fehler
+     */
+    suspend fun importFromExcelFiles(
+        uris: List<Uri>,
+        importStammdaten: Boolean = true,
+        onProgress: (Float) -> Unit = {}
+    ): ImportResult = withContext(Dispatchers.IO) {
+        try {
+            val fractions = FloatArray(uris.size)
+            val files = coroutineScope {
+                uris.mapIndexed { index, uri ->
+                    async {
+                        readFile(index, uri, importStammdaten) { progress ->
+                            val total = synchronized(fractions) {
+                                fractions[index] = progress.fraction
+                                fractions.sum()
+                            }
+                            onProgress(total / uris.size)
+                        }
                     }
-                } else {
-                    android.util.Log.d("ExcelImport", "importStammdaten=false, überspringe Stammangaben")
-                }
+                }.awaitAll()
+            }
 
-                // 2. Lese alle KW-Sheets mit der custom week calculation
-                // Sheets: "KW 01-04", "KW 05-08", "KW 09-12", etc.
-                val ersterMontag = userSettings?.ersterMontagImJahr
-                for (i in 0 until workbook.numberOfSheets) {
-                    val sheet = workbook.getSheetAt(i)
-                    val sheetName = sheet.sheetName
+            mergeFiles(files).also {
+                android.util.Log.d("ExcelImport", "Import von ${files.size} Dateien abgeschlossen: " +
+                        "${it.entriesCount} Einträge, ${it.conflicts.size} Konflikte")
+            }
 
-                    // Nur KW-Sheets verarbeiten
-                    if (sheetName.startsWith("KW ")) {
-                        entries.addAll(readTimeEntriesFromSheet(sheet, ersterMontag))
-                    }
+        } catch (e: Exception) {
+            android.util.Log.e("ExcelImport", "Import-Fehler: ${e.message}", e)
+            ImportResult.Error("Import fehlgeschlagen: ${e.message}")
+        }
+    }
+
+    /**
+     * Alle .xlsx-Dateien direkt in einem per Storage Access Framework gewählten Ordner
+     * Excel-Sperrdateien (~$...) werden übersprungen.
+     */
+    suspend fun listExcelFiles(treeUri: Uri): List<Uri> = withContext(Dispatchers.IO) {
+        val childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+            treeUri,
+            DocumentsContract.getTreeDocumentId(treeUri)
+        )
+        val projection = arrayOf(
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE
+        )
+
+        val files = mutableListOf<Pair<String, Uri>>()
+        context.contentResolver.query(childrenUri, projection, null, null, null)?.use { cursor ->
+            while (cursor.moveToNext()) {
+                val documentId = cursor.getString(0)
+                val name = cursor.getString(1) ?: continue
+                val mimeType = cursor.getString(2)
+                val isExcel = mimeType == XLSX_MIME_TYPE || name.endsWith(".xlsx", ignoreCase = true)
+                if (isExcel && !name.startsWith("~$")) {
+                    files.add(name to DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId))
                 }
+            }
+        }
+        files.sortedBy { it.first.lowercase() }.map { it.second }
+    }
+
+    /**
+     * Liest eine Datei vollständig ein (läuft über streamFromExcel auf dem begrenzten Dispatcher)
+     */
+    private suspend fun readFile(
+        order: Int,
+        uri: Uri,
+        importStammdaten: Boolean,
+        onProgress: (ImportProgress) -> Unit
+    ): ImportedFile {
+        val (name, lastModified) = queryFileInfo(uri)
+        var userSettings: UserSettings? = null
+        var modifiedAt: Long? = null
+
+        val entries = try {
+            streamFromExcel(
+                uri = uri,
+                importStammdaten = importStammdaten,
+                onStammdaten = { userSettings = it },
+                onModifiedAt = { modifiedAt = it },
+                onProgress = onProgress
+            ).toList()
+        } catch (e: Exception) {
+            throw IOException("$name: ${e.message}", e)
+        }
 
-                workbook.close()
+        return ImportedFile(
+            order = order,
+            name = name,
+            modifiedAt = modifiedAt ?: lastModified ?: 0L,
+            userSettings = userSettings,
+            entries = entries
+        )
+    }
+
+    /**
+     * Führt die gelesenen Dateien zusammen - unabhängig davon, welche Datei zuerst fertig war
+     */
+    private fun mergeFiles(files: List<ImportedFile>): ImportResult.Success {
+        // Älteste Datei zuerst, neuere überschreiben
+        val ordered = files.sortedWith(compareBy<ImportedFile>({ it.modifiedAt }, { it.name }, { it.order }))
+
+        val winners = HashMap<Int, Pair<ImportedFile, TimeEntry>>()
+        val conflicts = HashMap<Int, ImportConflict>()
+        ordered.forEach { file ->
+            file.entries.forEach { entry ->
+                val previous = winners.put(entry.epochDay, file to entry)
+                if (previous != null && previous.first !== file && !hasSameContent(previous.second, entry)) {
+                    conflicts[entry.epochDay] = ImportConflict(
+                        datum = entry.datum,
+                        keptFile = file.name,
+                        discardedFiles = conflicts[entry.epochDay]?.discardedFiles.orEmpty() + previous.first.name
+                    )
+                }
             }
+        }
 
-            android.util.Log.d("ExcelImport", "Import abgeschlossen: ${entries.size} Einträge, userSettings=${if (userSettings != null) "vorhanden" else "null"}")
+        val entries = winners.values.map { it.second }.sortedBy { it.epochDay }
+        return ImportResult.Success(
+            entries = entries,
+            userSettings = ordered.lastOrNull { it.userSettings != null }?.userSettings,
+            entriesCount = entries.size,
+            filesCount = files.size,
+            conflicts = conflicts.values.sortedBy { it.datum }
+        )
+    }
 
-            ImportResult.Success(
-                entries = entries,
-                userSettings = userSettings,
-                entriesCount = entries.size
-            )
+    private fun hasSameContent(a: TimeEntry, b: TimeEntry): Boolean {
+        return a.startZeit == b.startZeit &&
+                a.endZeit == b.endZeit &&
+                a.pauseMinuten == b.pauseMinuten &&
+                a.sollMinuten == b.sollMinuten &&
+                a.typ == b.typ &&
+                a.notiz == b.notiz &&
+                a.arbeitszeitBereitschaft == b.arbeitszeitBereitschaft
+    }
 
+    /**
+     * Anzeigename und Änderungsdatum laut Dokumenten-Anbieter (soweit vorhanden)
+     */
+    private fun queryFileInfo(uri: Uri): Pair<String, Long?> {
+        val fallbackName = uri.lastPathSegment?.substringAfterLast('/') ?: uri.toString()
+        return try {
+            context.contentResolver.query(
+                uri,
+                arrayOf(OpenableColumns.DISPLAY_NAME, DocumentsContract.Document.COLUMN_LAST_MODIFIED),
+                null, null, null
+            )?.use { cursor ->
+                if (!cursor.moveToFirst()) return@use null
+                val name = cursor.getString(0) ?: fallbackName
+                val lastModified = if (cursor.isNull(1)) null else cursor.getLong(1).takeIf { it > 0 }
+                name to lastModified
+            } ?: (fallbackName to null)
         } catch (e: Exception) {
-            android.util.Log.e("ExcelImport", "Import-Fehler: ${e.message}", e)
-            ImportResult.Error("Import fehlgeschlagen: ${e.message}")
+            // Anbieter ohne Änderungsdatum-Spalte
+            fallbackName to null
         }
     }
 
+    /**
+     * Liest eine Excel-Datei gestreamt (XSSF-Event-Modell statt DOM)
+     *
+     * Es werden nur das Stammangaben-Sheet und die KW-Sheets gelesen, jeweils nur der Bereich der
+     * Zellen-Karte (siehe XlsxStreamReader). Die Einträge werden danach Block für Block ausgegeben.
+     *
+     * @param onStammdaten Stammdaten der Datei (null wenn nicht gewünscht oder nicht lesbar),
+     *                     wird vor dem ersten Eintrag aufgerufen
+     * @param onModifiedAt Letzte Änderung laut Dokumenteigenschaften (null wenn nicht gesetzt)
+     * @param onProgress Fortschritt beim Lesen der Blätter
+     */
+    fun streamFromExcel(
+        uri: Uri,
+        importStammdaten: Boolean = true,
+        onStammdaten: (UserSettings?) -> Unit = {},
+        onModifiedAt: (Long?) -> Unit = {},
+        onProgress: (ImportProgress) -> Unit = {}
+    ): Flow<TimeEntry> = flow {
+        // OPCPackage braucht eine Datei für Direktzugriff - Kopie im Cache
+        val file = File.createTempFile("import", ".xlsx", context.cacheDir)
+        try {
+            val inputStream = context.contentResolver.openInputStream(uri)
+                ?: throw IOException("Datei konnte nicht geöffnet werden")
+            inputStream.use { input ->
+                file.outputStream().use { output -> input.copyTo(output) }
+            }
+
+            val reader = XlsxStreamReader(file, TemplateLayout.MAX_ROWS, TemplateLayout.MAX_COLUMNS)
+            onModifiedAt(reader.modifiedAt())
+            val wanted = reader.sheetNames().filter { name ->
+                name.equals("stammangaben", ignoreCase = true) || TemplateLayout.parseBlockName(name) != null
+            }.toSet()
+            android.util.Log.d("ExcelImport", "Lese ${wanted.size} Sheets: $wanted")
+
+            var sheetsRead = 0
+            onProgress(ImportProgress(sheetsRead, wanted.size))
+            val grids = reader.readSheets({ it in wanted }) {
+                sheetsRead++
+                onProgress(ImportProgress(sheetsRead, wanted.size))
+            }.associateBy { it.sheetName }
+
+            // Zellen-Karte der Datei (Blöcke, Tageszeilen, Spalten, Stammangaben)
+            val layout = TemplateLayout.analyze(grids.values.toList())
+
+            // 1. Lese Stammdaten (ZUERST, um ersterMontagImJahr zu haben)
+            // Der erste Montag wird auch ohne Stammdaten-Import für die Datumsberechnung gebraucht
+            val userSettings = readStammdaten(grids[layout.stammangaben.sheetName], layout.stammangaben)
+            if (userSettings == null) android.util.Log.w("ExcelImport", "Stammangaben konnten nicht gelesen werden!")
+            if (!importStammdaten) android.util.Log.d("ExcelImport", "importStammdaten=false, Stammangaben nur für Datumsberechnung")
+            onStammdaten(if (importStammdaten) userSettings else null)
+
+            // 2. Lese alle KW-Sheets der Zellen-Karte mit der custom week calculation
+            // Sheets: "KW 01-04", "KW 05-08", ..., "KW 49-52" bzw. "KW 49-53"
+            val ersterMontag = userSettings?.ersterMontagImJahr
+            val year = getYearOfWorkbook(ersterMontag)
+            layout.blocks.forEach { block ->
+                val grid = grids[block.sheetName] ?: return@forEach
+                readTimeEntriesFromSheet(grid, block, layout.columns, year, ersterMontag).forEach { emit(it) }
+            }
+        } finally {
+            file.delete()
+        }
+    }.flowOn(parseDispatcher)
+
     /**
      * Liest Stammdaten aus dem Stammangaben-Sheet
      */
-    private fun readStammdaten(sheet: Sheet?): UserSettings? {
+    private fun readStammdaten(sheet: SheetGrid?, cells: StammangabenCells): UserSettings? {
         if (sheet == null) {
             android.util.Log.w("ExcelImport", "Stammangaben sheet nicht gefunden!")
             return null
         }
 
         try {
-            // B3: Name
-            val name = sheet.getRow(2)?.getCell(1)?.stringCellValue ?: ""
+            // Name (Standard: B3)
+            val name = sheet.text(cells.name) ?: ""
 
-            // B4: Einrichtung
-            val einrichtung = sheet.getRow(3)?.getCell(1)?.stringCellValue ?: ""
+            // Einrichtung (Standard: B4)
+            val einrichtung = sheet.text(cells.einrichtung) ?: ""
 
-            // C5: Arbeitsumfang % (als Dezimal: 0.93 = 93%)
-            val arbeitsumfangDecimal = sheet.getRow(4)?.getCell(2)?.numericCellValue ?: 1.0
+            // Arbeitsumfang % (Standard: C5, als Dezimal: 0.93 = 93%)
+            val arbeitsumfangDecimal = sheet.number(cells.arbeitsumfang) ?: 1.0
             val arbeitsumfangProzent = (arbeitsumfangDecimal * 100).toInt()
 
-            // C7: Wochenstunden (Excel-Zeitwert)
-            val wochenStundenDecimal = sheet.getRow(6)?.getCell(2)?.numericCellValue ?: 0.0
+            // Wochenstunden (Standard: C7, Excel-Zeitwert)
+            val wochenStundenDecimal = sheet.number(cells.wochenStunden) ?: 0.0
             val wochenStundenMinuten = TimeUtils.excelTimeToMinutes(wochenStundenDecimal)
 
-            // C8: Ferienbetreuung
-            val ferienbetreuungStr = sheet.getRow(7)?.getCell(2)?.stringCellValue ?: "nein"
+            // Ferienbetreuung (Standard: C8)
+            val ferienbetreuungStr = sheet.text(cells.ferienbetreuung) ?: "nein"
             val ferienbetreuung = ferienbetreuungStr.lowercase() == "ja"
 
-            // C9: Arbeitstage/Woche
-            val arbeitsTageProWoche = sheet.getRow(8)?.getCell(2)?.numericCellValue?.toInt() ?: 5
+            // Arbeitstage/Woche (Standard: C9)
+            val arbeitsTageProWoche = sheet.number(cells.arbeitsTage)?.toInt() ?: 5
 
-            // C10: Überstunden Vorjahr (Excel-Zeitwert)
-            val ueberstundenDecimal = sheet.getRow(9)?.getCell(2)?.numericCellValue ?: 0.0
+            // Überstunden Vorjahr (Standard: C10, Excel-Zeitwert)
+            val ueberstundenDecimal = sheet.number(cells.ueberstundenVorjahr) ?: 0.0
             val ueberstundenVorjahrMinuten = TimeUtils.excelTimeToMinutes(ueberstundenDecimal)
 
-            // C11: Übertrag letztes Blatt (Excel-Zeitwert)
-            val letzterUebertragDecimal = sheet.getRow(10)?.getCell(2)?.numericCellValue ?: 0.0
+            // Übertrag letztes Blatt (Standard: C11, Excel-Zeitwert)
+            val letzterUebertragDecimal = sheet.number(cells.letzterUebertrag) ?: 0.0
             val letzterUebertragMinuten = TimeUtils.excelTimeToMinutes(letzterUebertragDecimal)
 
-            // C12: Erster Montag im Jahr (DD.MM.YYYY -> yyyy-MM-dd)
+            // Erster Montag im Jahr (Standard: C12, DD.MM.YYYY -> yyyy-MM-dd)
             var ersterMontagImJahr: String? = null
-            val ersterMontagCell = sheet.getRow(11)?.getCell(2)
-            if (ersterMontagCell != null) {
-                try {
-                    when (ersterMontagCell.cellType) {
-                        CellType.STRING -> {
-                            // Als String gespeichert: "01.01.2025"
-                            val ersterMontagStr = ersterMontagCell.stringCellValue
-                            if (ersterMontagStr.isNotBlank()) {
-                                val parts = ersterMontagStr.split(".")
-                                if (parts.size == 3) {
-                                    val tag = parts[0].padStart(2, '0')
-                                    val monat = parts[1].padStart(2, '0')
-                                    val jahr = parts[2]
-                                    ersterMontagImJahr = "$jahr-$monat-$tag"
-                                }
-                            }
-                        }
-                        CellType.NUMERIC -> {
-                            // Als Datum gespeichert (Excel-Datumswert)
-                            val date = ersterMontagCell.localDateTimeCellValue.toLocalDate()
-                            ersterMontagImJahr = date.format(DateTimeFormatter.ISO_LOCAL_DATE)
-                        }
-                        else -> {
-                            android.util.Log.w("ExcelImport", "Erster Montag hat unerwarteten Cell-Type: ${ersterMontagCell.cellType}")
-                        }
+            try {
+                val ersterMontagStr = sheet.text(cells.ersterMontag)
+                val ersterMontagNum = sheet.number(cells.ersterMontag)
+                if (!ersterMontagStr.isNullOrBlank()) {
+                    // Als String gespeichert: "01.01.2025"
+                    val parts = ersterMontagStr.trim().split(".")
+                    if (parts.size == 3) {
+                        val tag = parts[0].padStart(2, '0')
+                        val monat = parts[1].padStart(2, '0')
+                        val jahr = parts[2]
+                        ersterMontagImJahr = "$jahr-$monat-$tag"
                     }
-                } catch (e: Exception) {
-                    android.util.Log.e("ExcelImport", "Fehler beim Lesen des ersten Montags: ${e.message}")
+                } else if (ersterMontagNum != null) {
+                    // Als Datum gespeichert (Excel-Datumswert)
+                    val date = DateUtil.getLocalDateTime(ersterMontagNum).toLocalDate()
+                    ersterMontagImJahr = date.format(DateTimeFormatter.ISO_LOCAL_DATE)
                 }
+            } catch (e: Exception) {
+                android.util.Log.e("ExcelImport", "Fehler beim Lesen des ersten Montags: ${e.message}")
             }
 
             val settings = UserSettings(
@@ -192,48 +408,30 @@ class ExcelImportManager(private val context: Context) {
     /**
      * Liest Zeiteinträge aus einem KW-Sheet
      *
-     * Excel-Struktur pro Woche (7 Zeilen):
-     * - Zeile 0-4: Mo-Fr (Arbeitstage)
-     * - Zeile 5: "Sonst" (für Samstag/Sonntagarbeit)
-     * - Zeile 6: Summenzeile (mit KW-Nummer in Spalte A)
+     * Excel-Struktur pro Woche (Zeilen laut Zellen-Karte):
+     * - dayRows[0-4]: Mo-Fr (Arbeitstage)
+     * - dayRows[5]: "Sonst" (für Samstag/Sonntagarbeit)
+     * - sumRow: Summenzeile (mit KW-Nummer in Spalte A)
      */
-    private fun readTimeEntriesFromSheet(sheet: Sheet, ersterMondagImJahr: String?): List<TimeEntry> {
+    private fun readTimeEntriesFromSheet(
+        sheet: SheetGrid,
+        block: WeekBlock,
+        columns: DayColumns,
+        year: Int,
+        ersterMondagImJahr: String?
+    ): List<TimeEntry> {
         val entries = mutableListOf<TimeEntry>()
 
-        // Wochenstart-Zeilen in Excel (0-basiert)
-        // Woche 1: Zeilen 7-13 (Mo-Fr, Sonst, Summe)
-        // Woche 2: Zeilen 14-20 (Mo-Fr, Sonst, Summe)
-        // Woche 3: Zeilen 21-27 (Mo-Fr, Sonst, Summe)
-        // Woche 4: Zeilen 28-34 (Mo-Fr, Sonst, Summe)
-        val weekStartRows = listOf(7, 14, 21, 28)
-
-        for ((weekIndex, startRow) in weekStartRows.withIndex()) {
-            // Lese KW-Nummer aus Summenzeile (startRow + 6, Spalte A)
-            val sumRowIndex = startRow + 6
-            val kwRow = sheet.getRow(sumRowIndex)
-            val kw = kwRow?.getCell(0)?.numericCellValue?.toInt() ?: continue
+        for ((weekIndex, rows) in block.weeks.withIndex()) {
+            // KW-Nummer aus der Summenzeile (Spalte A), sonst Position im Block
+            val kw = sheet.number(rows.sumRow, 0)?.toInt()
+                ?.takeIf { it in 1..53 }
+                ?: (block.startKW + weekIndex)
 
             // Lese 5 Arbeitstage (Mo-Fr) + "Sonst"-Zeile
-            for (dayIndex in 0 until 6) {
-                val rowIndex = startRow + dayIndex
-                val row = sheet.getRow(rowIndex) ?: continue
-
-                // dayIndex 0-4: Mo-Fr
-                // dayIndex 5: "Sonst" (Samstag/Sonntag)
-                if (dayIndex < 5) {
-                    // Normale Arbeitstage Mo-Fr
-                    val entry = readTimeEntryFromRow(row, kw, dayIndex, ersterMondagImJahr)
-                    if (entry != null) {
-                        entries.add(entry)
-                    }
-                } else {
-                    // "Sonst"-Zeile: Kann Samstag- oder Sonntagarbeit enthalten
-                    // Wir lesen sie als Samstag (dayIndex 5)
-                    val entry = readTimeEntryFromRow(row, kw, dayIndex, ersterMondagImJahr)
-                    if (entry != null) {
-                        entries.add(entry)
-                    }
-                }
+            // dayIndex 5: "Sonst" kann Samstag- oder Sonntagarbeit enthalten, wir lesen sie als Samstag
+            rows.dayRows.forEachIndexed { dayIndex, rowIndex ->
+                readTimeEntryFromRow(sheet, rowIndex, columns, year, kw, dayIndex, ersterMondagImJahr)?.let { entries.add(it) }
             }
         }
 
@@ -243,51 +441,52 @@ class ExcelImportManager(private val context: Context) {
     /**
      * Liest einen einzelnen Zeiteintrag aus einer Excel-Zeile
      */
-    private fun readTimeEntryFromRow(row: Row, kw: Int, dayIndex: Int, ersterMondagImJahr: String?): TimeEntry? {
+    private fun readTimeEntryFromRow(
+        sheet: SheetGrid,
+        rowIndex: Int,
+        columns: DayColumns,
+        year: Int,
+        kw: Int,
+        dayIndex: Int,
+        ersterMondagImJahr: String?
+    ): TimeEntry? {
         try {
             // Berechne Datum aus KW und Tag
-            val year = java.time.Year.now().value // TODO: Jahr aus Dateiname oder Sheet extrahieren
             val date = getDateFromWeekAndDay(year, kw, dayIndex, ersterMondagImJahr)
             val dateString = date.format(DateTimeFormatter.ISO_LOCAL_DATE)
-            val weekday = getWeekdayShort(date.dayOfWeek.value)
 
-            // Spalte C (Index 2): Soll-Zeit
-            val sollDecimal = row.getCell(2)?.numericCellValue ?: 0.0
+            // Soll-Zeit
+            val sollDecimal = sheet.number(rowIndex, columns.soll) ?: 0.0
             val sollMinuten = TimeUtils.excelTimeToMinutes(sollDecimal)
 
-            // Spalte D (Index 3): Von (Start)
-            val startDecimal = row.getCell(3)?.numericCellValue
+            // Von (Start)
+            val startDecimal = sheet.number(rowIndex, columns.von)
             val startZeit = if (startDecimal != null && startDecimal > 0) {
                 TimeUtils.excelTimeToMinutes(startDecimal)
             } else null
 
-            // Spalte E (Index 4): Bis (Ende)
-            val endDecimal = row.getCell(4)?.numericCellValue
+            // Bis (Ende)
+            val endDecimal = sheet.number(rowIndex, columns.bis)
             val endZeit = if (endDecimal != null && endDecimal > 0) {
                 TimeUtils.excelTimeToMinutes(endDecimal)
             } else null
 
-            // Spalte F (Index 5): Pause
-            val pauseDecimal = row.getCell(5)?.numericCellValue ?: 0.0
+            // Pause
+            val pauseDecimal = sheet.number(rowIndex, columns.pause) ?: 0.0
             val pauseMinuten = TimeUtils.excelTimeToMinutes(pauseDecimal)
 
-            // Spalte H (Index 7): Typ (U/K/F/AB)
-            val typCell = row.getCell(7)
-            val typ = if (typCell?.cellType == CellType.STRING) {
-                typCell.stringCellValue.trim()
-            } else {
-                TimeEntry.TYP_NORMAL
-            }
+            // Typ (U/K/F/AB)
+            val typ = sheet.text(rowIndex, columns.typ)?.trim()?.ifEmpty { null } ?: TimeEntry.TYP_NORMAL
 
-            // Spalte J (Index 9): AZ aus Bereitschaft
-            val bereitschaftDecimal = row.getCell(9)?.numericCellValue ?: 0.0
+            // AZ aus Bereitschaft
+            val bereitschaftDecimal = sheet.number(rowIndex, columns.bereitschaft) ?: 0.0
             val arbeitszeitBereitschaft = TimeUtils.excelTimeToMinutes(bereitschaftDecimal)
 
             // Nur Eintrag erstellen wenn Daten vorhanden sind
             if (sollMinuten > 0 || startZeit != null || endZeit != null) {
                 return TimeEntry(
                     datum = dateString,
-                    wochentag = weekday,
+                    epochDay = DateUtils.toEpochDay(date),
                     kalenderwoche = kw,
                     jahr = year,
                     startZeit = startZeit,
@@ -309,6 +508,20 @@ class ExcelImportManager(private val context: Context) {
         return null
     }
 
+    /**
+     * Jahr der Arbeitsmappe: Jahr des Donnerstags der KW 1 (bei Jahreswechsel in KW 1 das neue Jahr)
+     * Ohne ersten Montag wird das aktuelle Jahr angenommen.
+     */
+    private fun getYearOfWorkbook(ersterMondagImJahr: String?): Int {
+        return ersterMondagImJahr
+            ?.let { runCatching { LocalDate.parse(it).plusDays(3).year }.getOrNull() }
+            ?: java.time.Year.now().value
+    }
+
+    private fun SheetGrid.text(address: CellAddress) = text(address.row, address.column)
+
+    private fun SheetGrid.number(address: CellAddress) = number(address.row, address.column)
+
     /**
      * Berechnet Datum aus Kalenderwoche und Wochentag
      * Verwendet custom week calculation wenn ersterMondagImJahr gesetzt ist
@@ -334,22 +547,6 @@ class ExcelImportManager(private val context: Context) {
             return adjustedFirstMonday.plusWeeks((kw - 1).toLong()).plusDays(dayIndex.toLong())
         }
     }
-
-    /**
-     * Gibt Wochentag-Kürzel zurück
-     */
-    private fun getWeekdayShort(dayOfWeek: Int): String {
-        return when (dayOfWeek) {
-            1 -> "Mo"
-            2 -> "Di"
-            3 -> "Mi"
-            4 -> "Do"
-            5 -> "Fr"
-            6 -> "Sa"
-            7 -> "So"
-            else -> "Mo"
-        }
-    }
 }
 
 /**
@@ -359,8 +556,41 @@ sealed class ImportResult {
     data class Success(
         val entries: List<TimeEntry>,
         val userSettings: UserSettings?,
-        val entriesCount: Int
+        val entriesCount: Int,
+        val filesCount: Int = 1,
+        val conflicts: List<ImportConflict> = emptyList()
     ) : ImportResult()
 
     data class Error(val message: String) : ImportResult()
 }
+
+/**
+ * Tag, der in mehreren importierten Dateien unterschiedlich eingetragen ist
+ */
+data class ImportConflict(
+    val datum: String,
+    val keptFile: String,
+    val discardedFiles: List<String>
+)
+
+/**
+ * Eine gelesene Datei eines Mehrfach-Imports
+ */
+private class ImportedFile(
+    val order: Int,
+    val name: String,
+    val modifiedAt: Long,
+    val userSettings: UserSettings?,
+    val entries: List<TimeEntry>
+)
+
+/**
+ * Fortschritt eines Excel-Imports (gelesene Blätter)
+ */
+data class ImportProgress(
+    val sheetsRead: Int,
+    val sheetsTotal: Int
+) {
+    val fraction: Float
+        get() = if (sheetsTotal > 0) sheetsRead.toFloat() / sheetsTotal else 0f
+}
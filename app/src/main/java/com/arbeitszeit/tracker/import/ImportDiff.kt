@@ -0,0 +1,147 @@
+package com.arbeitszeit.tracker.import
+
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.entity.UserSettings
+import java.time.YearMonth
+
+/**
+ * Vergleich eines Imports mit den gespeicherten Tagen (Probelauf vor dem Schreiben)
+ *
+ * Gespeicherte und importierte Zeilen werden über einen Inhalts-Hash der Felder verglichen, die
+ * der Import überschreibt. Geschrieben werden nur neue und geänderte Tage - ein erneuter Import
+ * derselben Datei ergibt keine Schreibzugriffe.
+ *
+ * @property rowsToWrite Neue Tage (id = 0) und geänderte Tage (mit ID des gespeicherten Eintrags)
+ */
+class ImportDiff private constructor(
+    val rowsToWrite: List<TimeEntry>,
+    val addedCount: Int,
+    val changedCount: Int,
+    val unchangedCount: Int,
+    val months: List<MonthDiff>
+) {
+
+    val hasChanges: Boolean
+        get() = rowsToWrite.isNotEmpty()
+
+    companion object {
+
+        /**
+         * Vergleicht [imported] mit [existing] (Ergebnis einer Bereichsabfrage über alle importierten Tage)
+         * @param now Zeitstempel für updatedAt geänderter Tage
+         */
+        fun compute(imported: List<TimeEntry>, existing: List<TimeEntry>, now: Long = System.currentTimeMillis()): ImportDiff {
+            val existingByDay = existing.associateBy { it.epochDay }
+            val rows = mutableListOf<TimeEntry>()
+            val months = sortedMapOf<YearMonth, IntArray>() // [neu, geändert, unverändert]
+            var added = 0
+            var changed = 0
+            var unchanged = 0
+
+            imported.forEach { entry ->
+                val counts = months.getOrPut(YearMonth.from(entry.getDate())) { IntArray(3) }
+                val stored = existingByDay[entry.epochDay]
+                when {
+                    stored == null -> {
+                        rows.add(entry.copy(id = 0))
+                        counts[0]++
+                        added++
+                    }
+                    contentHash(stored) != contentHash(entry) -> {
+                        rows.add(merge(stored, entry, now))
+                        counts[1]++
+                        changed++
+                    }
+                    else -> {
+                        counts[2]++
+                        unchanged++
+                    }
+                }
+            }
+
+            return ImportDiff(
+                rowsToWrite = rows,
+                addedCount = added,
+                changedCount = changed,
+                unchangedCount = unchanged,
+                months = months.map { (month, counts) -> MonthDiff(month, counts[0], counts[1], counts[2]) }
+            )
+        }
+
+        /**
+         * Inhalts-Hash (64 Bit, FNV-1a) der Felder, die ein Import überschreibt
+         * ID, Zeitstempel und isManualEntry zählen nicht als Änderung.
+         */
+        fun contentHash(entry: TimeEntry): Long {
+            var hash = FNV_OFFSET
+            fun add(value: Any?) {
+                value.toString().forEach { hash = (hash xor it.code.toLong()) * FNV_PRIME }
+                hash = (hash xor SEPARATOR) * FNV_PRIME
+            }
+            add(entry.kalenderwoche)
+            add(entry.jahr)
+            add(entry.startZeit)
+            add(entry.endZeit)
+            add(entry.pauseMinuten)
+            add(entry.sollMinuten)
+            add(entry.typ)
+            add(entry.notiz)
+            add(entry.arbeitszeitBereitschaft)
+            return hash
+        }
+
+        /**
+         * Übernimmt die importierten Felder in einen gespeicherten Tag (ID und createdAt bleiben)
+         */
+        fun merge(existing: TimeEntry, imported: TimeEntry, now: Long): TimeEntry {
+            return existing.copy(
+                kalenderwoche = imported.kalenderwoche,
+                jahr = imported.jahr,
+                startZeit = imported.startZeit,
+                endZeit = imported.endZeit,
+                pauseMinuten = imported.pauseMinuten,
+                sollMinuten = imported.sollMinuten,
+                typ = imported.typ,
+                notiz = imported.notiz,
+                arbeitszeitBereitschaft = imported.arbeitszeitBereitschaft,
+                isManualEntry = true,
+                updatedAt = now
+            )
+        }
+
+        /**
+         * Übernimmt die Stammdaten aus dem Import in die gespeicherten Einstellungen
+         * Alle anderen Einstellungen (Geofencing, Design, Bundesland, ...) bleiben erhalten.
+         * @return null wenn sich an den Stammdaten nichts ändert
+         */
+        fun mergeStammdaten(existing: UserSettings?, imported: UserSettings, now: Long = System.currentTimeMillis()): UserSettings? {
+            if (existing == null) return imported
+            val merged = existing.copy(
+                name = imported.name,
+                einrichtung = imported.einrichtung,
+                arbeitsumfangProzent = imported.arbeitsumfangProzent,
+                wochenStundenMinuten = imported.wochenStundenMinuten,
+                arbeitsTageProWoche = imported.arbeitsTageProWoche,
+                ferienbetreuung = imported.ferienbetreuung,
+                ueberstundenVorjahrMinuten = imported.ueberstundenVorjahrMinuten,
+                letzterUebertragMinuten = imported.letzterUebertragMinuten,
+                ersterMontagImJahr = imported.ersterMontagImJahr
+            )
+            return if (merged == existing) null else merged.copy(updatedAt = now)
+        }
+
+        private const val FNV_OFFSET = -0x340d631b7bdddcdbL // 0xcbf29ce484222325
+        private const val FNV_PRIME = 0x100000001b3L
+        private const val SEPARATOR = 0x1fL
+    }
+}
+
+/**
+ * Änderungen eines Imports in einem Monat
+ */
+data class MonthDiff(
+    val month: YearMonth,
+    val added: Int,
+    val changed: Int,
+    val unchanged: Int
+)
@@ -0,0 +1,285 @@
+package com.arbeitszeit.tracker.import
+
+import com.arbeitszeit.tracker.template.CellSource
+import org.apache.poi.openxml4j.opc.OPCPackage
+import org.apache.poi.openxml4j.opc.PackageAccess
+import org.apache.poi.ss.util.CellReference
+import org.apache.poi.util.XMLHelper
+import org.apache.poi.xssf.eventusermodel.XSSFReader
+import org.xml.sax.Attributes
+import org.xml.sax.InputSource
+import org.xml.sax.SAXException
+import org.xml.sax.helpers.DefaultHandler
+import java.io.File
+import java.io.InputStream
+
+/**
+ * Liest ausgewählte Blätter einer .xlsx-Datei über das XSSF-Event-Modell (SAX)
+ *
+ * Statt die ganze Arbeitsmappe als DOM zu laden, wird jedes gewünschte Blatt einmal gestreamt und
+ * nur der Bereich bis maxRows x maxColumns in einem SheetGrid behalten - sobald eine Zeile dahinter
+ * beginnt, wird das Blatt abgebrochen. Gemeinsame Texte (sharedStrings.xml) werden ebenfalls
+ * gestreamt und nur für Zellen aus den SheetGrids aufgelöst. Der Speicherbedarf hängt damit nicht
+ * von der Größe der Datei ab.
+ *
+ * Die Datei muss lokal vorliegen (OPCPackage liest aus einer Datei per Direktzugriff, aus einem
+ * InputStream würde das ganze ZIP in den Speicher geladen).
+ */
+class XlsxStreamReader(
+    private val file: File,
+    private val maxRows: Int,
+    private val maxColumns: Int
+) {
+
+    /**
+     * Namen aller Blätter in Reihenfolge der Arbeitsmappe
+     */
+    fun sheetNames(): List<String> = withReader { reader ->
+        val names = mutableListOf<String>()
+        val sheets = reader.sheetsData as XSSFReader.SheetIterator
+        while (sheets.hasNext()) {
+            sheets.next().close()
+            names.add(sheets.sheetName)
+        }
+        names
+    }
+
+    /**
+     * Liest alle Blätter, für die [wanted] true liefert
+     * @param onSheetRead Wird nach jedem gelesenen Blatt aufgerufen (für Fortschrittsanzeigen)
+     */
+    fun readSheets(wanted: (String) -> Boolean, onSheetRead: (String) -> Unit = {}): List<SheetGrid> = withReader { reader ->
+        val grids = mutableListOf<SheetGrid>()
+        val sheets = reader.sheetsData as XSSFReader.SheetIterator
+        while (sheets.hasNext()) {
+            sheets.next().use { stream ->
+                val name = sheets.sheetName
+                if (wanted(name)) {
+                    grids.add(parseSheet(name, stream))
+                    onSheetRead(name)
+                }
+            }
+        }
+
+        val needed = grids.flatMapTo(HashSet()) { it.sharedStringIndices() }
+        if (needed.isNotEmpty()) {
+            val strings = readSharedStrings(reader, needed)
+            grids.forEach { it.resolveSharedStrings(strings) }
+        }
+        grids
+    }
+
+    /**
+     * Letzte Änderung laut Dokumenteigenschaften (docProps/core.xml) in Millisekunden oder null
+     * Bleibt anders als das Dateidatum beim Kopieren der Datei erhalten.
+     */
+    fun modifiedAt(): Long? = withPackage { pkg ->
+        pkg.packageProperties.modifiedProperty.orElse(null)?.time
+    }
+
+    private fun <T> withReader(block: (XSSFReader) -> T): T = withPackage { block(XSSFReader(it)) }
+
+    private fun <T> withPackage(block: (OPCPackage) -> T): T {
+        val pkg = OPCPackage.open(file, PackageAccess.READ)
+        try {
+            return block(pkg)
+        } finally {
+            // Nur gelesen - nichts zurückschreiben
+            pkg.revert()
+        }
+    }
+
+    private fun parseSheet(name: String, stream: InputStream): SheetGrid {
+        val grid = SheetGrid(name, maxRows, maxColumns)
+        try {
+            val xmlReader = XMLHelper.newXMLReader()
+            xmlReader.contentHandler = SheetHandler(grid, maxRows, maxColumns)
+            xmlReader.parse(InputSource(stream))
+        } catch (e: StopParsing) {
+            // Rest des Blatts liegt außerhalb des benötigten Bereichs
+        }
+        return grid
+    }
+
+    private fun readSharedStrings(reader: XSSFReader, needed: Set<Int>): Map<Int, String> {
+        val strings = HashMap<Int, String>(needed.size)
+        val stream = try {
+            reader.sharedStringsData
+        } catch (e: Exception) {
+            return strings // Datei ohne gemeinsame Texte
+        }
+        stream.use {
+            val xmlReader = XMLHelper.newXMLReader()
+            xmlReader.contentHandler = SharedStringsHandler(needed, strings)
+            try {
+                xmlReader.parse(InputSource(it))
+            } catch (e: StopParsing) {
+                // Alle benötigten Texte gefunden
+            }
+        }
+        return strings
+    }
+
+    private class StopParsing : SAXException()
+
+    /**
+     * SAX-Handler für ein Arbeitsblatt (<row>/<c>/<v>, Inline-Texte in <is><t>)
+     */
+    private class SheetHandler(
+        private val grid: SheetGrid,
+        private val maxRows: Int,
+        private val maxColumns: Int
+    ) : DefaultHandler() {
+
+        private var rowIndex = -1
+        private var column = -1
+        private var type: String? = null
+        private var collecting = false
+        private val value = StringBuilder()
+
+        override fun startElement(uri: String?, localName: String?, qName: String?, attributes: Attributes) {
+            when (elementName(localName, qName)) {
+                "row" -> {
+                    rowIndex = attributes.getValue("r")?.toIntOrNull()?.minus(1) ?: (rowIndex + 1)
+                    column = -1
+                    if (rowIndex >= maxRows) throw StopParsing()
+                }
+                "c" -> {
+                    column = attributes.getValue("r")?.let { CellReference(it).col.toInt() } ?: (column + 1)
+                    type = attributes.getValue("t")
+                    value.setLength(0)
+                }
+                "v", "t" -> {
+                    collecting = true
+                }
+            }
+        }
+
+        override fun characters(ch: CharArray, start: Int, length: Int) {
+            if (collecting) value.append(ch, start, length)
+        }
+
+        override fun endElement(uri: String?, localName: String?, qName: String?) {
+            when (elementName(localName, qName)) {
+                "v", "t" -> collecting = false
+                "c" -> {
+                    if (column in 0 until maxColumns && value.isNotEmpty()) {
+                        val text = value.toString()
+                        when (type) {
+                            "s" -> text.toIntOrNull()?.let { grid.setSharedString(rowIndex, column, it) }
+                            "str", "inlineStr" -> grid.setText(rowIndex, column, text)
+                            "e" -> Unit
+                            else -> text.toDoubleOrNull()?.let { grid.setNumber(rowIndex, column, it) }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * SAX-Handler für sharedStrings.xml: behält nur die Texte mit den Indizes aus [needed]
+     * Phonetische Hilfstexte (<rPh>) werden ignoriert.
+     */
+    private class SharedStringsHandler(
+        private val needed: Set<Int>,
+        private val strings: MutableMap<Int, String>
+    ) : DefaultHandler() {
+
+        private var index = -1
+        private var inPhonetic = false
+        private var collecting = false
+        private val value = StringBuilder()
+
+        override fun startElement(uri: String?, localName: String?, qName: String?, attributes: Attributes) {
+            when (elementName(localName, qName)) {
+                "si" -> {
+                    index++
+                    value.setLength(0)
+                }
+                "rPh" -> inPhonetic = true
+                "t" -> collecting = !inPhonetic && index in needed
+            }
+        }
+
+        override fun characters(ch: CharArray, start: Int, length: Int) {
+            if (collecting) value.append(ch, start, length)
+        }
+
+        override fun endElement(uri: String?, localName: String?, qName: String?) {
+            when (elementName(localName, qName)) {
+                "t" -> collecting = false
+                "rPh" -> inPhonetic = false
+                "si" -> if (index in needed) {
+                    strings[index] = value.toString()
+                    if (strings.size == needed.size) throw StopParsing()
+                }
+            }
+        }
+    }
+}
+
+private fun elementName(localName: String?, qName: String?): String {
+    return localName?.takeIf { it.isNotEmpty() } ?: qName.orEmpty().substringAfter(':')
+}
+
+/**
+ * Zwischengespeicherter Bereich eines Blatts (Zahlen und Texte)
+ */
+class SheetGrid(
+    override val sheetName: String,
+    private val maxRows: Int,
+    private val maxColumns: Int
+) : CellSource {
+
+    private val numbers = DoubleArray(maxRows * maxColumns) { Double.NaN }
+    private val texts = arrayOfNulls<String>(maxRows * maxColumns)
+    private val sharedStrings = IntArray(maxRows * maxColumns) { -1 }
+
+    override var lastRowIndex: Int = -1
+        private set
+
+    override fun text(rowIndex: Int, column: Int): String? {
+        val index = indexOf(rowIndex, column) ?: return null
+        return texts[index]
+    }
+
+    /**
+     * Zahlenwert (auch Zeit- und Datumswerte, bei Formeln das letzte Ergebnis) oder null
+     */
+    fun number(rowIndex: Int, column: Int): Double? {
+        val index = indexOf(rowIndex, column) ?: return null
+        return numbers[index].takeUnless { it.isNaN() }
+    }
+
+    internal fun setNumber(rowIndex: Int, column: Int, value: Double) {
+        val index = indexOf(rowIndex, column) ?: return
+        numbers[index] = value
+        lastRowIndex = maxOf(lastRowIndex, rowIndex)
+    }
+
+    internal fun setText(rowIndex: Int, column: Int, value: String) {
+        val index = indexOf(rowIndex, column) ?: return
+        texts[index] = value
+        lastRowIndex = maxOf(lastRowIndex, rowIndex)
+    }
+
+    internal fun setSharedString(rowIndex: Int, column: Int, sharedIndex: Int) {
+        val index = indexOf(rowIndex, column) ?: return
+        sharedStrings[index] = sharedIndex
+        lastRowIndex = maxOf(lastRowIndex, rowIndex)
+    }
+
+    internal fun sharedStringIndices(): List<Int> = sharedStrings.filter { it >= 0 }
+
+    internal fun resolveSharedStrings(strings: Map<Int, String>) {
+        sharedStrings.forEachIndexed { index, sharedIndex ->
+            if (sharedIndex >= 0) texts[index] = strings[sharedIndex]
+        }
+    }
+
+    private fun indexOf(rowIndex: Int, column: Int): Int? {
+        if (rowIndex !in 0 until maxRows || column !in 0 until maxColumns) return null
+        return rowIndex * maxColumns + column
+    }
+}
@@ -5,11 +5,16 @@ import android.content.Context
 import android.content.Intent
 import android.widget.Toast
 import com.arbeitszeit.tracker.data.database.AppDatabase
-import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.model.StampResult
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
 import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import java.time.LocalDate
 
 /**
  * Empfängt Aktionen aus Notifications und führt direkte Zeitstempel aus
@@ -37,30 +42,21 @@ class NotificationActionReceiver : BroadcastReceiver() {
     }
 
     private fun handleStartStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             try {
                 val database = AppDatabase.getDatabase(context)
-                val timeEntryDao = database.timeEntryDao()
-
-                val today = DateUtils.today()
-                val entry = timeEntryDao.getEntryByDate(today)
                 val currentTime = TimeUtils.currentTimeInMinutes()
 
-                if (entry != null) {
-                    timeEntryDao.update(entry.copy(
-                        startZeit = currentTime,
-                        updatedAt = System.currentTimeMillis()
-                    ))
+                TimeStamper.start(database, StampEvent.SOURCE_NOTIFICATION, currentTime)
 
-                    // Show success toast on main thread
-                    CoroutineScope(Dispatchers.Main).launch {
-                        val timeString = TimeUtils.minutesToTimeString(currentTime)
-                        Toast.makeText(
-                            context,
-                            "✓ Eingestempelt um $timeString",
-                            Toast.LENGTH_SHORT
-                        ).show()
-                    }
+                // Show success toast on main thread
+                CoroutineScope(Dispatchers.Main).launch {
+                    val timeString = TimeUtils.minutesToTimeString(currentTime)
+                    Toast.makeText(
+                        context,
+                        "✓ Eingestempelt um $timeString",
+                        Toast.LENGTH_SHORT
+                    ).show()
                 }
             } catch (e: Exception) {
                 e.printStackTrace()
@@ -76,33 +72,35 @@ class NotificationActionReceiver : BroadcastReceiver() {
     }
 
     private fun handleEndStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             try {
                 val database = AppDatabase.getDatabase(context)
-                val timeEntryDao = database.timeEntryDao()
-
-                val today = DateUtils.today()
-                val entry = timeEntryDao.getEntryByDate(today)
                 val currentTime = TimeUtils.currentTimeInMinutes()
 
-                if (entry != null) {
-                    timeEntryDao.update(entry.copy(
-                        endZeit = currentTime,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-
-                    // Calculate and show worked time
-                    val workedMinutes = entry.getIstMinuten()
-                    val workedTime = TimeUtils.minutesToHoursMinutes(workedMinutes)
-
+                val result = TimeStamper.end(database, StampEvent.SOURCE_NOTIFICATION, currentTime)
+                if (result == StampResult.UNCHANGED) {
                     CoroutineScope(Dispatchers.Main).launch {
-                        val timeString = TimeUtils.minutesToTimeString(currentTime)
                         Toast.makeText(
                             context,
-                            "✓ Ausgestempelt um $timeString\nGearbeitet: $workedTime",
-                            Toast.LENGTH_LONG
+                            "Heute noch nicht eingestempelt",
+                            Toast.LENGTH_SHORT
                         ).show()
                     }
+                    return@launch
+                }
+
+                // Calculate and show worked time (Stand nach dem Stempel)
+                val entry = TimeEntryRepository.getInstance(context).getEntry(LocalDate.now())
+                val workedMinutes = entry?.getIstMinuten() ?: 0
+                val workedTime = TimeUtils.minutesToHoursMinutes(workedMinutes)
+
+                CoroutineScope(Dispatchers.Main).launch {
+                    val timeString = TimeUtils.minutesToTimeString(currentTime)
+                    Toast.makeText(
+                        context,
+                        "✓ Ausgestempelt um $timeString\nGearbeitet: $workedTime",
+                        Toast.LENGTH_LONG
+                    ).show()
                 }
             } catch (e: Exception) {
                 e.printStackTrace()
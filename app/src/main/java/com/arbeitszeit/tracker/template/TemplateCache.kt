@@ -0,0 +1,243 @@
+package com.arbeitszeit.tracker.template
+
+import android.content.Context
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.apache.poi.ss.usermodel.Cell
+import org.apache.poi.ss.usermodel.CellType
+import org.apache.poi.ss.usermodel.RichTextString
+import org.apache.poi.ss.usermodel.Sheet
+import org.apache.poi.ss.usermodel.Workbook
+import org.apache.poi.ss.usermodel.WorkbookFactory
+import org.apache.poi.ss.util.CellAddress
+import java.io.ByteArrayInputStream
+import java.security.MessageDigest
+
+/**
+ * Zwischenspeicher für geparste Excel-Vorlagen
+ *
+ * Eine Vorlage (template_<jahr>.xlsx oder ANZ_Template.xlsx aus den Assets) wird nur einmal
+ * geparst und mit Blatt-Index (Name -> Position) im Speicher gehalten. Schlüssel ist Jahr +
+ * SHA-256 der Datei - eine neu hochgeladene Vorlage wird dadurch automatisch neu geparst.
+ *
+ * Jeder Export arbeitet auf einer TemplateCopy: alle Zellen, die er beschreibt, werden vorher
+ * gesichert und danach auf den Stand der Vorlage zurückgesetzt. Das ist deutlich günstiger als
+ * eine echte Kopie der Arbeitsmappe (POI kann Arbeitsmappen nicht klonen) - dafür laufen Exporte
+ * derselben Vorlage nacheinander.
+ */
+class TemplateCache private constructor(private val context: Context) {
+
+    companion object {
+        private const val TAG = "TemplateCache"
+
+        // Standard-Vorlage aus den Assets
+        const val DEFAULT_TEMPLATE = "ANZ_Template.xlsx"
+
+        // Geparste Vorlagen im Speicher (z.B. aktuelles und Vorjahr)
+        private const val MAX_ENTRIES = 2
+
+        @Volatile
+        private var INSTANCE: TemplateCache? = null
+
+        fun getInstance(context: Context): TemplateCache {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: TemplateCache(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val templateManager = TemplateManager(context)
+    private val mutex = Mutex()
+
+    // LRU nach Zugriff
+    private val templates = object : LinkedHashMap<TemplateKey, ParsedTemplate>(MAX_ENTRIES, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<TemplateKey, ParsedTemplate>): Boolean {
+            if (size <= MAX_ENTRIES) return false
+            eldest.value.workbook.close()
+            return true
+        }
+    }
+
+    /**
+     * Führt [block] mit der Vorlage für [year] aus
+     * Änderungen über TemplateCopy.cell werden danach wieder zurückgesetzt.
+     */
+    suspend fun <T> withTemplate(year: Int, block: (TemplateCopy) -> T): T = mutex.withLock {
+        val bytes = (templateManager.getTemplateStream(year) ?: context.assets.open(DEFAULT_TEMPLATE))
+            .use { it.readBytes() }
+        val key = TemplateKey(year, sha256(bytes))
+
+        val template = templates[key] ?: parse(year, bytes).also {
+            evict(year)
+            templates[key] = it
+            android.util.Log.d(TAG, "Vorlage für $year geparst (${it.sheetIndex.size} Blätter)")
+        }
+
+        val copy = TemplateCopy(template)
+        try {
+            block(copy)
+        } finally {
+            try {
+                copy.restore()
+            } catch (e: Exception) {
+                // Zustand unklar - Vorlage verwerfen, der nächste Export parst neu
+                android.util.Log.e(TAG, "Vorlage konnte nicht zurückgesetzt werden", e)
+                templates.remove(key)
+                template.workbook.close()
+            }
+        }
+    }
+
+    /**
+     * Gibt geparste Vorlagen für [year] frei (nach Hochladen oder Löschen einer Vorlage)
+     */
+    suspend fun invalidate(year: Int) = mutex.withLock {
+        evict(year)
+    }
+
+    private fun evict(year: Int) {
+        val iterator = templates.entries.iterator()
+        while (iterator.hasNext()) {
+            val (key, parsed) = iterator.next()
+            if (key.year == year) {
+                parsed.workbook.close()
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun parse(year: Int, bytes: ByteArray): ParsedTemplate {
+        val workbook = WorkbookFactory.create(ByteArrayInputStream(bytes))
+        val sheetIndex = (0 until workbook.numberOfSheets).associateBy {
+            workbook.getSheetName(it).lowercase()
+        }
+
+        // Zellen-Karte vom Hochladen; ältere Vorlagen (vor der Karte) werden jetzt einmal analysiert
+        val layout = templateManager.loadLayout(year) ?: TemplateLayout.analyze(workbook).also {
+            if (templateManager.hasTemplate(year)) templateManager.saveLayout(year, it)
+        }
+        return ParsedTemplate(workbook, sheetIndex, layout)
+    }
+
+    private fun sha256(bytes: ByteArray): String {
+        return MessageDigest.getInstance("SHA-256").digest(bytes)
+            .joinToString("") { "%02x".format(it) }
+    }
+
+    private data class TemplateKey(val year: Int, val hash: String)
+}
+
+/**
+ * Geparste Vorlage mit Blatt-Index (Blattname in Kleinbuchstaben -> Position) und Zellen-Karte
+ */
+class ParsedTemplate internal constructor(
+    val workbook: Workbook,
+    val sheetIndex: Map<String, Int>,
+    val layout: TemplateLayout
+)
+
+/**
+ * Arbeitskopie einer geparsten Vorlage für einen Export
+ *
+ * Zellen werden über cell(...) beschrieben; der ursprüngliche Inhalt wird beim ersten Zugriff
+ * gesichert und von restore() wiederhergestellt.
+ */
+class TemplateCopy internal constructor(private val template: ParsedTemplate) {
+
+    val workbook: Workbook
+        get() = template.workbook
+
+    val layout: TemplateLayout
+        get() = template.layout
+
+    private val saved = ArrayList<SavedCell>()
+    private val touched = HashSet<Long>()
+
+    /**
+     * Blatt nach Name (Groß-/Kleinschreibung egal) ohne alle Blätter zu durchsuchen
+     */
+    fun sheet(name: String): Sheet? {
+        return template.sheetIndex[name.lowercase()]?.let { workbook.getSheetAt(it) }
+    }
+
+    /**
+     * Zelle zum Beschreiben; fehlende Zellen werden nur mit [create] angelegt
+     * Die Zeile muss in der Vorlage existieren.
+     */
+    fun cell(sheet: Sheet, rowIndex: Int, column: Int, create: Boolean = true): Cell? {
+        val row = sheet.getRow(rowIndex) ?: return null
+        val existing = row.getCell(column)
+        if (existing == null && !create) return null
+
+        val sheetIndex = workbook.getSheetIndex(sheet)
+        val key = (sheetIndex.toLong() shl 40) or (rowIndex.toLong() shl 16) or column.toLong()
+        if (touched.add(key)) {
+            saved.add(SavedCell.of(sheetIndex, rowIndex, column, existing))
+        }
+        return existing ?: row.createCell(column)
+    }
+
+    fun cell(sheet: Sheet, address: CellAddress, create: Boolean = true): Cell? {
+        return cell(sheet, address.row, address.column, create)
+    }
+
+    internal fun restore() {
+        saved.asReversed().forEach { it.restore(workbook) }
+        saved.clear()
+        touched.clear()
+    }
+
+    /**
+     * Inhalt einer Zelle vor dem Export (null-Zelle = war nicht vorhanden)
+     * Bei Formelzellen wird nur das zwischengespeicherte Ergebnis gesichert - die Formel
+     * selbst bleibt bei setCellValue erhalten.
+     */
+    private class SavedCell(
+        val sheetIndex: Int,
+        val rowIndex: Int,
+        val column: Int,
+        val existed: Boolean,
+        val type: CellType,
+        val numeric: Double,
+        val string: RichTextString?,
+        val boolean: Boolean,
+        val error: Byte
+    ) {
+        fun restore(workbook: Workbook) {
+            val row = workbook.getSheetAt(sheetIndex).getRow(rowIndex) ?: return
+            val cell = row.getCell(column) ?: return
+            if (!existed) {
+                row.removeCell(cell)
+                return
+            }
+            when (type) {
+                CellType.NUMERIC -> cell.setCellValue(numeric)
+                CellType.STRING -> cell.setCellValue(string)
+                CellType.BOOLEAN -> cell.setCellValue(boolean)
+                CellType.ERROR -> cell.setCellErrorValue(error)
+                CellType.BLANK -> if (cell.cellType != CellType.FORMULA) cell.setBlank()
+                else -> Unit
+            }
+        }
+
+        companion object {
+            fun of(sheetIndex: Int, rowIndex: Int, column: Int, cell: Cell?): SavedCell {
+                if (cell == null) {
+                    return SavedCell(sheetIndex, rowIndex, column, false, CellType.BLANK, 0.0, null, false, 0)
+                }
+                val type = if (cell.cellType == CellType.FORMULA) cell.cachedFormulaResultType else cell.cellType
+                return SavedCell(
+                    sheetIndex = sheetIndex,
+                    rowIndex = rowIndex,
+                    column = column,
+                    existed = true,
+                    type = type,
+                    numeric = if (type == CellType.NUMERIC) cell.numericCellValue else 0.0,
+                    string = if (type == CellType.STRING) cell.richStringCellValue else null,
+                    boolean = if (type == CellType.BOOLEAN) cell.booleanCellValue else false,
+                    error = if (type == CellType.ERROR) cell.errorCellValue else 0
+                )
+            }
+        }
+    }
+}
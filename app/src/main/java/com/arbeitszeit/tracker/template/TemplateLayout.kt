@@ -0,0 +1,429 @@
+package com.arbeitszeit.tracker.template
+
+import org.apache.poi.ss.usermodel.CellType
+import org.apache.poi.ss.usermodel.Sheet
+import org.apache.poi.ss.usermodel.Workbook
+import org.apache.poi.ss.util.CellAddress
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * Zellen-Karte einer Excel-Vorlage (ANZ-Format)
+ *
+ * Wird beim Hochladen einer Vorlage einmal aus der Datei ermittelt (analyze) und als
+ * template_<jahr>.map.json neben der Vorlage gespeichert. Export und Import greifen damit
+ * direkt auf die richtigen Zellen zu, auch wenn sich das Layout zwischen den Jahren verschiebt
+ * (z.B. ein Block "KW 49-53" in Jahren mit 53 Wochen).
+ *
+ * Was sich nicht erkennen lässt, fällt auf das bisherige Standard-Layout zurück (DEFAULT).
+ */
+data class TemplateLayout(
+    val stammangaben: StammangabenCells,
+    val columns: DayColumns,
+    val blocks: List<WeekBlock>
+) {
+
+    /**
+     * Block (Sheet) für eine Kalenderwoche
+     */
+    fun blockFor(kw: Int): WeekBlock? = blocks.firstOrNull { kw in it.startKW..it.endKW }
+
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("version", VERSION)
+        put("stammangaben", stammangaben.toJson())
+        put("columns", columns.toJson())
+        put("blocks", JSONArray().apply { blocks.forEach { put(it.toJson()) } })
+    }
+
+    companion object {
+        private const val VERSION = 1
+
+        // Bis hierhin wird nach Beschriftungen gesucht
+        private const val SCAN_ROWS = 80
+        private const val SCAN_COLUMNS = 12
+
+        // Bereich, in dem Analyse, Export und Import Zellen erwarten (Grenze für das gestreamte Lesen)
+        const val MAX_ROWS = SCAN_ROWS * 2 + 8
+        const val MAX_COLUMNS = SCAN_COLUMNS + 1
+
+        private val BLOCK_NAME = Regex("KW\\s*(\\d{1,2})\\s*-\\s*(\\d{1,2})", RegexOption.IGNORE_CASE)
+        private val WEEKDAY_LABELS = listOf("mo", "di", "mi", "do", "fr")
+
+        /**
+         * Bisheriges, fest eingebautes Layout von ANZ_Template.xlsx
+         */
+        val DEFAULT = TemplateLayout(
+            stammangaben = StammangabenCells.DEFAULT,
+            columns = DayColumns.DEFAULT,
+            blocks = (1..49 step 4).map { startKW -> WeekBlock.standard(blockName(startKW, startKW + 3), startKW, startKW + 3) }
+        )
+
+        fun blockName(startKW: Int, endKW: Int): String {
+            return "KW ${String.format("%02d", startKW)}-${String.format("%02d", endKW)}"
+        }
+
+        /**
+         * Ermittelt die Zellen-Karte aus einer geöffneten Arbeitsmappe
+         */
+        fun analyze(workbook: Workbook): TemplateLayout {
+            return analyze((0 until workbook.numberOfSheets).map { SheetCellSource(workbook.getSheetAt(it)) })
+        }
+
+        /**
+         * Ermittelt die Zellen-Karte aus den Blättern einer Datei (auch gestreamt, siehe XlsxStreamReader)
+         */
+        fun analyze(sheets: List<CellSource>): TemplateLayout {
+            val stammSheet = sheets.firstOrNull { it.sheetName.equals("stammangaben", ignoreCase = true) }
+
+            val blockSheets = sheets
+                .mapNotNull { sheet -> parseBlockName(sheet.sheetName)?.let { (startKW, endKW) -> Triple(sheet, startKW, endKW) } }
+                .sortedBy { it.second }
+
+            val blocks = blockSheets.map { (sheet, startKW, endKW) -> analyzeBlock(sheet, startKW, endKW) }
+            val columns = blockSheets.firstOrNull()
+                ?.let { (sheet, _, _) -> analyzeColumns(sheet, blocks.first().weeks.firstOrNull()?.dayRows?.first()) }
+                ?: DayColumns.DEFAULT
+
+            return TemplateLayout(
+                stammangaben = stammSheet?.let { analyzeStammangaben(it) } ?: StammangabenCells.DEFAULT,
+                columns = columns,
+                blocks = blocks.ifEmpty { DEFAULT.blocks }
+            )
+        }
+
+        /**
+         * KW-Bereich aus einem Blattnamen ("KW 49-53" -> 49 bis 53) oder null
+         */
+        fun parseBlockName(sheetName: String): Pair<Int, Int>? {
+            val match = BLOCK_NAME.find(sheetName) ?: return null
+            val startKW = match.groupValues[1].toInt()
+            val endKW = match.groupValues[2].toInt()
+            return if (startKW in 1..53 && endKW in startKW..53) startKW to endKW else null
+        }
+
+        fun fromJson(json: JSONObject): TemplateLayout? {
+            if (json.optInt("version") != VERSION) return null
+            val blocksJson = json.getJSONArray("blocks")
+            return TemplateLayout(
+                stammangaben = StammangabenCells.fromJson(json.getJSONObject("stammangaben")),
+                columns = DayColumns.fromJson(json.getJSONObject("columns")),
+                blocks = (0 until blocksJson.length()).map { WeekBlock.fromJson(blocksJson.getJSONObject(it)) }
+            )
+        }
+
+        /**
+         * Wochen eines KW-Sheets: Tageszeilen anhand der Beschriftung "Mo".."Fr" suchen,
+         * danach folgt die "Sonst"-Zeile und die Summenzeile. Ohne Beschriftungen gilt das
+         * Standard-Raster (Start Zeile 8, 7 Zeilen pro Woche).
+         */
+        private fun analyzeBlock(sheet: CellSource, startKW: Int, endKW: Int): WeekBlock {
+            val weekCount = endKW - startKW + 1
+            val weeks = mutableListOf<WeekRows>()
+
+            var rowIndex = 0
+            val lastRow = minOf(sheet.lastRowIndex, SCAN_ROWS * 2)
+            while (rowIndex <= lastRow && weeks.size < weekCount) {
+                if (weekdayLabel(sheet, rowIndex) == 0 && isWeekAt(sheet, rowIndex)) {
+                    val dayRows = (0 until 6).map { rowIndex + it }
+                    weeks.add(WeekRows(dayRows, sumRow = rowIndex + 6))
+                    rowIndex += 7
+                } else {
+                    rowIndex++
+                }
+            }
+
+            if (weeks.size < weekCount) {
+                return WeekBlock.standard(sheet.sheetName, startKW, endKW)
+            }
+            return WeekBlock(sheet.sheetName, startKW, endKW, weeks)
+        }
+
+        // Mo..Fr in fünf aufeinanderfolgenden Zeilen
+        private fun isWeekAt(sheet: CellSource, rowIndex: Int): Boolean {
+            return (0 until 5).all { weekdayLabel(sheet, rowIndex + it) == it }
+        }
+
+        /**
+         * Index (0=Mo..4=Fr) der Wochentag-Beschriftung in den ersten Spalten oder -1
+         */
+        private fun weekdayLabel(sheet: CellSource, rowIndex: Int): Int {
+            for (column in 0 until 2) {
+                val text = label(sheet, rowIndex, column) ?: continue
+                val index = WEEKDAY_LABELS.indexOfFirst { text.startsWith(it) }
+                if (index >= 0) return index
+            }
+            return -1
+        }
+
+        /**
+         * Spalten-Rollen aus der Kopfzeile über der ersten Woche
+         */
+        private fun analyzeColumns(sheet: CellSource, firstDayRow: Int?): DayColumns {
+            val headerEnd = (firstDayRow ?: DayColumns.DEFAULT_FIRST_DAY_ROW) - 1
+            var soll = -1
+            var von = -1
+            var bis = -1
+            var pause = -1
+            var typ = -1
+            var bereitschaft = -1
+
+            for (rowIndex in 0..headerEnd) {
+                for (column in 0 until SCAN_COLUMNS) {
+                    val text = label(sheet, rowIndex, column) ?: continue
+                    when {
+                        text.startsWith("soll") && soll < 0 -> soll = column
+                        (text == "von" || text.startsWith("beginn")) && von < 0 -> von = column
+                        (text == "bis" || text.startsWith("ende")) && bis < 0 -> bis = column
+                        text.startsWith("pause") && pause < 0 -> pause = column
+                        (text.startsWith("typ") || text.startsWith("art") || text.startsWith("u/k")) && typ < 0 -> typ = column
+                        text.contains("bereitschaft") && bereitschaft < 0 -> bereitschaft = column
+                    }
+                }
+            }
+
+            val default = DayColumns.DEFAULT
+            return DayColumns(
+                soll = soll.takeIf { it >= 0 } ?: default.soll,
+                von = von.takeIf { it >= 0 } ?: default.von,
+                bis = bis.takeIf { it >= 0 } ?: default.bis,
+                pause = pause.takeIf { it >= 0 } ?: default.pause,
+                typ = typ.takeIf { it >= 0 } ?: default.typ,
+                bereitschaft = bereitschaft.takeIf { it >= 0 } ?: default.bereitschaft
+            )
+        }
+
+        /**
+         * Stammangaben: Beschriftung suchen, Wert steht in der Standard-Spalte derselben Zeile
+         * (bzw. rechts neben der Beschriftung, falls diese weiter rechts steht)
+         */
+        private fun analyzeStammangaben(sheet: CellSource): StammangabenCells {
+            val default = StammangabenCells.DEFAULT
+
+            fun find(defaultAddress: CellAddress, matches: (String) -> Boolean): CellAddress {
+                for (rowIndex in 0 until SCAN_ROWS) {
+                    for (column in 0 until SCAN_COLUMNS) {
+                        val text = label(sheet, rowIndex, column) ?: continue
+                        if (!matches(text)) continue
+                        val valueColumn = if (column < defaultAddress.column) defaultAddress.column else column + 1
+                        return CellAddress(rowIndex, valueColumn)
+                    }
+                }
+                return defaultAddress
+            }
+
+            return StammangabenCells(
+                sheetName = sheet.sheetName,
+                name = find(default.name) { it.startsWith("name") },
+                einrichtung = find(default.einrichtung) { it.startsWith("einrichtung") },
+                arbeitsumfang = find(default.arbeitsumfang) { it.contains("umfang") },
+                wochenStunden = find(default.wochenStunden) { it.contains("wochenstunden") || it.contains("stunden pro woche") },
+                ferienbetreuung = find(default.ferienbetreuung) { it.contains("ferien") },
+                arbeitsTage = find(default.arbeitsTage) { it.contains("arbeitstage") },
+                ueberstundenVorjahr = find(default.ueberstundenVorjahr) { it.contains("vorjahr") },
+                letzterUebertrag = find(default.letzterUebertrag) { it.contains("übertrag") || it.contains("uebertrag") },
+                ersterMontag = find(default.ersterMontag) { it.contains("montag") }
+            )
+        }
+
+        private fun label(sheet: CellSource, rowIndex: Int, column: Int): String? {
+            return sheet.text(rowIndex, column)?.trim()?.lowercase()?.ifEmpty { null }
+        }
+    }
+}
+
+/**
+ * Lesender Zugriff auf die Zellen eines Blatts - für die Analyse reichen Texte
+ */
+interface CellSource {
+    val sheetName: String
+
+    // Letzte Zeile mit Inhalt (0-basiert), -1 wenn leer
+    val lastRowIndex: Int
+
+    /**
+     * Text einer Zelle oder null (auch für Zahlen und leere Zellen)
+     */
+    fun text(rowIndex: Int, column: Int): String?
+}
+
+/**
+ * CellSource über ein geöffnetes POI-Sheet
+ */
+class SheetCellSource(private val sheet: Sheet) : CellSource {
+    override val sheetName: String
+        get() = sheet.sheetName
+
+    override val lastRowIndex: Int
+        get() = sheet.lastRowNum
+
+    override fun text(rowIndex: Int, column: Int): String? {
+        val cell = sheet.getRow(rowIndex)?.getCell(column) ?: return null
+        return if (cell.cellType == CellType.STRING) cell.stringCellValue else null
+    }
+}
+
+/**
+ * Zellen des Stammangaben-Sheets
+ */
+data class StammangabenCells(
+    val sheetName: String,
+    val name: CellAddress,
+    val einrichtung: CellAddress,
+    val arbeitsumfang: CellAddress,
+    val wochenStunden: CellAddress,
+    val ferienbetreuung: CellAddress,
+    val arbeitsTage: CellAddress,
+    val ueberstundenVorjahr: CellAddress,
+    val letzterUebertrag: CellAddress,
+    val ersterMontag: CellAddress
+) {
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("sheet", sheetName)
+        put("name", name.formatAsString())
+        put("einrichtung", einrichtung.formatAsString())
+        put("arbeitsumfang", arbeitsumfang.formatAsString())
+        put("wochenStunden", wochenStunden.formatAsString())
+        put("ferienbetreuung", ferienbetreuung.formatAsString())
+        put("arbeitsTage", arbeitsTage.formatAsString())
+        put("ueberstundenVorjahr", ueberstundenVorjahr.formatAsString())
+        put("letzterUebertrag", letzterUebertrag.formatAsString())
+        put("ersterMontag", ersterMontag.formatAsString())
+    }
+
+    companion object {
+        // B3, B4, C5, C7, C8, C9, C10, C11, C12
+        val DEFAULT = StammangabenCells(
+            sheetName = "Stammangaben",
+            name = CellAddress(2, 1),
+            einrichtung = CellAddress(3, 1),
+            arbeitsumfang = CellAddress(4, 2),
+            wochenStunden = CellAddress(6, 2),
+            ferienbetreuung = CellAddress(7, 2),
+            arbeitsTage = CellAddress(8, 2),
+            ueberstundenVorjahr = CellAddress(9, 2),
+            letzterUebertrag = CellAddress(10, 2),
+            ersterMontag = CellAddress(11, 2)
+        )
+
+        fun fromJson(json: JSONObject) = StammangabenCells(
+            sheetName = json.getString("sheet"),
+            name = CellAddress(json.getString("name")),
+            einrichtung = CellAddress(json.getString("einrichtung")),
+            arbeitsumfang = CellAddress(json.getString("arbeitsumfang")),
+            wochenStunden = CellAddress(json.getString("wochenStunden")),
+            ferienbetreuung = CellAddress(json.getString("ferienbetreuung")),
+            arbeitsTage = CellAddress(json.getString("arbeitsTage")),
+            ueberstundenVorjahr = CellAddress(json.getString("ueberstundenVorjahr")),
+            letzterUebertrag = CellAddress(json.getString("letzterUebertrag")),
+            ersterMontag = CellAddress(json.getString("ersterMontag"))
+        )
+    }
+}
+
+/**
+ * Spalten der Tageszeilen (0-basiert)
+ * Ist und Differenz berechnet die Vorlage per Formel, sie werden nie beschrieben.
+ */
+data class DayColumns(
+    val soll: Int,
+    val von: Int,
+    val bis: Int,
+    val pause: Int,
+    val typ: Int,
+    val bereitschaft: Int
+) {
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("soll", soll)
+        put("von", von)
+        put("bis", bis)
+        put("pause", pause)
+        put("typ", typ)
+        put("bereitschaft", bereitschaft)
+    }
+
+    companion object {
+        // Erste Tageszeile im Standard-Layout (Zeile 8)
+        const val DEFAULT_FIRST_DAY_ROW = 7
+
+        // C, D, E, F, H, J
+        val DEFAULT = DayColumns(soll = 2, von = 3, bis = 4, pause = 5, typ = 7, bereitschaft = 9)
+
+        fun fromJson(json: JSONObject) = DayColumns(
+            soll = json.getInt("soll"),
+            von = json.getInt("von"),
+            bis = json.getInt("bis"),
+            pause = json.getInt("pause"),
+            typ = json.getInt("typ"),
+            bereitschaft = json.getInt("bereitschaft")
+        )
+    }
+}
+
+/**
+ * Ein KW-Sheet (z.B. "KW 49-53") mit den Zeilen jeder Woche
+ */
+data class WeekBlock(
+    val sheetName: String,
+    val startKW: Int,
+    val endKW: Int,
+    val weeks: List<WeekRows>
+) {
+    /**
+     * Zeilen der Woche [kw] oder null, wenn sie nicht in diesem Block liegt
+     */
+    fun rowsFor(kw: Int): WeekRows? = weeks.getOrNull(kw - startKW)
+
+    fun toJson(): JSONObject = JSONObject().apply {
+        put("sheet", sheetName)
+        put("startKW", startKW)
+        put("endKW", endKW)
+        put("weeks", JSONArray().apply {
+            weeks.forEach { week ->
+                put(JSONObject().apply {
+                    put("dayRows", JSONArray(week.dayRows))
+                    put("sumRow", week.sumRow)
+                })
+            }
+        })
+    }
+
+    companion object {
+        /**
+         * Standard-Raster: Woche i beginnt in Zeile 7 + 7*i (Mo-Fr, Sonst, Summe)
+         */
+        fun standard(sheetName: String, startKW: Int, endKW: Int) = WeekBlock(
+            sheetName = sheetName,
+            startKW = startKW,
+            endKW = endKW,
+            weeks = (0..endKW - startKW).map { index ->
+                val startRow = DayColumns.DEFAULT_FIRST_DAY_ROW + index * 7
+                WeekRows(dayRows = (0 until 6).map { startRow + it }, sumRow = startRow + 6)
+            }
+        )
+
+        fun fromJson(json: JSONObject): WeekBlock {
+            val weeksJson = json.getJSONArray("weeks")
+            return WeekBlock(
+                sheetName = json.getString("sheet"),
+                startKW = json.getInt("startKW"),
+                endKW = json.getInt("endKW"),
+                weeks = (0 until weeksJson.length()).map { index ->
+                    val week = weeksJson.getJSONObject(index)
+                    val dayRows = week.getJSONArray("dayRows")
+                    WeekRows(
+                        dayRows = (0 until dayRows.length()).map { dayRows.getInt(it) },
+                        sumRow = week.getInt("sumRow")
+                    )
+                }
+            )
+        }
+    }
+}
+
+/**
+ * Zeilen einer Woche: dayRows[0..4] = Mo-Fr, dayRows[5] = "Sonst" (Sa/So), sumRow mit KW in Spalte A
+ */
+data class WeekRows(
+    val dayRows: List<Int>,
+    val sumRow: Int
+)
@@ -7,6 +7,8 @@ import kotlinx.coroutines.withContext
 import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
+import org.apache.poi.ss.usermodel.WorkbookFactory
+import org.json.JSONObject
 
 /**
  * Verwaltet Excel-Vorlagen für verschiedene Jahre
@@ -33,6 +35,16 @@ class TemplateManager(private val context: Context) {
                 }
             }
 
+            // Zellen-Karte einmalig ermitteln und neben der Vorlage ablegen
+            FileInputStream(templateFile).use { inputStream ->
+                WorkbookFactory.create(inputStream).use { workbook ->
+                    saveLayout(year, TemplateLayout.analyze(workbook))
+                }
+            }
+
+            // Alte geparste Vorlage freigeben
+            TemplateCache.getInstance(context).invalidate(year)
+
             true
         } catch (e: Exception) {
             android.util.Log.e("TemplateManager", "Fehler beim Speichern der Vorlage", e)
@@ -55,6 +67,30 @@ class TemplateManager(private val context: Context) {
         }
     }
 
+    /**
+     * Lädt die beim Hochladen ermittelte Zellen-Karte der Vorlage
+     *
+     * @param year Das Jahr
+     * @return Zellen-Karte, oder null wenn keine (gültige) Karte vorhanden
+     */
+    fun loadLayout(year: Int): TemplateLayout? {
+        val layoutFile = File(templatesDir, getLayoutFileName(year))
+        if (!layoutFile.exists()) return null
+        return try {
+            TemplateLayout.fromJson(JSONObject(layoutFile.readText()))
+        } catch (e: Exception) {
+            android.util.Log.w("TemplateManager", "Zellen-Karte für $year nicht lesbar", e)
+            null
+        }
+    }
+
+    /**
+     * Speichert die Zellen-Karte neben der Vorlage (template_<jahr>.map.json)
+     */
+    fun saveLayout(year: Int, layout: TemplateLayout) {
+        File(templatesDir, getLayoutFileName(year)).writeText(layout.toJson().toString())
+    }
+
     /**
      * Prüft ob eine Vorlage für ein bestimmtes Jahr existiert
      *
@@ -74,6 +110,7 @@ class TemplateManager(private val context: Context) {
      */
     fun deleteTemplate(year: Int): Boolean {
         val templateFile = File(templatesDir, "template_$year.xlsx")
+        File(templatesDir, getLayoutFileName(year)).delete()
         return templateFile.delete()
     }
 
@@ -102,4 +139,14 @@ class TemplateManager(private val context: Context) {
     fun getTemplateFileName(year: Int): String {
         return "template_$year.xlsx"
     }
+
+    /**
+     * Gibt den Dateinamen der Zellen-Karte zurück
+     *
+     * @param year Das Jahr
+     * @return Dateiname (z.B. "template_2026.map.json")
+     */
+    fun getLayoutFileName(year: Int): String {
+        return "template_$year.map.json"
+    }
 }
@@ -25,7 +25,10 @@ fun TimeEntryCard(
     onStartClick: () -> Unit,
     onEndClick: () -> Unit,
     onPauseClick: () -> Unit,
-    onTypChange: (String) -> Unit
+    onTypChange: (String) -> Unit,
+    title: String = "Heute",
+    date: LocalDate = LocalDate.now(),
+    showQuickActions: Boolean = true      // false z.B. im Verlauf: nur Zeiten und Status
 ) {
     // Check if time is currently running
     val isRunning = entry?.startZeit != null && entry.endZeit == null
@@ -49,9 +52,9 @@ fun TimeEntryCard(
                 verticalAlignment = Alignment.CenterVertically
             ) {
                 Column {
-                    Text("Heute", style = MaterialTheme.typography.titleLarge)
+                    Text(title, style = MaterialTheme.typography.titleLarge)
                     Text(
-                        DateUtils.formatForDisplayWithWeekday(LocalDate.now()),
+                        DateUtils.formatForDisplayWithWeekday(date),
                         style = MaterialTheme.typography.bodyMedium
                     )
                 }
@@ -87,67 +90,69 @@ fun TimeEntryCard(
 
             Divider()
 
-            // Schnellaktionen für Typ-Auswahl
-            Text(
-                text = "Schnellauswahl",
-                style = MaterialTheme.typography.labelMedium,
-                color = MaterialTheme.colorScheme.onSurfaceVariant
-            )
-            Row(
-                modifier = Modifier.fillMaxWidth(),
-                horizontalArrangement = Arrangement.spacedBy(8.dp)
-            ) {
-                QuickTypeButton(
-                    icon = Icons.Default.Work,
-                    label = "Arbeit",
-                    type = TimeEntry.TYP_NORMAL,
-                    isSelected = entry?.typ == TimeEntry.TYP_NORMAL,
-                    onClick = { onTypChange(TimeEntry.TYP_NORMAL) },
-                    color = TypeNormal,
-                    modifier = Modifier.weight(1f)
-                )
-                QuickTypeButton(
-                    icon = Icons.Default.BeachAccess,
-                    label = "Urlaub",
-                    type = TimeEntry.TYP_URLAUB,
-                    isSelected = entry?.typ == TimeEntry.TYP_URLAUB,
-                    onClick = { onTypChange(TimeEntry.TYP_URLAUB) },
-                    color = TypeUrlaub,
-                    modifier = Modifier.weight(1f)
-                )
-                QuickTypeButton(
-                    icon = Icons.Default.LocalHospital,
-                    label = "Krank",
-                    type = TimeEntry.TYP_KRANK,
-                    isSelected = entry?.typ == TimeEntry.TYP_KRANK,
-                    onClick = { onTypChange(TimeEntry.TYP_KRANK) },
-                    color = TypeKrank,
-                    modifier = Modifier.weight(1f)
+            if (showQuickActions) {
+                // Schnellaktionen für Typ-Auswahl
+                Text(
+                    text = "Schnellauswahl",
+                    style = MaterialTheme.typography.labelMedium,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant
                 )
-            }
+                Row(
+                    modifier = Modifier.fillMaxWidth(),
+                    horizontalArrangement = Arrangement.spacedBy(8.dp)
+                ) {
+                    QuickTypeButton(
+                        icon = Icons.Default.Work,
+                        label = "Arbeit",
+                        type = TimeEntry.TYP_NORMAL,
+                        isSelected = entry?.typ == TimeEntry.TYP_NORMAL,
+                        onClick = { onTypChange(TimeEntry.TYP_NORMAL) },
+                        color = TypeNormal,
+                        modifier = Modifier.weight(1f)
+                    )
+                    QuickTypeButton(
+                        icon = Icons.Default.BeachAccess,
+                        label = "Urlaub",
+                        type = TimeEntry.TYP_URLAUB,
+                        isSelected = entry?.typ == TimeEntry.TYP_URLAUB,
+                        onClick = { onTypChange(TimeEntry.TYP_URLAUB) },
+                        color = TypeUrlaub,
+                        modifier = Modifier.weight(1f)
+                    )
+                    QuickTypeButton(
+                        icon = Icons.Default.LocalHospital,
+                        label = "Krank",
+                        type = TimeEntry.TYP_KRANK,
+                        isSelected = entry?.typ == TimeEntry.TYP_KRANK,
+                        onClick = { onTypChange(TimeEntry.TYP_KRANK) },
+                        color = TypeKrank,
+                        modifier = Modifier.weight(1f)
+                    )
+                }
 
-            Row(
-                modifier = Modifier.fillMaxWidth(),
-                horizontalArrangement = Arrangement.spacedBy(8.dp)
-            ) {
-                QuickTypeButton(
-                    icon = Icons.Default.Event,
-                    label = "Feiertag",
-                    type = TimeEntry.TYP_FEIERTAG,
-                    isSelected = entry?.typ == TimeEntry.TYP_FEIERTAG,
-                    onClick = { onTypChange(TimeEntry.TYP_FEIERTAG) },
-                    color = TypeFeiertag,
-                    modifier = Modifier.weight(1f)
-                )
-                QuickTypeButton(
-                    icon = Icons.Default.EventBusy,
-                    label = "Abwesend",
-                    type = TimeEntry.TYP_ABWESEND,
-                    isSelected = entry?.typ == TimeEntry.TYP_ABWESEND,
-                    onClick = { onTypChange(TimeEntry.TYP_ABWESEND) },
-                    color = TypeAbwesend,
-                    modifier = Modifier.weight(1f)
-                )
+                Row(
+                    modifier = Modifier.fillMaxWidth(),
+                    horizontalArrangement = Arrangement.spacedBy(8.dp)
+                ) {
+                    QuickTypeButton(
+                        icon = Icons.Default.Event,
+                        label = "Feiertag",
+                        type = TimeEntry.TYP_FEIERTAG,
+                        isSelected = entry?.typ == TimeEntry.TYP_FEIERTAG,
+                        onClick = { onTypChange(TimeEntry.TYP_FEIERTAG) },
+                        color = TypeFeiertag,
+                        modifier = Modifier.weight(1f)
+                    )
+                    QuickTypeButton(
+                        icon = Icons.Default.EventBusy,
+                        label = "Abwesend",
+                        type = TimeEntry.TYP_ABWESEND,
+                        isSelected = entry?.typ == TimeEntry.TYP_ABWESEND,
+                        onClick = { onTypChange(TimeEntry.TYP_ABWESEND) },
+                        color = TypeAbwesend,
+                        modifier = Modifier.weight(1f)
+                    )
+                }
             }
 
             // Zeit Buttons
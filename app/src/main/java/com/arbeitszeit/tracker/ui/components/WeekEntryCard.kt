@@ -56,7 +56,7 @@ fun WeekEntryCard(entry: TimeEntry) {
                         )
                     }
 
-                    Text("${entry.wochentag} ${entry.datum.substring(8)}")
+                    Text("${entry.getWochentagKurz()} ${entry.datum.substring(8)}")
 
                     // Notiz-Icon
                     if (entry.notiz.isNotEmpty()) {
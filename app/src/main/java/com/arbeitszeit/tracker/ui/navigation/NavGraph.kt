@@ -11,6 +11,8 @@ import com.arbeitszeit.tracker.viewmodel.*
 sealed class Screen(val route: String) {
     object Home : Screen("home")
     object Calendar : Screen("calendar")
+    object History : Screen("history")
+    object Search : Screen("search")
     object Ueberstunden : Screen("ueberstunden")
     object Export : Screen("export")
     object Import : Screen("import")
@@ -45,6 +47,16 @@ fun NavGraph(
             CalendarScreen(viewModel = viewModel)
         }
 
+        composable(Screen.History.route) {
+            val viewModel: HistoryViewModel = viewModel()
+            HistoryScreen(viewModel = viewModel)
+        }
+
+        composable(Screen.Search.route) {
+            val viewModel: SearchViewModel = viewModel()
+            SearchScreen(viewModel = viewModel)
+        }
+
         composable(Screen.Ueberstunden.route) {
             val viewModel: UeberstundenViewModel = viewModel()
             UeberstundenScreen(viewModel = viewModel)
@@ -12,7 +12,9 @@ import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.unit.dp
 import com.arbeitszeit.tracker.viewmodel.ExportViewModel
+import java.time.Instant
 import java.time.LocalDate
+import java.time.ZoneOffset
 
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
@@ -24,6 +26,9 @@ fun ExportScreen(viewModel: ExportViewModel) {
     val currentYear = LocalDate.now().year
     val availableYears = (currentYear - 5..currentYear + 5).toList()
 
+    // Zeitraum-Auswahl für den einfachen Export
+    var showRangeDialog by remember { mutableStateOf(false) }
+
     // Activity Result Launcher für Cloud-Export (Gesamtjahr)
     val createDocumentLauncher = rememberLauncherForActivityResult(
         contract = ActivityResultContracts.CreateDocument("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
@@ -189,6 +194,16 @@ fun ExportScreen(viewModel: ExportViewModel) {
                     Text("Einfacher Export (Wochenblöcke)")
                 }
 
+                OutlinedButton(
+                    onClick = { showRangeDialog = true },
+                    enabled = !uiState.isExporting && !uiState.isImporting,
+                    modifier = Modifier.fillMaxWidth()
+                ) {
+                    Icon(Icons.Default.DateRange, contentDescription = null)
+                    Spacer(Modifier.width(8.dp))
+                    Text("Einfacher Export (Zeitraum)")
+                }
+
                 HorizontalDivider(modifier = Modifier.padding(vertical = 8.dp))
 
                 // Share-Buttons (OneDrive, E-Mail, etc.)
@@ -331,6 +346,42 @@ fun ExportScreen(viewModel: ExportViewModel) {
         )
     }
 
+    // Zeitraum-Auswahl Dialog
+    if (showRangeDialog) {
+        val rangeState = rememberDateRangePickerState()
+        DatePickerDialog(
+            onDismissRequest = { showRangeDialog = false },
+            confirmButton = {
+                TextButton(
+                    onClick = {
+                        val from = rangeState.selectedStartDateMillis
+                        val to = rangeState.selectedEndDateMillis ?: from
+                        if (from != null && to != null) {
+                            viewModel.exportSimpleRange(
+                                Instant.ofEpochMilli(from).atZone(ZoneOffset.UTC).toLocalDate(),
+                                Instant.ofEpochMilli(to).atZone(ZoneOffset.UTC).toLocalDate()
+                            )
+                        }
+                        showRangeDialog = false
+                    },
+                    enabled = rangeState.selectedStartDateMillis != null
+                ) {
+                    Text("Exportieren")
+                }
+            },
+            dismissButton = {
+                TextButton(onClick = { showRangeDialog = false }) {
+                    Text("Abbrechen")
+                }
+            }
+        ) {
+            DateRangePicker(
+                state = rangeState,
+                modifier = Modifier.weight(1f)
+            )
+        }
+    }
+
     // Dateinamen-Eingabe Dialog
     if (uiState.showFileNameDialog) {
         FileNameInputDialog(
@@ -392,6 +443,13 @@ fun ExportPreviewDialog(
                             fontWeight = androidx.compose.ui.text.font.FontWeight.Bold,
                             color = MaterialTheme.colorScheme.primary
                         )
+                        Text("Differenz im Jahr: ${com.arbeitszeit.tracker.utils.TimeUtils.formatDifferenz(previewData.differenzJahrMinuten)}")
+                        previewData.saldoStichtag?.let { stichtag ->
+                            Text(
+                                "Saldo am ${stichtag.format(java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy"))}: " +
+                                    com.arbeitszeit.tracker.utils.TimeUtils.formatDifferenz(previewData.saldoStichtagMinuten)
+                            )
+                        }
                     }
                 }
 
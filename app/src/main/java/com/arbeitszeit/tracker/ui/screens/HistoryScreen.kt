@@ -0,0 +1,121 @@
+package com.arbeitszeit.tracker.ui.screens
+
+import androidx.compose.foundation.ExperimentalFoundationApi
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.filled.*
+import androidx.compose.material3.*
+import androidx.compose.runtime.*
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.unit.dp
+import androidx.paging.LoadState
+import androidx.paging.compose.collectAsLazyPagingItems
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.ui.components.EditEntryDialog
+import com.arbeitszeit.tracker.ui.components.EmptyStateCard
+import com.arbeitszeit.tracker.ui.components.TimeEntryCard
+import com.arbeitszeit.tracker.viewmodel.HistoryItem
+import com.arbeitszeit.tracker.viewmodel.HistoryViewModel
+import java.time.format.TextStyle
+import java.util.Locale
+
+/**
+ * Verlauf: alle gespeicherten Tage, neueste zuerst, mit Monatsüberschriften
+ * Geladen wird seitenweise - auch bei jahrelangem Verlauf liegen nur wenige Seiten im Speicher.
+ */
+@OptIn(ExperimentalFoundationApi::class)
+@Composable
+fun HistoryScreen(viewModel: HistoryViewModel) {
+    val items = viewModel.history.collectAsLazyPagingItems()
+    var editEntry by remember { mutableStateOf<TimeEntry?>(null) }
+
+    when {
+        items.loadState.refresh is LoadState.Loading && items.itemCount == 0 -> {
+            Box(modifier = Modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
+                CircularProgressIndicator()
+            }
+        }
+        items.loadState.refresh is LoadState.NotLoading && items.itemCount == 0 -> {
+            EmptyStateCard(
+                icon = Icons.Default.History,
+                title = "Noch kein Verlauf",
+                description = "Gespeicherte Tage erscheinen hier, sobald Zeiten erfasst wurden.",
+                modifier = Modifier.padding(16.dp)
+            )
+        }
+        else -> {
+            LazyColumn(
+                modifier = Modifier.fillMaxSize(),
+                contentPadding = PaddingValues(bottom = 16.dp)
+            ) {
+                // peek lädt nichts nach - erst items[index] im sichtbaren Element löst Prefetch aus
+                for (index in 0 until items.itemCount) {
+                    when (val historyItem = items.peek(index)) {
+                        is HistoryItem.MonthHeader -> stickyHeader(key = "header-${historyItem.month}") {
+                            MonthHeader(historyItem)
+                        }
+                        is HistoryItem.Entry -> item(key = historyItem.entry.epochDay) {
+                            val entry = (items[index] as? HistoryItem.Entry)?.entry ?: return@item
+                            Box(modifier = Modifier.padding(horizontal = 16.dp, vertical = 6.dp)) {
+                                TimeEntryCard(
+                                    entry = entry,
+                                    onStartClick = { editEntry = entry },
+                                    onEndClick = { editEntry = entry },
+                                    onPauseClick = { editEntry = entry },
+                                    onTypChange = {},
+                                    title = "KW ${entry.kalenderwoche}",
+                                    date = entry.getDate(),
+                                    showQuickActions = false
+                                )
+                            }
+                        }
+                        null -> Unit    // ohne Platzhalter nicht möglich
+                    }
+                }
+
+                if (items.loadState.append is LoadState.Loading) {
+                    item {
+                        Box(
+                            modifier = Modifier
+                                .fillMaxWidth()
+                                .padding(16.dp),
+                            contentAlignment = Alignment.Center
+                        ) {
+                            CircularProgressIndicator()
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    editEntry?.let { entry ->
+        EditEntryDialog(
+            entry = entry,
+            datum = entry.datum,
+            onDismiss = { editEntry = null },
+            onSave = { startZeit, endZeit, pauseMinuten, typ, notiz ->
+                viewModel.updateEntry(entry, startZeit, endZeit, pauseMinuten, typ, notiz)
+                editEntry = null
+            }
+        )
+    }
+}
+
+@Composable
+private fun MonthHeader(header: HistoryItem.MonthHeader) {
+    Surface(
+        modifier = Modifier.fillMaxWidth(),
+        color = MaterialTheme.colorScheme.surfaceVariant
+    ) {
+        Text(
+            text = "${header.month.month.getDisplayName(TextStyle.FULL, Locale.GERMAN)} ${header.month.year}",
+            style = MaterialTheme.typography.titleMedium,
+            fontWeight = FontWeight.Bold,
+            modifier = Modifier.padding(horizontal = 16.dp, vertical = 8.dp)
+        )
+    }
+}
@@ -24,6 +24,7 @@ import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.unit.DpOffset
 import androidx.compose.ui.unit.dp
 import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.stamp.WorkSession
 import com.arbeitszeit.tracker.ui.components.*
 import com.arbeitszeit.tracker.ui.theme.*
 import com.arbeitszeit.tracker.utils.DateUtils
@@ -42,6 +43,7 @@ fun HomeScreen(
     onNavigateToHelp: () -> Unit = {}
 ) {
     val todayEntry by viewModel.todayEntry.collectAsState()
+    val todaySessions by viewModel.todaySessions.collectAsState()
     val userSettings by viewModel.userSettings.collectAsState()
     val weekEntries by viewModel.weekEntries.collectAsState()
     val selectedWeekDate by viewModel.selectedWeekDate.collectAsState()
@@ -178,6 +180,13 @@ fun HomeScreen(
                 }
             }
 
+            // Mehrere Arbeitsblöcke (z.B. geteilter Dienst)
+            if (todaySessions.size > 1) {
+                item {
+                    SessionsCard(sessions = todaySessions)
+                }
+            }
+
             item {
                 AnimatedVisibility(
                     visible = itemsVisible,
@@ -335,6 +344,27 @@ fun HomeScreen(
     }
 }
 
+@Composable
+private fun SessionsCard(sessions: List<WorkSession>) {
+    Card(modifier = Modifier.fillMaxWidth()) {
+        Column(
+            modifier = Modifier.padding(16.dp),
+            verticalArrangement = Arrangement.spacedBy(4.dp)
+        ) {
+            Text(
+                "Arbeitsblöcke heute",
+                style = MaterialTheme.typography.titleMedium,
+                fontWeight = FontWeight.Bold
+            )
+            sessions.forEach { session ->
+                val start = TimeUtils.minutesToTimeString(session.start)
+                val end = session.end?.let { TimeUtils.minutesToTimeString(it) } ?: "läuft"
+                Text("$start – $end", style = MaterialTheme.typography.bodyMedium)
+            }
+        }
+    }
+}
+
 @Composable
 private fun PauseSliderDialog(
     currentPauseMinutes: Int,
@@ -11,21 +11,39 @@ import androidx.compose.runtime.*
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.unit.dp
+import com.arbeitszeit.tracker.import.ImportConflict
 import com.arbeitszeit.tracker.viewmodel.ExportViewModel
+import com.arbeitszeit.tracker.viewmodel.ImportPreview
+import java.time.LocalDate
+import java.time.format.DateTimeFormatter
+import java.util.Locale
 
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun ImportScreen(viewModel: ExportViewModel) {
     val uiState by viewModel.uiState.collectAsState()
     var showImportDialog by remember { mutableStateOf(false) }
-    var selectedFileUri by remember { mutableStateOf<Uri?>(null) }
+    var selectedFileUris by remember { mutableStateOf<List<Uri>>(emptyList()) }
+    var selectedFolderUri by remember { mutableStateOf<Uri?>(null) }
 
-    // File Picker für Excel-Import
+    // File Picker für Excel-Import (eine oder mehrere Dateien)
     val filePickerLauncher = rememberLauncherForActivityResult(
-        contract = ActivityResultContracts.GetContent()
+        contract = ActivityResultContracts.GetMultipleContents()
+    ) { uris: List<Uri> ->
+        if (uris.isNotEmpty()) {
+            selectedFileUris = uris
+            selectedFolderUri = null
+            showImportDialog = true
+        }
+    }
+
+    // Ordner-Auswahl für Excel-Import (alle .xlsx-Dateien im Ordner)
+    val folderPickerLauncher = rememberLauncherForActivityResult(
+        contract = ActivityResultContracts.OpenDocumentTree()
     ) { uri: Uri? ->
         if (uri != null) {
-            selectedFileUri = uri
+            selectedFolderUri = uri
+            selectedFileUris = emptyList()
             showImportDialog = true
         }
     }
@@ -74,7 +92,7 @@ fun ImportScreen(viewModel: ExportViewModel) {
                 )
 
                 Text(
-                    "Importiere eine vorhandene Excel-Datei mit Zeiteinträgen",
+                    "Importiere eine oder mehrere Excel-Dateien mit Zeiteinträgen oder einen ganzen Ordner",
                     style = MaterialTheme.typography.bodySmall,
                     color = MaterialTheme.colorScheme.onPrimaryContainer.copy(alpha = 0.8f)
                 )
@@ -98,6 +116,23 @@ fun ImportScreen(viewModel: ExportViewModel) {
                     }
                 }
 
+                OutlinedButton(
+                    onClick = { folderPickerLauncher.launch(null) },
+                    enabled = !uiState.isExporting && !uiState.isImporting,
+                    modifier = Modifier.fillMaxWidth()
+                ) {
+                    Icon(Icons.Default.Folder, contentDescription = null)
+                    Spacer(Modifier.width(8.dp))
+                    Text("Ordner importieren")
+                }
+
+                uiState.importProgress?.let { progress ->
+                    LinearProgressIndicator(
+                        progress = { progress },
+                        modifier = Modifier.fillMaxWidth()
+                    )
+                }
+
                 if (uiState.importSuccess) {
                     Card(
                         colors = CardDefaults.cardColors(
@@ -115,13 +150,30 @@ fun ImportScreen(viewModel: ExportViewModel) {
                                 tint = MaterialTheme.colorScheme.onTertiaryContainer
                             )
                             Text(
-                                "Erfolgreich: ${uiState.importedEntriesCount} Einträge importiert",
+                                if (uiState.importedFilesCount > 1) {
+                                    "Erfolgreich: ${uiState.importedEntriesCount} Tage aus ${uiState.importedFilesCount} Dateien übernommen"
+                                } else {
+                                    "Erfolgreich: ${uiState.importedEntriesCount} Tage übernommen"
+                                },
                                 color = MaterialTheme.colorScheme.onTertiaryContainer,
                                 style = MaterialTheme.typography.bodySmall
                             )
                         }
                     }
                 }
+
+                uiState.importPreview?.let { preview ->
+                    ImportPreviewCard(
+                        preview = preview,
+                        enabled = !uiState.isImporting,
+                        onApply = { viewModel.applyImport() },
+                        onDiscard = { viewModel.discardImport() }
+                    )
+                }
+
+                if ((uiState.importPreview != null || uiState.importSuccess) && uiState.importConflicts.isNotEmpty()) {
+                    ImportConflictsCard(uiState.importConflicts)
+                }
             }
         }
 
@@ -154,7 +206,9 @@ fun ImportScreen(viewModel: ExportViewModel) {
 
                 Text(
                     "• Die Excel-Datei muss das gleiche Format haben wie der Export\n" +
+                    "• Vor dem Übernehmen siehst du, welche Tage neu sind oder sich ändern\n" +
                     "• Bestehende Einträge für die gleichen Tage werden überschrieben\n" +
+                    "• Steht ein Tag in mehreren Dateien, gilt die zuletzt geänderte Datei\n" +
                     "• Du kannst wählen, ob Stammdaten importiert werden sollen",
                     style = MaterialTheme.typography.bodySmall
                 )
@@ -191,23 +245,160 @@ fun ImportScreen(viewModel: ExportViewModel) {
     }
 
     // Import Dialog mit Option für Stammdaten
-    if (showImportDialog && selectedFileUri != null) {
+    if (showImportDialog && (selectedFileUris.isNotEmpty() || selectedFolderUri != null)) {
         ImportConfirmationDialog(
+            multipleFiles = selectedFolderUri != null || selectedFileUris.size > 1,
             onConfirm = { importStammdaten ->
-                viewModel.importExcel(selectedFileUri!!, importStammdaten)
+                val folderUri = selectedFolderUri
+                if (folderUri != null) {
+                    viewModel.importExcelFolder(folderUri, importStammdaten)
+                } else {
+                    viewModel.importExcelFiles(selectedFileUris, importStammdaten)
+                }
                 showImportDialog = false
-                selectedFileUri = null
+                selectedFileUris = emptyList()
+                selectedFolderUri = null
             },
             onDismiss = {
                 showImportDialog = false
-                selectedFileUri = null
+                selectedFileUris = emptyList()
+                selectedFolderUri = null
+            }
+        )
+    }
+}
+
+/**
+ * Vorschau des Imports mit Änderungen pro Monat
+ */
+@Composable
+private fun ImportPreviewCard(
+    preview: ImportPreview,
+    enabled: Boolean,
+    onApply: () -> Unit,
+    onDiscard: () -> Unit
+) {
+    val monthFormatter = remember { DateTimeFormatter.ofPattern("MMMM yyyy", Locale.GERMAN) }
+
+    Card(
+        colors = CardDefaults.cardColors(
+            containerColor = MaterialTheme.colorScheme.surface
+        )
+    ) {
+        Column(
+            modifier = Modifier.padding(12.dp),
+            verticalArrangement = Arrangement.spacedBy(8.dp)
+        ) {
+            Text(
+                "Vorschau",
+                style = MaterialTheme.typography.titleSmall
+            )
+            Text(
+                "${preview.entriesCount} Tage gelesen" +
+                        (if (preview.filesCount > 1) " aus ${preview.filesCount} Dateien" else "") +
+                        ": ${preview.addedCount} neu, ${preview.changedCount} geändert, " +
+                        "${preview.unchangedCount} unverändert",
+                style = MaterialTheme.typography.bodySmall
+            )
+            if (preview.stammdatenChanged) {
+                Text(
+                    "Stammdaten werden aktualisiert",
+                    style = MaterialTheme.typography.bodySmall
+                )
+            }
+
+            preview.months.forEach { month ->
+                Row(modifier = Modifier.fillMaxWidth()) {
+                    Text(
+                        month.month.format(monthFormatter),
+                        style = MaterialTheme.typography.bodySmall,
+                        modifier = Modifier.weight(1f)
+                    )
+                    Text(
+                        "+${month.added}  ~${month.changed}  =${month.unchanged}",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = if (month.added > 0 || month.changed > 0) {
+                            MaterialTheme.colorScheme.primary
+                        } else {
+                            MaterialTheme.colorScheme.onSurfaceVariant
+                        }
+                    )
+                }
+            }
+
+            Row(
+                modifier = Modifier.fillMaxWidth(),
+                horizontalArrangement = Arrangement.spacedBy(8.dp, Alignment.End)
+            ) {
+                TextButton(onClick = onDiscard, enabled = enabled) {
+                    Text(if (preview.hasChanges) "Verwerfen" else "Schließen")
+                }
+                if (preview.hasChanges) {
+                    Button(onClick = onApply, enabled = enabled) {
+                        Text("Übernehmen (${preview.addedCount + preview.changedCount})")
+                    }
+                }
             }
+        }
+    }
+}
+
+/**
+ * Tage, die in mehreren Dateien unterschiedlich eingetragen waren
+ */
+@Composable
+private fun ImportConflictsCard(conflicts: List<ImportConflict>) {
+    val dateFormatter = remember { DateTimeFormatter.ofPattern("dd.MM.yyyy") }
+
+    Card(
+        colors = CardDefaults.cardColors(
+            containerColor = MaterialTheme.colorScheme.secondaryContainer
         )
+    ) {
+        Column(
+            modifier = Modifier.padding(12.dp),
+            verticalArrangement = Arrangement.spacedBy(4.dp)
+        ) {
+            Row(
+                horizontalArrangement = Arrangement.spacedBy(8.dp),
+                verticalAlignment = Alignment.CenterVertically
+            ) {
+                Icon(
+                    Icons.Default.Warning,
+                    contentDescription = null,
+                    tint = MaterialTheme.colorScheme.onSecondaryContainer
+                )
+                Text(
+                    "${conflicts.size} Tage mit abweichenden Einträgen (neuere Datei übernommen)",
+                    color = MaterialTheme.colorScheme.onSecondaryContainer,
+                    style = MaterialTheme.typography.bodySmall
+                )
+            }
+
+            conflicts.take(MAX_SHOWN_CONFLICTS).forEach { conflict ->
+                Text(
+                    "${LocalDate.parse(conflict.datum).format(dateFormatter)}: ${conflict.keptFile} " +
+                            "statt ${conflict.discardedFiles.joinToString()}",
+                    color = MaterialTheme.colorScheme.onSecondaryContainer,
+                    style = MaterialTheme.typography.bodySmall
+                )
+            }
+            if (conflicts.size > MAX_SHOWN_CONFLICTS) {
+                Text(
+                    "… und ${conflicts.size - MAX_SHOWN_CONFLICTS} weitere",
+                    color = MaterialTheme.colorScheme.onSecondaryContainer,
+                    style = MaterialTheme.typography.bodySmall
+                )
+            }
+        }
     }
 }
 
+private const val MAX_SHOWN_CONFLICTS = 5
+
 @Composable
 private fun ImportConfirmationDialog(
+    multipleFiles: Boolean,
     onConfirm: (importStammdaten: Boolean) -> Unit,
     onDismiss: () -> Unit
 ) {
@@ -219,6 +410,13 @@ private fun ImportConfirmationDialog(
         text = {
             Column {
                 Text("Möchtest du auch die Stammdaten (Name, Einrichtung, etc.) importieren?")
+                if (multipleFiles) {
+                    Spacer(Modifier.height(4.dp))
+                    Text(
+                        "Bei mehreren Dateien werden die Stammdaten aus der zuletzt geänderten Datei übernommen.",
+                        style = MaterialTheme.typography.bodySmall
+                    )
+                }
                 Spacer(Modifier.height(8.dp))
                 Row(
                     verticalAlignment = Alignment.CenterVertically,
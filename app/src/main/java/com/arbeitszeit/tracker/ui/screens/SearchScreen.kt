@@ -0,0 +1,129 @@
+package com.arbeitszeit.tracker.ui.screens
+
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.items
+import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.filled.*
+import androidx.compose.material3.*
+import androidx.compose.runtime.*
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.text.AnnotatedString
+import androidx.compose.ui.text.SpanStyle
+import androidx.compose.ui.text.buildAnnotatedString
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.text.withStyle
+import androidx.compose.ui.unit.dp
+import com.arbeitszeit.tracker.data.model.NoteSearchResult
+import com.arbeitszeit.tracker.data.search.NoteSearch
+import com.arbeitszeit.tracker.ui.components.EmptyStateCard
+import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.viewmodel.SearchViewModel
+
+/**
+ * Suche in den Notizen (z.B. Ausflug, Elternabend, Vertretung)
+ */
+@Composable
+fun SearchScreen(viewModel: SearchViewModel) {
+    val query by viewModel.query.collectAsState()
+    val results by viewModel.results.collectAsState()
+
+    Column(
+        modifier = Modifier
+            .fillMaxSize()
+            .padding(horizontal = 16.dp)
+    ) {
+        OutlinedTextField(
+            value = query,
+            onValueChange = viewModel::setQuery,
+            modifier = Modifier
+                .fillMaxWidth()
+                .padding(vertical = 12.dp),
+            placeholder = { Text("Notizen durchsuchen") },
+            leadingIcon = { Icon(Icons.Default.Search, null) },
+            trailingIcon = {
+                if (query.isNotEmpty()) {
+                    IconButton(onClick = { viewModel.setQuery("") }) {
+                        Icon(Icons.Default.Clear, "Suche leeren")
+                    }
+                }
+            },
+            singleLine = true
+        )
+
+        when {
+            query.isBlank() -> EmptyStateCard(
+                icon = Icons.Default.Search,
+                title = "Notizen durchsuchen",
+                description = "Findet Tage anhand ihrer Notiz - auch Wortanfänge, z.B. \"eltern\" für Elternabend."
+            )
+            results.isEmpty() -> EmptyStateCard(
+                icon = Icons.Default.SearchOff,
+                title = "Keine Treffer",
+                description = "Keine Notiz enthält \"$query\"."
+            )
+            else -> {
+                Text(
+                    text = "${results.size} Treffer",
+                    style = MaterialTheme.typography.labelMedium,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant
+                )
+                LazyColumn(
+                    contentPadding = PaddingValues(vertical = 8.dp),
+                    verticalArrangement = Arrangement.spacedBy(8.dp)
+                ) {
+                    items(results, key = { it.entry.epochDay }) { result ->
+                        SearchResultCard(result)
+                    }
+                }
+            }
+        }
+    }
+}
+
+@Composable
+private fun SearchResultCard(result: NoteSearchResult) {
+    val highlight = SpanStyle(
+        fontWeight = FontWeight.Bold,
+        color = MaterialTheme.colorScheme.primary
+    )
+    val snippet = remember(result.snippet, highlight) { highlightSnippet(result.snippet, highlight) }
+
+    Card(modifier = Modifier.fillMaxWidth()) {
+        Column(
+            modifier = Modifier.padding(16.dp),
+            verticalArrangement = Arrangement.spacedBy(4.dp)
+        ) {
+            Text(
+                text = DateUtils.formatForDisplayWithWeekday(result.entry.getDate()),
+                style = MaterialTheme.typography.titleSmall,
+                fontWeight = FontWeight.Bold
+            )
+            Text(text = snippet, style = MaterialTheme.typography.bodyMedium)
+        }
+    }
+}
+
+/**
+ * Wandelt die Treffer-Markierungen aus snippet() in Hervorhebungen um
+ */
+private fun highlightSnippet(snippet: String, style: SpanStyle): AnnotatedString {
+    return buildAnnotatedString {
+        var rest = snippet
+        while (rest.isNotEmpty()) {
+            val start = rest.indexOf(NoteSearch.MARK_START)
+            if (start < 0) {
+                append(rest)
+                break
+            }
+            append(rest.substring(0, start))
+            val end = rest.indexOf(NoteSearch.MARK_END, start)
+            if (end < 0) {
+                append(rest.substring(start + 1))
+                break
+            }
+            withStyle(style) { append(rest.substring(start + 1, end)) }
+            rest = rest.substring(end + 1)
+        }
+    }
+}
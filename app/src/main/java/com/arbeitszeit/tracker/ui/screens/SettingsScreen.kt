@@ -15,9 +15,11 @@ import androidx.compose.ui.Modifier
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.text.input.KeyboardType
 import androidx.compose.ui.unit.dp
+import com.arbeitszeit.tracker.BuildConfig
 import com.arbeitszeit.tracker.ui.components.DarkModeCard
 import com.arbeitszeit.tracker.ui.sections.ArbeitszeitvorlagenSection
 import com.arbeitszeit.tracker.ui.sections.BackupSection
+import com.arbeitszeit.tracker.ui.sections.DiagnosticsSection
 import com.arbeitszeit.tracker.viewmodel.SettingsViewModel
 import kotlinx.coroutines.launch
 
@@ -154,6 +156,17 @@ fun SettingsScreen(
                     onClick = { selectedSection = SettingsSection.BACKUP }
                 )
             }
+            // Abfrage-Diagnose nur in Debug-Builds (siehe QueryLog)
+            if (BuildConfig.DEBUG) {
+                item {
+                    SettingsMenuItem(
+                        icon = Icons.Default.Speed,
+                        title = "Diagnose",
+                        subtitle = "Laufzeiten der Datenbank-Abfragen",
+                        onClick = { selectedSection = SettingsSection.DIAGNOSTICS }
+                    )
+                }
+            }
             item {
                 SettingsMenuItem(
                     icon = Icons.Default.Delete,
@@ -182,6 +195,7 @@ enum class SettingsSection {
     GEOFENCING,
     BACKUP,
     EXCEL_TEMPLATES,
+    DIAGNOSTICS,
     DELETE_DATA
 }
 
@@ -293,6 +307,7 @@ private fun SettingsDetailScreen(
                             SettingsSection.GEOFENCING -> "Geofencing & Orte"
                             SettingsSection.BACKUP -> "Cloud-Backup"
                             SettingsSection.EXCEL_TEMPLATES -> "Excel-Vorlagen"
+                            SettingsSection.DIAGNOSTICS -> "Diagnose"
                             SettingsSection.DELETE_DATA -> "Daten löschen"
                         }
                     )
@@ -306,11 +321,27 @@ private fun SettingsDetailScreen(
         },
         snackbarHost = { SnackbarHost(snackbarHostState) }
     ) { paddingValues ->
+        val recalculationProgress by viewModel.recalculationProgress.collectAsState()
+
         Column(
             modifier = Modifier
                 .fillMaxSize()
                 .padding(paddingValues)
         ) {
+            // Neuberechnung nach Einstellungsänderung läuft im Hintergrund weiter
+            recalculationProgress?.let { progress ->
+                LinearProgressIndicator(
+                    progress = { progress },
+                    modifier = Modifier.fillMaxWidth()
+                )
+                Text(
+                    text = "Einträge werden neu berechnet …",
+                    style = MaterialTheme.typography.bodySmall,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant,
+                    modifier = Modifier.padding(horizontal = 16.dp, vertical = 4.dp)
+                )
+            }
+
             when (section) {
                 SettingsSection.PERSONAL_DATA -> PersonalDataSection(viewModel, settings, snackbarHostState)
                 SettingsSection.DARK_MODE -> DarkModeSection(viewModel, settings, snackbarHostState)
@@ -320,6 +351,7 @@ private fun SettingsDetailScreen(
                 SettingsSection.GEOFENCING -> GeofencingSection(onNavigateToGeofencing)
                 SettingsSection.BACKUP -> BackupSection(viewModel, snackbarHostState)
                 SettingsSection.EXCEL_TEMPLATES -> ExcelTemplatesSection(onNavigateToTemplateManagement)
+                SettingsSection.DIAGNOSTICS -> DiagnosticsSection()
                 SettingsSection.DELETE_DATA -> DeleteDataSection(viewModel, snackbarHostState, onNavigateBack)
             }
         }
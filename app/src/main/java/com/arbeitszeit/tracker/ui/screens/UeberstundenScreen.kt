@@ -25,6 +25,10 @@ import com.arbeitszeit.tracker.ui.components.EmptyStates
 import com.arbeitszeit.tracker.ui.theme.*
 import com.arbeitszeit.tracker.viewmodel.MonthSummary
 import com.arbeitszeit.tracker.viewmodel.UeberstundenViewModel
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
 import java.time.format.TextStyle
 import java.util.*
 
@@ -36,6 +40,8 @@ fun UeberstundenScreen(
     val summary by viewModel.ueberstundenSummary.collectAsState()
     val urlaubsSummary by viewModel.urlaubsSummary.collectAsState()
     val weeklyData by viewModel.weeklyData.collectAsState()
+    val stichtag by viewModel.stichtag.collectAsState()
+    val saldoAmStichtag by viewModel.saldoAmStichtag.collectAsState()
 
     Scaffold(
         topBar = {
@@ -73,6 +79,16 @@ fun UeberstundenScreen(
                 )
             }
 
+            // Saldo zu einem Stichtag
+            item {
+                StichtagCard(
+                    stichtag = stichtag,
+                    saldo = saldoAmStichtag,
+                    onStichtagChange = { viewModel.selectStichtag(it) },
+                    viewModel = viewModel
+                )
+            }
+
             // Urlaubs Card
             item {
                 UrlaubsCard(
@@ -225,6 +241,89 @@ private fun DetailsCard(
     }
 }
 
+@OptIn(ExperimentalMaterial3Api::class)
+@Composable
+private fun StichtagCard(
+    stichtag: LocalDate,
+    saldo: Int,
+    onStichtagChange: (LocalDate) -> Unit,
+    viewModel: UeberstundenViewModel
+) {
+    var showDatePicker by remember { mutableStateOf(false) }
+
+    Card(
+        modifier = Modifier.fillMaxWidth(),
+        elevation = CardDefaults.cardElevation(defaultElevation = 2.dp)
+    ) {
+        Column(
+            modifier = Modifier.padding(16.dp),
+            verticalArrangement = Arrangement.spacedBy(12.dp)
+        ) {
+            Text(
+                text = "Saldo am Stichtag",
+                style = MaterialTheme.typography.titleMedium,
+                fontWeight = FontWeight.Bold
+            )
+
+            Divider()
+
+            Row(
+                modifier = Modifier.fillMaxWidth(),
+                horizontalArrangement = Arrangement.SpaceBetween,
+                verticalAlignment = Alignment.CenterVertically
+            ) {
+                IconButton(onClick = { onStichtagChange(stichtag.minusDays(1)) }) {
+                    Icon(Icons.Default.ChevronLeft, "Vorheriger Tag")
+                }
+                TextButton(onClick = { showDatePicker = true }) {
+                    Icon(
+                        imageVector = Icons.Default.Event,
+                        contentDescription = null,
+                        modifier = Modifier.size(18.dp)
+                    )
+                    Spacer(modifier = Modifier.width(8.dp))
+                    Text(stichtag.format(DateTimeFormatter.ofPattern("dd.MM.yyyy")))
+                }
+                IconButton(onClick = { onStichtagChange(stichtag.plusDays(1)) }) {
+                    Icon(Icons.Default.ChevronRight, "Nächster Tag")
+                }
+            }
+
+            DetailRow(
+                label = "Saldo aller Einträge",
+                value = viewModel.minutesToHoursString(saldo),
+                icon = Icons.Default.AccountBalance
+            )
+        }
+    }
+
+    if (showDatePicker) {
+        val datePickerState = rememberDatePickerState(
+            initialSelectedDateMillis = stichtag.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+        )
+        DatePickerDialog(
+            onDismissRequest = { showDatePicker = false },
+            confirmButton = {
+                TextButton(onClick = {
+                    datePickerState.selectedDateMillis?.let { millis ->
+                        onStichtagChange(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate())
+                    }
+                    showDatePicker = false
+                }) {
+                    Text("OK")
+                }
+            },
+            dismissButton = {
+                TextButton(onClick = { showDatePicker = false }) {
+                    Text("Abbrechen")
+                }
+            }
+        ) {
+            DatePicker(state = datePickerState)
+        }
+    }
+}
+
 @Composable
 private fun DetailRow(
     label: String,
@@ -656,6 +755,22 @@ private fun UeberstundenTrendChart(
                             )
                         )
                     }
+
+                    // Gleitender 4-Wochen-Durchschnitt als Linie über den Balken
+                    val averagePoints = weeklyData.mapIndexed { index, week ->
+                        Offset(
+                            (index * size.width / weeklyData.size) + barWidth / 2,
+                            chartCenterY - (week.schnittMinuten.toFloat() / maxAbsValue) * maxBarHeight
+                        )
+                    }
+                    averagePoints.zipWithNext { start, end ->
+                        drawLine(
+                            color = Color.Gray,
+                            start = start,
+                            end = end,
+                            strokeWidth = 4f
+                        )
+                    }
                 }
 
                 // Week labels
@@ -681,6 +796,15 @@ private fun UeberstundenTrendChart(
                     }
                 }
 
+                // Laufender Saldo der Einträge am Ende der letzten Woche (ohne Vorjahresübertrag)
+                Text(
+                    text = "Saldo Ende KW ${weeklyData.last().weekNumber}: " +
+                        viewModel.minutesToHoursString(weeklyData.last().saldoMinuten),
+                    style = MaterialTheme.typography.labelMedium,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant,
+                    modifier = Modifier.padding(top = 4.dp)
+                )
+
                 Spacer(modifier = Modifier.height(8.dp))
 
                 // Legend
@@ -707,6 +831,17 @@ private fun UeberstundenTrendChart(
                     )
                     Text(
                         text = " Fehlstunden",
+                        style = MaterialTheme.typography.labelSmall,
+                        modifier = Modifier.padding(end = 16.dp)
+                    )
+
+                    Box(
+                        modifier = Modifier
+                            .size(width = 12.dp, height = 3.dp)
+                            .background(Color.Gray)
+                    )
+                    Text(
+                        text = " Ø 4 Wochen",
                         style = MaterialTheme.typography.labelSmall
                     )
                 }
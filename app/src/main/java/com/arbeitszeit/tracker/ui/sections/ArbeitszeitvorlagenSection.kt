@@ -17,6 +17,7 @@ import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.text.input.KeyboardType
 import androidx.compose.ui.unit.dp
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
 import com.arbeitszeit.tracker.data.entity.SollZeitVorlage
 import com.arbeitszeit.tracker.viewmodel.SettingsViewModel
 import kotlinx.coroutines.launch
@@ -138,7 +139,7 @@ fun ArbeitszeitvorlagenSection(
                 onDelete = { deletingVorlage = vorlage },
                 onSetDefault = {
                     scope.launch {
-                        vorlageDao.setAsDefault(vorlage.id)
+                        DatabaseWriter.write { vorlageDao.setAsDefault(vorlage.id) }
                         snackbarHostState.showSnackbar("${vorlage.name} als Standard gesetzt")
                     }
                 }
@@ -153,7 +154,7 @@ fun ArbeitszeitvorlagenSection(
             onDismiss = { showCreateDialog = false },
             onSave = { newVorlage ->
                 scope.launch {
-                    vorlageDao.insert(newVorlage)
+                    DatabaseWriter.write { vorlageDao.insert(newVorlage) }
                     showCreateDialog = false
                     snackbarHostState.showSnackbar("Vorlage '${newVorlage.name}' erstellt")
                 }
@@ -167,7 +168,7 @@ fun ArbeitszeitvorlagenSection(
             onDismiss = { editingVorlage = null },
             onSave = { updatedVorlage ->
                 scope.launch {
-                    vorlageDao.update(updatedVorlage)
+                    DatabaseWriter.write { vorlageDao.update(updatedVorlage) }
                     editingVorlage = null
                     snackbarHostState.showSnackbar("Vorlage '${updatedVorlage.name}' aktualisiert")
                 }
@@ -190,7 +191,7 @@ fun ArbeitszeitvorlagenSection(
                 TextButton(
                     onClick = {
                         scope.launch {
-                            vorlageDao.delete(vorlage)
+                            DatabaseWriter.write { vorlageDao.delete(vorlage) }
                             deletingVorlage = null
                             snackbarHostState.showSnackbar("Vorlage '${vorlage.name}' gelöscht")
                         }
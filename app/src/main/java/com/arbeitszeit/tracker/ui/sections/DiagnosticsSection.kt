@@ -0,0 +1,261 @@
+package com.arbeitszeit.tracker.ui.sections
+
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.items
+import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.filled.*
+import androidx.compose.material3.*
+import androidx.compose.runtime.*
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.text.font.FontFamily
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.text.style.TextOverflow
+import androidx.compose.ui.unit.dp
+import androidx.lifecycle.viewmodel.compose.viewModel
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.diagnostics.QueryShapeStats
+import com.arbeitszeit.tracker.data.entity.SlowQuery
+import com.arbeitszeit.tracker.viewmodel.DiagnosticsViewModel
+import com.arbeitszeit.tracker.viewmodel.RollupCheck
+import java.time.Instant
+import java.time.ZoneId
+import java.time.format.DateTimeFormatter
+
+/**
+ * DiagnosticsSection - Laufzeiten der Datenbank-Abfragen (p50/p95/p99) und langsame Abfragen
+ */
+@Composable
+fun DiagnosticsSection(
+    viewModel: DiagnosticsViewModel = viewModel()
+) {
+    val shapeStats by viewModel.shapeStats.collectAsState()
+    val statementCounts by viewModel.statementCounts.collectAsState()
+    val slowQueries by viewModel.slowQueries.collectAsState()
+    val rollupCheck by viewModel.rollupCheck.collectAsState()
+
+    LazyColumn(
+        modifier = Modifier.fillMaxSize(),
+        contentPadding = PaddingValues(16.dp),
+        verticalArrangement = Arrangement.spacedBy(12.dp)
+    ) {
+        item {
+            Card(
+                colors = CardDefaults.cardColors(
+                    containerColor = MaterialTheme.colorScheme.secondaryContainer
+                )
+            ) {
+                Column(
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(16.dp),
+                    verticalArrangement = Arrangement.spacedBy(8.dp)
+                ) {
+                    Text(
+                        "Abfrage-Protokoll",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+                    Text(
+                        "Gemessen werden die letzten ${QueryLog.RING_SIZE} Datenbank-Abfragen seit App-Start. " +
+                            "Abfragen ab ${QueryLog.SLOW_THRESHOLD_MS} ms werden dauerhaft gespeichert.",
+                        style = MaterialTheme.typography.bodySmall
+                    )
+                    Text(
+                        "SQLite ${viewModel.sqliteVersion ?: "unbekannt"}",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+                    OutlinedButton(
+                        onClick = { viewModel.clear() },
+                        modifier = Modifier.fillMaxWidth()
+                    ) {
+                        Icon(Icons.Default.DeleteSweep, contentDescription = null)
+                        Spacer(Modifier.width(8.dp))
+                        Text("Messungen zurücksetzen")
+                    }
+                }
+            }
+        }
+
+        item {
+            RollupCheckCard(
+                state = rollupCheck,
+                onVerify = { viewModel.verifyRollups() }
+            )
+        }
+
+        item { SectionTitle("Laufzeiten pro Abfrage") }
+        if (shapeStats.isEmpty()) {
+            item { HintText("Noch keine Messungen") }
+        }
+        items(shapeStats, key = { it.shape }) { stats ->
+            ShapeStatsCard(stats)
+        }
+
+        item { SectionTitle("Langsame Abfragen") }
+        if (slowQueries.isEmpty()) {
+            item { HintText("Keine Abfrage über ${QueryLog.SLOW_THRESHOLD_MS} ms") }
+        }
+        items(slowQueries, key = { it.id }) { query ->
+            SlowQueryCard(query)
+        }
+
+        item { SectionTitle("Häufigste SQL-Anweisungen") }
+        items(statementCounts) { (sql, count) ->
+            Row(
+                modifier = Modifier.fillMaxWidth(),
+                horizontalArrangement = Arrangement.spacedBy(8.dp)
+            ) {
+                Text(
+                    text = "${count}×",
+                    style = MaterialTheme.typography.labelMedium,
+                    fontWeight = FontWeight.Bold,
+                    modifier = Modifier.width(56.dp)
+                )
+                SqlText(sql, modifier = Modifier.weight(1f))
+            }
+        }
+    }
+}
+
+@Composable
+private fun RollupCheckCard(state: RollupCheck?, onVerify: () -> Unit) {
+    Card(modifier = Modifier.fillMaxWidth()) {
+        Column(
+            modifier = Modifier
+                .fillMaxWidth()
+                .padding(16.dp),
+            verticalArrangement = Arrangement.spacedBy(8.dp)
+        ) {
+            Text(
+                "Summen-Tabellen",
+                style = MaterialTheme.typography.titleMedium
+            )
+            Text(
+                when (state) {
+                    null -> "Werden nach Updates automatisch geprüft. Die Prüfung rechnet alle Einträge neu zusammen."
+                    RollupCheck.RUNNING -> "Prüfe..."
+                    RollupCheck.CONSISTENT -> "Alle Wochen-, Monats- und Jahressummen stimmen."
+                    RollupCheck.REBUILT -> "Abweichung gefunden - Summen wurden neu aufgebaut."
+                    RollupCheck.FAILED -> "Prüfung fehlgeschlagen."
+                },
+                style = MaterialTheme.typography.bodySmall
+            )
+            OutlinedButton(
+                onClick = onVerify,
+                enabled = state != RollupCheck.RUNNING,
+                modifier = Modifier.fillMaxWidth()
+            ) {
+                Icon(Icons.Default.Checklist, contentDescription = null)
+                Spacer(Modifier.width(8.dp))
+                Text("Summen prüfen")
+            }
+        }
+    }
+}
+
+@Composable
+private fun ShapeStatsCard(stats: QueryShapeStats) {
+    Card(modifier = Modifier.fillMaxWidth()) {
+        Column(
+            modifier = Modifier.padding(12.dp),
+            verticalArrangement = Arrangement.spacedBy(4.dp)
+        ) {
+            Row(verticalAlignment = Alignment.CenterVertically) {
+                Text(
+                    text = stats.shape,
+                    style = MaterialTheme.typography.titleSmall,
+                    fontWeight = FontWeight.Bold,
+                    modifier = Modifier.weight(1f)
+                )
+                Text(
+                    text = "${stats.count}×",
+                    style = MaterialTheme.typography.labelMedium,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant
+                )
+            }
+            Text(
+                text = "p50 ${formatMicros(stats.p50Micros)} • p95 ${formatMicros(stats.p95Micros)} • " +
+                    "p99 ${formatMicros(stats.p99Micros)} • max ${formatMicros(stats.maxMicros)}",
+                style = MaterialTheme.typography.bodySmall
+            )
+            Text(
+                text = "Ø ${stats.avgRows} Zeilen",
+                style = MaterialTheme.typography.bodySmall,
+                color = MaterialTheme.colorScheme.onSurfaceVariant
+            )
+            if (stats.sql.isNotEmpty()) {
+                SqlText(stats.sql)
+            }
+        }
+    }
+}
+
+@Composable
+private fun SlowQueryCard(query: SlowQuery) {
+    Card(
+        modifier = Modifier.fillMaxWidth(),
+        colors = CardDefaults.cardColors(
+            containerColor = MaterialTheme.colorScheme.errorContainer.copy(alpha = 0.3f)
+        )
+    ) {
+        Column(
+            modifier = Modifier.padding(12.dp),
+            verticalArrangement = Arrangement.spacedBy(4.dp)
+        ) {
+            Text(
+                text = query.shape,
+                style = MaterialTheme.typography.titleSmall,
+                fontWeight = FontWeight.Bold
+            )
+            Text(
+                text = "${query.durationMs} ms • ${query.rowCount} Zeilen • " +
+                    TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(query.timestamp).atZone(ZoneId.systemDefault())),
+                style = MaterialTheme.typography.bodySmall
+            )
+            if (query.sql.isNotEmpty()) {
+                SqlText(query.sql)
+            }
+        }
+    }
+}
+
+@Composable
+private fun SectionTitle(title: String) {
+    Text(
+        text = title,
+        style = MaterialTheme.typography.titleSmall,
+        color = MaterialTheme.colorScheme.primary,
+        fontWeight = FontWeight.Bold,
+        modifier = Modifier.padding(top = 8.dp)
+    )
+}
+
+@Composable
+private fun HintText(text: String) {
+    Text(
+        text = text,
+        style = MaterialTheme.typography.bodySmall,
+        color = MaterialTheme.colorScheme.onSurfaceVariant
+    )
+}
+
+@Composable
+private fun SqlText(sql: String, modifier: Modifier = Modifier) {
+    Text(
+        text = sql,
+        style = MaterialTheme.typography.bodySmall,
+        fontFamily = FontFamily.Monospace,
+        color = MaterialTheme.colorScheme.onSurfaceVariant,
+        maxLines = 3,
+        overflow = TextOverflow.Ellipsis,
+        modifier = modifier
+    )
+}
+
+private fun formatMicros(micros: Long): String {
+    return if (micros < 1000) "$micros µs" else String.format("%.1f ms", micros / 1000.0)
+}
+
+private val TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd.MM. HH:mm:ss")
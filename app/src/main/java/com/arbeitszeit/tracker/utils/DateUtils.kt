@@ -24,6 +24,28 @@ object DateUtils {
         return LocalDate.parse(dateString, dateFormatter)
     }
     
+    /**
+     * Konvertiert LocalDate zu Tagen seit 1970-01-01 (Schlüssel für time_entries.epochDay)
+     */
+    fun toEpochDay(date: LocalDate): Int {
+        return date.toEpochDay().toInt()
+    }
+
+    /**
+     * Konvertiert Tage seit 1970-01-01 zu LocalDate
+     */
+    fun fromEpochDay(epochDay: Int): LocalDate {
+        return LocalDate.ofEpochDay(epochDay.toLong())
+    }
+
+    /**
+     * Wochentag rein arithmetisch aus epochDay (1970-01-01 war ein Donnerstag)
+     * @return 1=Montag, 2=Dienstag, ..., 7=Sonntag
+     */
+    fun dayOfWeekFromEpochDay(epochDay: Int): Int {
+        return Math.floorMod(epochDay + 3, 7) + 1
+    }
+
     /**
      * Heutiges Datum als String
      */
@@ -116,7 +138,15 @@ object DateUtils {
      * Wochentag als deutscher Kurzname (Mo, Di, ...)
      */
     fun getWeekdayShort(date: LocalDate): String {
-        return when (date.dayOfWeek.value) {
+        return getWeekdayShort(date.dayOfWeek.value)
+    }
+
+    /**
+     * Wochentag als deutscher Kurzname (Mo, Di, ...)
+     * @param dayOfWeek 1=Montag, 2=Dienstag, ..., 7=Sonntag
+     */
+    fun getWeekdayShort(dayOfWeek: Int): String {
+        return when (dayOfWeek) {
             1 -> "Mo"
             2 -> "Di"
             3 -> "Mi"
@@ -2,13 +2,45 @@ package com.arbeitszeit.tracker.utils
 
 import java.time.LocalDate
 import java.time.Month
+import java.util.BitSet
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Utility-Klasse für deutsche Feiertage
  * Unterstützt bundeslandspezifische Feiertage für 2024-2030
+ *
+ * Feiertage werden pro (Jahr, Bundesland) einmal berechnet und als BitSet über den
+ * Tag im Jahr gecacht - isHoliday/getHolidayName sind danach O(1), Zählungen über
+ * Zeiträume laufen über BitSet-Bereiche statt über einzelne Tage.
  */
 object HolidayUtils {
 
+    /**
+     * Feiertage eines Jahres für ein Bundesland (null = alle Bundesländer)
+     * Bit i bzw. names[i] entspricht dayOfYear = i + 1
+     */
+    private class HolidayYear(val holidays: List<Holiday>) {
+        val bits = BitSet(366)
+        val names = arrayOfNulls<String>(366)
+
+        init {
+            holidays.forEach { holiday ->
+                val index = holiday.date.dayOfYear - 1
+                bits.set(index)
+                // Fallen zwei Feiertage auf einen Tag, gilt der erste (bundesweite zuerst)
+                if (names[index] == null) names[index] = holiday.name
+            }
+        }
+    }
+
+    private val cache = ConcurrentHashMap<Pair<Int, Bundesland?>, HolidayYear>()
+
+    private fun holidayYear(year: Int, bundesland: Bundesland?): HolidayYear {
+        return cache.getOrPut(year to bundesland) {
+            HolidayYear(buildHolidaysForYear(year, bundesland))
+        }
+    }
+
     /**
      * Deutsche Bundesländer
      */
@@ -50,6 +82,10 @@ object HolidayUtils {
      * Gibt alle Feiertage für ein Jahr und Bundesland zurück
      */
     fun getHolidaysForYear(year: Int, bundesland: Bundesland?): List<Holiday> {
+        return holidayYear(year, bundesland).holidays
+    }
+
+    private fun buildHolidaysForYear(year: Int, bundesland: Bundesland?): List<Holiday> {
         val holidays = mutableListOf<Holiday>()
 
         // Ostersonntag berechnen (Gauss-Algorithmus)
@@ -208,24 +244,85 @@ object HolidayUtils {
      * Prüft ob ein Datum ein Feiertag ist
      */
     fun isHoliday(date: LocalDate, bundesland: Bundesland?): Boolean {
-        val holidays = getHolidaysForYear(date.year, bundesland)
-        return holidays.any { it.date == date }
+        return holidayYear(date.year, bundesland).bits.get(date.dayOfYear - 1)
     }
 
     /**
      * Gibt den Namen des Feiertags zurück (oder null)
      */
     fun getHolidayName(date: LocalDate, bundesland: Bundesland?): String? {
-        val holidays = getHolidaysForYear(date.year, bundesland)
-        return holidays.find { it.date == date }?.name
+        return holidayYear(date.year, bundesland).names[date.dayOfYear - 1]
     }
 
     /**
      * Gibt alle Feiertage für einen Zeitraum zurück
      */
     fun getHolidaysInRange(startDate: LocalDate, endDate: LocalDate, bundesland: Bundesland?): List<Holiday> {
-        val years = (startDate.year..endDate.year).toSet()
-        val allHolidays = years.flatMap { getHolidaysForYear(it, bundesland) }
-        return allHolidays.filter { it.date in startDate..endDate }
+        if (endDate.isBefore(startDate)) return emptyList()
+        return (startDate.year..endDate.year).flatMap { year ->
+            holidayYear(year, bundesland).holidays.filter { it.date in startDate..endDate }
+        }.sortedBy { it.date }
+    }
+
+    /**
+     * Anzahl der Feiertage in [startDate, endDate] (beide inklusive)
+     */
+    fun countHolidays(startDate: LocalDate, endDate: LocalDate, bundesland: Bundesland?): Int {
+        var count = 0
+        forEachYearSlice(startDate, endDate) { year, fromIndex, toIndex ->
+            count += holidayYear(year, bundesland).bits.get(fromIndex, toIndex + 1).cardinality()
+        }
+        return count
+    }
+
+    /**
+     * Anzahl der Arbeitstage in [startDate, endDate] ohne Feiertage
+     * @param isWorkingDay Wochentag (1=Mo, 7=So) -> Arbeitstag, z.B. UserSettings::isWorkingDay
+     */
+    fun countWorkingDays(
+        startDate: LocalDate,
+        endDate: LocalDate,
+        bundesland: Bundesland?,
+        isWorkingDay: (Int) -> Boolean
+    ): Int {
+        if (endDate.isBefore(startDate)) return 0
+
+        // Arbeitstage nach Wochentag zählen: volle Wochen + Rest
+        val totalDays = (endDate.toEpochDay() - startDate.toEpochDay() + 1).toInt()
+        val workingDaysPerWeek = (1..7).count(isWorkingDay)
+        var count = (totalDays / 7) * workingDaysPerWeek
+        var dayOfWeek = startDate.dayOfWeek.value
+        repeat(totalDays % 7) {
+            if (isWorkingDay(dayOfWeek)) count++
+            dayOfWeek = dayOfWeek % 7 + 1
+        }
+
+        // Feiertage abziehen, die auf einen Arbeitstag fallen (nur gesetzte Bits ansehen)
+        forEachYearSlice(startDate, endDate) { year, fromIndex, toIndex ->
+            val bits = holidayYear(year, bundesland).bits
+            val firstDay = LocalDate.ofYearDay(year, 1)
+            var index = bits.nextSetBit(fromIndex)
+            while (index in 0..toIndex) {
+                if (isWorkingDay(firstDay.plusDays(index.toLong()).dayOfWeek.value)) count--
+                index = bits.nextSetBit(index + 1)
+            }
+        }
+        return count
+    }
+
+    /**
+     * Zerlegt [startDate, endDate] in Jahresabschnitte (Index = dayOfYear - 1, beide inklusive)
+     */
+    private inline fun forEachYearSlice(
+        startDate: LocalDate,
+        endDate: LocalDate,
+        action: (year: Int, fromIndex: Int, toIndex: Int) -> Unit
+    ) {
+        if (endDate.isBefore(startDate)) return
+        for (year in startDate.year..endDate.year) {
+            val fromIndex = if (year == startDate.year) startDate.dayOfYear - 1 else 0
+            val toIndex = if (year == endDate.year) endDate.dayOfYear - 1 else LocalDate.ofYearDay(year, 1).lengthOfYear() - 1
+            action(year, fromIndex, toIndex)
+        }
     }
 }
@@ -4,11 +4,21 @@ import android.app.Application
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.launchWrite
+import com.arbeitszeit.tracker.data.entity.StampEvent
 import com.arbeitszeit.tracker.data.entity.TimeEntry
-import com.arbeitszeit.tracker.utils.DateUtils
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import java.time.LocalDate
 import java.time.YearMonth
@@ -17,13 +27,22 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
     
     private val database = AppDatabase.getDatabase(application)
     private val timeEntryDao = database.timeEntryDao()
-    private val settingsDao = database.userSettingsDao()
+    private val repository = TimeEntryRepository.getInstance(application)
     
     private val _currentMonth = MutableStateFlow(YearMonth.now())
     val currentMonth: StateFlow<YearMonth> = _currentMonth.asStateFlow()
     
-    private val _monthEntries = MutableStateFlow<List<TimeEntry>>(emptyList())
-    val monthEntries: StateFlow<List<TimeEntry>> = _monthEntries.asStateFlow()
+    // Einträge des Monats aus dem gemeinsamen Cache, fehlende Tage werden nur angezeigt, nicht gespeichert
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val monthEntries: StateFlow<List<TimeEntry>> = _currentMonth
+        .flatMapLatest { month ->
+            repository.month(month)
+                .filterNotNull()
+                .combine(VirtualDays.flow(database)) { entries, virtualDays ->
+                    virtualDays.fill(month.atDay(1), month.atEndOfMonth(), entries)
+                }
+        }
+        .stateIn(viewModelScope, SharingStarted.Eagerly, emptyList())
     
     private val _selectedEntry = MutableStateFlow<TimeEntry?>(null)
     val selectedEntry: StateFlow<TimeEntry?> = _selectedEntry.asStateFlow()
@@ -32,33 +51,11 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
     private val _deletedEntry = MutableStateFlow<TimeEntry?>(null)
     val deletedEntry: StateFlow<TimeEntry?> = _deletedEntry.asStateFlow()
     
-    init {
-        loadMonthEntries()
-    }
-    
-    /**
-     * Lädt alle Einträge für den aktuellen Monat
-     */
-    fun loadMonthEntries() {
-        viewModelScope.launch {
-            val month = _currentMonth.value
-            val startDate = DateUtils.dateToString(month.atDay(1))
-            val endDate = DateUtils.dateToString(month.atEndOfMonth())
-            
-            val entries = timeEntryDao.getEntriesByDateRange(startDate, endDate)
-            _monthEntries.value = entries
-            
-            // Erstelle fehlende Einträge für den Monat
-            ensureMonthEntriesExist(month)
-        }
-    }
-    
     /**
      * Wechselt zum vorherigen Monat
      */
     fun previousMonth() {
         _currentMonth.value = _currentMonth.value.minusMonths(1)
-        loadMonthEntries()
     }
     
     /**
@@ -66,7 +63,6 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
      */
     fun nextMonth() {
         _currentMonth.value = _currentMonth.value.plusMonths(1)
-        loadMonthEntries()
     }
     
     /**
@@ -75,6 +71,7 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
     fun selectEntry(date: String) {
         viewModelScope.launch {
             val entry = timeEntryDao.getEntryByDate(date)
+                ?: VirtualDays.load(database).create(LocalDate.parse(date))
             _selectedEntry.value = entry
         }
     }
@@ -90,8 +87,9 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
         typ: String,
         notiz: String
     ) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(date) ?: return@launch
+        viewModelScope.launchWrite {
+            // Erst bei echter Eingabe wird der Tag gespeichert
+            val entry = VirtualDays.getOrCreateEntry(database, LocalDate.parse(date))
 
             timeEntryDao.update(entry.copy(
                 startZeit = if (typ == TimeEntry.TYP_NORMAL) startZeit else null,
@@ -102,8 +100,8 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
                 isManualEntry = true,
                 updatedAt = System.currentTimeMillis()
             ))
-
-            loadMonthEntries()
+            // Bearbeitete Zeiten ersetzen die bisherigen Stempel des Tages
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
         }
     }
 
@@ -112,8 +110,8 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
      * Speichert den Eintrag für Undo-Funktion
      */
     fun deleteEntry(date: String) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(date) ?: return@launch
+        viewModelScope.launchWrite {
+            val entry = timeEntryDao.getEntryByDate(date) ?: return@launchWrite
 
             // Speichere Original-Eintrag für Undo
             _deletedEntry.value = entry
@@ -128,8 +126,7 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
                 isManualEntry = false,
                 updatedAt = System.currentTimeMillis()
             ))
-
-            loadMonthEntries()
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
         }
     }
 
@@ -137,12 +134,12 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
      * Stellt einen gelöschten Eintrag wieder her
      */
     fun undoDeleteEntry() {
-        viewModelScope.launch {
-            val entry = _deletedEntry.value ?: return@launch
+        viewModelScope.launchWrite {
+            val entry = _deletedEntry.value ?: return@launchWrite
 
             timeEntryDao.update(entry)
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
             _deletedEntry.value = null
-            loadMonthEntries()
         }
     }
 
@@ -153,60 +150,6 @@ class CalendarViewModel(application: Application) : AndroidViewModel(application
         _deletedEntry.value = null
     }
     
-    /**
-     * Erstellt fehlende Einträge für einen Monat
-     */
-    private suspend fun ensureMonthEntriesExist(month: YearMonth) {
-        val settings = settingsDao.getSettings()
-        val daysInMonth = month.lengthOfMonth()
-        
-        for (day in 1..daysInMonth) {
-            val date = month.atDay(day)
-            val dateString = DateUtils.dateToString(date)
-            val existing = timeEntryDao.getEntryByDate(dateString)
-            
-            if (existing == null) {
-                val entry = TimeEntry(
-                    datum = dateString,
-                    wochentag = DateUtils.getWeekdayShort(date),
-                    kalenderwoche = DateUtils.getCustomWeekOfYear(date, settings?.ersterMontagImJahr),
-                    jahr = DateUtils.getCustomWeekBasedYear(date, settings?.ersterMontagImJahr),
-                    startZeit = null,
-                    endZeit = null,
-                    pauseMinuten = 0,
-                    sollMinuten = calculateSollMinuten(date, settings),
-                    typ = TimeEntry.TYP_NORMAL
-                )
-                
-                timeEntryDao.insert(entry)
-            }
-        }
-        
-        // Lade Einträge neu
-        val startDate = DateUtils.dateToString(month.atDay(1))
-        val endDate = DateUtils.dateToString(month.atEndOfMonth())
-        val entries = timeEntryDao.getEntriesByDateRange(startDate, endDate)
-        _monthEntries.value = entries
-    }
-    
-    /**
-     * Berechnet Soll-Minuten für einen Tag
-     * Verwendet die Standardberechnung (Wochenstunden / Arbeitstage)
-     * Individuelle Sollzeiten werden über SollZeitVorlagen direkt in TimeEntry gesetzt
-     */
-    private fun calculateSollMinuten(date: LocalDate, settings: com.arbeitszeit.tracker.data.entity.UserSettings?): Int {
-        if (settings == null) return 0
-
-        // Prüfe ob der Tag ein Arbeitstag ist
-        val dayOfWeek = date.dayOfWeek.value
-        if (!settings.isWorkingDay(dayOfWeek)) {
-            return 0  // Kein Arbeitstag = 0 Sollminuten
-        }
-
-        // Standard: Wochenstunden / Arbeitstage
-        return settings.wochenStundenMinuten / settings.arbeitsTageProWoche
-    }
-    
     /**
      * Gibt Status-Farbe für einen Tag zurück
      */
@@ -0,0 +1,92 @@
+package com.arbeitszeit.tracker.viewmodel
+
+import android.app.Application
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.SqliteSupport
+import com.arbeitszeit.tracker.data.database.launchWrite
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.diagnostics.QueryShapeStats
+import com.arbeitszeit.tracker.data.entity.SlowQuery
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.launch
+
+/**
+ * Diagnose in den Einstellungen: Messungen aus dem Abfrage-Protokoll und gespeicherte langsame Abfragen
+ */
+class DiagnosticsViewModel(application: Application) : AndroidViewModel(application) {
+
+    private val database = AppDatabase.getDatabase(application)
+    private val slowQueryDao = database.slowQueryDao()
+
+    private val refresh = MutableStateFlow(0)
+
+    // Solange die Seite offen ist, alle paar Sekunden neu auswerten
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val shapeStats: StateFlow<List<QueryShapeStats>> = refresh
+        .flatMapLatest {
+            flow {
+                while (true) {
+                    emit(QueryLog.stats())
+                    delay(REFRESH_MILLIS)
+                }
+            }
+        }
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+
+    val statementCounts: StateFlow<List<Pair<String, Int>>> = shapeStats
+        .map { QueryLog.statementCounts(STATEMENT_LIMIT) }
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+
+    val slowQueries: StateFlow<List<SlowQuery>> = slowQueryDao.getRecentFlow(SLOW_QUERY_LIMIT)
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+
+    val sqliteVersion: String? = SqliteSupport.version
+
+    // Ergebnis der letzten Prüfung der Summen-Tabellen (null = noch nicht geprüft)
+    private val _rollupCheck = MutableStateFlow<RollupCheck?>(null)
+    val rollupCheck: StateFlow<RollupCheck?> = _rollupCheck.asStateFlow()
+
+    /**
+     * Vergleicht die Summen-Tabellen mit den Rohdaten und baut sie bei Abweichung neu auf
+     */
+    fun verifyRollups() {
+        if (_rollupCheck.value == RollupCheck.RUNNING) return
+        _rollupCheck.value = RollupCheck.RUNNING
+        viewModelScope.launch {
+            _rollupCheck.value = try {
+                if (database.verifyRollups()) RollupCheck.REBUILT else RollupCheck.CONSISTENT
+            } catch (e: Exception) {
+                android.util.Log.e("DiagnosticsViewModel", "Prüfung der Summen-Tabellen fehlgeschlagen", e)
+                RollupCheck.FAILED
+            }
+        }
+    }
+
+    /**
+     * Verwirft alle Messungen und gespeicherten langsamen Abfragen
+     */
+    fun clear() {
+        QueryLog.clear()
+        refresh.value++
+        viewModelScope.launchWrite {
+            slowQueryDao.deleteAll()
+        }
+    }
+
+    companion object {
+        private const val REFRESH_MILLIS = 2000L
+        private const val STATEMENT_LIMIT = 20
+        private const val SLOW_QUERY_LIMIT = 50
+    }
+}
+
+enum class RollupCheck {
+    RUNNING,
+    CONSISTENT,
+    REBUILT,
+    FAILED
+}
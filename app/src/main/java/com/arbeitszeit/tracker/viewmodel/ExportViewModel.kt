@@ -4,16 +4,27 @@ import android.app.Application
 import android.net.Uri
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
+import androidx.room.withTransaction
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.ledger.OvertimeLedger
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
 import com.arbeitszeit.tracker.export.ExcelExportManager
 import com.arbeitszeit.tracker.export.SimpleExcelExportManager
 import com.arbeitszeit.tracker.import.ExcelImportManager
+import com.arbeitszeit.tracker.import.ImportConflict
+import com.arbeitszeit.tracker.import.ImportDiff
 import com.arbeitszeit.tracker.import.ImportResult
+import com.arbeitszeit.tracker.import.MonthDiff
 import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.NotificationHelper
+import com.arbeitszeit.tracker.worker.RecalculationWorker
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import java.io.File
 import java.time.LocalDate
@@ -23,10 +34,14 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
     private val database = AppDatabase.getDatabase(application)
     private val timeEntryDao = database.timeEntryDao()
     private val settingsDao = database.userSettingsDao()
+    private val ledger = OvertimeLedger.getInstance(application)
     private val exportManager = ExcelExportManager(application)
     private val simpleExportManager = SimpleExcelExportManager(application)
     private val importManager = ExcelImportManager(application)
     
+    // Gelesener Import, der in der Vorschau auf Bestätigung wartet
+    private var pendingImport: PendingImport? = null
+
     private val _uiState = MutableStateFlow(ExportUiState())
     val uiState: StateFlow<ExportUiState> = _uiState.asStateFlow()
 
@@ -102,8 +117,8 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                     return@launch
                 }
 
-                // Lade ALLE Einträge des Jahres
-                val entries = timeEntryDao.getEntriesByYear(year)
+                // Lade ALLE Einträge des Jahres (inkl. nicht gespeicherter leerer Tage)
+                val entries = loadExportEntries(year)
 
                 // Exportiere GESAMTJAHR
                 val file = exportManager.exportToExcel(
@@ -158,7 +173,7 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                 }
 
                 // Lade alle Einträge für den Zeitraum
-                val entries = timeEntryDao.getEntriesByWeekRange(year, startKW, endKW)
+                val entries = loadExportEntries(year, startKW, endKW)
 
                 // Exportiere als einfache Tabelle
                 val file = simpleExportManager.exportToSimpleExcel(
@@ -192,6 +207,47 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
+    /**
+     * Exportiert einen frei gewählten Zeitraum (auch über mehrere Jahre) als einfache Tabelle
+     * Die Einträge werden abschnittsweise geladen und sofort geschrieben.
+     */
+    fun exportSimpleRange(from: LocalDate, to: LocalDate, customFileName: String? = null) {
+        viewModelScope.launch {
+            _uiState.value = _uiState.value.copy(isExporting = true, error = null, showFileNameDialog = false)
+
+            try {
+                val virtualDays = VirtualDays.load(database)
+                val firstStoredDay = timeEntryDao.getFirstEpochDay()
+
+                val file = simpleExportManager.exportRangeToSimpleExcel(
+                    from = from,
+                    to = to,
+                    customFileName = customFileName
+                ) { chunkFrom, chunkTo ->
+                    loadExportEntriesInRange(virtualDays, firstStoredDay, chunkFrom, chunkTo)
+                }
+
+                NotificationHelper.showExportSuccess(
+                    getApplication(),
+                    file.name
+                )
+
+                _uiState.value = _uiState.value.copy(
+                    isExporting = false,
+                    lastExportedFile = file,
+                    exportSuccess = true
+                )
+
+            } catch (e: Exception) {
+                e.printStackTrace()
+                _uiState.value = _uiState.value.copy(
+                    isExporting = false,
+                    error = "Export fehlgeschlagen: ${e.message ?: e.javaClass.simpleName}"
+                )
+            }
+        }
+    }
+
     /**
      * Prüft ob Template verfügbar ist
      */
@@ -221,90 +277,156 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
      * @param importStammdaten Sollen Stammdaten auch importiert werden?
      */
     fun importExcel(uri: Uri, importStammdaten: Boolean) {
+        importExcelFiles(listOf(uri), importStammdaten)
+    }
+
+    /**
+     * Importiert alle Excel-Dateien eines per Storage Access Framework gewählten Ordners
+     */
+    fun importExcelFolder(treeUri: Uri, importStammdaten: Boolean) {
         viewModelScope.launch {
-            _uiState.value = _uiState.value.copy(isImporting = true, error = null)
+            _uiState.value = _uiState.value.copy(
+                isImporting = true,
+                importProgress = null,
+                importPreview = null,
+                importSuccess = false,
+                error = null
+            )
 
-            try {
-                val result = importManager.importFromExcel(uri, importStammdaten)
-
-                when (result) {
-                    is ImportResult.Success -> {
-                        // Speichere importierte Stammdaten
-                        if (importStammdaten && result.userSettings != null) {
-                            // Lade existierende Settings um Geofencing-Einstellungen zu erhalten
-                            val existingSettings = settingsDao.getSettings()
-
-                            android.util.Log.d("ExportViewModel", "Import: importStammdaten=$importStammdaten")
-                            android.util.Log.d("ExportViewModel", "Importierte Settings: name=${result.userSettings.name}, " +
-                                    "einrichtung=${result.userSettings.einrichtung}, wochenstunden=${result.userSettings.wochenStundenMinuten}")
-                            android.util.Log.d("ExportViewModel", "Existierende Settings: name=${existingSettings?.name}, " +
-                                    "einrichtung=${existingSettings?.einrichtung}, wochenstunden=${existingSettings?.wochenStundenMinuten}")
-
-                            // Merge: Stammdaten aus Import, Geofencing-Einstellungen behalten
-                            val mergedSettings = result.userSettings.copy(
-                                geofencingEnabled = existingSettings?.geofencingEnabled ?: false,
-                                geofencingStartHour = existingSettings?.geofencingStartHour ?: 6,
-                                geofencingEndHour = existingSettings?.geofencingEndHour ?: 20,
-                                geofencingActiveDays = existingSettings?.geofencingActiveDays ?: "12345"
-                            )
-
-                            android.util.Log.d("ExportViewModel", "Merged Settings: name=${mergedSettings.name}, " +
-                                    "einrichtung=${mergedSettings.einrichtung}, wochenstunden=${mergedSettings.wochenStundenMinuten}")
-
-                            settingsDao.insertOrUpdate(mergedSettings)
-
-                            android.util.Log.d("ExportViewModel", "Settings gespeichert!")
-
-                            // Aktualisiere sollMinuten für alle bestehenden Einträge basierend auf neuen Stammdaten
-                            updateSollMinutenForAllEntries(mergedSettings)
-                        }
-
-                        // Speichere importierte Zeiteinträge
-                        // Prüfe für jeden Eintrag, ob bereits einer für dieses Datum existiert
-                        result.entries.forEach { importedEntry ->
-                            val existingEntry = timeEntryDao.getEntryByDate(importedEntry.datum)
-
-                            if (existingEntry != null) {
-                                // Aktualisiere bestehenden Eintrag mit importierten Daten
-                                timeEntryDao.update(existingEntry.copy(
-                                    wochentag = importedEntry.wochentag,
-                                    kalenderwoche = importedEntry.kalenderwoche,
-                                    jahr = importedEntry.jahr,
-                                    startZeit = importedEntry.startZeit,
-                                    endZeit = importedEntry.endZeit,
-                                    pauseMinuten = importedEntry.pauseMinuten,
-                                    sollMinuten = importedEntry.sollMinuten,
-                                    typ = importedEntry.typ,
-                                    notiz = importedEntry.notiz,
-                                    arbeitszeitBereitschaft = importedEntry.arbeitszeitBereitschaft,
-                                    isManualEntry = true,
-                                    updatedAt = System.currentTimeMillis()
-                                ))
-                            } else {
-                                // Füge neuen Eintrag hinzu
-                                timeEntryDao.insert(importedEntry)
-                            }
-                        }
-
-                        _uiState.value = _uiState.value.copy(
-                            isImporting = false,
-                            importSuccess = true,
-                            importedEntriesCount = result.entriesCount
-                        )
+            val uris = try {
+                importManager.listExcelFiles(treeUri)
+            } catch (e: Exception) {
+                _uiState.value = _uiState.value.copy(
+                    isImporting = false,
+                    error = "Ordner konnte nicht gelesen werden: ${e.message}"
+                )
+                return@launch
+            }
 
-                        NotificationHelper.showImportSuccess(
-                            getApplication(),
-                            result.entriesCount
-                        )
-                    }
+            if (uris.isEmpty()) {
+                _uiState.value = _uiState.value.copy(
+                    isImporting = false,
+                    error = "Keine Excel-Dateien (.xlsx) im Ordner gefunden"
+                )
+                return@launch
+            }
+
+            runImport(uris, importStammdaten)
+        }
+    }
+
+    /**
+     * Importiert mehrere Excel-Dateien
+     * Gelesen wird parallel, gespeichert wird alles in einer Transaktion.
+     *
+     * @param uris URIs der Excel-Dateien
+     * @param importStammdaten Sollen Stammdaten (aus der neuesten Datei) auch importiert werden?
+     */
+    fun importExcelFiles(uris: List<Uri>, importStammdaten: Boolean) {
+        if (uris.isEmpty()) return
+        viewModelScope.launch {
+            _uiState.value = _uiState.value.copy(
+                isImporting = true,
+                importProgress = null,
+                importPreview = null,
+                importSuccess = false,
+                error = null
+            )
+            runImport(uris, importStammdaten)
+        }
+    }
+
+    /**
+     * Liest die Dateien und zeigt die Vorschau (noch keine Schreibzugriffe)
+     */
+    private suspend fun runImport(uris: List<Uri>, importStammdaten: Boolean) {
+        try {
+            val result = importManager.importFromExcelFiles(uris, importStammdaten) { progress ->
+                _uiState.update { it.copy(importProgress = progress) }
+            }
+
+            when (result) {
+                is ImportResult.Success -> {
+                    // Probelauf: eine Bereichsabfrage über alle importierten Tage
+                    val diff = computeImportDiff(result.entries)
+                    val stammdatenChanged = importStammdaten && result.userSettings != null &&
+                            ImportDiff.mergeStammdaten(settingsDao.getSettings(), result.userSettings) != null
 
-                    is ImportResult.Error -> {
-                        _uiState.value = _uiState.value.copy(
-                            isImporting = false,
-                            error = result.message
+                    pendingImport = PendingImport(result, importStammdaten)
+                    _uiState.value = _uiState.value.copy(
+                        isImporting = false,
+                        importProgress = null,
+                        importConflicts = result.conflicts,
+                        importPreview = ImportPreview(
+                            filesCount = result.filesCount,
+                            entriesCount = result.entriesCount,
+                            addedCount = diff.addedCount,
+                            changedCount = diff.changedCount,
+                            unchangedCount = diff.unchangedCount,
+                            months = diff.months,
+                            stammdatenChanged = stammdatenChanged
                         )
+                    )
+                }
+
+                is ImportResult.Error -> {
+                    _uiState.value = _uiState.value.copy(
+                        isImporting = false,
+                        importProgress = null,
+                        error = result.message
+                    )
+                }
+            }
+
+        } catch (e: Exception) {
+            _uiState.value = _uiState.value.copy(
+                isImporting = false,
+                importProgress = null,
+                error = "Import fehlgeschlagen: ${e.message}"
+            )
+        }
+    }
+
+    /**
+     * Übernimmt den Import aus der Vorschau
+     * Nur neue und geänderte Tage werden geschrieben, alles in einer Transaktion.
+     */
+    fun applyImport() {
+        val pending = pendingImport ?: return
+        viewModelScope.launch {
+            _uiState.value = _uiState.value.copy(isImporting = true, error = null)
+
+            try {
+                // Vergleich in der Transaktion wiederholen - seit der Vorschau kann sich etwas geändert haben
+                val saved = DatabaseWriter.write {
+                    database.withTransaction {
+                        saveImportedData(pending.result, pending.importStammdaten)
                     }
                 }
+                val written = saved.written
+
+                // Neue Stammdaten: Soll (und ggf. Kalenderwochen) aller Einträge im Hintergrund neu berechnen
+                if (saved.settingsChanged) {
+                    RecalculationWorker.enqueue(
+                        getApplication(),
+                        soll = true,
+                        kalenderwochen = saved.ersterMontagChanged
+                    )
+                }
+
+                pendingImport = null
+                _uiState.value = _uiState.value.copy(
+                    isImporting = false,
+                    importPreview = null,
+                    importSuccess = true,
+                    importedEntriesCount = written,
+                    importedFilesCount = pending.result.filesCount
+                )
+
+                NotificationHelper.showImportSuccess(
+                    getApplication(),
+                    written
+                )
 
             } catch (e: Exception) {
                 _uiState.value = _uiState.value.copy(
@@ -316,41 +438,100 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
     }
 
     /**
-     * Setzt Import-Erfolg zurück
+     * Verwirft die Import-Vorschau ohne zu schreiben
      */
-    fun resetImportSuccess() {
-        _uiState.value = _uiState.value.copy(importSuccess = false, importedEntriesCount = 0)
+    fun discardImport() {
+        pendingImport = null
+        _uiState.value = _uiState.value.copy(importPreview = null, importConflicts = emptyList())
+    }
+
+    private suspend fun computeImportDiff(entries: List<com.arbeitszeit.tracker.data.entity.TimeEntry>): ImportDiff {
+        if (entries.isEmpty()) return ImportDiff.compute(entries, emptyList())
+        val existing = timeEntryDao.getEntriesByDateRange(
+            entries.minOf { it.epochDay },
+            entries.maxOf { it.epochDay }
+        )
+        return ImportDiff.compute(entries, existing)
     }
 
     /**
-     * Aktualisiert sollMinuten für alle Einträge basierend auf neuen Stammdaten
-     * Wird nach Import von Stammdaten aufgerufen
+     * Speichert ein Import-Ergebnis (muss innerhalb einer Transaktion laufen)
+     * @return Anzahl geschriebener Tage (neu + geändert) und ob sich die Stammdaten geändert haben
      */
-    private suspend fun updateSollMinutenForAllEntries(settings: com.arbeitszeit.tracker.data.entity.UserSettings) {
-        val year = java.time.LocalDate.now().year
-        val allEntries = timeEntryDao.getEntriesByYear(year)
-
-        allEntries.forEach { entry ->
-            // Berechne neue sollMinuten basierend auf Settings
-            val date = java.time.LocalDate.parse(entry.datum)
-            val dayOfWeek = date.dayOfWeek.value
-
-            val newSollMinuten = if (settings.isWorkingDay(dayOfWeek)) {
-                // Arbeitstag: Standard = Wochenstunden / Arbeitstage
-                settings.wochenStundenMinuten / settings.arbeitsTageProWoche
+    private suspend fun saveImportedData(result: ImportResult.Success, importStammdaten: Boolean): SavedImport {
+        var settingsChanged = false
+        var ersterMontagChanged = false
+
+        // Speichere importierte Stammdaten - nur wenn sie sich unterscheiden
+        if (importStammdaten && result.userSettings != null) {
+            // Bestehende Einstellungen (Geofencing, Design, ...) bleiben erhalten
+            val existingSettings = settingsDao.getSettings()
+            val mergedSettings = ImportDiff.mergeStammdaten(existingSettings, result.userSettings)
+
+            if (mergedSettings != null) {
+                android.util.Log.d("ExportViewModel", "Importierte Stammdaten: name=${mergedSettings.name}, " +
+                        "einrichtung=${mergedSettings.einrichtung}, wochenstunden=${mergedSettings.wochenStundenMinuten}")
+
+                settingsDao.insertOrUpdate(mergedSettings)
+                settingsChanged = true
+                ersterMontagChanged = existingSettings?.ersterMontagImJahr != mergedSettings.ersterMontagImJahr
             } else {
-                // Kein Arbeitstag = 0
-                0
+                android.util.Log.d("ExportViewModel", "Stammdaten unverändert, nichts zu speichern")
             }
+        }
 
-            // Aktualisiere nur wenn sollMinuten sich geändert haben
-            if (entry.sollMinuten != newSollMinuten) {
-                timeEntryDao.update(entry.copy(
-                    sollMinuten = newSollMinuten,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+        // Speichere nur neue und geänderte Zeiteinträge
+        val diff = computeImportDiff(result.entries)
+        if (diff.hasChanges) {
+            timeEntryDao.upsertById(diff.rowsToWrite)
+            // Gestempelte Tage auf die importierten Zeiten neu aufsetzen
+            TimeStamper.rebaseAll(database, StampEvent.SOURCE_ENTRY, diff.rowsToWrite)
         }
+        android.util.Log.d("ExportViewModel", "Import: ${diff.addedCount} neu, ${diff.changedCount} geändert, " +
+                "${diff.unchangedCount} unverändert")
+        return SavedImport(diff.rowsToWrite.size, settingsChanged, ersterMontagChanged)
+    }
+
+    /**
+     * Setzt Import-Erfolg zurück
+     */
+    fun resetImportSuccess() {
+        _uiState.value = _uiState.value.copy(
+            importSuccess = false,
+            importedEntriesCount = 0,
+            importedFilesCount = 0,
+            importConflicts = emptyList()
+        )
+    }
+
+    /**
+     * Einträge für den Export: gespeicherte Tage plus virtuelle leere Tage im Zählbereich,
+     * damit Soll-Zeiten nicht besuchter Tage wie früher in der Datei stehen
+     */
+    private suspend fun loadExportEntries(year: Int, startKW: Int = 1, endKW: Int = 53): List<com.arbeitszeit.tracker.data.entity.TimeEntry> {
+        val stored = timeEntryDao.getEntriesByWeekRange(year, startKW, endKW)
+        val virtualDays = VirtualDays.load(database)
+
+        // KW-Jahr kann über den Jahreswechsel reichen
+        return virtualDays.fillCounted(
+            LocalDate.of(year, 1, 1).minusDays(7),
+            LocalDate.of(year, 12, 31).plusDays(7),
+            stored,
+            timeEntryDao.getFirstEpochDay()
+        ).filter { it.jahr == year && it.kalenderwoche in startKW..endKW }
+    }
+
+    /**
+     * Einträge eines Abschnitts für den Zeitraum-Export (gespeicherte plus virtuelle Tage)
+     */
+    private suspend fun loadExportEntriesInRange(
+        virtualDays: VirtualDays,
+        firstStoredDay: Int?,
+        from: LocalDate,
+        to: LocalDate
+    ): List<com.arbeitszeit.tracker.data.entity.TimeEntry> {
+        val stored = timeEntryDao.getEntriesByDateRange(DateUtils.toEpochDay(from), DateUtils.toEpochDay(to))
+        return virtualDays.fillCounted(from, to, stored, firstStoredDay)
     }
 
     /**
@@ -363,13 +544,21 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                 val settings = settingsDao.getSettings()
                 val entries = timeEntryDao.getEntriesByYear(year)
 
+                // Salden aus dem gemeinsamen Überstunden-Konto
+                val yearStart = LocalDate.of(year, 1, 1)
+                val yearEnd = LocalDate.of(year, 12, 31)
+                val stichtag = minOf(yearEnd, LocalDate.now())
+
                 _uiState.value = _uiState.value.copy(
                     previewData = ExportPreviewData(
                         year = year,
                         totalEntries = entries.size,
                         entries = entries.take(10), // Nur erste 10 für Vorschau
                         userName = settings?.name ?: "",
-                        einrichtung = settings?.einrichtung ?: ""
+                        einrichtung = settings?.einrichtung ?: "",
+                        differenzJahrMinuten = ledger.rangeSum(yearStart, yearEnd),
+                        saldoStichtag = stichtag,
+                        saldoStichtagMinuten = ledger.balanceAt(stichtag)
                     )
                 )
             } catch (e: Exception) {
@@ -410,7 +599,7 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                     // Einfacher Export
                     val kw = _selectedKW.value
                     val (startKW, endKW) = com.arbeitszeit.tracker.utils.DateUtils.getWeekRangeForSheet(kw)
-                    val entries = timeEntryDao.getEntriesByWeekRange(year, startKW, endKW)
+                    val entries = loadExportEntries(year, startKW, endKW)
 
                     simpleExportManager.exportToSimpleExcel(
                         userSettings = settings,
@@ -421,7 +610,7 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                     )
                 } else {
                     // Gesamtjahr-Export
-                    val entries = timeEntryDao.getEntriesByYear(year)
+                    val entries = loadExportEntries(year)
 
                     exportManager.exportToExcel(
                         userSettings = settings,
@@ -489,7 +678,7 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                     // Einfacher Export
                     val kw = _selectedKW.value
                     val (startKW, endKW) = com.arbeitszeit.tracker.utils.DateUtils.getWeekRangeForSheet(kw)
-                    val entries = timeEntryDao.getEntriesByWeekRange(year, startKW, endKW)
+                    val entries = loadExportEntries(year, startKW, endKW)
 
                     getApplication<Application>().contentResolver.openOutputStream(uri)?.use { outputStream ->
                         simpleExportManager.exportToStream(
@@ -503,7 +692,7 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
                     } ?: false
                 } else {
                     // Gesamtjahr-Export
-                    val entries = timeEntryDao.getEntriesByYear(year)
+                    val entries = loadExportEntries(year)
 
                     getApplication<Application>().contentResolver.openOutputStream(uri)?.use { outputStream ->
                         exportManager.exportToStream(
@@ -546,20 +735,57 @@ class ExportViewModel(application: Application) : AndroidViewModel(application)
 data class ExportUiState(
     val isExporting: Boolean = false,
     val isImporting: Boolean = false,
+    val importProgress: Float? = null, // Anteil gelesener Blätter beim Import (0..1)
     val lastExportedFile: File? = null,
     val exportSuccess: Boolean = false,
     val importSuccess: Boolean = false,
     val importedEntriesCount: Int = 0,
+    val importedFilesCount: Int = 0,
+    val importConflicts: List<ImportConflict> = emptyList(),
+    val importPreview: ImportPreview? = null,
     val error: String? = null,
     val previewData: ExportPreviewData? = null,
     val showFileNameDialog: Boolean = false,
     val isSimpleExport: Boolean = false
 )
 
+/**
+ * Vorschau eines Imports: was beim Übernehmen neu, geändert oder unverändert wäre
+ */
+data class ImportPreview(
+    val filesCount: Int,
+    val entriesCount: Int,
+    val addedCount: Int,
+    val changedCount: Int,
+    val unchangedCount: Int,
+    val months: List<MonthDiff>,
+    val stammdatenChanged: Boolean
+) {
+    val hasChanges: Boolean
+        get() = addedCount > 0 || changedCount > 0 || stammdatenChanged
+}
+
+private class PendingImport(
+    val result: ImportResult.Success,
+    val importStammdaten: Boolean
+)
+
+/**
+ * Ergebnis des Schreibens eines Imports (für die Neuberechnung nach der Transaktion)
+ */
+private class SavedImport(
+    val written: Int,
+    val settingsChanged: Boolean,
+    val ersterMontagChanged: Boolean
+)
+
 data class ExportPreviewData(
     val year: Int,
     val totalEntries: Int,
     val entries: List<com.arbeitszeit.tracker.data.entity.TimeEntry>,
     val userName: String,
-    val einrichtung: String
+    val einrichtung: String,
+    val differenzJahrMinuten: Int = 0,         // Über-/Minderstunden des Jahres
+    val saldoStichtag: LocalDate? = null,
+    val saldoStichtagMinuten: Int = 0          // Saldo aller Einträge bis zum Stichtag
 )
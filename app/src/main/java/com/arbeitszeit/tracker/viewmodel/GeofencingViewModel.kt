@@ -9,6 +9,8 @@ import androidx.core.content.ContextCompat
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.database.launchWrite
 import com.arbeitszeit.tracker.data.entity.UserSettings
 import com.arbeitszeit.tracker.data.entity.WorkLocation
 import com.arbeitszeit.tracker.geofencing.GeofencingManager
@@ -58,7 +60,7 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
                 polygonPoints = null,
                 enabled = true
             )
-            workLocationDao.insert(location)
+            DatabaseWriter.write { workLocationDao.insert(location) }
             updateGeofences()
         }
     }
@@ -123,7 +125,7 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
      */
     fun deleteWorkLocation(location: WorkLocation) {
         viewModelScope.launch {
-            workLocationDao.delete(location)
+            DatabaseWriter.write { workLocationDao.delete(location) }
             updateGeofences()
         }
     }
@@ -133,10 +135,12 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
      */
     fun toggleWorkLocation(location: WorkLocation) {
         viewModelScope.launch {
-            workLocationDao.update(location.copy(
-                enabled = !location.enabled,
-                updatedAt = System.currentTimeMillis()
-            ))
+            DatabaseWriter.write {
+                workLocationDao.update(location.copy(
+                    enabled = !location.enabled,
+                    updatedAt = System.currentTimeMillis()
+                ))
+            }
             updateGeofences()
         }
     }
@@ -146,11 +150,13 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
      */
     fun updateWorkLocation(location: WorkLocation, newName: String, newRadius: Float) {
         viewModelScope.launch {
-            workLocationDao.update(location.copy(
-                name = newName,
-                radiusMeters = newRadius,
-                updatedAt = System.currentTimeMillis()
-            ))
+            DatabaseWriter.write {
+                workLocationDao.update(location.copy(
+                    name = newName,
+                    radiusMeters = newRadius,
+                    updatedAt = System.currentTimeMillis()
+                ))
+            }
             updateGeofences()
         }
     }
@@ -161,37 +167,40 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
     fun toggleGeofencing(enabled: Boolean) {
         android.util.Log.d("GeofencingViewModel", "toggleGeofencing called with enabled=$enabled")
         viewModelScope.launch {
-            var currentSettings = settingsDao.getSettings()
-            android.util.Log.d("GeofencingViewModel", "Current settings before update: geofencingEnabled=${currentSettings?.geofencingEnabled}")
+            // Lesen und Schreiben in einem Schreibauftrag (kein anderer Schreiber dazwischen)
+            DatabaseWriter.write {
+                var currentSettings = settingsDao.getSettings()
+                android.util.Log.d("GeofencingViewModel", "Current settings before update: geofencingEnabled=${currentSettings?.geofencingEnabled}")
 
-            // Erstelle Standard-Settings, falls keine vorhanden
-            if (currentSettings == null) {
-                android.util.Log.d("GeofencingViewModel", "No settings found, creating default settings")
-                currentSettings = UserSettings(
-                    name = "",
-                    einrichtung = "",
-                    arbeitsumfangProzent = 100,
-                    wochenStundenMinuten = 2400, // 40 Stunden
-                    arbeitsTageProWoche = 5,
-                    ferienbetreuung = false,
-                    ueberstundenVorjahrMinuten = 0,
-                    ersterMontagImJahr = null,
-                    workingDays = "12345", // Mo-Fr
-                    geofencingEnabled = false,
-                    geofencingStartHour = 6,
-                    geofencingEndHour = 20,
-                    geofencingActiveDays = "12345"
+                // Erstelle Standard-Settings, falls keine vorhanden
+                if (currentSettings == null) {
+                    android.util.Log.d("GeofencingViewModel", "No settings found, creating default settings")
+                    currentSettings = UserSettings(
+                        name = "",
+                        einrichtung = "",
+                        arbeitsumfangProzent = 100,
+                        wochenStundenMinuten = 2400, // 40 Stunden
+                        arbeitsTageProWoche = 5,
+                        ferienbetreuung = false,
+                        ueberstundenVorjahrMinuten = 0,
+                        ersterMontagImJahr = null,
+                        workingDays = "12345", // Mo-Fr
+                        geofencingEnabled = false,
+                        geofencingStartHour = 6,
+                        geofencingEndHour = 20,
+                        geofencingActiveDays = "12345"
+                    )
+                    settingsDao.insertOrUpdate(currentSettings)
+                }
+
+                val updatedSettings = currentSettings.copy(
+                    geofencingEnabled = enabled,
+                    updatedAt = System.currentTimeMillis()
                 )
-                settingsDao.insertOrUpdate(currentSettings)
+                settingsDao.insertOrUpdate(updatedSettings)
+                android.util.Log.d("GeofencingViewModel", "Settings updated: geofencingEnabled=${updatedSettings.geofencingEnabled}")
             }
 
-            val updatedSettings = currentSettings.copy(
-                geofencingEnabled = enabled,
-                updatedAt = System.currentTimeMillis()
-            )
-            settingsDao.insertOrUpdate(updatedSettings)
-            android.util.Log.d("GeofencingViewModel", "Settings updated: geofencingEnabled=${updatedSettings.geofencingEnabled}")
-
             if (enabled) {
                 updateGeofences()
             } else {
@@ -204,8 +213,8 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
      * Aktualisiert Zeitfenster für Geofencing
      */
     fun updateTimeWindow(startHour: Int, endHour: Int) {
-        viewModelScope.launch {
-            val currentSettings = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val currentSettings = settingsDao.getSettings() ?: return@launchWrite
             settingsDao.insertOrUpdate(currentSettings.copy(
                 geofencingStartHour = startHour,
                 geofencingEndHour = endHour,
@@ -218,8 +227,8 @@ class GeofencingViewModel(application: Application) : AndroidViewModel(applicati
      * Aktualisiert aktive Tage für Geofencing
      */
     fun updateActiveDays(days: String) {
-        viewModelScope.launch {
-            val currentSettings = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val currentSettings = settingsDao.getSettings() ?: return@launchWrite
             settingsDao.insertOrUpdate(currentSettings.copy(
                 geofencingActiveDays = days,
                 updatedAt = System.currentTimeMillis()
@@ -0,0 +1,91 @@
+package com.arbeitszeit.tracker.viewmodel
+
+import android.app.Application
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
+import androidx.paging.insertSeparators
+import androidx.paging.map
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.launchWrite
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.entity.TimeEntry
+import com.arbeitszeit.tracker.data.repository.TimeEntryPagingSource
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.map
+import java.time.YearMonth
+
+/**
+ * Verlauf aller gespeicherten Einträge, seitenweise geladen und nach Monat gruppiert
+ */
+class HistoryViewModel(application: Application) : AndroidViewModel(application) {
+
+    private val database = AppDatabase.getDatabase(application)
+    private val timeEntryDao = database.timeEntryDao()
+
+    // Höchstens maxSize Einträge im Speicher, egal wie lang der Verlauf ist
+    val history: Flow<PagingData<HistoryItem>> = Pager(
+        config = PagingConfig(
+            pageSize = PAGE_SIZE,
+            prefetchDistance = PAGE_SIZE,
+            enablePlaceholders = false,
+            maxSize = PAGE_SIZE * 5
+        ),
+        pagingSourceFactory = { TimeEntryPagingSource(database) }
+    ).flow
+        .map { pagingData ->
+            pagingData
+                .map { HistoryItem.Entry(it) }
+                .insertSeparators<HistoryItem.Entry, HistoryItem> { before, after ->
+                    // Monatsüberschrift vor dem ersten Eintrag eines Monats
+                    val month = after?.month ?: return@insertSeparators null
+                    if (before?.month != month) HistoryItem.MonthHeader(month) else null
+                }
+        }
+        .cachedIn(viewModelScope)
+
+    /**
+     * Aktualisiert einen Eintrag aus dem Verlauf (wie im Kalender)
+     */
+    fun updateEntry(
+        entry: TimeEntry,
+        startZeit: Int?,
+        endZeit: Int?,
+        pauseMinuten: Int,
+        typ: String,
+        notiz: String
+    ) {
+        viewModelScope.launchWrite {
+            timeEntryDao.update(entry.copy(
+                startZeit = if (typ == TimeEntry.TYP_NORMAL) startZeit else null,
+                endZeit = if (typ == TimeEntry.TYP_NORMAL) endZeit else null,
+                pauseMinuten = if (typ == TimeEntry.TYP_NORMAL) pauseMinuten else 0,
+                typ = typ,
+                notiz = notiz,
+                isManualEntry = true,
+                updatedAt = System.currentTimeMillis()
+            ))
+            // Bearbeitete Zeiten ersetzen die bisherigen Stempel des Tages
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
+        }
+    }
+
+    companion object {
+        private const val PAGE_SIZE = 60
+    }
+}
+
+/**
+ * Zeile im Verlauf: Monatsüberschrift oder Eintrag
+ */
+sealed class HistoryItem {
+    data class MonthHeader(val month: YearMonth) : HistoryItem()
+
+    data class Entry(val entry: TimeEntry) : HistoryItem() {
+        val month: YearMonth get() = YearMonth.from(entry.getDate())
+    }
+}
@@ -8,11 +8,17 @@ import androidx.core.content.ContextCompat
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.launchWrite
+import com.arbeitszeit.tracker.data.entity.StampEvent
 import com.arbeitszeit.tracker.data.entity.TimeEntry
 import com.arbeitszeit.tracker.data.entity.UserSettings
 import com.arbeitszeit.tracker.data.entity.WorkLocation
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.StampIntervals
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
+import com.arbeitszeit.tracker.data.stamp.WorkSession
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
 import com.arbeitszeit.tracker.utils.DateUtils
-import com.arbeitszeit.tracker.utils.TimeUtils
 import com.google.android.gms.location.LocationServices
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
@@ -23,6 +29,7 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
     
     private val database = AppDatabase.getDatabase(application)
     private val timeEntryDao = database.timeEntryDao()
+    private val repository = TimeEntryRepository.getInstance(application)
     private val settingsDao = database.userSettingsDao()
     private val workLocationDao = database.workLocationDao()
     private val sollZeitVorlageDao = database.sollZeitVorlageDao()
@@ -56,28 +63,41 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
     val defaultVorlage = sollZeitVorlageDao.getDefaultVorlageFlow()
         .stateIn(viewModelScope, SharingStarted.Lazily, null)
 
-    // Heutiger Eintrag
+    // Einstellungen + Standard-Vorlage zum Erzeugen leerer (virtueller) Tage
+    private val virtualDays = VirtualDays.flow(database)
+
+    // Heutiger Eintrag - virtuell, solange noch nichts erfasst wurde
     private val todayDate = DateUtils.today()
-    val todayEntry: StateFlow<TimeEntry?> = timeEntryDao.getEntryByDateFlow(todayDate)
+    val todayEntry: StateFlow<TimeEntry?> = repository.entry(LocalDate.parse(todayDate))
+        .combine(virtualDays) { entry, days ->
+            entry ?: days.create(LocalDate.parse(todayDate))
+        }
         .stateIn(viewModelScope, SharingStarted.Lazily, null)
 
+    // Arbeitsblöcke heute - aus dem Stempel-Protokoll abgeleitet
+    val todaySessions: StateFlow<List<WorkSession>> = database.stampEventDao()
+        .getEventsForDayFlow(DateUtils.toEpochDay(LocalDate.parse(todayDate)))
+        .map { events -> StampIntervals.derive(events).sessions }
+        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+
     // Einträge der ausgewählten Woche - nur Arbeitstage
     val weekEntries: StateFlow<List<TimeEntry>> = _selectedWeekDate
         .flatMapLatest { weekDate ->
             val weekDays = DateUtils.getDaysOfWeek(weekDate)
-            val startDate = DateUtils.dateToString(weekDays.first())
-            val endDate = DateUtils.dateToString(weekDays.last())
 
-            // Verwende Flow aus Datenbank für Live-Updates!
-            timeEntryDao.getEntriesByDateRangeFlow(startDate, endDate)
+            // Gemeinsamer Wochen-Cache (live aktualisiert, auch von Widgets genutzt)
+            // Fehlende Tage werden virtuell ergänzt
+            repository.range(weekDays.first(), weekDays.last())
+                .filterNotNull()
+                .combine(virtualDays) { entries, days ->
+                    days.fill(weekDays.first(), weekDays.last(), entries)
+                }
         }
         .combine(userSettings) { entries, settings ->
             // Filtere nur Arbeitstage
             if (settings != null) {
                 entries.filter { entry ->
-                    val date = LocalDate.parse(entry.datum)
-                    val dayOfWeek = date.dayOfWeek.value // 1=Mo, 7=So
-                    settings.isWorkingDay(dayOfWeek)
+                    settings.isWorkingDay(entry.getDayOfWeek()) // 1=Mo, 7=So
                 }
             } else {
                 entries
@@ -86,11 +106,7 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     init {
-        // Erstelle heute-Eintrag falls nicht vorhanden
-        viewModelScope.launch {
-            ensureTodayEntryExists()
-            checkLocationStatus()
-        }
+        checkLocationStatus()
     }
 
     /**
@@ -146,98 +162,18 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
     }
     
     /**
-     * Stellt sicher dass für heute ein Eintrag existiert
+     * Heutiger Eintrag zum Schreiben - wird beim ersten Schreibzugriff gespeichert
      */
-    private suspend fun ensureTodayEntryExists() {
-        val existing = timeEntryDao.getEntryByDate(todayDate)
-        if (existing == null) {
-            val today = LocalDate.now()
-            val settings = settingsDao.getSettings()
-            val defaultVorlage = sollZeitVorlageDao.getDefaultVorlage()
-
-            // Berechne Sollminuten: Entweder aus Default-Vorlage oder aus Settings
-            val dayOfWeek = today.dayOfWeek.value
-            val sollMinuten = if (defaultVorlage != null) {
-                defaultVorlage.getSollMinutenForDay(dayOfWeek)
-            } else {
-                calculateSollMinuten(today, settings)
-            }
-
-            val entry = TimeEntry(
-                datum = todayDate,
-                wochentag = DateUtils.getWeekdayShort(today),
-                kalenderwoche = DateUtils.getCustomWeekOfYear(today, settings?.ersterMontagImJahr),
-                jahr = DateUtils.getCustomWeekBasedYear(today, settings?.ersterMontagImJahr),
-                startZeit = null,
-                endZeit = null,
-                pauseMinuten = 0,
-                sollMinuten = sollMinuten,
-                sollZeitVorlageName = defaultVorlage?.name,
-                typ = TimeEntry.TYP_NORMAL
-            )
-
-            timeEntryDao.insert(entry)
-        }
+    private suspend fun getOrCreateTodayEntry(): TimeEntry {
+        return VirtualDays.getOrCreateEntry(database, LocalDate.parse(todayDate))
     }
-    
-    /**
-     * Berechnet Soll-Minuten für einen Tag basierend auf Settings
-     * Verwendet die Standardberechnung (Wochenstunden / Arbeitstage)
-     * Individuelle Sollzeiten werden über SollZeitVorlagen direkt in TimeEntry gesetzt
-     */
-    private fun calculateSollMinuten(date: LocalDate, settings: UserSettings?): Int {
-        if (settings == null) return 0
-
-        // Prüfe ob der Tag ein Arbeitstag ist
-        val dayOfWeek = date.dayOfWeek.value
-        if (!settings.isWorkingDay(dayOfWeek)) {
-            return 0  // Kein Arbeitstag = 0 Sollminuten
-        }
 
-        // Standard: Wochenstunden / Arbeitstage
-        return settings.wochenStundenMinuten / settings.arbeitsTageProWoche
-    }
-    
     /**
-     * Schnell-Stempel: Setzt Start oder Ende automatisch
+     * Schnell-Stempel: Beendet den laufenden Arbeitsblock oder beginnt einen neuen
      */
     fun quickStamp() {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(todayDate)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-            
-            if (entry == null) {
-                // Neuer Eintrag mit Start
-                ensureTodayEntryExists()
-                val newEntry = timeEntryDao.getEntryByDate(todayDate)
-                newEntry?.let {
-                    timeEntryDao.update(it.copy(
-                        startZeit = currentTime,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-                }
-            } else {
-                // Entscheide: Start oder Ende?
-                if (entry.startZeit == null) {
-                    // Noch kein Start -> setze Start
-                    timeEntryDao.update(entry.copy(
-                        startZeit = currentTime,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-                } else if (entry.endZeit == null) {
-                    // Start vorhanden, Ende fehlt -> setze Ende
-                    timeEntryDao.update(entry.copy(
-                        endZeit = currentTime,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-                } else {
-                    // Beide vorhanden -> überschreibe Ende
-                    timeEntryDao.update(entry.copy(
-                        endZeit = currentTime,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-                }
-            }
+        viewModelScope.launchWrite {
+            TimeStamper.toggle(database, StampEvent.SOURCE_UI, date = LocalDate.parse(todayDate))
         }
     }
     
@@ -245,12 +181,8 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Setzt Arbeitsbeginn
      */
     fun setStartTime(minutes: Int) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(todayDate) ?: return@launch
-            timeEntryDao.update(entry.copy(
-                startZeit = minutes,
-                updatedAt = System.currentTimeMillis()
-            ))
+        viewModelScope.launchWrite {
+            TimeStamper.setStart(database, StampEvent.SOURCE_UI, minutes, LocalDate.parse(todayDate))
         }
     }
     
@@ -258,12 +190,8 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Setzt Arbeitsende
      */
     fun setEndTime(minutes: Int) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(todayDate) ?: return@launch
-            timeEntryDao.update(entry.copy(
-                endZeit = minutes,
-                updatedAt = System.currentTimeMillis()
-            ))
+        viewModelScope.launchWrite {
+            TimeStamper.setEnd(database, StampEvent.SOURCE_UI, minutes, LocalDate.parse(todayDate))
         }
     }
     
@@ -271,12 +199,8 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Setzt Pause
      */
     fun setPause(minutes: Int) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(todayDate) ?: return@launch
-            timeEntryDao.update(entry.copy(
-                pauseMinuten = minutes,
-                updatedAt = System.currentTimeMillis()
-            ))
+        viewModelScope.launchWrite {
+            TimeStamper.setPause(database, StampEvent.SOURCE_UI, minutes, LocalDate.parse(todayDate))
         }
     }
     
@@ -284,8 +208,8 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Setzt Typ (NORMAL, U, K, F, AB)
      */
     fun setTyp(typ: String) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(todayDate) ?: return@launch
+        viewModelScope.launchWrite {
+            val entry = getOrCreateTodayEntry()
             
             // Bei Typ != NORMAL: Zeiten löschen
             if (typ != TimeEntry.TYP_NORMAL) {
@@ -302,6 +226,7 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
                     updatedAt = System.currentTimeMillis()
                 ))
             }
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
         }
     }
     
@@ -310,8 +235,8 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Speichert den Eintrag für Undo-Funktion
      */
     fun deleteEntry(date: String) {
-        viewModelScope.launch {
-            val entry = timeEntryDao.getEntryByDate(date) ?: return@launch
+        viewModelScope.launchWrite {
+            val entry = timeEntryDao.getEntryByDate(date) ?: return@launchWrite
 
             // Speichere Original-Eintrag für Undo
             _deletedEntry.value = entry
@@ -326,6 +251,7 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
                 isManualEntry = false,
                 updatedAt = System.currentTimeMillis()
             ))
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
         }
     }
 
@@ -333,10 +259,11 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Stellt einen gelöschten Eintrag wieder her
      */
     fun undoDeleteEntry() {
-        viewModelScope.launch {
-            val entry = _deletedEntry.value ?: return@launch
+        viewModelScope.launchWrite {
+            val entry = _deletedEntry.value ?: return@launchWrite
 
             timeEntryDao.update(entry)
+            TimeStamper.rebase(database, StampEvent.SOURCE_UI, entry.getDate())
             _deletedEntry.value = null
         }
     }
@@ -408,24 +335,23 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Berechnet die Soll-Zeiten für alle Tage basierend auf der Vorlage
      */
     fun applyVorlageToWeek(vorlageId: Long) {
-        viewModelScope.launch {
-            val vorlage = sollZeitVorlageDao.getVorlageById(vorlageId) ?: return@launch
+        viewModelScope.launchWrite {
+            val vorlage = sollZeitVorlageDao.getVorlageById(vorlageId) ?: return@launchWrite
             val weekDays = DateUtils.getDaysOfWeek(_selectedWeekDate.value)
+            val virtual = VirtualDays.load(database)
 
             for (day in weekDays) {
-                val datum = DateUtils.dateToString(day)
-                val entry = timeEntryDao.getEntryByDate(datum)
-
-                if (entry != null) {
-                    val dayOfWeek = day.dayOfWeek.value // 1=Mo, 7=So
-                    val sollMinuten = vorlage.getSollMinutenForDay(dayOfWeek)
-
-                    timeEntryDao.update(entry.copy(
-                        sollMinuten = sollMinuten,
-                        sollZeitVorlageName = vorlage.name,
-                        updatedAt = System.currentTimeMillis()
-                    ))
-                }
+                // Vorlage ist eine echte Eingabe - virtuelle Tage werden dabei gespeichert
+                val entry = VirtualDays.getOrCreateEntry(database, day)
+                val dayOfWeek = day.dayOfWeek.value // 1=Mo, 7=So
+                // Feiertage bleiben bei Soll 0
+                val sollMinuten = if (virtual.isHoliday(day)) 0 else vorlage.getSollMinutenForDay(dayOfWeek)
+
+                timeEntryDao.update(entry.copy(
+                    sollMinuten = sollMinuten,
+                    sollZeitVorlageName = vorlage.name,
+                    updatedAt = System.currentTimeMillis()
+                ))
             }
         }
     }
@@ -434,13 +360,16 @@ class HomeViewModel(application: Application) : AndroidViewModel(application) {
      * Wendet eine Arbeitszeitvorlage auf einen einzelnen Tag an
      */
     fun applyVorlageToDay(datum: String, vorlageId: Long) {
-        viewModelScope.launch {
-            val vorlage = sollZeitVorlageDao.getVorlageById(vorlageId) ?: return@launch
-            val entry = timeEntryDao.getEntryByDate(datum) ?: return@launch
-
+        viewModelScope.launchWrite {
+            val vorlage = sollZeitVorlageDao.getVorlageById(vorlageId) ?: return@launchWrite
             val date = LocalDate.parse(datum)
-            val dayOfWeek = date.dayOfWeek.value
-            val sollMinuten = vorlage.getSollMinutenForDay(dayOfWeek)
+            val entry = VirtualDays.getOrCreateEntry(database, date)
+
+            val sollMinuten = if (VirtualDays.load(database).isHoliday(date)) {
+                0
+            } else {
+                vorlage.getSollMinutenForDay(entry.getDayOfWeek())
+            }
 
             timeEntryDao.update(entry.copy(
                 sollMinuten = sollMinuten,
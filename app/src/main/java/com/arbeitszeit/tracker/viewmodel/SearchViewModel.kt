@@ -0,0 +1,39 @@
+package com.arbeitszeit.tracker.viewmodel
+
+import android.app.Application
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.model.NoteSearchResult
+import com.arbeitszeit.tracker.data.search.NoteSearch
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.mapLatest
+import kotlinx.coroutines.flow.stateIn
+
+/**
+ * Volltextsuche in den Notizen aller Einträge
+ */
+class SearchViewModel(application: Application) : AndroidViewModel(application) {
+
+    private val timeEntryDao = AppDatabase.getDatabase(application).timeEntryDao()
+
+    private val _query = MutableStateFlow("")
+    val query: StateFlow<String> = _query.asStateFlow()
+
+    // Suche erst, wenn kurz nicht getippt wurde; neue Eingabe bricht die laufende Suche ab
+    @OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
+    val results: StateFlow<List<NoteSearchResult>> = _query
+        .debounce(150)
+        .mapLatest { NoteSearch.search(timeEntryDao, it) }
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+
+    fun setQuery(query: String) {
+        _query.value = query
+    }
+}
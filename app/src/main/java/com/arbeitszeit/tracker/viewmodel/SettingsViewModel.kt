@@ -3,13 +3,17 @@ package com.arbeitszeit.tracker.viewmodel
 import android.app.Application
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
+import androidx.room.withTransaction
+import androidx.work.WorkInfo
+import androidx.work.WorkManager
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.launchWrite
 import com.arbeitszeit.tracker.data.entity.UserSettings
+import com.arbeitszeit.tracker.worker.RecalculationWorker
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
-import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
-import kotlinx.coroutines.launch
 
 class SettingsViewModel(application: Application) : AndroidViewModel(application) {
 
@@ -19,6 +23,19 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
     
     val userSettings: StateFlow<UserSettings?> = settingsDao.getSettingsFlow()
         .stateIn(viewModelScope, SharingStarted.Lazily, null)
+
+    /**
+     * Fortschritt der Neuberechnung nach Einstellungsänderung (0..1), null = läuft nicht
+     */
+    val recalculationProgress: StateFlow<Float?> = WorkManager.getInstance(application)
+        .getWorkInfosForUniqueWorkFlow(RecalculationWorker.WORK_NAME)
+        .map { infos ->
+            val running = infos.firstOrNull { it.state == WorkInfo.State.RUNNING || it.state == WorkInfo.State.ENQUEUED }
+                ?: return@map null
+            val total = running.progress.getInt(RecalculationWorker.PROGRESS_TOTAL, 0)
+            if (total == 0) 0f else running.progress.getInt(RecalculationWorker.PROGRESS_DONE, 0).toFloat() / total
+        }
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), null)
     
     /**
      * Aktualisiert oder erstellt Benutzereinstellungen
@@ -33,7 +50,7 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
         ueberstundenVorjahrMinuten: Int,
         ersterMontagImJahr: String? = null
     ) {
-        viewModelScope.launch {
+        viewModelScope.launchWrite {
             val existing = settingsDao.getSettings()
 
             val settings = UserSettings(
@@ -58,11 +75,8 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
 
             settingsDao.insertOrUpdate(settings)
 
-            // Aktualisiere sollMinuten für alle bestehenden Einträge
-            updateSollMinutenForAllEntries(settings)
-
-            // Aktualisiere Kalenderwochen, wenn sich der erste Montag geändert hat
-            updateKalenderwochenForAllEntries(settings)
+            // Soll und Kalenderwochen aller bestehenden Einträge im Hintergrund neu berechnen
+            RecalculationWorker.enqueue(getApplication(), soll = true, kalenderwochen = true)
         }
     }
 
@@ -74,8 +88,8 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
         name: String,
         einrichtung: String
     ) {
-        viewModelScope.launch {
-            val existing = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val existing = settingsDao.getSettings() ?: return@launchWrite
 
             settingsDao.insertOrUpdate(existing.copy(
                 name = name,
@@ -97,8 +111,8 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
         ersterMontagImJahr: String?,
         workingDays: String = "12345"
     ) {
-        viewModelScope.launch {
-            val existing = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val existing = settingsDao.getSettings() ?: return@launchWrite
 
             val updated = existing.copy(
                 arbeitsumfangProzent = arbeitsumfangProzent,
@@ -112,86 +126,22 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
 
             settingsDao.insertOrUpdate(updated)
 
-            // Aktualisiere sollMinuten für alle bestehenden Einträge
-            updateSollMinutenForAllEntries(updated)
-
-            // Aktualisiere Kalenderwochen, wenn sich der erste Montag geändert hat
-            updateKalenderwochenForAllEntries(updated)
-        }
-    }
-
-
-    /**
-     * Aktualisiert die SollMinuten für alle bestehenden Zeiteinträge
-     * basierend auf den neuen Einstellungen
-     */
-    private suspend fun updateSollMinutenForAllEntries(settings: UserSettings) {
-        val allEntries = timeEntryDao.getAllEntriesFlow().first()
-
-        allEntries.forEach { entry ->
-            val date = java.time.LocalDate.parse(entry.datum)
-            val dayOfWeek = date.dayOfWeek.value
-
-            // Berechne neue Sollminuten
-            val newSollMinuten = if (entry.typ != com.arbeitszeit.tracker.data.entity.TimeEntry.TYP_NORMAL) {
-                // Bei Urlaub, Krank, etc. -> Soll bleibt
-                entry.sollMinuten
-            } else {
-                // Standardberechnung: Prüfe ob Arbeitstag
-                if (settings.isWorkingDay(dayOfWeek)) {
-                    settings.wochenStundenMinuten / settings.arbeitsTageProWoche
-                } else {
-                    0  // Kein Arbeitstag
-                }
-            }
-
-            // Aktualisiere nur, wenn sich die Sollminuten geändert haben
-            if (entry.sollMinuten != newSollMinuten) {
-                timeEntryDao.update(entry.copy(
-                    sollMinuten = newSollMinuten,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
-        }
-    }
-    
-    /**
-     * Aktualisiert die Kalenderwochen für alle bestehenden Zeiteinträge
-     * basierend auf der benutzerdefinierten Berechnung
-     */
-    private suspend fun updateKalenderwochenForAllEntries(settings: UserSettings) {
-        val allEntries = timeEntryDao.getAllEntriesFlow().first()
-
-        allEntries.forEach { entry ->
-            val date = java.time.LocalDate.parse(entry.datum)
-
-            // Berechne KW mit benutzerdefinierter Methode
-            val newKW = com.arbeitszeit.tracker.utils.DateUtils.getCustomWeekOfYear(
-                date,
-                settings.ersterMontagImJahr
-            )
-            val newJahr = com.arbeitszeit.tracker.utils.DateUtils.getCustomWeekBasedYear(
-                date,
-                settings.ersterMontagImJahr
+            // Soll und Kalenderwochen aller bestehenden Einträge im Hintergrund neu berechnen
+            RecalculationWorker.enqueue(
+                getApplication(),
+                soll = true,
+                kalenderwochen = existing.ersterMontagImJahr != ersterMontagImJahr
             )
-
-            // Aktualisiere nur, wenn sich KW oder Jahr geändert haben
-            if (entry.kalenderwoche != newKW || entry.jahr != newJahr) {
-                timeEntryDao.update(entry.copy(
-                    kalenderwoche = newKW,
-                    jahr = newJahr,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
         }
     }
 
+
     /**
      * Aktualisiert nur den Übertrag vom letzten Blatt
      */
     fun updateLetzterUebertrag(minuten: Int) {
-        viewModelScope.launch {
-            val settings = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val settings = settingsDao.getSettings() ?: return@launchWrite
             settingsDao.insertOrUpdate(settings.copy(
                 letzterUebertragMinuten = minuten,
                 updatedAt = System.currentTimeMillis()
@@ -203,8 +153,8 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
      * Aktualisiert nur den Dark Mode
      */
     fun updateDarkMode(mode: String) {
-        viewModelScope.launch {
-            val settings = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val settings = settingsDao.getSettings() ?: return@launchWrite
             settingsDao.insertOrUpdate(settings.copy(
                 darkMode = mode,
                 updatedAt = System.currentTimeMillis()
@@ -214,10 +164,12 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
 
     /**
      * Aktualisiert das Bundesland für Feiertags-Berechnung
+     * Gespeicherte leere Tage werden beim Abgleich der Kalender-Dimension als Feiertag
+     * markiert bzw. zurückgesetzt (CalendarDays.sync)
      */
     fun updateBundesland(bundeslandCode: String?) {
-        viewModelScope.launch {
-            val settings = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val settings = settingsDao.getSettings() ?: return@launchWrite
             settingsDao.insertOrUpdate(settings.copy(
                 bundesland = bundeslandCode,
                 updatedAt = System.currentTimeMillis()
@@ -229,8 +181,8 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
      * Aktualisiert den Urlaubsanspruch in Tagen
      */
     fun updateUrlaubsanspruch(tage: Int) {
-        viewModelScope.launch {
-            val settings = settingsDao.getSettings() ?: return@launch
+        viewModelScope.launchWrite {
+            val settings = settingsDao.getSettings() ?: return@launchWrite
             settingsDao.insertOrUpdate(settings.copy(
                 urlaubsanspruchTage = tage,
                 updatedAt = System.currentTimeMillis()
@@ -242,8 +194,12 @@ class SettingsViewModel(application: Application) : AndroidViewModel(application
      * Löscht alle Zeiteinträge (ACHTUNG: Kann nicht rückgängig gemacht werden!)
      */
     fun deleteAllTimeEntries() {
-        viewModelScope.launch {
-            timeEntryDao.deleteAllEntries()
+        viewModelScope.launchWrite {
+            database.withTransaction {
+                timeEntryDao.deleteAllEntries()
+                // Sonst holt der nächste Stempel die Zeiten gelöschter Tage zurück
+                database.stampEventDao().deleteAll()
+            }
         }
     }
 }
@@ -4,8 +4,16 @@ import android.app.Application
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import com.arbeitszeit.tracker.data.entity.MonthRollup
 import com.arbeitszeit.tracker.data.entity.TimeEntry
 import com.arbeitszeit.tracker.data.entity.UserSettings
+import com.arbeitszeit.tracker.data.ledger.OvertimeLedger
+import com.arbeitszeit.tracker.data.ledger.OvertimeTrend
+import com.arbeitszeit.tracker.data.model.TypCount
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
+import com.arbeitszeit.tracker.utils.DateUtils
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
 import java.time.LocalDate
@@ -37,25 +45,60 @@ data class UrlaubsSummary(
 data class WeekData(
     val weekNumber: Int,                   // KW-Nummer
     val year: Int,                         // Jahr
-    val differenzMinuten: Int              // Überstunden/Minderstunden dieser Woche
+    val differenzMinuten: Int,             // Überstunden/Minderstunden dieser Woche
+    val saldoMinuten: Int = 0,             // Laufender Saldo bis Ende dieser Woche
+    val schnittMinuten: Int = 0            // Gleitender 4-Wochen-Durchschnitt
 )
 
 class UeberstundenViewModel(application: Application) : AndroidViewModel(application) {
     private val database = AppDatabase.getDatabase(application)
     private val timeEntryDao = database.timeEntryDao()
     private val userSettingsDao = database.userSettingsDao()
+    private val rollupDao = database.rollupDao()
+    private val calendarDayDao = database.calendarDayDao()
+    private val ledger = OvertimeLedger.getInstance(application)
 
     val userSettings: StateFlow<UserSettings?> = userSettingsDao.getSettingsFlow()
         .stateIn(viewModelScope, SharingStarted.Lazily, null)
 
-    private val allEntries: StateFlow<List<TimeEntry>> = timeEntryDao.getAllEntriesFlow()
-        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+    // Summen kommen aus den per Trigger gepflegten Summen-Tabellen - es werden keine Einzeleinträge geladen
+    // Nicht gespeicherte (virtuelle) leere Tage werden wie gespeicherte leere Tage hinzugerechnet
+    private val currentYearDays = currentYearEpochDays()
+
+    private val virtualDays: Flow<VirtualDays> = VirtualDays.flow(database)
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val monthlySums: Flow<List<MonthRollup>> = combine(
+        rollupDao.getMonthRollupsFlow(),
+        calendarDayDao.getLastEpochDayFlow(),
+        virtualDays
+    ) { months, _, virtual -> months to virtual }
+        .mapLatest { (months, virtual) -> addVirtualMonths(months, virtual) }
+
+    // Jahressaldo aus dem Überstunden-Konto (enthält virtuelle Tage bereits)
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val laufendesJahrDifferenz: Flow<Int> = combine(
+        rollupDao.getYearRollupFlow(LocalDate.now().year),
+        virtualDays
+    ) { _, _ -> }
+        .mapLatest {
+            ledger.rangeSum(
+                DateUtils.fromEpochDay(currentYearDays.first),
+                DateUtils.fromEpochDay(currentYearDays.last)
+            )
+        }
+
+    private val typCountsLaufendesJahr: Flow<List<TypCount>> = timeEntryDao.getTypCountsFlow(
+        currentYearDays.first,
+        currentYearDays.last
+    )
 
     val ueberstundenSummary: StateFlow<UeberstundenSummary> = combine(
-        allEntries,
+        monthlySums,
+        laufendesJahrDifferenz,
         userSettings
-    ) { entries, settings ->
-        calculateUeberstundenSummary(entries, settings)
+    ) { months, laufendesJahr, settings ->
+        calculateUeberstundenSummary(months, laufendesJahr, settings)
     }.stateIn(
         viewModelScope,
         SharingStarted.Lazily,
@@ -63,84 +106,99 @@ class UeberstundenViewModel(application: Application) : AndroidViewModel(applica
     )
 
     val urlaubsSummary: StateFlow<UrlaubsSummary> = combine(
-        allEntries,
+        typCountsLaufendesJahr,
         userSettings
-    ) { entries, settings ->
-        calculateUrlaubsSummary(entries, settings)
+    ) { typCounts, settings ->
+        calculateUrlaubsSummary(typCounts, settings)
     }.stateIn(
         viewModelScope,
         SharingStarted.Lazily,
         UrlaubsSummary(30, 0, 30, 0)
     )
 
-    val weeklyData: StateFlow<List<WeekData>> = allEntries.map { entries ->
-        calculateWeeklyData(entries)
-    }.stateIn(
-        viewModelScope,
-        SharingStarted.Lazily,
-        emptyList()
-    )
-
-    private fun calculateWeeklyData(entries: List<TimeEntry>): List<WeekData> {
-        // Gruppiere nach KW und Jahr
-        val weekGroups = entries
-            .groupBy { "${it.jahr}-${it.kalenderwoche}" }
-            .mapNotNull { (key, weekEntries) ->
-                val year = weekEntries.firstOrNull()?.jahr ?: return@mapNotNull null
-                val week = weekEntries.firstOrNull()?.kalenderwoche ?: return@mapNotNull null
-                val differenz = weekEntries.sumOf { it.getDifferenzMinuten() }
-
+    // Die letzten 12 Wochen, älteste zuerst (Saldo und Durchschnitt per Window-Funktion, siehe OvertimeTrend)
+    // Auslöser: geänderte Einträge (Wochen-Summen), Kalender-Dimension und Einstellungen
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val weeklyData: StateFlow<List<WeekData>> = combine(
+        rollupDao.getLastWeekRollupsFlow(12),
+        calendarDayDao.getLastEpochDayFlow(),
+        virtualDays
+    ) { _, _, virtual -> virtual }
+        .mapLatest { virtual ->
+            OvertimeTrend.lastWeeks(database, virtual, 12).map { week ->
                 WeekData(
-                    weekNumber = week,
-                    year = year,
-                    differenzMinuten = differenz
+                    weekNumber = week.kalenderwoche,
+                    year = week.jahr,
+                    differenzMinuten = week.differenzMinuten,
+                    saldoMinuten = week.saldoMinuten,
+                    schnittMinuten = week.schnittMinuten
                 )
             }
-            .sortedWith(compareBy({ it.year }, { it.weekNumber }))
+        }
+        .stateIn(
+            viewModelScope,
+            SharingStarted.Lazily,
+            emptyList()
+        )
 
-        // Nimm die letzten 12 Wochen
-        return weekGroups.takeLast(12)
+    // Stichtag für "Saldo am Datum X" (z.B. bei Rückfragen zur Abrechnung)
+    private val _stichtag = MutableStateFlow(LocalDate.now())
+    val stichtag: StateFlow<LocalDate> = _stichtag.asStateFlow()
+
+    // Neu berechnen bei Stichtag-Wechsel oder geänderten Einträgen (Monats-Summen als Auslöser)
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val saldoAmStichtag: StateFlow<Int> = combine(_stichtag, monthlySums) { date, _ -> date }
+        .mapLatest { date -> ledger.balanceAt(date) }
+        .stateIn(viewModelScope, SharingStarted.Lazily, 0)
+
+    fun selectStichtag(date: LocalDate) {
+        _stichtag.value = date
+    }
+
+    /**
+     * Ergänzt die Monats-Summen um virtuelle Tage (Soll ohne Ist), pro Monat in SQL summiert
+     */
+    private suspend fun addVirtualMonths(months: List<MonthRollup>, virtual: VirtualDays): List<MonthRollup> {
+        val countFrom = virtual.getCountingStart(timeEntryDao.getFirstEpochDay())
+        val countTo = LocalDate.now()
+        if (countFrom.isAfter(countTo)) return months
+
+        val virtualMonths = QueryLog.timed("CalendarDayDao.getVirtualMonthSums") {
+            calendarDayDao.getVirtualMonthSums(DateUtils.toEpochDay(countFrom), DateUtils.toEpochDay(countTo))
+        }
+        if (virtualMonths.isEmpty()) return months
+
+        val byMonth = months.associateBy { it.monat }.toMutableMap()
+        virtualMonths.forEach { virtualMonth ->
+            val month = byMonth[virtualMonth.monat] ?: MonthRollup(monat = virtualMonth.monat)
+            byMonth[virtualMonth.monat] = month.copy(
+                sollMinuten = month.sollMinuten + virtualMonth.sollMinuten,
+                differenzMinuten = month.differenzMinuten + virtualMonth.differenzMinuten,
+                anzahlTage = month.anzahlTage + virtualMonth.anzahlTage
+            )
+        }
+        return byMonth.values.sortedByDescending { it.monat }
     }
 
     private fun calculateUeberstundenSummary(
-        entries: List<TimeEntry>,
+        months: List<MonthRollup>,
+        laufendesJahrUeberstunden: Int,
         settings: UserSettings?
     ): UeberstundenSummary {
         if (settings == null) {
             return UeberstundenSummary(0, 0, 0, 0, emptyList())
         }
 
-        // Gruppiere Einträge nach Monat
-        val entriesByMonth = entries
-            .sortedByDescending { it.datum }
-            .groupBy { entry ->
-                val date = LocalDate.parse(entry.datum)
-                YearMonth.of(date.year, date.month)
-            }
-
-        // Berechne Monats-Summen
-        val monatsSummen = entriesByMonth.map { (yearMonth, monthEntries) ->
-            val sollGesamt = monthEntries.sumOf { it.sollMinuten }
-            val istGesamt = monthEntries.sumOf { it.getIstMinuten() }
-            val differenz = monthEntries.sumOf { it.getDifferenzMinuten() }
-
+        // Monats-Summen (bereits absteigend sortiert)
+        val monatsSummen = months.map { month ->
             MonthSummary(
-                yearMonth = yearMonth,
-                sollMinutenGesamt = sollGesamt,
-                istMinutenGesamt = istGesamt,
-                differenzMinuten = differenz,
-                anzahlTage = monthEntries.size
+                yearMonth = month.getYearMonth(),
+                sollMinutenGesamt = month.sollMinuten,
+                istMinutenGesamt = month.istMinuten,
+                differenzMinuten = month.differenzMinuten,
+                anzahlTage = month.anzahlTage
             )
-        }.sortedByDescending { it.yearMonth }
-
-        // Berechne Gesamtüberstunden für laufendes Jahr
-        val currentYear = LocalDate.now().year
-        val laufendesJahrUeberstunden = entries
-            .filter {
-                val date = LocalDate.parse(it.datum)
-                date.year == currentYear
-            }
-            .sumOf { it.getDifferenzMinuten() }
+        }
 
         // Gesamtüberstunden = laufendes Jahr + Vorjahresübertrag
         val gesamtUeberstunden = laufendesJahrUeberstunden + settings.ueberstundenVorjahrMinuten
@@ -155,24 +213,18 @@ class UeberstundenViewModel(application: Application) : AndroidViewModel(applica
     }
 
     private fun calculateUrlaubsSummary(
-        entries: List<TimeEntry>,
+        typCounts: List<TypCount>,
         settings: UserSettings?
     ): UrlaubsSummary {
         if (settings == null) {
             return UrlaubsSummary(30, 0, 30, 0)
         }
 
-        val currentYear = LocalDate.now().year
-        val currentYearEntries = entries.filter {
-            val date = LocalDate.parse(it.datum)
-            date.year == currentYear
-        }
-
         // Zähle Urlaubstage (typ == TYP_URLAUB)
-        val urlaubstage = currentYearEntries.count { it.typ == TimeEntry.TYP_URLAUB }
+        val urlaubstage = typCounts.find { it.typ == TimeEntry.TYP_URLAUB }?.anzahl ?: 0
 
         // Zähle Krankheitstage (typ == TYP_KRANK)
-        val krankheitstage = currentYearEntries.count { it.typ == TimeEntry.TYP_KRANK }
+        val krankheitstage = typCounts.find { it.typ == TimeEntry.TYP_KRANK }?.anzahl ?: 0
 
         val urlaubsanspruch = settings.urlaubsanspruchTage
         val resturlaub = urlaubsanspruch - urlaubstage
@@ -185,6 +237,14 @@ class UeberstundenViewModel(application: Application) : AndroidViewModel(applica
         )
     }
 
+    /**
+     * Kalenderjahr als epochDay-Bereich (Vergleich ohne Datums-Parsing)
+     */
+    private fun currentYearEpochDays(): IntRange {
+        val year = LocalDate.now().year
+        return DateUtils.toEpochDay(LocalDate.of(year, 1, 1))..DateUtils.toEpochDay(LocalDate.of(year, 12, 31))
+    }
+
     /**
      * Konvertiert Minuten in Stunden-String (z.B. "37:16" oder "-2:30")
      */
@@ -3,12 +3,15 @@ package com.arbeitszeit.tracker.viewmodel
 import android.app.Application
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
+import androidx.room.withTransaction
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.launchWrite
+import com.arbeitszeit.tracker.data.entity.StampEvent
 import com.arbeitszeit.tracker.data.entity.WeekTemplate
 import com.arbeitszeit.tracker.data.entity.WeekTemplateEntry
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
 import com.arbeitszeit.tracker.utils.DateUtils
 import kotlinx.coroutines.flow.*
-import kotlinx.coroutines.launch
 import java.time.LocalDate
 
 class WeekTemplatesViewModel(application: Application) : AndroidViewModel(application) {
@@ -17,6 +20,7 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
     private val weekTemplateDao = database.weekTemplateDao()
     private val timeEntryDao = database.timeEntryDao()
     private val settingsDao = database.userSettingsDao()
+    private val calendarDayDao = database.calendarDayDao()
 
     // Alle verfügbaren Vorlagen
     val allTemplates: StateFlow<List<WeekTemplate>> = weekTemplateDao.getAllTemplatesFlow()
@@ -26,14 +30,14 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
      * Erstellt eine neue Vorlage aus einer bestehenden Woche
      */
     fun createTemplateFromWeek(name: String, description: String, weekStartDate: LocalDate) {
-        viewModelScope.launch {
+        viewModelScope.launchWrite {
             val settings = settingsDao.getSettings()
             val weekDays = DateUtils.getDaysOfWeek(weekStartDate)
-            val startDate = DateUtils.dateToString(weekDays.first())
-            val endDate = DateUtils.dateToString(weekDays.last())
+            val startDay = DateUtils.toEpochDay(weekDays.first())
+            val endDay = DateUtils.toEpochDay(weekDays.last())
 
             // Lade Einträge der Woche
-            val weekEntries = timeEntryDao.getEntriesByDateRange(startDate, endDate)
+            val weekEntries = timeEntryDao.getEntriesByDateRange(startDay, endDay)
 
             // Erstelle Template
             val template = WeekTemplate(
@@ -44,8 +48,7 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
 
             // Erstelle Template-Einträge aus Wochen-Einträgen
             val templateEntries = weekEntries.mapNotNull { entry ->
-                val date = LocalDate.parse(entry.datum)
-                val dayOfWeek = date.dayOfWeek.value // 1=Montag, 7=Sonntag
+                val dayOfWeek = entry.getDayOfWeek() // 1=Montag, 7=Sonntag
 
                 // Nur Einträge mit Daten speichern
                 if (entry.startZeit != null || entry.endZeit != null ||
@@ -75,7 +78,7 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
         description: String,
         dayEntries: Map<Int, DayTimeEntry>  // dayOfWeek -> TimeEntry
     ) {
-        viewModelScope.launch {
+        viewModelScope.launchWrite {
             // Erstelle Template
             val template = WeekTemplate(
                 name = name,
@@ -106,62 +109,70 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
      * Wendet eine Vorlage auf eine Woche an
      */
     fun applyTemplateToWeek(templateId: Long, weekStartDate: LocalDate) {
-        viewModelScope.launch {
+        viewModelScope.launchWrite {
             val settings = settingsDao.getSettings()
             val weekDays = DateUtils.getDaysOfWeek(weekStartDate)
+            // KW, Wochenjahr und Soll aus der Kalender-Dimension (statt pro Tag neu zu berechnen)
+            val calendar = calendarDayDao.getDaysInRange(
+                DateUtils.toEpochDay(weekDays.first()),
+                DateUtils.toEpochDay(weekDays.last())
+            ).associateBy { it.epochDay }
 
             // Lade Template-Einträge
             val templateEntries = weekTemplateDao.getEntriesByTemplate(templateId)
 
-            // Wende Template auf jeden Tag an
-            templateEntries.forEach { templateEntry ->
+            // Baue für jeden Tag der Vorlage einen Eintrag (für Tage ohne bestehenden Eintrag)
+            val templateByDay = templateEntries.associateBy { it.dayOfWeek }
+            val newEntries = templateEntries.mapNotNull { templateEntry ->
                 // Finde den entsprechenden Tag in der Zielwoche
                 val targetDate = weekDays.find { it.dayOfWeek.value == templateEntry.dayOfWeek }
+                    ?: return@mapNotNull null
+
+                val dayOfWeek = targetDate.dayOfWeek.value
+                val calendarDay = calendar[DateUtils.toEpochDay(targetDate)]
+                val weekNumber = calendarDay?.kalenderwoche
+                    ?: DateUtils.getCustomWeekOfYear(targetDate, settings?.ersterMontagImJahr)
+                val year = calendarDay?.jahr
+                    ?: DateUtils.getCustomWeekBasedYear(targetDate, settings?.ersterMontagImJahr)
+                // Berechne Sollminuten: Prüfe ob Arbeitstag (Feiertage laut Kalender = 0)
+                val sollMinuten = when {
+                    calendarDay?.isFeiertag == true -> 0
+                    settings?.isWorkingDay(dayOfWeek) == true -> settings.wochenStundenMinuten / settings.arbeitsTageProWoche
+                    else -> 0
+                }
 
-                if (targetDate != null) {
-                    val dateString = DateUtils.dateToString(targetDate)
-                    val existingEntry = timeEntryDao.getEntryByDate(dateString)
-
-                    if (existingEntry != null) {
-                        // Update existing entry
-                        timeEntryDao.update(existingEntry.copy(
-                            startZeit = templateEntry.startZeit,
-                            endZeit = templateEntry.endZeit,
-                            pauseMinuten = templateEntry.pauseMinuten,
-                            typ = templateEntry.typ,
-                            notiz = templateEntry.notiz,
-                            isManualEntry = true,
-                            updatedAt = System.currentTimeMillis()
-                        ))
-                    } else {
-                        // Erstelle neuen Eintrag aus Vorlage
-                        val dayOfWeek = targetDate.dayOfWeek.value
-                        val weekNumber = DateUtils.getCustomWeekOfYear(targetDate, settings?.ersterMontagImJahr)
-                        val year = targetDate.year
-                        // Berechne Sollminuten: Prüfe ob Arbeitstag
-                        val sollMinuten = if (settings?.isWorkingDay(dayOfWeek) == true) {
-                            settings.wochenStundenMinuten / settings.arbeitsTageProWoche
-                        } else {
-                            0
-                        }
-
-                        timeEntryDao.insert(
-                            com.arbeitszeit.tracker.data.entity.TimeEntry(
-                                datum = dateString,
-                                wochentag = DateUtils.getWeekdayShort(targetDate),
-                                kalenderwoche = weekNumber,
-                                jahr = year,
-                                startZeit = templateEntry.startZeit,
-                                endZeit = templateEntry.endZeit,
-                                pauseMinuten = templateEntry.pauseMinuten,
-                                sollMinuten = sollMinuten,
-                                typ = templateEntry.typ,
-                                notiz = templateEntry.notiz,
-                                isManualEntry = true
-                            )
-                        )
-                    }
+                com.arbeitszeit.tracker.data.entity.TimeEntry(
+                    datum = DateUtils.dateToString(targetDate),
+                    epochDay = DateUtils.toEpochDay(targetDate),
+                    kalenderwoche = weekNumber,
+                    jahr = year,
+                    startZeit = templateEntry.startZeit,
+                    endZeit = templateEntry.endZeit,
+                    pauseMinuten = templateEntry.pauseMinuten,
+                    sollMinuten = sollMinuten,
+                    typ = templateEntry.typ,
+                    notiz = templateEntry.notiz,
+                    isManualEntry = true
+                )
+            }
+
+            // Ganze Woche in einer Transaktion schreiben; bestehende Tage übernehmen nur die Vorlagen-Werte
+            val now = System.currentTimeMillis()
+            database.withTransaction {
+                val written = timeEntryDao.upsertAll(newEntries) { existingEntry, _ ->
+                    val templateEntry = templateByDay.getValue(existingEntry.getDayOfWeek())
+                    existingEntry.copy(
+                        startZeit = templateEntry.startZeit,
+                        endZeit = templateEntry.endZeit,
+                        pauseMinuten = templateEntry.pauseMinuten,
+                        typ = templateEntry.typ,
+                        notiz = templateEntry.notiz,
+                        isManualEntry = true,
+                        updatedAt = now
+                    )
                 }
+                // Gestempelte Tage auf die Vorlagen-Zeiten neu aufsetzen
+                TimeStamper.rebaseAll(database, StampEvent.SOURCE_UI, written)
             }
         }
     }
@@ -175,7 +186,7 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
         description: String,
         dayEntries: Map<Int, DayTimeEntry>
     ) {
-        viewModelScope.launch {
+        viewModelScope.launchWrite {
             // Lade die bestehende Vorlage
             val existingTemplate = weekTemplateDao.getTemplateById(templateId)
             if (existingTemplate != null) {
@@ -213,7 +224,7 @@ class WeekTemplatesViewModel(application: Application) : AndroidViewModel(applic
      * Löscht eine Vorlage
      */
     fun deleteTemplate(template: WeekTemplate) {
-        viewModelScope.launch {
+        viewModelScope.launchWrite {
             weekTemplateDao.deleteTemplate(template)
         }
     }
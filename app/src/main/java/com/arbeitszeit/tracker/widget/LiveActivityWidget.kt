@@ -10,12 +10,18 @@ import android.widget.RemoteViews
 import com.arbeitszeit.tracker.MainActivity
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.model.StampResult
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
 import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import java.time.LocalDate
 
 /**
  * Live Activity Widget - Zeigt laufende Arbeitszeit
@@ -62,22 +68,11 @@ class LiveActivityWidget : AppWidgetProvider() {
     }
 
     private fun stopCurrentWork(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            // Hole heutigen Eintrag
-            val today = DateUtils.today()
-            val todayEntry = timeEntryDao.getEntryByDate(today)
-
-            // Wenn es einen laufenden Eintrag gibt, beende ihn
-            if (todayEntry != null && todayEntry.endZeit == null) {
-                val currentTime = TimeUtils.currentTimeInMinutes()
-                val updatedEntry = todayEntry.copy(
-                    endZeit = currentTime
-                )
-                timeEntryDao.insert(updatedEntry)
 
+            // Wenn ein Arbeitsblock läuft, beende ihn
+            if (TimeStamper.stopIfRunning(database, StampEvent.SOURCE_WIDGET) == StampResult.ENDED) {
                 // Widget aktualisieren
                 withContext(Dispatchers.Main) {
                     refreshWidget(context)
@@ -92,12 +87,9 @@ class LiveActivityWidget : AppWidgetProvider() {
         appWidgetId: Int
     ) {
         CoroutineScope(Dispatchers.IO).launch {
-            val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
             // Hole heutigen Eintrag
             val today = DateUtils.today()
-            val todayEntry = timeEntryDao.getEntryByDate(today)
+            val todayEntry = TimeEntryRepository.getInstance(context).getEntry(LocalDate.parse(today))
 
             // Prüfe ob es einen laufenden Eintrag gibt
             val isRunning = todayEntry != null && todayEntry.endZeit == null
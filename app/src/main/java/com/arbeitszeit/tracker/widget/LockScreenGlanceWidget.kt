@@ -10,11 +10,12 @@ import android.widget.RemoteViews
 import com.arbeitszeit.tracker.MainActivity
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.ledger.OvertimeLedger
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
 import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import java.time.LocalDate
@@ -68,12 +69,11 @@ class LockScreenGlanceWidget : AppWidgetProvider() {
     ) {
         CoroutineScope(Dispatchers.IO).launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
             val settingsDao = database.userSettingsDao()
 
             // Hole heutigen Eintrag
             val today = DateUtils.today()
-            val todayEntry = timeEntryDao.getEntryByDate(today)
+            val todayEntry = TimeEntryRepository.getInstance(context).getEntry(LocalDate.parse(today))
 
             // Prüfe ob es einen laufenden Eintrag gibt
             val isRunning = todayEntry != null && todayEntry.endZeit == null
@@ -83,15 +83,12 @@ class LockScreenGlanceWidget : AppWidgetProvider() {
 
             // Hole Überstunden
             val settings = settingsDao.getSettings()
-            val allEntries = timeEntryDao.getAllEntriesFlow().first()
-
+            // Jahressumme aus dem gemeinsamen Überstunden-Konto (O(log n), kein Summieren der Einträge)
             val currentYear = LocalDate.now().year
-            val currentYearEntries = allEntries.filter {
-                val date = LocalDate.parse(it.datum)
-                date.year == currentYear
-            }
-
-            val laufendesJahrUeberstunden = currentYearEntries.sumOf { it.getDifferenzMinuten() }
+            val laufendesJahrUeberstunden = OvertimeLedger.getInstance(context).rangeSum(
+                LocalDate.of(currentYear, 1, 1),
+                LocalDate.of(currentYear, 12, 31)
+            )
             val gesamtUeberstunden = laufendesJahrUeberstunden + (settings?.ueberstundenVorjahrMinuten ?: 0)
 
             withContext(Dispatchers.Main) {
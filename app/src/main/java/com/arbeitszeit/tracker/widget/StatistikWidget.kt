@@ -9,10 +9,11 @@ import android.widget.RemoteViews
 import com.arbeitszeit.tracker.MainActivity
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.ledger.OvertimeLedger
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
 import com.arbeitszeit.tracker.utils.DateUtils
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import java.time.DayOfWeek
@@ -66,22 +67,19 @@ class StatistikWidget : AppWidgetProvider() {
     ) {
         CoroutineScope(Dispatchers.IO).launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
+            val repository = TimeEntryRepository.getInstance(context)
             val settingsDao = database.userSettingsDao()
 
             // Hole heutigen Eintrag
             val today = DateUtils.today()
-            val todayEntry = timeEntryDao.getEntryByDate(today)
+            val todayEntry = repository.getEntry(LocalDate.parse(today))
 
             // Hole Wocheneinträge (Montag bis Sonntag)
             val currentDate = LocalDate.now()
             val monday = currentDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
             val sunday = monday.plusDays(6)
 
-            val weekEntries = timeEntryDao.getEntriesByDateRange(
-                DateUtils.dateToString(monday),
-                DateUtils.dateToString(sunday)
-            )
+            val weekEntries = repository.getRange(monday, sunday)
 
             // Berechne Statistiken
             val todayMinutes = todayEntry?.getIstMinuten() ?: 0
@@ -89,15 +87,12 @@ class StatistikWidget : AppWidgetProvider() {
 
             // Hole Überstunden
             val settings = settingsDao.getSettings()
-            val allEntries = timeEntryDao.getAllEntriesFlow().first()
-
+            // Jahressumme aus dem gemeinsamen Überstunden-Konto (O(log n), kein Summieren der Einträge)
             val currentYear = LocalDate.now().year
-            val currentYearEntries = allEntries.filter {
-                val date = LocalDate.parse(it.datum)
-                date.year == currentYear
-            }
-
-            val laufendesJahrUeberstunden = currentYearEntries.sumOf { it.getDifferenzMinuten() }
+            val laufendesJahrUeberstunden = OvertimeLedger.getInstance(context).rangeSum(
+                LocalDate.of(currentYear, 1, 1),
+                LocalDate.of(currentYear, 12, 31)
+            )
             val gesamtUeberstunden = laufendesJahrUeberstunden + (settings?.ueberstundenVorjahrMinuten ?: 0)
 
             // Update UI
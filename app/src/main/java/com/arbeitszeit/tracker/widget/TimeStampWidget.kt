@@ -9,11 +9,16 @@ import android.content.Intent
 import android.widget.RemoteViews
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
 import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import java.time.LocalDate
 import java.util.Calendar
 
 /**
@@ -81,61 +86,28 @@ class TimeStampWidget : AppWidgetProvider() {
     }
 
     private fun handleStartStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                timeEntryDao.update(entry.copy(
-                    startZeit = currentTime,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.start(database, StampEvent.SOURCE_WIDGET)
 
             refreshWidget(context)
         }
     }
 
     private fun handleEndStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                timeEntryDao.update(entry.copy(
-                    endZeit = currentTime,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.end(database, StampEvent.SOURCE_WIDGET)
 
             refreshWidget(context)
         }
     }
 
     private fun handlePauseStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-
-            if (entry != null) {
-                val currentPause = entry.pauseMinuten ?: 0
-                // Add 30 minutes pause
-                timeEntryDao.update(entry.copy(
-                    pauseMinuten = currentPause + 30,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            // Add 30 minutes pause
+            TimeStamper.addPause(database, StampEvent.SOURCE_WIDGET, 30)
 
             refreshWidget(context)
         }
@@ -159,11 +131,10 @@ class TimeStampWidget : AppWidgetProvider() {
     ) {
         CoroutineScope(Dispatchers.IO).launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
             val userSettingsDao = database.userSettingsDao()
 
             val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
+            val entry = TimeEntryRepository.getInstance(context).getEntry(LocalDate.parse(today))
             val settings = userSettingsDao.getSettings()
 
             val views = RemoteViews(context.packageName, R.layout.widget_time_stamp)
@@ -9,6 +9,11 @@ import android.content.Intent
 import android.widget.RemoteViews
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
+import com.arbeitszeit.tracker.data.virtual.VirtualDays
 import com.arbeitszeit.tracker.utils.DateUtils
 import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.CoroutineScope
@@ -75,60 +80,27 @@ class TimeStampWidgetLarge : AppWidgetProvider() {
     }
 
     private fun handleStartStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                timeEntryDao.update(entry.copy(
-                    startZeit = currentTime,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.start(database, StampEvent.SOURCE_WIDGET)
 
             refreshWidget(context)
         }
     }
 
     private fun handleEndStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                timeEntryDao.update(entry.copy(
-                    endZeit = currentTime,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.end(database, StampEvent.SOURCE_WIDGET)
 
             refreshWidget(context)
         }
     }
 
     private fun handlePauseStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-
-            if (entry != null) {
-                val currentPause = entry.pauseMinuten ?: 0
-                timeEntryDao.update(entry.copy(
-                    pauseMinuten = currentPause + 30,
-                    updatedAt = System.currentTimeMillis()
-                ))
-            }
+            TimeStamper.addPause(database, StampEvent.SOURCE_WIDGET, 30)
 
             refreshWidget(context)
         }
@@ -152,10 +124,10 @@ class TimeStampWidgetLarge : AppWidgetProvider() {
     ) {
         CoroutineScope(Dispatchers.IO).launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
+            val repository = TimeEntryRepository.getInstance(context)
 
             val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
+            val entry = repository.getEntry(LocalDate.parse(today))
 
             val views = RemoteViews(context.packageName, R.layout.widget_time_stamp_large)
 
@@ -197,9 +169,11 @@ class TimeStampWidgetLarge : AppWidgetProvider() {
             val startOfWeek = currentDate.with(weekFields.dayOfWeek(), 1)
             val endOfWeek = currentDate.with(weekFields.dayOfWeek(), 7)
 
-            val weekEntries = timeEntryDao.getEntriesByDateRange(
-                startOfWeek.toString(),
-                endOfWeek.toString()
+            // Fehlende Tage zählen als leere Tage (virtuell, wie in der Wochenübersicht der App)
+            val weekEntries = VirtualDays.load(database).fill(
+                startOfWeek,
+                endOfWeek,
+                repository.getRange(startOfWeek, endOfWeek)
             )
 
             val weekSoll = weekEntries.sumOf { it.sollMinuten }
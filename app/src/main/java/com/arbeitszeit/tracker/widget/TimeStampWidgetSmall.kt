@@ -9,11 +9,15 @@ import android.content.Intent
 import android.widget.RemoteViews
 import com.arbeitszeit.tracker.R
 import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.entity.StampEvent
+import com.arbeitszeit.tracker.data.repository.TimeEntryRepository
+import com.arbeitszeit.tracker.data.stamp.TimeStamper
 import com.arbeitszeit.tracker.utils.DateUtils
-import com.arbeitszeit.tracker.utils.TimeUtils
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import java.time.LocalDate
 import java.util.Calendar
 
 /**
@@ -67,43 +71,12 @@ class TimeStampWidgetSmall : AppWidgetProvider() {
      * Quick Stamp Logic:
      * - Wenn keine Start-Zeit: Setze Start-Zeit
      * - Wenn Start-Zeit aber keine End-Zeit: Setze End-Zeit
-     * - Wenn beides gesetzt: Setze neue Start-Zeit (neuer Tag)
+     * - Wenn beides gesetzt: Beginne neuen Arbeitsblock (z.B. geteilter Dienst)
      */
     private fun handleQuickStamp(context: Context) {
-        CoroutineScope(Dispatchers.IO).launch {
+        DatabaseWriter.launch {
             val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
-            val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
-            val currentTime = TimeUtils.currentTimeInMinutes()
-
-            if (entry != null) {
-                when {
-                    entry.startZeit == null -> {
-                        // Set start time
-                        timeEntryDao.update(entry.copy(
-                            startZeit = currentTime,
-                            updatedAt = System.currentTimeMillis()
-                        ))
-                    }
-                    entry.endZeit == null -> {
-                        // Set end time
-                        timeEntryDao.update(entry.copy(
-                            endZeit = currentTime,
-                            updatedAt = System.currentTimeMillis()
-                        ))
-                    }
-                    else -> {
-                        // Reset to new start (new session)
-                        timeEntryDao.update(entry.copy(
-                            startZeit = currentTime,
-                            endZeit = null,
-                            updatedAt = System.currentTimeMillis()
-                        ))
-                    }
-                }
-            }
+            TimeStamper.toggle(database, StampEvent.SOURCE_WIDGET)
 
             refreshWidget(context)
         }
@@ -126,11 +99,8 @@ class TimeStampWidgetSmall : AppWidgetProvider() {
         appWidgetId: Int
     ) {
         CoroutineScope(Dispatchers.IO).launch {
-            val database = AppDatabase.getDatabase(context)
-            val timeEntryDao = database.timeEntryDao()
-
             val today = DateUtils.today()
-            val entry = timeEntryDao.getEntryByDate(today)
+            val entry = TimeEntryRepository.getInstance(context).getEntry(LocalDate.parse(today))
 
             val views = RemoteViews(context.packageName, R.layout.widget_time_stamp_small)
 
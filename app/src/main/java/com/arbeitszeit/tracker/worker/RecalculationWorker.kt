@@ -0,0 +1,149 @@
+package com.arbeitszeit.tracker.worker
+
+import android.content.Context
+import androidx.room.withTransaction
+import androidx.work.*
+import com.arbeitszeit.tracker.data.calendar.CalendarDays
+import com.arbeitszeit.tracker.data.database.AppDatabase
+import com.arbeitszeit.tracker.data.database.DatabaseWriter
+import com.arbeitszeit.tracker.data.diagnostics.QueryLog
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+
+/**
+ * Berechnet Soll und Kalenderwochen aller gespeicherten Einträge nach einer
+ * Einstellungsänderung neu - im Hintergrund statt im viewModelScope
+ *
+ * Gearbeitet wird in Datums-Blöcken (CHUNK_DAYS), jeder Block ist eine Transaktion
+ * mit je einem UPDATE für KW, Feiertage und Soll (siehe TimeEntryDao.updateKalenderwochenInRange /
+ * markHolidaysInRange / updateSollMinutenInRange). Nach jedem Block wird der Fortschritt gemeldet und der
+ * nächste Starttag in den SharedPreferences abgelegt: wird der Prozess beendet,
+ * setzt WorkManager den Job dort fort.
+ *
+ * Was neu berechnet werden muss, steht ebenfalls in den SharedPreferences; ein neuer
+ * Auftrag ersetzt den laufenden und übernimmt dessen offene Aufgaben.
+ */
+class RecalculationWorker(
+    context: Context,
+    params: WorkerParameters
+) : CoroutineWorker(context, params) {
+
+    private val database = AppDatabase.getDatabase(context)
+    private val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    override suspend fun doWork(): Result = withContext(Dispatchers.IO) {
+        val generation = inputData.getLong(KEY_GENERATION, 0L)
+        val soll = prefs.getBoolean(KEY_PENDING_SOLL, false)
+        val kalenderwochen = prefs.getBoolean(KEY_PENDING_KW, false)
+        if (!soll && !kalenderwochen) return@withContext Result.success()
+
+        val timeEntryDao = database.timeEntryDao()
+        val settings = database.userSettingsDao().getSettings() ?: return@withContext Result.success()
+
+        // KW und Feiertage kommen aus der Kalender-Dimension - vorher auf aktuellen Stand bringen
+        CalendarDays.getInstance(applicationContext).sync()
+
+        val firstDay = timeEntryDao.getFirstEpochDay()
+        val lastDay = timeEntryDao.getLastEpochDay()
+        if (firstDay == null || lastDay == null) {
+            finish(generation)
+            return@withContext Result.success()
+        }
+
+        val sollProTag = settings.wochenStundenMinuten / settings.arbeitsTageProWoche.coerceAtLeast(1)
+        var startDay = maxOf(prefs.getInt(KEY_CURSOR, firstDay), firstDay)
+        var updated = 0
+
+        while (startDay <= lastDay) {
+            val endDay = minOf(startDay + CHUNK_DAYS - 1, lastDay)
+            val now = System.currentTimeMillis()
+            // Ein Block pro Schreibauftrag - Stempel dazwischen warten höchstens einen Block
+            updated += DatabaseWriter.write {
+                database.withTransaction {
+                    var count = 0
+                    if (kalenderwochen) count += QueryLog.timed("TimeEntryDao.updateKalenderwochenInRange") {
+                        timeEntryDao.updateKalenderwochenInRange(startDay, endDay, now)
+                    }
+                    if (soll) {
+                        // Gleiche Regel wie CalendarDays.sync: leere Tage auf Feiertagen werden Typ F mit Soll 0
+                        count += QueryLog.timed("TimeEntryDao.markHolidaysInRange") {
+                            timeEntryDao.markHolidaysInRange(startDay, endDay, now)
+                        }
+                        count += QueryLog.timed("TimeEntryDao.updateSollMinutenInRange") {
+                            timeEntryDao.updateSollMinutenInRange(startDay, endDay, settings.workingDays, sollProTag, now)
+                        }
+                    }
+                    count
+                }
+            }
+            startDay = endDay + 1
+
+            // Nur der aktuelle Auftrag schreibt den Fortschritt (ein ersetzter läuft evtl. noch kurz weiter)
+            if (!isCurrent(generation)) return@withContext Result.success()
+            prefs.edit().putInt(KEY_CURSOR, startDay).apply()
+            setProgress(workDataOf(
+                PROGRESS_DONE to (startDay - firstDay),
+                PROGRESS_TOTAL to (lastDay - firstDay + 1)
+            ))
+        }
+
+        finish(generation)
+        android.util.Log.i("RecalculationWorker", "Neuberechnung abgeschlossen: $updated Einträge aktualisiert")
+        Result.success()
+    }
+
+    private fun isCurrent(generation: Long): Boolean {
+        return prefs.getLong(KEY_GENERATION, 0L) == generation
+    }
+
+    private fun finish(generation: Long) {
+        if (!isCurrent(generation)) return
+        prefs.edit()
+            .remove(KEY_PENDING_SOLL)
+            .remove(KEY_PENDING_KW)
+            .remove(KEY_CURSOR)
+            .apply()
+    }
+
+    companion object {
+        const val WORK_NAME = "recalculation"
+
+        // Fortschritt in Tagen (WorkInfo.progress)
+        const val PROGRESS_DONE = "progress_done"
+        const val PROGRESS_TOTAL = "progress_total"
+
+        // Etwa ein Quartal pro Transaktion
+        private const val CHUNK_DAYS = 92
+
+        private const val PREFS_NAME = "recalculation_prefs"
+        private const val KEY_PENDING_SOLL = "pending_soll"
+        private const val KEY_PENDING_KW = "pending_kw"
+        private const val KEY_CURSOR = "cursor_epoch_day"
+        private const val KEY_GENERATION = "generation"
+
+        /**
+         * Plant die Neuberechnung (ersetzt einen laufenden Auftrag)
+         * Der neue Auftrag beginnt wieder beim ältesten Eintrag, da sich die Einstellungen geändert haben.
+         */
+        fun enqueue(context: Context, soll: Boolean, kalenderwochen: Boolean) {
+            val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            val generation = prefs.getLong(KEY_GENERATION, 0L) + 1
+            prefs.edit()
+                .putBoolean(KEY_PENDING_SOLL, soll || prefs.getBoolean(KEY_PENDING_SOLL, false))
+                .putBoolean(KEY_PENDING_KW, kalenderwochen || prefs.getBoolean(KEY_PENDING_KW, false))
+                .remove(KEY_CURSOR)
+                .putLong(KEY_GENERATION, generation)
+                .commit()
+
+            val workRequest = OneTimeWorkRequestBuilder<RecalculationWorker>()
+                .setInputData(workDataOf(KEY_GENERATION to generation))
+                .build()
+
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                WORK_NAME,
+                ExistingWorkPolicy.REPLACE,
+                workRequest
+            )
+        }
+    }
+}
@@ -10,6 +10,8 @@ dependencyResolutionManagement {
     repositories {
         google()
         mavenCentral()
+        // sqlite-android (mitgeliefertes SQLite)
+        maven("https://jitpack.io")
     }
 }
 